@@ -0,0 +1,100 @@
+package synapticloop.b2;
+
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2AuthorizeAccountResponse;
+
+/**
+ * Realistic responses for the benchmarks, generated from a fixed seed so that
+ * runs are comparable.
+ */
+public class BenchmarkFixtures {
+	private static final String[] CONTENT_TYPES = { "image/jpeg", "video/mp4", "application/octet-stream", "text/plain", "application/pdf" };
+	private static final String[] FOLDERS = { "photos/2016/", "photos/2017/holiday/", "backup/", "documents/work/reports/", "" };
+
+	private BenchmarkFixtures() {}
+
+	/**
+	 * @return an authorize account response which points to the live service
+	 */
+	public static B2AuthorizeAccountResponse authorizeAccountResponse() {
+		try {
+			return new B2AuthorizeAccountResponse(new JSONObject()
+					.put("accountId", "a30f20426f0b")
+					.put("authorizationToken", "3_20160803004041_53982a92f631a8c7303e3266_d940c7f5ee17cd1de3758aaacf1024188bc0cd0b_000_20160804004041_0006_acct")
+					.put("apiUrl", "https://api900.backblazeb2.com")
+					.put("downloadUrl", "https://f900.backblazeb2.com")
+					.put("recommendedPartSize", 100000000)
+					.put("absoluteMinimumPartSize", 5000000)
+					.put("minimumPartSize", 100000000)
+					.toString());
+		} catch (B2ApiException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * Generate a page of a file listing, as returned from b2_list_file_names
+	 *
+	 * @param entries the number of files in the page
+	 *
+	 * @return the JSON of the page
+	 */
+	public static String listFilesPage(int entries) {
+		final Random random = new Random(entries);
+		final JSONArray files = new JSONArray();
+		for (int i = 0; i < entries; i++) {
+			files.put(fileInfo(random, i));
+		}
+		return new JSONObject()
+				.put("files", files)
+				.put("nextFileName", fileName(random, entries))
+				.toString();
+	}
+
+	/**
+	 * Generate a single file entry, as returned in a listing
+	 *
+	 * @return the JSON of the file
+	 */
+	public static String fileInfo() {
+		return fileInfo(new Random(1L), 1).toString();
+	}
+
+	private static JSONObject fileInfo(Random random, int index) {
+		final long size = (long)(random.nextDouble() * 50000000L);
+		final JSONObject fileInfo = new JSONObject()
+				.put("src_last_modified_millis", String.valueOf(1450000000000L + random.nextInt(100000000)));
+		if(random.nextBoolean()) {
+			fileInfo.put("author", "synapticloop");
+		}
+		return new JSONObject()
+				.put("accountId", "a30f20426f0b")
+				.put("action", "upload")
+				.put("bucketId", "e73ede9c9c8412db49f60715")
+				.put("contentLength", size)
+				.put("contentSha1", sha1(random))
+				.put("contentType", CONTENT_TYPES[random.nextInt(CONTENT_TYPES.length)])
+				.put("fileId", String.format("4_ze73ede9c9c8412db49f60715_f%015x_d20160120_m172133_c000_v0001010_t%04d", random.nextLong() & 0xfffffffffffffffL, index % 10000))
+				.put("fileInfo", fileInfo)
+				.put("fileName", fileName(random, index))
+				.put("size", size)
+				.put("uploadTimestamp", 1450000000000L + random.nextInt(100000000));
+	}
+
+	private static String fileName(Random random, int index) {
+		return String.format("%sIMG_%06d %s.jpg", FOLDERS[random.nextInt(FOLDERS.length)], index, random.nextBoolean() ? "copy" : "final");
+	}
+
+	private static String sha1(Random random) {
+		final StringBuilder builder = new StringBuilder(40);
+		for (int i = 0; i < 40; i++) {
+			builder.append(Character.forDigit(random.nextInt(16), 16));
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package synapticloop.b2.exception;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpResponseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapticloop.b2.response.B2Result;
+
+/**
+ * The cost of a 404 answer: an exception with a stack trace (as thrown by 
+ * default), a stackless exception, and a result
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class B2ApiExceptionBenchmark {
+	private static final String JSON = "{\"code\": \"not_found\", \"message\": \"File not present: photos/2017/holiday/IMG_000123 final.jpg\", \"status\": 404}";
+
+	@Benchmark
+	public int exception() {
+		return new B2ApiException(JSON, new HttpResponseException(404, "Not Found")).withHttpStatus(404).getStatus();
+	}
+
+	@Benchmark
+	public int stacklessException() {
+		return new B2ApiException(JSON, null, false).withHttpStatus(404).getStatus();
+	}
+
+	@Benchmark
+	public int result() {
+		return B2Result.failure(404, JSON, null).getStatus();
+	}
+}
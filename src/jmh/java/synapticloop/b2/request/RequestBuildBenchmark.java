@@ -0,0 +1,64 @@
+package synapticloop.b2.request;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapticloop.b2.BenchmarkFixtures;
+import synapticloop.b2.response.B2AuthorizeAccountResponse;
+
+/**
+ * The conversion of the request properties to the POST body and of the 
+ * request parameters to the request URI
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildBenchmark {
+	private CloseableHttpClient client;
+	private B2ListFileVersionsRequest listFileVersionsRequest;
+	private B2DownloadFileByIdRequest downloadFileByIdRequest;
+
+	@Setup
+	public void setup() {
+		final B2AuthorizeAccountResponse b2AuthorizeAccountResponse = BenchmarkFixtures.authorizeAccountResponse();
+		client = HttpClients.createDefault();
+		listFileVersionsRequest = new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, "e73ede9c9c8412db49f60715", 1000, 
+				"photos/2017/holiday/IMG_000123 final.jpg", "4_ze73ede9c9c8412db49f60715_f1092070825b2ec14_d20151219_m191222_c000_v0001014_t0038", 
+				"photos/", "/");
+		downloadFileByIdRequest = new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, 
+				"4_ze73ede9c9c8412db49f60715_f1092070825b2ec14_d20151219_m191222_c000_v0001014_t0038", 0, 1048575);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.close();
+	}
+
+	@Benchmark
+	public String convertPostData() throws IOException {
+		return listFileVersionsRequest.convertPostData();
+	}
+
+	@Benchmark
+	public URI buildUri() throws IOException {
+		return downloadFileByIdRequest.buildUri();
+	}
+}
@@ -0,0 +1,64 @@
+package synapticloop.b2.response;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * The mapping of the headers of a download (HEAD) response
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DownloadFileResponseBenchmark {
+	private CloseableHttpResponse response;
+
+	@Setup
+	public void setup() {
+		response = new StaticHttpResponse();
+		response.addHeader("Content-Length", "180903");
+		response.addHeader("Content-Type", "image/jpeg");
+		response.addHeader("X-Bz-File-Id", "4_z181632c04c2ddde855010b15_f112de56cdcbb09e8_d20160120_m172133_c000_v0001010_t0006");
+		response.addHeader("X-Bz-File-Name", "photos/2017/holiday/IMG_000123%20final.jpg");
+		response.addHeader("X-Bz-Content-Sha1", "e73f8339c3e731e3fd9b0bec46222bd0016f1afa");
+		response.addHeader("X-Bz-Upload-Timestamp", "1453310493000");
+		response.addHeader("X-Bz-Info-src_last_modified_millis", "1453310490000");
+		response.addHeader("X-Bz-Info-author", "synapticloop");
+		response.addHeader("Accept-Ranges", "bytes");
+		response.addHeader("Cache-Control", "max-age=0, no-cache, no-store");
+		response.addHeader("Date", "Wed, 20 Jan 2016 17:21:33 GMT");
+		response.addHeader("Server", "Backblaze");
+	}
+
+	@Benchmark
+	public B2DownloadFileResponse mapHeaders() throws B2ApiException, IOException {
+		return new B2DownloadFileResponse(response);
+	}
+
+	private static class StaticHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+		StaticHttpResponse() {
+			super(HttpVersion.HTTP_1_1, 200, "OK");
+		}
+
+		@Override
+		public void close() {}
+	}
+}
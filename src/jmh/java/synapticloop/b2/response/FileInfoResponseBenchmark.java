@@ -0,0 +1,38 @@
+package synapticloop.b2.response;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapticloop.b2.BenchmarkFixtures;
+import synapticloop.b2.exception.B2ApiException;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileInfoResponseBenchmark {
+	private String file;
+
+	@Setup
+	public void setup() {
+		file = BenchmarkFixtures.fileInfo();
+	}
+
+	@Benchmark
+	public B2FileInfoResponse parseFileInfo() throws B2ApiException {
+		return new B2FileInfoResponse(new JSONObject(file));
+	}
+}
@@ -0,0 +1,41 @@
+package synapticloop.b2.response;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapticloop.b2.BenchmarkFixtures;
+import synapticloop.b2.exception.B2ApiException;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListFilesResponseBenchmark {
+	@Param({ "1000", "10000" })
+	public int entries;
+
+	private String page;
+
+	@Setup
+	public void setup() {
+		page = BenchmarkFixtures.listFilesPage(entries);
+	}
+
+	@Benchmark
+	public B2ListFilesResponse parseListFiles() throws B2ApiException {
+		return new B2ListFilesResponse(page);
+	}
+}
@@ -0,0 +1,42 @@
+package synapticloop.b2.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumHelperBenchmark {
+	@Param({ "1024", "1048576" })
+	public int size;
+
+	private byte[] content;
+
+	@Setup
+	public void setup() {
+		content = new byte[size];
+		new Random(size).nextBytes(content);
+	}
+
+	@Benchmark
+	public String calculateSha1() throws IOException {
+		return ChecksumHelper.calculateSha1(new ByteArrayInputStream(content));
+	}
+}
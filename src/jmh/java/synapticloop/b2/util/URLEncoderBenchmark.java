@@ -0,0 +1,43 @@
+package synapticloop.b2.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLEncoderBenchmark {
+	@Param({ "IMG_5066.jpg", "photos/2017/holiday/IMG_000123 final.jpg", "documents/\u65e5\u672c\u8a9e/r\u00e9sum\u00e9 (1).pdf" })
+	public String name;
+
+	private String encoded;
+
+	@Setup
+	public void setup() {
+		encoded = URLEncoder.encode(name);
+	}
+
+	@Benchmark
+	public String encode() {
+		return URLEncoder.encode(name);
+	}
+
+	@Benchmark
+	public String decode() {
+		return URLEncoder.decode(encoded);
+	}
+}
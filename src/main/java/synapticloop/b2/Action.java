@@ -35,5 +35,11 @@ public enum Action {
 	 * Pending multipart upload. "start" means that a large file has been started, but not finished or canceled.
 	 */
 	upload,
-	start
+	start,
+	/**
+	 * "folder" is returned by the listing calls when a delimiter is given, for 
+	 * each folder that contains files, with the name of the folder (ending 
+	 * with the delimiter) as the file name.
+	 */
+	folder
 }
@@ -19,15 +19,51 @@ package synapticloop.b2;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.NullInputStream;
 import org.apache.http.HttpEntity;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.auth.B2Reauthorizer;
+import synapticloop.b2.auth.B2StoredAuthorization;
+import synapticloop.b2.auth.B2TokenStore;
+import synapticloop.b2.concurrency.B2Operation;
+import synapticloop.b2.concurrency.SingleFlight;
 import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.inventory.B2InventoryIndex;
+import synapticloop.b2.io.BandwidthLimiter;
+import synapticloop.b2.io.ProgressTracker;
+import synapticloop.b2.io.ResumableDownloadInputStream;
+import synapticloop.b2.io.SharedDownload;
+import synapticloop.b2.io.Sha1VerifyingInputStream;
+import synapticloop.b2.io.TransferProgressListener;
+import synapticloop.b2.metrics.B2ClientStatistics;
+import synapticloop.b2.metrics.B2RequestListener;
+import synapticloop.b2.metrics.CompositeRequestListener;
+import synapticloop.b2.metrics.InMemoryMetricsListener;
 import synapticloop.b2.request.B2AuthorizeAccountRequest;
 import synapticloop.b2.request.B2CancelLargeFileRequest;
 import synapticloop.b2.request.B2CreateBucketRequest;
@@ -41,6 +77,7 @@ import synapticloop.b2.request.B2GetFileInfoRequest;
 import synapticloop.b2.request.B2GetUploadPartUrlRequest;
 import synapticloop.b2.request.B2GetUploadUrlRequest;
 import synapticloop.b2.request.B2HeadFileByIdRequest;
+import synapticloop.b2.request.B2HeadFileByNameRequest;
 import synapticloop.b2.request.B2HideFileRequest;
 import synapticloop.b2.request.B2ListBucketsRequest;
 import synapticloop.b2.request.B2ListFileNamesRequest;
@@ -51,6 +88,8 @@ import synapticloop.b2.request.B2StartLargeFileRequest;
 import synapticloop.b2.request.B2UpdateBucketRequest;
 import synapticloop.b2.request.B2UploadFileRequest;
 import synapticloop.b2.request.B2UploadPartRequest;
+import synapticloop.b2.request.BaseB2Request;
+import synapticloop.b2.request.HedgingPolicy;
 import synapticloop.b2.response.B2AuthorizeAccountResponse;
 import synapticloop.b2.response.B2BucketResponse;
 import synapticloop.b2.response.B2DeleteFileVersionResponse;
@@ -62,8 +101,10 @@ import synapticloop.b2.response.B2GetUploadUrlResponse;
 import synapticloop.b2.response.B2HideFileResponse;
 import synapticloop.b2.response.B2ListFilesResponse;
 import synapticloop.b2.response.B2ListPartsResponse;
+import synapticloop.b2.response.B2Result;
 import synapticloop.b2.response.B2StartLargeFileResponse;
 import synapticloop.b2.response.B2UploadPartResponse;
+import synapticloop.b2.upload.B2Uploader;
 import synapticloop.b2.util.ChecksumHelper;
 
 /**
@@ -73,11 +114,73 @@ import synapticloop.b2.util.ChecksumHelper;
  * @author synapticloop
  */
 public class B2ApiClient {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2ApiClient.class);
+
+	private static final String MBEAN_DOMAIN = "synapticloop.b2";
 
-	private B2AuthorizeAccountResponse b2AuthorizeAccountResponse;
+	private static final String OPERATION_DOWNLOAD_FILE_BY_ID = "b2_download_file_by_id";
+
+	private volatile B2AuthorizeAccountResponse b2AuthorizeAccountResponse;
 
 	private final CloseableHttpClient client;
 
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final CompositeRequestListener requestListeners = new CompositeRequestListener();
+
+	private volatile B2ClientStatistics statistics;
+
+	private final BandwidthLimiter uploadLimiter = new BandwidthLimiter();
+
+	private final BandwidthLimiter downloadLimiter = new BandwidthLimiter();
+
+	private TransferProgressListener progressListener;
+
+	private long progressGranularityBytes = ProgressTracker.DEFAULT_GRANULARITY_BYTES;
+
+	private long progressIntervalMillis = ProgressTracker.DEFAULT_INTERVAL_MILLIS;
+
+	private volatile int maxDownloadResumes = ResumableDownloadInputStream.DEFAULT_MAX_RESUMES;
+
+	private volatile boolean verifyDownloads = false;
+
+	private volatile boolean stacklessExceptions = false;
+
+	private final List<B2InventoryIndex> inventoryIndexes = new CopyOnWriteArrayList<>();
+
+	private volatile boolean coalesceRequests = false;
+
+	private volatile long maxCoalescedDownloadSize = SharedDownload.DEFAULT_MAX_SIZE;
+
+	private final SingleFlight inFlight = new SingleFlight();
+
+	private volatile HedgingPolicy hedgingPolicy;
+
+	private ObjectName objectName;
+
+	private final B2ClientConfig config;
+
+	private final UploadUrlPool uploadUrls = new UploadUrlPool();
+
+	private B2TokenStore tokenStore;
+
+	private long tokenMaxAgeMillis = B2StoredAuthorization.DEFAULT_MAX_AGE_MILLIS;
+
+	private String apiHost;
+
+	private String accountId;
+
+	private String applicationKey;
+
+	private String expiredAuthorizationToken;
+
+	private final B2Reauthorizer reauthorizer = new B2Reauthorizer() {
+		@Override
+		public String reauthorize(String operation, String expiredToken) throws B2ApiException, IOException {
+			return B2ApiClient.this.reauthorize(operation, expiredToken);
+		}
+	};
+
 	/**
 	 * Create a B2ApiClient and authenticate
 	 *
@@ -93,12 +196,43 @@ public class B2ApiClient {
 	}
 
 	/**
-	 * Must authenticate first before API actions are available. Using default HTTP client configuration
+	 * Must authenticate first before API actions are available. Using the 
+	 * default configuration, see {@link B2ClientConfig#DEFAULT}
 	 *
 	 * @see #authenticate(String, String)
 	 */
 	public B2ApiClient() {
-		this(HttpClients.createDefault());
+		this(B2ClientConfig.DEFAULT);
+	}
+
+	/**
+	 * Must authenticate first before API actions are available.  The 
+	 * connection pool and the HTTP client are created from the configuration,
+	 * and are closed when this client is closed.
+	 *
+	 * @param config the configuration of the HTTP connections
+	 *
+	 * @see #authenticate(String, String)
+	 */
+	public B2ApiClient(B2ClientConfig config) {
+		this(config, config.createConnectionManager());
+	}
+
+	private B2ApiClient(B2ClientConfig config, PoolingHttpClientConnectionManager connectionManager) {
+		this(config.createHttpClient(connectionManager), connectionManager, config);
+	}
+
+	/**
+	 * Must authenticate first before API actions are available.  Using the 
+	 * default HTTP client configuration with the passed in connection pool, 
+	 * which will be closed when this client is closed.
+	 *
+	 * @param connectionManager the connection pool to use
+	 *
+	 * @see #authenticate(String, String)
+	 */
+	public B2ApiClient(PoolingHttpClientConnectionManager connectionManager) {
+		this(HttpClients.custom().setConnectionManager(connectionManager).build(), connectionManager);
 	}
 
 	/**
@@ -109,7 +243,26 @@ public class B2ApiClient {
 	 * @see #authenticate(String, String)
 	 */
 	public B2ApiClient(CloseableHttpClient client) {
+		this(client, null);
+	}
+
+	/**
+	 * Must authenticate first before API actions are available
+	 *
+	 * @param client Shared HTTP client
+	 * @param connectionManager the connection pool used by the client, which 
+	 *     is used to report the connection pool statistics, or null if not known
+	 *
+	 * @see #authenticate(String, String)
+	 */
+	public B2ApiClient(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager) {
+		this(client, connectionManager, null);
+	}
+
+	private B2ApiClient(CloseableHttpClient client, PoolingHttpClientConnectionManager connectionManager, B2ClientConfig config) {
 		this.client = client;
+		this.connectionManager = connectionManager;
+		this.config = config;
 	}
 
 	/**
@@ -125,7 +278,155 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2AuthorizeAccountResponse authenticate(String accountId, String applicationKey) throws B2ApiException, IOException {
-		return b2AuthorizeAccountResponse = new B2AuthorizeAccountRequest(client, accountId, applicationKey).getResponse();
+		return authenticate(B2AuthorizeAccountRequest.DEFAULT_API_HOST, accountId, applicationKey);
+	}
+
+	/**
+	 * return the authorize account response from a different API host, for 
+	 * example a local emulator of the B2 service.  This is only done once and 
+	 * is cached for further use.
+	 *
+	 * @param apiHost the scheme, host and port of the API, e.g. 'https://api.backblazeb2.com'
+	 * @param accountId The account id
+	 * @param applicationKey the application key
+	 *
+	 * @return the authorize account response
+	 *
+	 * @throws B2ApiException if there was an error authenticating
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public synchronized B2AuthorizeAccountResponse authenticate(String apiHost, String accountId, String applicationKey) throws B2ApiException, IOException {
+		this.apiHost = apiHost;
+		if(null != statistics) {
+			statistics.setAuthorizationUrl(apiHost);
+		}
+		this.accountId = accountId;
+		this.applicationKey = applicationKey;
+		final B2StoredAuthorization stored = this.loadAuthorization();
+		if(null != stored) {
+			LOGGER.debug("Using the stored authorization issued at {}", stored.getIssued());
+			this.authorized(stored.getResponse());
+			return b2AuthorizeAccountResponse;
+		}
+		return this.authorize();
+	}
+
+	/**
+	 * Set the store that authorizations are saved to, and loaded from when the
+	 * client is authenticated, so that a process which starts often does not 
+	 * need to authorize the account each time.  A stored authorization is used
+	 * for 23 hours after it was issued.  If the stored authorization is 
+	 * rejected by the API, the account is authorized again.
+	 *
+	 * @param tokenStore the token store, or null for none
+	 */
+	public void setTokenStore(B2TokenStore tokenStore) {
+		setTokenStore(tokenStore, B2StoredAuthorization.DEFAULT_MAX_AGE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Set the store that authorizations are saved to, and loaded from when the
+	 * client is authenticated.
+	 *
+	 * @param tokenStore the token store, or null for none
+	 * @param maxAge the age after which a stored authorization is not used, 
+	 *     which should be less than the 24 hours that tokens are valid for
+	 * @param unit the unit of the maximum age
+	 */
+	public synchronized void setTokenStore(B2TokenStore tokenStore, long maxAge, TimeUnit unit) {
+		this.tokenStore = tokenStore;
+		this.tokenMaxAgeMillis = unit.toMillis(maxAge);
+	}
+
+	/**
+	 * Load the authorization for the credentials from the token store
+	 *
+	 * @return the stored authorization, or null if there is no store, or no 
+	 *     authorization that can still be used
+	 */
+	private B2StoredAuthorization loadAuthorization() {
+		if(null == tokenStore) {
+			return null;
+		}
+		try {
+			final B2StoredAuthorization stored = tokenStore.load(B2StoredAuthorization.key(apiHost, accountId, applicationKey));
+			return null != stored && stored.isValid(tokenMaxAgeMillis) ? stored : null;
+		} catch (IOException ex) {
+			LOGGER.warn("Could not load the stored authorization", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Authorize the account with the credentials, and save the authorization 
+	 * to the token store
+	 *
+	 * @return the authorize account response
+	 *
+	 * @throws B2ApiException if there was an error authenticating
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2AuthorizeAccountResponse authorize() throws B2ApiException, IOException {
+		final long issued = System.currentTimeMillis();
+		final B2AuthorizeAccountResponse response = configure(new B2AuthorizeAccountRequest(client, apiHost, accountId, applicationKey)).getResponse();
+		if(null != tokenStore) {
+			try {
+				tokenStore.save(B2StoredAuthorization.key(apiHost, accountId, applicationKey), new B2StoredAuthorization(response, issued));
+			} catch (IOException ex) {
+				LOGGER.warn("Could not save the authorization", ex);
+			}
+		}
+		this.authorized(response);
+		return response;
+	}
+
+	/**
+	 * Authorize the account again when a request is rejected because its 
+	 * authorization token has expired.  Only the first of the requests that 
+	 * are rejected with the same token authorizes again, the others are given 
+	 * the new token.
+	 *
+	 * @param operation the name of the operation that was rejected
+	 * @param expiredToken the authorization token that was rejected
+	 *
+	 * @return the new authorization token, or null if the token was not the 
+	 *     authorization token of the account
+	 *
+	 * @throws B2ApiException if there was an error authenticating
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private synchronized String reauthorize(String operation, String expiredToken) throws B2ApiException, IOException {
+		if(null == applicationKey || null == b2AuthorizeAccountResponse) {
+			return null;
+		}
+		if(expiredToken.equals(expiredAuthorizationToken)) {
+			return b2AuthorizeAccountResponse.getAuthorizationToken();
+		}
+		if(!expiredToken.equals(b2AuthorizeAccountResponse.getAuthorizationToken())) {
+			return null;
+		}
+		LOGGER.info("Authorization token rejected by '{}', authorizing the account again", operation);
+		if(null != statistics) {
+			statistics.recordReauthorization(operation);
+		}
+		final String authorizationToken = this.authorize().getAuthorizationToken();
+		expiredAuthorizationToken = expiredToken;
+		return authorizationToken;
+	}
+
+	/**
+	 * Use the authorization for all further requests
+	 *
+	 * @param response the authorize account response
+	 */
+	private void authorized(B2AuthorizeAccountResponse response) {
+		b2AuthorizeAccountResponse = response;
+		if(null != config) {
+			config.configureRoutes(connectionManager, b2AuthorizeAccountResponse.getApiUrl(), b2AuthorizeAccountResponse.getDownloadUrl());
+		}
+		if(null != statistics) {
+			statistics.setUrls(b2AuthorizeAccountResponse.getApiUrl(), b2AuthorizeAccountResponse.getDownloadUrl());
+		}
 	}
 
 	/**
@@ -146,15 +447,642 @@ public class B2ApiClient {
 		return b2AuthorizeAccountResponse.getApiUrl();
 	}
 
+	/**
+	 * Get the recommended size for each part of a large file
+	 *
+	 * @return the recommended part size for the authorized account
+	 */
+	public int getRecommendedPartSize() {
+		return b2AuthorizeAccountResponse.getRecommendedPartSize();
+	}
+
+	/**
+	 * Get the smallest possible size of a part of a large file (except the 
+	 * last one)
+	 *
+	 * @return the absolute minimum part size for the authorized account
+	 */
+	public int getAbsoluteMinimumPartSize() {
+		return b2AuthorizeAccountResponse.getAbsoluteMinimumPartSize();
+	}
+
+	/**
+	 * Open a number of connections to the API and download hosts in parallel 
+	 * (and get the upload URLs for, and open a connection to each of the 
+	 * upload hosts of, the buckets), so that the first requests made by the 
+	 * client do not need to wait for the DNS lookup, TCP connect and TLS 
+	 * handshake.  The connections are kept alive in the connection pool, and 
+	 * the upload URLs are used by the next uploads to the buckets.
+	 * 
+	 * This is best effort - connections that can not be opened are logged and 
+	 * ignored.  Connections are only opened when the client knows about its 
+	 * <code>PoolingHttpClientConnectionManager</code>.
+	 *
+	 * @param connections the number of connections to open to each host (and 
+	 *     the number of upload URLs to get for each bucket)
+	 * @param bucketIds the ids of the buckets to get upload URLs for
+	 *
+	 * @return the number of open connections in the connection pool
+	 *
+	 * @throws B2ApiException if there was an error getting an upload URL
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public int warmUp(int connections, String... bucketIds) throws B2ApiException, IOException {
+		if(null == b2AuthorizeAccountResponse) {
+			throw new IllegalStateException("The client must be authenticated before warming up");
+		}
+		final List<B2GetUploadUrlResponse> prefetched = this.prefetchUploadUrls(connections, bucketIds);
+		if(null == connectionManager) {
+			LOGGER.warn("Not warming up connections as the connection pool is not known to the client");
+			return 0;
+		}
+		final ConnectionWarmer warmer = new ConnectionWarmer(connectionManager, null == config ? B2ClientConfig.DEFAULT : config);
+		warmer.atLeast(this.getApiUrl(), connections);
+		warmer.atLeast(this.getDownloadUrl(), connections);
+		for (B2GetUploadUrlResponse uploadUrl : prefetched) {
+			warmer.another(uploadUrl.getUploadUrl());
+		}
+		return warmer.warm();
+	}
+
+	private List<B2GetUploadUrlResponse> prefetchUploadUrls(int count, String... bucketIds) throws B2ApiException, IOException {
+		final List<B2GetUploadUrlResponse> prefetched = new ArrayList<>();
+		if(count <= 0 || bucketIds.length == 0) {
+			return prefetched;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(16, count * bucketIds.length));
+		try {
+			final List<Future<B2GetUploadUrlResponse>> futures = new ArrayList<>();
+			for (final String bucketId : bucketIds) {
+				for (int i = 0; i < count; i++) {
+					futures.add(executor.submit(new Callable<B2GetUploadUrlResponse>() {
+						@Override
+						public B2GetUploadUrlResponse call() throws B2ApiException, IOException {
+							return getUploadUrl(bucketId);
+						}
+					}));
+				}
+			}
+			for (Future<B2GetUploadUrlResponse> future : futures) {
+				final B2GetUploadUrlResponse uploadUrl = future.get();
+				uploadUrls.offer(new UploadUrlPool.Lease(uploadUrl));
+				prefetched.add(uploadUrl);
+			}
+			return prefetched;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while getting upload URLs", ex);
+		} catch (ExecutionException ex) {
+			if(ex.getCause() instanceof B2ApiException) {
+				throw (B2ApiException)ex.getCause();
+			}
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	/**
 	 * Release all resources from the connection pool.
 	 *
 	 * @throws IOException if the client could not be closed
 	 */
 	public void close() throws IOException {
+		if(null != objectName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException ex) {
+				LOGGER.warn("Could not unregister MBean '{}'", objectName, ex);
+			}
+			objectName = null;
+		}
 		client.close();
 	}
 
+	/**
+	 * Register the statistics for this client (in flight requests, transfer 
+	 * rates, connection pool usage per route, retries and re-authorizations)
+	 * as an MBean with the platform MBean server, under the name
+	 * 'synapticloop.b2:type=B2ApiClient,name=&lt;name&gt;'.  The MBean is
+	 * unregistered when the client is closed.
+	 *
+	 * @param name the name to register the MBean under
+	 *
+	 * @return the statistics which are exposed through the MBean
+	 *
+	 * @throws JMException if the MBean could not be registered
+	 */
+	public synchronized B2ClientStatistics registerMBean(String name) throws JMException {
+		if(null != objectName) {
+			throw new InstanceAlreadyExistsException(objectName.toString());
+		}
+		final ObjectName mbeanName = new ObjectName(MBEAN_DOMAIN + ":type=B2ApiClient,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(getStatistics(), mbeanName);
+		objectName = mbeanName;
+		return statistics;
+	}
+
+	/**
+	 * Return the statistics for this client, which are collected from the time
+	 * that this method (or {@link #registerMBean(String)}) is first called.
+	 *
+	 * @return the statistics for this client
+	 */
+	public synchronized B2ClientStatistics getStatistics() {
+		if(null == statistics) {
+			statistics = new B2ClientStatistics(connectionManager);
+			if(null != apiHost) {
+				statistics.setAuthorizationUrl(apiHost);
+			}
+			if(null != b2AuthorizeAccountResponse) {
+				statistics.setUrls(b2AuthorizeAccountResponse.getApiUrl(), b2AuthorizeAccountResponse.getDownloadUrl());
+			}
+			addRequestListener(statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Add a listener that will be notified at the start and the end of every
+	 * request made by this client, e.g. an {@link InMemoryMetricsListener}.
+	 *
+	 * @param listener the listener to add
+	 */
+	public void addRequestListener(B2RequestListener listener) {
+		requestListeners.addListener(listener);
+	}
+
+	/**
+	 * Remove a previously added request listener
+	 *
+	 * @param listener the listener to remove
+	 */
+	public void removeRequestListener(B2RequestListener listener) {
+		requestListeners.removeListener(listener);
+	}
+
+	/**
+	 * Return the limiter for the upload rate of this client, which is 
+	 * unlimited until a rate is set.  The rate may be changed at any time, and
+	 * applies to the uploads that are in progress.  All clients are also 
+	 * limited by {@link BandwidthLimiter#GLOBAL_UPLOAD}.
+	 *
+	 * @return the limiter for the upload rate
+	 */
+	public BandwidthLimiter getUploadLimiter() {
+		return uploadLimiter;
+	}
+
+	/**
+	 * Return the limiter for the download rate of this client, which is 
+	 * unlimited until a rate is set.  The rate may be changed at any time, and
+	 * applies to the downloads that are in progress.  All clients are also 
+	 * limited by {@link BandwidthLimiter#GLOBAL_DOWNLOAD}.
+	 *
+	 * @return the limiter for the download rate
+	 */
+	public BandwidthLimiter getDownloadLimiter() {
+		return downloadLimiter;
+	}
+
+	/**
+	 * Set the listener that is notified of the progress of every upload and 
+	 * download of file content made by this client, every MiB or every second.
+	 *
+	 * @param listener the listener to notify, or null for none
+	 */
+	public void setProgressListener(TransferProgressListener listener) {
+		setProgressListener(listener, ProgressTracker.DEFAULT_GRANULARITY_BYTES, ProgressTracker.DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Set the listener that is notified of the progress of every upload and 
+	 * download of file content made by this client.
+	 *
+	 * @param listener the listener to notify, or null for none
+	 * @param granularityBytes notify each time this number of bytes has been 
+	 *     transferred
+	 * @param intervalMillis notify when this number of milliseconds has 
+	 *     passed since the last notification
+	 */
+	public void setProgressListener(TransferProgressListener listener, long granularityBytes, long intervalMillis) {
+		this.progressListener = listener;
+		this.progressGranularityBytes = granularityBytes;
+		this.progressIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Set the maximum number of times that a download of a whole file to a 
+	 * stream or a file is resumed from the last byte read after the connection
+	 * is lost, the default is {@link ResumableDownloadInputStream#DEFAULT_MAX_RESUMES}.
+	 *
+	 * @param maxDownloadResumes the maximum number of resumes, or 0 (zero) to
+	 *     fail the download when the connection is lost
+	 */
+	public void setMaxDownloadResumes(int maxDownloadResumes) {
+		if(maxDownloadResumes < 0) {
+			throw new IllegalArgumentException("The maximum number of resumes must not be negative");
+		}
+		this.maxDownloadResumes = maxDownloadResumes;
+	}
+
+	/**
+	 * Set whether the content of a download of a whole file to a stream or a
+	 * file is verified against the SHA1 of the file as it is read, the default
+	 * is not to verify.  The stream throws an {@link IOException} at the end
+	 * of the content if the SHA1 does not match, and a downloaded file is 
+	 * deleted.  For a large file the SHA1 is taken from the 'large_file_sha1'
+	 * file info, if it was set when the file was uploaded.
+	 *
+	 * @param verifyDownloads whether to verify the content of downloads
+	 */
+	public void setVerifyDownloads(boolean verifyDownloads) {
+		this.verifyDownloads = verifyDownloads;
+	}
+
+	/**
+	 * Set whether the {@link B2ApiException}s thrown for error responses are
+	 * created without a stack trace (or a cause), the default is to fill in
+	 * the stack trace.  Filling in the stack trace is the most expensive part
+	 * of creating an exception, which matters where errors are an expected 
+	 * answer and are caught by the caller - although the calls which return a
+	 * {@link B2Result} (e.g. {@link #tryGetFileInfo(String)}) avoid creating 
+	 * an exception at all.
+	 *
+	 * @param stacklessExceptions whether exceptions are created without a 
+	 *     stack trace
+	 */
+	public void setStacklessExceptions(boolean stacklessExceptions) {
+		this.stacklessExceptions = stacklessExceptions;
+	}
+
+	/**
+	 * Add an inventory index that will record the files uploaded, hidden and
+	 * deleted by this client in the bucket of the index.  An update that can
+	 * not be recorded is logged, and does not fail the call to the B2 service.
+	 *
+	 * @param index the index to add
+	 */
+	public void addInventoryIndex(B2InventoryIndex index) {
+		inventoryIndexes.add(index);
+	}
+
+	/**
+	 * Remove a previously added inventory index
+	 *
+	 * @param index the index to remove
+	 */
+	public void removeInventoryIndex(B2InventoryIndex index) {
+		inventoryIndexes.remove(index);
+	}
+
+	/**
+	 * Set whether identical concurrent requests for idempotent operations are
+	 * coalesced, the default is not to coalesce.  A call which is made while 
+	 * an identical call is in flight waits for, and shares, the result of 
+	 * that call rather than making its own request - which protects a hot 
+	 * file from a stampede of requests.  The coalesced operations are: 
+	 * listing the buckets, getting the file info, HEAD requests (including 
+	 * {@link #exists(String, String)}) and the downloads of whole files by 
+	 * name or by id, whose content is shared through a buffer as it is read 
+	 * if it is no larger than the maximum coalesced download size.
+	 * 
+	 * A shared result must be treated as read only, and a failure is thrown 
+	 * to all of the callers that shared the request.
+	 *
+	 * @param coalesceRequests whether to coalesce identical concurrent requests
+	 */
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+
+	/**
+	 * Set the maximum size of the content of a download that is shared by 
+	 * coalesced requests, the default is {@link SharedDownload#DEFAULT_MAX_SIZE}.
+	 * The content is held in memory until all of the callers have read it, 
+	 * and the callers of a larger download each make their own request.
+	 *
+	 * @param maxCoalescedDownloadSize the maximum size of a shared download in bytes
+	 */
+	public void setMaxCoalescedDownloadSize(long maxCoalescedDownloadSize) {
+		if(maxCoalescedDownloadSize < 0) {
+			throw new IllegalArgumentException("The maximum coalesced download size must not be negative");
+		}
+		this.maxCoalescedDownloadSize = maxCoalescedDownloadSize;
+	}
+
+	/**
+	 * Set the policy which hedges the downloads and HEAD requests of this 
+	 * client: if the response of a request has not arrived within a percentile
+	 * of the recent latency of its operation, a duplicate request is sent and
+	 * the first response is used, within a budget of extra requests.  If none
+	 * is set (the default) requests are not hedged.
+	 *
+	 * @param hedgingPolicy the hedging policy, or null for none
+	 */
+	public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	/**
+	 * Return the coalescing of identical concurrent requests of this client, 
+	 * e.g. to read the number of requests that were shared
+	 *
+	 * @return the coalescing of requests
+	 */
+	public SingleFlight getCoalescedRequests() {
+		return inFlight;
+	}
+
+	/**
+	 * Execute an idempotent operation, sharing the result of an identical 
+	 * operation that is in flight if requests are coalesced
+	 *
+	 * @param operation the operation to execute
+	 * @param key the name of the operation, followed by its arguments
+	 * @param <T> the type of the result
+	 *
+	 * @return the result of the operation
+	 *
+	 * @throws B2ApiException if the API returned an error
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private <T> T coalesced(B2Operation<T> operation, Object... key) throws B2ApiException, IOException {
+		if(!coalesceRequests) {
+			return operation.execute();
+		}
+		return inFlight.execute(Arrays.asList(key), operation);
+	}
+
+	/**
+	 * Execute a HEAD request, giving each caller of a coalesced request its 
+	 * own copy of the response
+	 *
+	 * @param request the HEAD request, which is only executed if there is no
+	 *     identical request in flight
+	 * @param key the name of the operation, followed by its arguments
+	 *
+	 * @return the download file response
+	 *
+	 * @throws B2ApiException if there was an error with the call
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2DownloadFileResponse head(B2Operation<B2DownloadFileResponse> request, Object... key) throws B2ApiException, IOException {
+		final B2DownloadFileResponse response = coalesced(request, key);
+		if(!coalesceRequests) {
+			return response;
+		}
+		return new B2DownloadFileResponse(response, new NullInputStream(0L));
+	}
+
+	/**
+	 * Execute a HEAD request, returning the error status rather than throwing
+	 * an exception if the request fails, and giving each caller of a 
+	 * coalesced request its own copy of the response
+	 *
+	 * @param request the HEAD request, which is only executed if there is no
+	 *     identical request in flight
+	 * @param key the name of the operation, followed by its arguments
+	 *
+	 * @return the result, with the download file response if the request succeeded
+	 *
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     account could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2Result<B2DownloadFileResponse> tryHead(B2Operation<B2Result<B2DownloadFileResponse>> request, Object... key) throws B2ApiException, IOException {
+		final B2Result<B2DownloadFileResponse> result = coalesced(request, key);
+		if(!coalesceRequests || !result.isSuccess()) {
+			return result;
+		}
+		return B2Result.success(result.getStatus(), new B2DownloadFileResponse(result.getResponse(), new NullInputStream(0L)));
+	}
+
+	/**
+	 * Download a whole file, sharing the content of an identical download 
+	 * that is in flight if requests are coalesced
+	 *
+	 * @param request the download request, which is only executed if there 
+	 *     is no identical download in flight
+	 * @param key the name of the operation, followed by its arguments
+	 *
+	 * @return the download file response, with the content stream of this caller
+	 *
+	 * @throws B2ApiException if there was an error with the call
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2DownloadFileResponse download(final B2Operation<B2DownloadFileResponse> request, Object... key) throws B2ApiException, IOException {
+		if(!coalesceRequests) {
+			return request.execute();
+		}
+		final long maxSize = maxCoalescedDownloadSize;
+		final SharedDownload shared = inFlight.execute(Arrays.asList(key), new B2Operation<SharedDownload>() {
+			@Override
+			public SharedDownload execute() throws B2ApiException, IOException {
+				return new SharedDownload(request.execute(), maxSize);
+			}
+		});
+		final B2DownloadFileResponse response = shared.open();
+		if(null != response) {
+			return response;
+		}
+		// the shared content is no longer available, or is too large to share
+		return request.execute();
+	}
+
+	/**
+	 * Download a whole file by its name, sharing the content of an identical 
+	 * download that is in flight if requests are coalesced
+	 *
+	 * @param bucketName the name of the bucket
+	 * @param fileName the name of the file
+	 *
+	 * @return the download file response
+	 *
+	 * @throws B2ApiException if there was an error with the call
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2DownloadFileResponse downloadByName(final String bucketName, final String fileName) throws B2ApiException, IOException {
+		return download(new B2Operation<B2DownloadFileResponse>() {
+			@Override
+			public B2DownloadFileResponse execute() throws B2ApiException, IOException {
+				return configure(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)).getResponse();
+			}
+		}, "b2_download_file_by_name", bucketName, fileName);
+	}
+
+	/**
+	 * Download a whole file by its id, sharing the content of an identical 
+	 * download that is in flight if requests are coalesced
+	 *
+	 * @param fileId the id of the file
+	 *
+	 * @return the download file response
+	 *
+	 * @throws B2ApiException if there was an error with the call
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private B2DownloadFileResponse downloadById(final String fileId) throws B2ApiException, IOException {
+		return download(new B2Operation<B2DownloadFileResponse>() {
+			@Override
+			public B2DownloadFileResponse execute() throws B2ApiException, IOException {
+				return configure(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId)).getResponse();
+			}
+		}, "b2_download_file_by_id", fileId);
+	}
+
+	/**
+	 * Apply the client wide settings to a request before it is executed
+	 *
+	 * @param request the request to configure
+	 * @param <T> the type of the request
+	 *
+	 * @return the configured request
+	 */
+	private <T extends BaseB2Request> T configure(T request) {
+		if(!requestListeners.isEmpty()) {
+			request.setRequestListener(requestListeners);
+		}
+		request.setUploadLimiters(uploadLimiter, BandwidthLimiter.GLOBAL_UPLOAD);
+		request.setDownloadLimiters(downloadLimiter, BandwidthLimiter.GLOBAL_DOWNLOAD);
+		if(null != config) {
+			request.setDrainPolicy(config.getDrainPolicy());
+		}
+		if(null != progressListener) {
+			request.setProgressListener(progressListener, progressGranularityBytes, progressIntervalMillis);
+		}
+		request.setReauthorizer(reauthorizer);
+		request.setStackTraces(!stacklessExceptions);
+		request.setHedgingPolicy(hedgingPolicy);
+		request.setStatistics(statistics);
+		return request;
+	}
+
+	/**
+	 * Return the content of the download of a whole file, which is resumed 
+	 * from the last byte read with a ranged download by the file id if the 
+	 * connection is lost, and verified against the SHA1 of the file if 
+	 * downloads are verified
+	 *
+	 * @param response the response of the download of the whole file
+	 *
+	 * @return the content of the file
+	 */
+	private InputStream content(B2DownloadFileResponse response) {
+		final int resumes = maxDownloadResumes;
+		InputStream content = response.getContent();
+		if(resumes > 0) {
+			content = new ResumableDownloadInputStream(response, new ResumableDownloadInputStream.RangeOpener() {
+				@Override
+				public B2DownloadFileResponse open(String fileId, long rangeStart) throws B2ApiException, IOException {
+					if(null != statistics) {
+						statistics.recordRetry(OPERATION_DOWNLOAD_FILE_BY_ID);
+					}
+					return configure(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, -1)).getResponse();
+				}
+			}, resumes);
+		}
+		if(verifyDownloads) {
+			content = new Sha1VerifyingInputStream(content, response);
+		}
+		return content;
+	}
+
+	/**
+	 * Write the content of the download of a whole file to a file, deleting
+	 * the file if the content could not be read completely or did not match
+	 * the SHA1 of the file
+	 *
+	 * @param response the response of the download of the whole file
+	 * @param file the file to write the content to
+	 *
+	 * @throws IOException if the content could not be written
+	 */
+	private void toFile(B2DownloadFileResponse response, File file) throws IOException {
+		try {
+			FileUtils.copyInputStreamToFile(content(response), file);
+		} catch (IOException ex) {
+			FileUtils.deleteQuietly(file);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Record an uploaded file in the inventory indexes
+	 *
+	 * @param response the response of the upload
+	 *
+	 * @return the response
+	 */
+	private B2FileResponse indexed(B2FileResponse response) {
+		for (B2InventoryIndex index : inventoryIndexes) {
+			try {
+				index.uploaded(response);
+			} catch (IOException ex) {
+				LOGGER.warn("Could not record the upload of '{}' in the inventory index: {}", response.getFileName(), ex.getMessage());
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Record a finished large file in the inventory indexes
+	 *
+	 * @param response the response of finishing the large file
+	 *
+	 * @return the response
+	 */
+	private B2FinishLargeFileResponse indexed(B2FinishLargeFileResponse response) {
+		for (B2InventoryIndex index : inventoryIndexes) {
+			try {
+				index.uploaded(response);
+			} catch (IOException ex) {
+				LOGGER.warn("Could not record the upload of '{}' in the inventory index: {}", response.getFileName(), ex.getMessage());
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Record a hidden file in the inventory indexes
+	 *
+	 * @param bucketId the id of the bucket of the file
+	 * @param response the response of hiding the file
+	 *
+	 * @return the response
+	 */
+	private B2HideFileResponse indexed(String bucketId, B2HideFileResponse response) {
+		for (B2InventoryIndex index : inventoryIndexes) {
+			try {
+				index.hidden(bucketId, response);
+			} catch (IOException ex) {
+				LOGGER.warn("Could not record the hiding of '{}' in the inventory index: {}", response.getFileName(), ex.getMessage());
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Record a deleted file version in the inventory indexes
+	 *
+	 * @param response the response of deleting the file version
+	 *
+	 * @return the response
+	 */
+	private B2DeleteFileVersionResponse indexed(B2DeleteFileVersionResponse response) {
+		for (B2InventoryIndex index : inventoryIndexes) {
+			try {
+				index.deleted(response);
+			} catch (IOException ex) {
+				LOGGER.warn("Could not record the deletion of '{}' in the inventory index: {}", response.getFileName(), ex.getMessage());
+			}
+		}
+		return response;
+	}
+
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
 	 *
 	 *   BUCKET RELATED API ACTIONS
@@ -175,7 +1103,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2BucketResponse createBucket(String bucketName, BucketType bucketType) throws B2ApiException, IOException {
-		return new B2CreateBucketRequest(client, b2AuthorizeAccountResponse, bucketName, bucketType).getResponse();
+		return configure(new B2CreateBucketRequest(client, b2AuthorizeAccountResponse, bucketName, bucketType)).getResponse();
 	}
 
 	/**
@@ -189,7 +1117,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2BucketResponse deleteBucket(String bucketId) throws B2ApiException, IOException {
-		return new B2DeleteBucketRequest(client, b2AuthorizeAccountResponse, bucketId).getResponse();
+		return configure(new B2DeleteBucketRequest(client, b2AuthorizeAccountResponse, bucketId)).getResponse();
 	}
 
 	/**
@@ -204,7 +1132,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2BucketResponse updateBucket(String bucketId, BucketType bucketType, LifecycleRule... lifecycleRules) throws B2ApiException, IOException {
-		return new B2UpdateBucketRequest(client, b2AuthorizeAccountResponse, bucketId, bucketType, lifecycleRules).getResponse();
+		return configure(new B2UpdateBucketRequest(client, b2AuthorizeAccountResponse, bucketId, bucketType, lifecycleRules)).getResponse();
 	}
 
 	/**
@@ -216,7 +1144,12 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public List<B2BucketResponse> listBuckets() throws B2ApiException, IOException {
-		return new B2ListBucketsRequest(client, b2AuthorizeAccountResponse).getResponse().getBuckets();
+		return new ArrayList<B2BucketResponse>(coalesced(new B2Operation<List<B2BucketResponse>>() {
+			@Override
+			public List<B2BucketResponse> execute() throws B2ApiException, IOException {
+				return configure(new B2ListBucketsRequest(client, b2AuthorizeAccountResponse)).getResponse().getBuckets();
+			}
+		}, "b2_list_buckets"));
 	}
 
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -239,8 +1172,13 @@ public class B2ApiClient {
 	 * @throws B2ApiException if something went wrong
 	 * @throws IOException if there was an error communicating with the API service
 	 */
-	public B2FileResponse getFileInfo(String fileId) throws B2ApiException, IOException {
-		return new B2GetFileInfoRequest(client, b2AuthorizeAccountResponse, fileId).getResponse();
+	public B2FileResponse getFileInfo(final String fileId) throws B2ApiException, IOException {
+		return coalesced(new B2Operation<B2FileResponse>() {
+			@Override
+			public B2FileResponse execute() throws B2ApiException, IOException {
+				return configure(new B2GetFileInfoRequest(client, b2AuthorizeAccountResponse, fileId)).getResponse();
+			}
+		}, "b2_get_file_info", fileId);
 	}
 
 	/**
@@ -255,8 +1193,124 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 
-	public B2DownloadFileResponse headFileById(String fileId) throws B2ApiException, IOException {
-		return new B2HeadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId).getResponse();
+	public B2DownloadFileResponse headFileById(final String fileId) throws B2ApiException, IOException {
+		return head(new B2Operation<B2DownloadFileResponse>() {
+			@Override
+			public B2DownloadFileResponse execute() throws B2ApiException, IOException {
+				return configure(new B2HeadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId)).getResponse();
+			}
+		}, "head_file_by_id", fileId);
+	}
+
+	/**
+	 * Retrieve the file information for a particular fileId, returning the 
+	 * error status rather than throwing an exception if the call fails, e.g.
+	 * a 404 if the file does not exist
+	 *
+	 * @param fileId the file ID to retrieve the information on
+	 *
+	 * @return the result, with the file response if the call succeeded
+	 *
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     account could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2FileResponse> tryGetFileInfo(final String fileId) throws B2ApiException, IOException {
+		return coalesced(new B2Operation<B2Result<B2FileResponse>>() {
+			@Override
+			public B2Result<B2FileResponse> execute() throws B2ApiException, IOException {
+				return configure(new B2GetFileInfoRequest(client, b2AuthorizeAccountResponse, fileId)).getResult();
+			}
+		}, "try_get_file_info", fileId);
+	}
+
+	/**
+	 * Perform a HEAD request on a file, returning the error status rather 
+	 * than throwing an exception if the request fails, e.g. a 404 if the file
+	 * does not exist
+	 *
+	 * @param fileId the id of the file to retrieve the information for
+	 *
+	 * @return the result, with the download file response if the request succeeded
+	 *
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     account could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2DownloadFileResponse> tryHeadFileById(final String fileId) throws B2ApiException, IOException {
+		return tryHead(new B2Operation<B2Result<B2DownloadFileResponse>>() {
+			@Override
+			public B2Result<B2DownloadFileResponse> execute() throws B2ApiException, IOException {
+				return configure(new B2HeadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId)).getResult();
+			}
+		}, "try_head_file_by_id", fileId);
+	}
+
+	/**
+	 * Perform a HEAD request on a file by its name, which will return the 
+	 * information associated with the current version of the file
+	 *
+	 * @param bucketName the name of the bucket
+	 * @param fileName the name of the file
+	 *
+	 * @return the download file response
+	 *
+	 * @throws B2ApiException if there was an error with the call, e.g. the file
+	 *     does not exist or is hidden
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2DownloadFileResponse headFileByName(final String bucketName, final String fileName) throws B2ApiException, IOException {
+		return head(new B2Operation<B2DownloadFileResponse>() {
+			@Override
+			public B2DownloadFileResponse execute() throws B2ApiException, IOException {
+				return configure(new B2HeadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)).getResponse();
+			}
+		}, "head_file_by_name", bucketName, fileName);
+	}
+
+	/**
+	 * Perform a HEAD request on a file by its name, returning the error status
+	 * rather than throwing an exception if the request fails, e.g. a 404 if 
+	 * the file does not exist or is hidden
+	 *
+	 * @param bucketName the name of the bucket
+	 * @param fileName the name of the file
+	 *
+	 * @return the result, with the download file response if the request succeeded
+	 *
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     account could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2DownloadFileResponse> tryHeadFileByName(final String bucketName, final String fileName) throws B2ApiException, IOException {
+		return tryHead(new B2Operation<B2Result<B2DownloadFileResponse>>() {
+			@Override
+			public B2Result<B2DownloadFileResponse> execute() throws B2ApiException, IOException {
+				return configure(new B2HeadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)).getResult();
+			}
+		}, "try_head_file_by_name", bucketName, fileName);
+	}
+
+	/**
+	 * Return whether a file exists (and is not hidden), with a HEAD request 
+	 * for the file by its name that does not create an exception when the 
+	 * file does not exist
+	 *
+	 * @param bucketName the name of the bucket
+	 * @param fileName the name of the file
+	 *
+	 * @return whether the file exists
+	 *
+	 * @throws B2ApiException if the request failed other than with a 404
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public boolean exists(String bucketName, String fileName) throws B2ApiException, IOException {
+		final B2Result<B2DownloadFileResponse> result = this.tryHeadFileByName(bucketName, fileName);
+		if(result.isNotFound()) {
+			return false;
+		}
+		result.getResponseOrThrow();
+		return true;
 	}
 
 
@@ -277,7 +1331,63 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2GetUploadUrlResponse getUploadUrl(String bucketId) throws B2ApiException, IOException {
-		return new B2GetUploadUrlRequest(client, b2AuthorizeAccountResponse, bucketId).getResponse();
+		final B2GetUploadUrlResponse response = configure(new B2GetUploadUrlRequest(client, b2AuthorizeAccountResponse, bucketId)).getResponse();
+		if(null != statistics) {
+			statistics.addUploadUrl(response.getUploadUrl());
+		}
+		return response;
+	}
+
+	/**
+	 * Take an upload URL for the bucket from the pool of upload URLs that 
+	 * have been prefetched or used successfully, or get a new one.
+	 *
+	 * @param bucketId the id of the bucket to upload to
+	 * @return the upload URL
+	 * @throws B2ApiException if there was an error with the request
+	 * @throws IOException    if there was an error communicating with the API service
+	 */
+	private UploadUrlPool.Lease leaseUploadUrl(String bucketId) throws B2ApiException, IOException {
+		final UploadUrlPool.Lease lease = uploadUrls.poll(bucketId);
+		return null == lease ? new UploadUrlPool.Lease(this.getUploadUrl(bucketId)) : lease;
+	}
+
+	/**
+	 * Upload a file to a bucket, with a single upload if it is no larger than 
+	 * the recommended part size, otherwise as a large file in parts which are 
+	 * uploaded in parallel.  Use a {@link B2Uploader} to change the number of 
+	 * parallel uploads or the threshold for large files.
+	 *
+	 * @param bucketId the id of the bucket
+	 * @param fileName the name of the file that will be placed in the bucket
+	 *                 (including any path separators '/')
+	 * @param file     the file to upload
+	 * @param mimeType the mime type of the file, if null, then the mime type
+	 *                 will be attempted to be automatically mapped by the backblaze B2 API
+	 * @param fileInfo the file info map which will be set as 'X-Bz-Info-' headers
+	 * @return the uploaded file response
+	 * @throws B2ApiException if there was an error uploading the file
+	 * @throws IOException    if there was an error communicating with the API service
+	 */
+	public B2FileResponse upload(String bucketId, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
+		return new B2Uploader(this).upload(bucketId, fileName, file, mimeType, fileInfo);
+	}
+
+	/**
+	 * Upload a file to a bucket, with a single upload or as a large file 
+	 * depending on its size, and with the mime type mapped by the backblaze 
+	 * B2 API
+	 *
+	 * @param bucketId the id of the bucket
+	 * @param fileName the name of the file that will be placed in the bucket
+	 *                 (including any path separators '/')
+	 * @param file     the file to upload
+	 * @return the uploaded file response
+	 * @throws B2ApiException if there was an error uploading the file
+	 * @throws IOException    if there was an error communicating with the API service
+	 */
+	public B2FileResponse upload(String bucketId, String fileName, File file) throws B2ApiException, IOException {
+		return this.upload(bucketId, fileName, file, null, Collections.<String, String>emptyMap());
 	}
 
 	/**
@@ -298,8 +1408,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(String bucketId, String fileName, HttpEntity entity, String sha1Checksum, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		B2GetUploadUrlResponse b2GetUploadUrlResponse = this.getUploadUrl(bucketId);
-		return this.uploadFile(b2GetUploadUrlResponse, fileName, entity, sha1Checksum, mimeType, fileInfo);
+		return this.uploadFileWithLease(bucketId, fileName, entity, sha1Checksum, mimeType, fileInfo);
 	}
 
 	/**
@@ -320,7 +1429,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(B2GetUploadUrlResponse b2GetUploadUrlResponse, String fileName, HttpEntity entity, String sha1Checksum, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		return new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, entity, sha1Checksum, mimeType, fileInfo).getResponse();
+		return this.indexed(configure(new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, entity, sha1Checksum, mimeType, fileInfo)).getResponse());
 	}
 
 	/**
@@ -340,8 +1449,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(String bucketId, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		B2GetUploadUrlResponse b2GetUploadUrlResponse = this.getUploadUrl(bucketId);
-		return this.uploadFile(b2GetUploadUrlResponse, fileName, file, mimeType, fileInfo);
+		return this.uploadFileWithLease(bucketId, fileName, new FileEntity(file), ChecksumHelper.calculateSha1(file), mimeType, fileInfo);
 	}
 
 	/**
@@ -361,8 +1469,8 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(B2GetUploadUrlResponse b2GetUploadUrlResponse, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		return new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
-				ChecksumHelper.calculateSha1(file), mimeType, fileInfo).getResponse();
+		return this.indexed(configure(new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
+				ChecksumHelper.calculateSha1(file), mimeType, fileInfo)).getResponse());
 	}
 
 	/**
@@ -378,8 +1486,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(String bucketId, String fileName, File file, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		B2GetUploadUrlResponse b2GetUploadUrlResponse = this.getUploadUrl(bucketId);
-		return this.uploadFile(b2GetUploadUrlResponse, fileName, file, fileInfo);
+		return this.uploadFileWithLease(bucketId, fileName, new FileEntity(file), ChecksumHelper.calculateSha1(file), null, fileInfo);
 	}
 
 	/**
@@ -395,8 +1502,8 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(B2GetUploadUrlResponse b2GetUploadUrlResponse, String fileName, File file, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		return new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
-				ChecksumHelper.calculateSha1(file), fileInfo).getResponse();
+		return this.indexed(configure(new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
+				ChecksumHelper.calculateSha1(file), fileInfo)).getResponse());
 	}
 
 	/**
@@ -415,8 +1522,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(String bucketId, String fileName, File file, String mimeType) throws B2ApiException, IOException {
-		B2GetUploadUrlResponse b2GetUploadUrlResponse = this.getUploadUrl(bucketId);
-		return this.uploadFile(b2GetUploadUrlResponse, fileName, file, mimeType);
+		return this.uploadFileWithLease(bucketId, fileName, new FileEntity(file), ChecksumHelper.calculateSha1(file), mimeType, null);
 	}
 
 	/**
@@ -435,8 +1541,8 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(B2GetUploadUrlResponse b2GetUploadUrlResponse, String fileName, File file, String mimeType) throws B2ApiException, IOException {
-		return new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
-				ChecksumHelper.calculateSha1(file), mimeType).getResponse();
+		return this.indexed(configure(new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName, file,
+				ChecksumHelper.calculateSha1(file), mimeType)).getResponse());
 	}
 
 	/**
@@ -452,8 +1558,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(String bucketId, String fileName, File file) throws B2ApiException, IOException {
-		B2GetUploadUrlResponse b2GetUploadUrlResponse = this.getUploadUrl(bucketId);
-		return this.uploadFile(b2GetUploadUrlResponse, fileName, file);
+		return this.uploadFileWithLease(bucketId, fileName, new FileEntity(file), ChecksumHelper.calculateSha1(file), null, null);
 	}
 
 	/**
@@ -469,8 +1574,30 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FileResponse uploadFile(B2GetUploadUrlResponse b2GetUploadUrlResponse, String fileName, File file) throws B2ApiException, IOException {
-		return new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName,
-				file, ChecksumHelper.calculateSha1(file)).getResponse();
+		return this.indexed(configure(new B2UploadFileRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, fileName,
+				file, ChecksumHelper.calculateSha1(file))).getResponse());
+	}
+
+	/**
+	 * Upload a file to a bucket with an upload URL from the pool, or a new 
+	 * upload URL if there are none free
+	 *
+	 * @param bucketId     the id of the bucket
+	 * @param fileName     the name of the file that will be placed in the bucket
+	 * @param entity       the file content to upload
+	 * @param sha1Checksum the checksum for the file
+	 * @param mimeType     the mime type of the file, or null
+	 * @param fileInfo     the file info map, or null
+	 * @return the uploaded file response
+	 * @throws B2ApiException if there was an error uploading the file
+	 * @throws IOException    if there was an error communicating with the API service
+	 */
+	private B2FileResponse uploadFileWithLease(String bucketId, String fileName, HttpEntity entity, String sha1Checksum, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
+		final UploadUrlPool.Lease lease = this.leaseUploadUrl(bucketId);
+		final B2FileResponse response = this.uploadFile(lease.getUploadUrl(), fileName, entity, sha1Checksum, mimeType, fileInfo);
+		// the upload URL is only reused after a successful upload
+		uploadUrls.offer(lease);
+		return response;
 	}
 
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -489,7 +1616,11 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2GetUploadPartUrlResponse getUploadPartUrl(String fileId) throws B2ApiException, IOException {
-		return new B2GetUploadPartUrlRequest(client, b2AuthorizeAccountResponse, fileId).getResponse();
+		final B2GetUploadPartUrlResponse response = configure(new B2GetUploadPartUrlRequest(client, b2AuthorizeAccountResponse, fileId)).getResponse();
+		if(null != statistics) {
+			statistics.addUploadUrl(response.getUploadUrl());
+		}
+		return response;
 	}
 
 	/**
@@ -509,7 +1640,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error with the underlying transport
 	 */
 	public B2StartLargeFileResponse startLargeFileUpload(String bucketId, String fileName, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
-		return new B2StartLargeFileRequest(client, b2AuthorizeAccountResponse, bucketId, fileName, mimeType, fileInfo).getResponse();
+		return configure(new B2StartLargeFileRequest(client, b2AuthorizeAccountResponse, bucketId, fileName, mimeType, fileInfo)).getResponse();
 	}
 
 	/**
@@ -523,7 +1654,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error with the underlying transport
 	 */
 	public B2FileResponse cancelLargeFileUpload(String fileId) throws B2ApiException, IOException {
-		return new B2CancelLargeFileRequest(client, b2AuthorizeAccountResponse, fileId).getResponse();
+		return configure(new B2CancelLargeFileRequest(client, b2AuthorizeAccountResponse, fileId)).getResponse();
 	}
 
 	/**
@@ -538,7 +1669,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2FinishLargeFileResponse finishLargeFileUpload(String fileId, String[] partSha1Array) throws B2ApiException, IOException {
-		return new B2FinishLargeFileRequest(client, b2AuthorizeAccountResponse, fileId, partSha1Array).getResponse();
+		return this.indexed(configure(new B2FinishLargeFileRequest(client, b2AuthorizeAccountResponse, fileId, partSha1Array)).getResponse());
 	}
 
 	/**
@@ -571,7 +1702,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2UploadPartResponse uploadLargeFilePart(B2GetUploadPartUrlResponse b2GetUploadUrlResponse, int partNumber, HttpEntity entity, String sha1Checksum) throws B2ApiException, IOException {
-		return new B2UploadPartRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, partNumber, entity, sha1Checksum).getResponse();
+		return configure(new B2UploadPartRequest(client, b2AuthorizeAccountResponse, b2GetUploadUrlResponse, partNumber, entity, sha1Checksum)).getResponse();
 	}
 
 	/**
@@ -588,7 +1719,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listUnfinishedLargeFiles(String bucketId, String startFileId, Integer maxFileCount) throws B2ApiException, IOException {
-		return new B2ListUnfinishedLargeFilesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileId, maxFileCount).getResponse();
+		return configure(new B2ListUnfinishedLargeFilesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileId, maxFileCount)).getResponse();
 	}
 
 	/**
@@ -602,7 +1733,7 @@ public class B2ApiClient {
 	 * @throws IOException    if there was an error communicating with the API service
 	 */
 	public B2ListPartsResponse listParts(String fileId, Integer startPartNumber, Integer maxPartCount) throws B2ApiException, IOException {
-		return new B2ListPartsRequest(client, b2AuthorizeAccountResponse, fileId, startPartNumber, maxPartCount).getResponse();
+		return configure(new B2ListPartsRequest(client, b2AuthorizeAccountResponse, fileId, startPartNumber, maxPartCount)).getResponse();
 	}
 
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -623,7 +1754,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DeleteFileVersionResponse deleteFileVersion(String fileName, String fileId) throws B2ApiException, IOException {
-		return new B2DeleteFileVersionRequest(client, b2AuthorizeAccountResponse, fileName, fileId).getResponse();
+		return this.indexed(configure(new B2DeleteFileVersionRequest(client, b2AuthorizeAccountResponse, fileName, fileId)).getResponse());
 	}
 
 	/**
@@ -638,7 +1769,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2HideFileResponse hideFile(String bucketId, String fileName) throws B2ApiException, IOException {
-		return new B2HideFileRequest(client, b2AuthorizeAccountResponse, bucketId, fileName).getResponse();
+		return this.indexed(bucketId, configure(new B2HideFileRequest(client, b2AuthorizeAccountResponse, bucketId, fileName)).getResponse());
 	}
 
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -659,7 +1790,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileNames(String bucketId) throws B2ApiException, IOException {
-		return new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId).getResponse();
+		return configure(new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId)).getResponse();
 	}
 
 	/**
@@ -677,7 +1808,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileNames(String bucketId, String startFileName, Integer maxFileCount) throws B2ApiException, IOException {
-		return new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileName, maxFileCount, null, null).getResponse();
+		return configure(new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileName, maxFileCount, null, null)).getResponse();
 	}
 
 	/**
@@ -695,7 +1826,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileNames(String bucketId, String startFileName, Integer maxFileCount, String prefix, String delimiter) throws B2ApiException, IOException {
-		return new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileName, maxFileCount, prefix, delimiter).getResponse();
+		return configure(new B2ListFileNamesRequest(client, b2AuthorizeAccountResponse, bucketId, startFileName, maxFileCount, prefix, delimiter)).getResponse();
 	}
 
 	/**
@@ -709,7 +1840,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileVersions(String bucketId) throws B2ApiException, IOException {
-		return new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, 1000).getResponse();
+		return configure(new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, 1000)).getResponse();
 	}
 
 	/**
@@ -724,7 +1855,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileVersions(String bucketId, String startFileName) throws B2ApiException, IOException {
-		return new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, null, startFileName, null, null, null).getResponse();
+		return configure(new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, null, startFileName, null, null, null)).getResponse();
 	}
 
 	/**
@@ -742,7 +1873,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileVersions(String bucketId, String startFileName, String startFileId, Integer maxFileCount) throws B2ApiException, IOException {
-		return new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, maxFileCount, startFileName, startFileId, null, null).getResponse();
+		return configure(new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, maxFileCount, startFileName, startFileId, null, null)).getResponse();
 	}
 
 	/**
@@ -761,7 +1892,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2ListFilesResponse listFileVersions(String bucketId, String startFileName, String startFileId, Integer maxFileCount, String prefix, String delimiter) throws B2ApiException, IOException {
-		return new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, maxFileCount, startFileName, startFileId, prefix, delimiter).getResponse();
+		return configure(new B2ListFileVersionsRequest(client, b2AuthorizeAccountResponse, bucketId, maxFileCount, startFileName, startFileId, prefix, delimiter)).getResponse();
 	}
 
 	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -786,7 +1917,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public String getDownloadAuthorization(String bucketId, String fileNamePrefix, Integer validDurationInSeconds) throws B2ApiException, IOException {
-		return new B2GetDownloadAuthorizationRequest(client, b2AuthorizeAccountResponse, bucketId, fileNamePrefix, validDurationInSeconds).getResponse().getAuthorizationToken();
+		return configure(new B2GetDownloadAuthorizationRequest(client, b2AuthorizeAccountResponse, bucketId, fileNamePrefix, validDurationInSeconds)).getResponse().getAuthorizationToken();
 	}
 
 	/**
@@ -805,8 +1936,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public void downloadFileByNameToFile(String bucketName, String fileName, File file) throws B2ApiException, IOException {
-		FileUtils.copyInputStreamToFile(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)
-				.getResponse().getContent(), file);
+		toFile(downloadByName(bucketName, fileName), file);
 	}
 
 	/**
@@ -832,7 +1962,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public void downloadFileRangeByNameToFile(String bucketName, String fileName, File file, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		FileUtils.copyInputStreamToFile(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)
+		FileUtils.copyInputStreamToFile(configure(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName))
 				.getResponse().getContent(), file);
 	}
 
@@ -854,7 +1984,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public InputStream downloadFileByNameToStream(String bucketName, String fileName) throws B2ApiException, IOException {
-		return new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName).getResponse().getContent();
+		return content(downloadByName(bucketName, fileName));
 	}
 
 	/**
@@ -880,7 +2010,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public InputStream downloadFileRangeByNameToStream(String bucketName, String fileName, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		return new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName).getResponse().getContent();
+		return configure(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName)).getResponse().getContent();
 	}
 
 	/**
@@ -898,7 +2028,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse downloadFileByName(String bucketName, String fileName) throws B2ApiException, IOException {
-		return new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName).getResponse();
+		return downloadByName(bucketName, fileName);
 	}
 
 	/**
@@ -919,7 +2049,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse downloadFileRangeByName(String bucketName, String fileName, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		return new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName, rangeStart, rangeEnd).getResponse();
+		return configure(new B2DownloadFileByNameRequest(client, b2AuthorizeAccountResponse, bucketName, fileName, rangeStart, rangeEnd)).getResponse();
 	}
 
 	/**
@@ -933,7 +2063,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse downloadFileById(String fileId) throws B2ApiException, IOException {
-		return new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId).getResponse();
+		return downloadById(fileId);
 	}
 
 	/**
@@ -952,7 +2082,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse downloadFileRangeById(String fileId, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		return new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd).getResponse();
+		return configure(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd)).getResponse();
 	}
 
 	/**
@@ -965,7 +2095,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public void downloadFileByIdToFile(String fileId, File file) throws B2ApiException, IOException {
-		FileUtils.copyInputStreamToFile(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId).getResponse().getContent(), file);
+		toFile(downloadById(fileId), file);
 	}
 
 	/**
@@ -983,7 +2113,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public void downloadFileRangeByIdToFile(String fileId, File file, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		FileUtils.copyInputStreamToFile(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd)
+		FileUtils.copyInputStreamToFile(configure(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd))
 				.getResponse().getContent(), file);
 	}
 
@@ -1002,7 +2132,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public InputStream downloadFileByIdToStream(String fileId) throws B2ApiException, IOException {
-		return new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId).getResponse().getContent();
+		return content(downloadById(fileId));
 	}
 
 	/**
@@ -1025,7 +2155,7 @@ public class B2ApiClient {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public InputStream downloadFileRangeByIdToStream(String fileId, long rangeStart, long rangeEnd) throws B2ApiException, IOException {
-		return new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd)
+		return configure(new B2DownloadFileByIdRequest(client, b2AuthorizeAccountResponse, fileId, rangeStart, rangeEnd))
 				.getResponse().getContent();
 	}
 }
@@ -0,0 +1,539 @@
+package synapticloop.b2;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import synapticloop.b2.io.DrainPolicy;
+
+/**
+ * The configuration of the HTTP connections used by the {@link B2ApiClient}
+ * (or by the request classes, through {@link #createHttpClient()}), created 
+ * with a {@link Builder}:
+ * 
+ * <pre>
+ * B2ClientConfig config = B2ClientConfig.builder()
+ *     .uploadMaxConnectionsPerRoute(50)
+ *     .socketTimeout(5, TimeUnit.MINUTES)
+ *     .build();
+ * B2ApiClient client = new B2ApiClient(config);
+ * </pre>
+ * 
+ * The connection pool is sized separately for the API host, the download host 
+ * and each of the upload hosts (which are only known once an upload URL has 
+ * been returned, so the upload limit is the default limit for any route).  
+ * The defaults are sized for parallel transfers, unlike the defaults of the 
+ * HTTP client (2 connections per route, 20 in total, no timeouts).
+ *
+ * @author synapticloop
+ */
+public class B2ClientConfig {
+	public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+	public static final int DEFAULT_API_MAX_CONNECTIONS_PER_ROUTE = 20;
+	public static final int DEFAULT_UPLOAD_MAX_CONNECTIONS_PER_ROUTE = 20;
+	public static final int DEFAULT_DOWNLOAD_MAX_CONNECTIONS_PER_ROUTE = 50;
+	public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final long DEFAULT_SOCKET_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(120);
+	public static final long DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+	public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+	/**
+	 * The default configuration
+	 */
+	public static final B2ClientConfig DEFAULT = builder().build();
+
+	private final int maxConnectionsTotal;
+	private final int apiMaxConnectionsPerRoute;
+	private final int uploadMaxConnectionsPerRoute;
+	private final int downloadMaxConnectionsPerRoute;
+	private final int connectTimeoutMillis;
+	private final int socketTimeoutMillis;
+	private final int connectionRequestTimeoutMillis;
+	private final boolean tcpNoDelay;
+	private final int sendBufferSize;
+	private final int receiveBufferSize;
+	private final long idleConnectionTimeoutMillis;
+	private final int validateAfterInactivityMillis;
+	private final DrainPolicy drainPolicy;
+
+	private B2ClientConfig(Builder builder) {
+		this.maxConnectionsTotal = builder.maxConnectionsTotal;
+		this.apiMaxConnectionsPerRoute = builder.apiMaxConnectionsPerRoute;
+		this.uploadMaxConnectionsPerRoute = builder.uploadMaxConnectionsPerRoute;
+		this.downloadMaxConnectionsPerRoute = builder.downloadMaxConnectionsPerRoute;
+		this.connectTimeoutMillis = builder.connectTimeoutMillis;
+		this.socketTimeoutMillis = builder.socketTimeoutMillis;
+		this.connectionRequestTimeoutMillis = builder.connectionRequestTimeoutMillis;
+		this.tcpNoDelay = builder.tcpNoDelay;
+		this.sendBufferSize = builder.sendBufferSize;
+		this.receiveBufferSize = builder.receiveBufferSize;
+		this.idleConnectionTimeoutMillis = builder.idleConnectionTimeoutMillis;
+		this.validateAfterInactivityMillis = builder.validateAfterInactivityMillis;
+		this.drainPolicy = builder.drainPolicy;
+	}
+
+	/**
+	 * Return a new builder, with the default settings
+	 * 
+	 * @return the builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Create a connection pool with the pool sizes, socket options and 
+	 * validation of this configuration.  The limits for the API and download 
+	 * hosts are applied by {@link #configureRoutes(PoolingHttpClientConnectionManager, String, String)}
+	 * once they are known.
+	 * 
+	 * @return the connection pool
+	 */
+	public PoolingHttpClientConnectionManager createConnectionManager() {
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnectionsTotal);
+		connectionManager.setDefaultMaxPerRoute(uploadMaxConnectionsPerRoute);
+		connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+				.setTcpNoDelay(tcpNoDelay)
+				.setSoKeepAlive(true)
+				.setSoTimeout(socketTimeoutMillis)
+				.setSndBufSize(sendBufferSize)
+				.setRcvBufSize(receiveBufferSize)
+				.build());
+		connectionManager.setValidateAfterInactivity(validateAfterInactivityMillis);
+		return connectionManager;
+	}
+
+	/**
+	 * Create an HTTP client on the connection pool, with the timeouts and the
+	 * eviction of idle connections of this configuration.  The connection pool
+	 * is closed with the client.
+	 * 
+	 * @param connectionManager the connection pool, as returned by {@link #createConnectionManager()}
+	 * 
+	 * @return the HTTP client
+	 */
+	public CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(this.createRequestConfig())
+				.evictExpiredConnections()
+				.evictIdleConnections(idleConnectionTimeoutMillis, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * Create an HTTP client with a connection pool of its own, e.g. for using
+	 * the request classes directly.
+	 * 
+	 * @return the HTTP client
+	 */
+	public CloseableHttpClient createHttpClient() {
+		return this.createHttpClient(this.createConnectionManager());
+	}
+
+	/**
+	 * Create the request configuration with the timeouts of this configuration
+	 * 
+	 * @return the request configuration
+	 */
+	public RequestConfig createRequestConfig() {
+		return RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setSocketTimeout(socketTimeoutMillis)
+				.setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+				.build();
+	}
+
+	/**
+	 * Apply the limits for the API and the download host (as returned when the
+	 * account is authorized) to the connection pool.
+	 * 
+	 * @param connectionManager the connection pool
+	 * @param apiUrl the API URL
+	 * @param downloadUrl the download URL
+	 */
+	public void configureRoutes(PoolingHttpClientConnectionManager connectionManager, String apiUrl, String downloadUrl) {
+		final HttpRoute apiRoute = route(apiUrl);
+		final HttpRoute downloadRoute = route(downloadUrl);
+		if(null != downloadRoute) {
+			connectionManager.setMaxPerRoute(downloadRoute, downloadMaxConnectionsPerRoute);
+		}
+		if(null != apiRoute) {
+			// if the API and downloads share a host, the larger limit applies
+			connectionManager.setMaxPerRoute(apiRoute, apiRoute.equals(downloadRoute) ? 
+					Math.max(apiMaxConnectionsPerRoute, downloadMaxConnectionsPerRoute) : apiMaxConnectionsPerRoute);
+		}
+	}
+
+	/**
+	 * Return the route that the HTTP client will use for the URL, i.e. with the
+	 * default port of the scheme if the URL does not have a port
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return the route, or null if the URL is null or has no host
+	 */
+	static HttpRoute route(String url) {
+		if(null == url) {
+			return null;
+		}
+		final URI uri = URI.create(url);
+		if(null == uri.getHost()) {
+			return null;
+		}
+		final boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+		final int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+		return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+	}
+
+	/**
+	 * Get the maximum number of connections in the pool
+	 * 
+	 * @return the maximum number of connections in the pool
+	 */
+	public int getMaxConnectionsTotal() { return this.maxConnectionsTotal; }
+
+	/**
+	 * Get the maximum number of connections to the API host
+	 * 
+	 * @return the maximum number of connections to the API host
+	 */
+	public int getApiMaxConnectionsPerRoute() { return this.apiMaxConnectionsPerRoute; }
+
+	/**
+	 * Get the maximum number of connections to each upload host
+	 * 
+	 * @return the maximum number of connections to each upload host
+	 */
+	public int getUploadMaxConnectionsPerRoute() { return this.uploadMaxConnectionsPerRoute; }
+
+	/**
+	 * Get the maximum number of connections to the download host
+	 * 
+	 * @return the maximum number of connections to the download host
+	 */
+	public int getDownloadMaxConnectionsPerRoute() { return this.downloadMaxConnectionsPerRoute; }
+
+	/**
+	 * Get the timeout for establishing a connection, in milliseconds
+	 * 
+	 * @return the timeout for establishing a connection, in milliseconds
+	 */
+	public int getConnectTimeoutMillis() { return this.connectTimeoutMillis; }
+
+	/**
+	 * Get the maximum time to wait for data, in milliseconds
+	 * 
+	 * @return the maximum time to wait for data, in milliseconds
+	 */
+	public int getSocketTimeoutMillis() { return this.socketTimeoutMillis; }
+
+	/**
+	 * Get the maximum time to wait for a connection from the pool, in milliseconds
+	 * 
+	 * @return the maximum time to wait for a connection from the pool, in milliseconds
+	 */
+	public int getConnectionRequestTimeoutMillis() { return this.connectionRequestTimeoutMillis; }
+
+	/**
+	 * Get whether TCP_NODELAY is set on connections
+	 * 
+	 * @return whether TCP_NODELAY is set on connections
+	 */
+	public boolean isTcpNoDelay() { return this.tcpNoDelay; }
+
+	/**
+	 * Get the socket send buffer size, or 0 for the system default
+	 * 
+	 * @return the socket send buffer size, or 0 for the system default
+	 */
+	public int getSendBufferSize() { return this.sendBufferSize; }
+
+	/**
+	 * Get the socket receive buffer size, or 0 for the system default
+	 * 
+	 * @return the socket receive buffer size, or 0 for the system default
+	 */
+	public int getReceiveBufferSize() { return this.receiveBufferSize; }
+
+	/**
+	 * Get the time after which idle connections are closed, in milliseconds
+	 * 
+	 * @return the time after which idle connections are closed, in milliseconds
+	 */
+	public long getIdleConnectionTimeoutMillis() { return this.idleConnectionTimeoutMillis; }
+
+	/**
+	 * Get the inactivity after which a pooled connection is checked, in milliseconds
+	 * 
+	 * @return the inactivity after which a pooled connection is checked, in milliseconds
+	 */
+	public int getValidateAfterInactivityMillis() { return this.validateAfterInactivityMillis; }
+
+	/**
+	 * Get the policy for draining downloads which are closed early
+	 * 
+	 * @return the policy for draining downloads which are closed early
+	 */
+	public DrainPolicy getDrainPolicy() { return this.drainPolicy; }
+
+	/**
+	 * Builds a {@link B2ClientConfig}, starting from the default settings
+	 */
+	public static class Builder {
+		private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+		private int apiMaxConnectionsPerRoute = DEFAULT_API_MAX_CONNECTIONS_PER_ROUTE;
+		private int uploadMaxConnectionsPerRoute = DEFAULT_UPLOAD_MAX_CONNECTIONS_PER_ROUTE;
+		private int downloadMaxConnectionsPerRoute = DEFAULT_DOWNLOAD_MAX_CONNECTIONS_PER_ROUTE;
+		private int connectTimeoutMillis = (int)DEFAULT_CONNECT_TIMEOUT_MILLIS;
+		private int socketTimeoutMillis = (int)DEFAULT_SOCKET_TIMEOUT_MILLIS;
+		private int connectionRequestTimeoutMillis = (int)DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS;
+		private boolean tcpNoDelay = true;
+		private int sendBufferSize = 0;
+		private int receiveBufferSize = 0;
+		private long idleConnectionTimeoutMillis = DEFAULT_IDLE_CONNECTION_TIMEOUT_MILLIS;
+		private int validateAfterInactivityMillis = (int)DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS;
+		private DrainPolicy drainPolicy = DrainPolicy.DEFAULT;
+
+		private Builder() {}
+
+		/**
+		 * Set the maximum number of connections in the pool, across all hosts
+		 * 
+		 * @param maxConnectionsTotal the maximum number of connections
+		 * 
+		 * @return this builder
+		 */
+		public Builder maxConnectionsTotal(int maxConnectionsTotal) {
+			this.maxConnectionsTotal = positive("maxConnectionsTotal", maxConnectionsTotal);
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of connections to the API host
+		 * 
+		 * @param apiMaxConnectionsPerRoute the maximum number of connections
+		 * 
+		 * @return this builder
+		 */
+		public Builder apiMaxConnectionsPerRoute(int apiMaxConnectionsPerRoute) {
+			this.apiMaxConnectionsPerRoute = positive("apiMaxConnectionsPerRoute", apiMaxConnectionsPerRoute);
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of connections to each upload host (and to any
+		 * other host that is not the API or the download host)
+		 * 
+		 * @param uploadMaxConnectionsPerRoute the maximum number of connections
+		 * 
+		 * @return this builder
+		 */
+		public Builder uploadMaxConnectionsPerRoute(int uploadMaxConnectionsPerRoute) {
+			this.uploadMaxConnectionsPerRoute = positive("uploadMaxConnectionsPerRoute", uploadMaxConnectionsPerRoute);
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of connections to the download host
+		 * 
+		 * @param downloadMaxConnectionsPerRoute the maximum number of connections
+		 * 
+		 * @return this builder
+		 */
+		public Builder downloadMaxConnectionsPerRoute(int downloadMaxConnectionsPerRoute) {
+			this.downloadMaxConnectionsPerRoute = positive("downloadMaxConnectionsPerRoute", downloadMaxConnectionsPerRoute);
+			return this;
+		}
+
+		/**
+		 * Set the timeout for establishing a connection
+		 * 
+		 * @param timeout the timeout, or 0 for none
+		 * @param unit the unit of the timeout
+		 * 
+		 * @return this builder
+		 */
+		public Builder connectTimeout(long timeout, TimeUnit unit) {
+			this.connectTimeoutMillis = millis("connectTimeout", timeout, unit);
+			return this;
+		}
+
+		/**
+		 * Set the maximum time to wait for data on a connection
+		 * 
+		 * @param timeout the timeout, or 0 for none
+		 * @param unit the unit of the timeout
+		 * 
+		 * @return this builder
+		 */
+		public Builder socketTimeout(long timeout, TimeUnit unit) {
+			this.socketTimeoutMillis = millis("socketTimeout", timeout, unit);
+			return this;
+		}
+
+		/**
+		 * Set the maximum time to wait for a connection from the pool
+		 * 
+		 * @param timeout the timeout, or 0 for none
+		 * @param unit the unit of the timeout
+		 * 
+		 * @return this builder
+		 */
+		public Builder connectionRequestTimeout(long timeout, TimeUnit unit) {
+			this.connectionRequestTimeoutMillis = millis("connectionRequestTimeout", timeout, unit);
+			return this;
+		}
+
+		/**
+		 * Set whether Nagle's algorithm is disabled (TCP_NODELAY) on connections
+		 * 
+		 * @param tcpNoDelay true to send small packets without delay
+		 * 
+		 * @return this builder
+		 */
+		public Builder tcpNoDelay(boolean tcpNoDelay) {
+			this.tcpNoDelay = tcpNoDelay;
+			return this;
+		}
+
+		/**
+		 * Set the socket send buffer size (SO_SNDBUF)
+		 * 
+		 * @param sendBufferSize the size in bytes, or 0 for the system default
+		 * 
+		 * @return this builder
+		 */
+		public Builder sendBufferSize(int sendBufferSize) {
+			this.sendBufferSize = notNegative("sendBufferSize", sendBufferSize);
+			return this;
+		}
+
+		/**
+		 * Set the socket receive buffer size (SO_RCVBUF)
+		 * 
+		 * @param receiveBufferSize the size in bytes, or 0 for the system default
+		 * 
+		 * @return this builder
+		 */
+		public Builder receiveBufferSize(int receiveBufferSize) {
+			this.receiveBufferSize = notNegative("receiveBufferSize", receiveBufferSize);
+			return this;
+		}
+
+		/**
+		 * Set the time after which idle connections are closed by a background 
+		 * thread (expired connections are always closed)
+		 * 
+		 * @param timeout the idle time
+		 * @param unit the unit of the time
+		 * 
+		 * @return this builder
+		 */
+		public Builder idleConnectionTimeout(long timeout, TimeUnit unit) {
+			this.idleConnectionTimeoutMillis = positive("idleConnectionTimeout", unit.toMillis(timeout));
+			return this;
+		}
+
+		/**
+		 * Set the time after which a connection from the pool is checked before
+		 * it is reused
+		 * 
+		 * @param inactivity the inactivity time, or 0 to never check
+		 * @param unit the unit of the time
+		 * 
+		 * @return this builder
+		 */
+		public Builder validateAfterInactivity(long inactivity, TimeUnit unit) {
+			this.validateAfterInactivityMillis = millis("validateAfterInactivity", inactivity, unit);
+			return this;
+		}
+
+		/**
+		 * Set the policy which decides whether the rest of a download is read 
+		 * (so that the connection is reused) or the connection is aborted, when
+		 * the content stream is closed before it has been fully read
+		 * 
+		 * @param drainPolicy the drain policy, e.g. {@link DrainPolicy#ABORT}
+		 * 
+		 * @return this builder
+		 */
+		public Builder drainPolicy(DrainPolicy drainPolicy) {
+			if(null == drainPolicy) {
+				throw new IllegalArgumentException("drainPolicy may not be null");
+			}
+			this.drainPolicy = drainPolicy;
+			return this;
+		}
+
+		/**
+		 * Build the configuration
+		 * 
+		 * @return the configuration
+		 * 
+		 * @throws IllegalArgumentException if a per route limit is larger than 
+		 *     the total limit
+		 */
+		public B2ClientConfig build() {
+			if(Math.max(apiMaxConnectionsPerRoute, Math.max(uploadMaxConnectionsPerRoute, downloadMaxConnectionsPerRoute)) > maxConnectionsTotal) {
+				throw new IllegalArgumentException("The connections per route may not be more than the total of " + maxConnectionsTotal);
+			}
+			return new B2ClientConfig(this);
+		}
+
+		private static int positive(String name, int value) {
+			if(value < 1) {
+				throw new IllegalArgumentException(name + " must be positive, was " + value);
+			}
+			return value;
+		}
+
+		private static long positive(String name, long value) {
+			if(value < 1L) {
+				throw new IllegalArgumentException(name + " must be positive, was " + value);
+			}
+			return value;
+		}
+
+		private static int notNegative(String name, int value) {
+			if(value < 0) {
+				throw new IllegalArgumentException(name + " may not be negative, was " + value);
+			}
+			return value;
+		}
+
+		private static int millis(String name, long value, TimeUnit unit) {
+			final long millis = unit.toMillis(value);
+			if(millis < 0L || millis > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(name + " must be between 0 and " + Integer.MAX_VALUE + "ms, was " + millis + "ms");
+			}
+			return (int)millis;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package synapticloop.b2;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens (DNS, TCP and TLS) a number of connections to each of a set of routes 
+ * in parallel, and leaves them in the connection pool to be kept alive for 
+ * the next requests.
+ *
+ * @author synapticloop
+ */
+class ConnectionWarmer {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+	private static final int MAX_THREADS = 16;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final B2ClientConfig config;
+	private final Map<HttpRoute, Integer> routes = new LinkedHashMap<HttpRoute, Integer>();
+
+	/**
+	 * Create a connection warmer
+	 * 
+	 * @param connectionManager the connection pool to open the connections in
+	 * @param config the configuration for the timeouts and the keep alive time
+	 */
+	ConnectionWarmer(PoolingHttpClientConnectionManager connectionManager, B2ClientConfig config) {
+		this.connectionManager = connectionManager;
+		this.config = config;
+	}
+
+	/**
+	 * Open at least a number of connections to the host of the URL
+	 * 
+	 * @param url the URL
+	 * @param connections the number of connections
+	 */
+	void atLeast(String url, int connections) {
+		final HttpRoute route = B2ClientConfig.route(url);
+		if(null != route) {
+			final Integer current = routes.get(route);
+			routes.put(route, null == current ? connections : Math.max(current, connections));
+		}
+	}
+
+	/**
+	 * Open another connection to the host of the URL
+	 * 
+	 * @param url the URL
+	 */
+	void another(String url) {
+		final HttpRoute route = B2ClientConfig.route(url);
+		if(null != route) {
+			final Integer current = routes.get(route);
+			routes.put(route, null == current ? 1 : current + 1);
+		}
+	}
+
+	/**
+	 * Lease the connections from the pool (so that each one is distinct), 
+	 * connect the ones that are not already open in parallel, and release 
+	 * them back to the pool.  Connections that can not be leased or opened 
+	 * are logged and ignored, and the ones that were leased are still opened.
+	 * 
+	 * @return the number of open connections in the pool that were leased
+	 * 
+	 * @throws IOException if the thread was interrupted
+	 */
+	int warm() throws IOException {
+		final List<HttpClientConnection> leased = new ArrayList<HttpClientConnection>();
+		final List<HttpRoute> leasedRoutes = new ArrayList<HttpRoute>();
+		int open = 0;
+		try {
+			int total = 0;
+			for (Map.Entry<HttpRoute, Integer> entry : routes.entrySet()) {
+				final HttpRoute route = entry.getKey();
+				final int connections = Math.min(entry.getValue(), connectionManager.getMaxPerRoute(route));
+				for (int i = 0; i < connections && total < connectionManager.getMaxTotal(); i++, total++) {
+					final HttpClientConnection connection = this.lease(route);
+					if(null == connection) {
+						// the pool has no more connections for this route to give
+						break;
+					}
+					leased.add(connection);
+					leasedRoutes.add(route);
+				}
+			}
+			open = this.connect(leased, leasedRoutes);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while warming up connections", ex);
+		} finally {
+			for (HttpClientConnection connection : leased) {
+				connectionManager.releaseConnection(connection, null, config.getIdleConnectionTimeoutMillis(), TimeUnit.MILLISECONDS);
+			}
+		}
+		LOGGER.debug("Warmed up {} connections to {}", open, routes.keySet());
+		return open;
+	}
+
+	private HttpClientConnection lease(HttpRoute route) throws InterruptedException {
+		final ConnectionRequest request = connectionManager.requestConnection(route, null);
+		try {
+			return request.get(config.getConnectionRequestTimeoutMillis(), TimeUnit.MILLISECONDS);
+		} catch (ConnectionPoolTimeoutException ex) {
+			LOGGER.warn("Timed out leasing a connection to '{}' to warm up", route.getTargetHost());
+		} catch (ExecutionException ex) {
+			LOGGER.warn("Could not lease a connection to '{}' to warm up", route.getTargetHost(), ex.getCause());
+		}
+		request.cancel();
+		return null;
+	}
+
+	private int connect(List<HttpClientConnection> leased, final List<HttpRoute> leasedRoutes) throws InterruptedException {
+		if(leased.isEmpty()) {
+			return 0;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_THREADS, leased.size()));
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < leased.size(); i++) {
+				final HttpClientConnection connection = leased.get(i);
+				final HttpRoute route = leasedRoutes.get(i);
+				futures.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						if(!connection.isOpen()) {
+							final HttpClientContext context = HttpClientContext.create();
+							connectionManager.connect(connection, route, config.getConnectTimeoutMillis(), context);
+							connectionManager.routeComplete(connection, route, context);
+						}
+						return connection.isOpen();
+					}
+				}));
+			}
+			int open = 0;
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					if(futures.get(i).get()) {
+						open++;
+					}
+				} catch (ExecutionException ex) {
+					LOGGER.warn("Could not open a connection to '{}'", leasedRoutes.get(i).getTargetHost(), ex.getCause());
+				}
+			}
+			return open;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
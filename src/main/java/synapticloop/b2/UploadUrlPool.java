@@ -0,0 +1,108 @@
+package synapticloop.b2;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import synapticloop.b2.response.B2GetUploadUrlResponse;
+
+/**
+ * Upload URLs which are not in use, per bucket.  An upload URL is valid for 
+ * 24 hours or until the endpoint rejects an upload, so a URL is only returned
+ * to the pool after a successful upload, and is dropped once it is older than
+ * 23 hours.  Each URL is only used by one upload at a time.
+ *
+ * @author synapticloop
+ */
+class UploadUrlPool {
+	private static final long MAX_AGE_NANOS = TimeUnit.HOURS.toNanos(23);
+
+	private final ConcurrentMap<String, Queue<Lease>> pool = new ConcurrentHashMap<String, Queue<Lease>>();
+
+	/**
+	 * Take an upload URL for the bucket from the pool
+	 * 
+	 * @param bucketId the id of the bucket
+	 * 
+	 * @return the upload URL, or null if there is none in the pool
+	 */
+	Lease poll(String bucketId) {
+		final Queue<Lease> queue = pool.get(bucketId);
+		if(null == queue) {
+			return null;
+		}
+		Lease lease;
+		while(null != (lease = queue.poll())) {
+			if(System.nanoTime() - lease.created < MAX_AGE_NANOS) {
+				return lease;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return an upload URL, which has just been fetched or used successfully,
+	 * to the pool
+	 * 
+	 * @param lease the upload URL
+	 */
+	void offer(Lease lease) {
+		final String bucketId = lease.uploadUrl.getBucketId();
+		Queue<Lease> queue = pool.get(bucketId);
+		if(null == queue) {
+			final Queue<Lease> empty = new ConcurrentLinkedQueue<Lease>();
+			queue = pool.putIfAbsent(bucketId, empty);
+			if(null == queue) {
+				queue = empty;
+			}
+		}
+		queue.offer(lease);
+	}
+
+	/**
+	 * Return the number of upload URLs in the pool for the bucket
+	 * 
+	 * @param bucketId the id of the bucket
+	 * 
+	 * @return the number of upload URLs
+	 */
+	int size(String bucketId) {
+		final Queue<Lease> queue = pool.get(bucketId);
+		return null == queue ? 0 : queue.size();
+	}
+
+	/**
+	 * An upload URL, with the time at which it was fetched
+	 */
+	static class Lease {
+		private final B2GetUploadUrlResponse uploadUrl;
+		private final long created = System.nanoTime();
+
+		Lease(B2GetUploadUrlResponse uploadUrl) {
+			this.uploadUrl = uploadUrl;
+		}
+
+		B2GetUploadUrlResponse getUploadUrl() {
+			return uploadUrl;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * Called by a request when the API rejects its authorization token as 
+ * expired, to get a new one.
+ *
+ * @author synapticloop
+ */
+public interface B2Reauthorizer {
+	/**
+	 * Get a new authorization token to replace the expired one.  If another 
+	 * request has already replaced the token, the replacement is returned 
+	 * without authorizing again.
+	 * 
+	 * @param operation the name of the operation that was rejected, e.g. 'b2_list_buckets'
+	 * @param expiredToken the authorization token that was rejected
+	 * 
+	 * @return the new authorization token, or null if the expired token was 
+	 *     not issued by this reauthorizer (e.g. the token of an upload URL)
+	 * 
+	 * @throws B2ApiException if the account could not be authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	String reauthorize(String operation, String expiredToken) throws B2ApiException, IOException;
+}
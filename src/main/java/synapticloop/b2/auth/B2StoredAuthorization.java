@@ -0,0 +1,141 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2AuthorizeAccountResponse;
+import synapticloop.b2.response.B2ResponseProperties;
+import synapticloop.b2.util.ChecksumHelper;
+
+/**
+ * An authorize account response, with the time that it was issued.
+ * Authorization tokens are valid for at most 24 hours.
+ *
+ * @author synapticloop
+ */
+public class B2StoredAuthorization {
+	/**
+	 * The default age after which a stored authorization is no longer used, 
+	 * an hour before the authorization token expires
+	 */
+	public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(23);
+
+	private static final String KEY_ISSUED = "issued";
+	private static final String KEY_AUTHORIZATION = "authorization";
+
+	private final B2AuthorizeAccountResponse response;
+	private final long issued;
+
+	/**
+	 * Create a stored authorization
+	 * 
+	 * @param response the authorize account response
+	 * @param issued the time that the authorization was issued, in 
+	 *     milliseconds since the epoch
+	 */
+	public B2StoredAuthorization(B2AuthorizeAccountResponse response, long issued) {
+		this.response = response;
+		this.issued = issued;
+	}
+
+	/**
+	 * Return the authorize account response
+	 * 
+	 * @return the authorize account response
+	 */
+	public B2AuthorizeAccountResponse getResponse() { return this.response; }
+
+	/**
+	 * Return the time that the authorization was issued
+	 * 
+	 * @return the time that the authorization was issued, in milliseconds 
+	 *     since the epoch
+	 */
+	public long getIssued() { return this.issued; }
+
+	/**
+	 * Whether the authorization may still be used
+	 * 
+	 * @param maxAgeMillis the age after which the authorization is no longer 
+	 *     used
+	 * 
+	 * @return whether the authorization was issued less than the maximum age ago
+	 */
+	public boolean isValid(long maxAgeMillis) {
+		final long age = System.currentTimeMillis() - issued;
+		return age >= 0 && age < maxAgeMillis;
+	}
+
+	/**
+	 * Convert the authorization to JSON, for storage
+	 * 
+	 * @return the authorization in JSON format
+	 */
+	public String toJson() {
+		final JSONObject authorization = new JSONObject();
+		authorization.put(B2ResponseProperties.KEY_ACCOUNT_ID, response.getAccountId());
+		authorization.put(B2ResponseProperties.KEY_API_URL, response.getApiUrl());
+		authorization.put(B2ResponseProperties.KEY_AUTHORIZATION_TOKEN, response.getAuthorizationToken());
+		authorization.put(B2ResponseProperties.KEY_DOWNLOAD_URL, response.getDownloadUrl());
+		authorization.put(B2ResponseProperties.KEY_MINIMUM_PART_SIZE, response.getMinimumPartSize());
+		authorization.put(B2ResponseProperties.KEY_RECOMMENDED_PART_SIZE, response.getRecommendedPartSize());
+		authorization.put(B2ResponseProperties.KEY_ABSOLUTE_MINIMUM_PART_SIZE, response.getAbsoluteMinimumPartSize());
+		return new JSONObject()
+				.put(KEY_ISSUED, issued)
+				.put(KEY_AUTHORIZATION, authorization)
+				.toString();
+	}
+
+	/**
+	 * Read an authorization that was stored in JSON format
+	 * 
+	 * @param json the stored authorization
+	 * 
+	 * @return the authorization
+	 * 
+	 * @throws B2ApiException if the JSON could not be parsed
+	 */
+	public static B2StoredAuthorization fromJson(String json) throws B2ApiException {
+		try {
+			final JSONObject stored = new JSONObject(json);
+			return new B2StoredAuthorization(new B2AuthorizeAccountResponse(stored.getJSONObject(KEY_AUTHORIZATION).toString()), stored.getLong(KEY_ISSUED));
+		} catch (JSONException ex) {
+			throw new B2ApiException(json, ex);
+		}
+	}
+
+	/**
+	 * Create the key to store the authorization of an account with, which is 
+	 * the SHA-1 digest of the API host, account id and application key (so 
+	 * that the application key is not stored).
+	 * 
+	 * @param apiHost the scheme, host and port of the API
+	 * @param accountId the account id
+	 * @param applicationKey the application key
+	 * 
+	 * @return the key, as 40 hexadecimal characters
+	 */
+	public static String key(String apiHost, String accountId, String applicationKey) {
+		return ChecksumHelper.sha1Hex(apiHost + "\n" + accountId + "\n" + applicationKey);
+	}
+}
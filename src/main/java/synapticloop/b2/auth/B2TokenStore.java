@@ -0,0 +1,65 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+/**
+ * Storage for authorizations between runs of a process, so that short lived 
+ * processes do not need to call <code>b2_authorize_account</code> each time 
+ * that they start.  The stored authorizations contain the authorization 
+ * token, which gives access to the account, and should be stored as securely
+ * as the application key.
+ * 
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @author synapticloop
+ */
+public interface B2TokenStore {
+	/**
+	 * Load a stored authorization
+	 * 
+	 * @param key the key of the authorization, which identifies the API host, 
+	 *     account and application key
+	 * 
+	 * @return the stored authorization, or null if there is none
+	 * 
+	 * @throws IOException if the authorization could not be loaded
+	 */
+	B2StoredAuthorization load(String key) throws IOException;
+
+	/**
+	 * Store an authorization, replacing any previous one with the same key
+	 * 
+	 * @param key the key of the authorization, which identifies the API host, 
+	 *     account and application key
+	 * @param authorization the authorization to store
+	 * 
+	 * @throws IOException if the authorization could not be stored
+	 */
+	void save(String key, B2StoredAuthorization authorization) throws IOException;
+
+	/**
+	 * Remove a stored authorization
+	 * 
+	 * @param key the key of the authorization
+	 * 
+	 * @throws IOException if the authorization could not be removed
+	 */
+	void remove(String key) throws IOException;
+}
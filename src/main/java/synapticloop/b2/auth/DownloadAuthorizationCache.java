@@ -0,0 +1,373 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * Caches the download authorization tokens of a client for each bucket and 
+ * file name prefix, so that a token is only requested from the API once for 
+ * each period of its validity.
+ * 
+ * A token is used until the safety margin before it expires (so that a link 
+ * which is created with it is valid for at least the safety margin), and is 
+ * refreshed in the background from the refresh period before that.  Callers 
+ * which need a token for the same bucket and prefix at the same time share
+ * a single request to the API.
+ *
+ * @author synapticloop
+ */
+public class DownloadAuthorizationCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DownloadAuthorizationCache.class);
+
+	/**
+	 * The default number of cached prefixes, see {@link #setMaxEntries(int)}
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private static final long DEFAULT_SAFETY_MARGIN_SECONDS = TimeUnit.MINUTES.toSeconds(5);
+
+	private static final Executor REFRESH_EXECUTOR = refreshExecutor();
+
+	private final B2ApiClient client;
+	private final int validDurationInSeconds;
+	private final long safetyMarginNanos;
+	private final long refreshNanos;
+	private final Executor executor;
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+	private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	/**
+	 * Create a cache of download authorization tokens, with a safety margin 
+	 * and a refresh period of a quarter of the validity of the tokens (at most 
+	 * five minutes each).
+	 * 
+	 * @param client the client to request the download authorizations with
+	 * @param validDurationInSeconds the number of seconds that each token is 
+	 *     valid for, at most 604800 (one week)
+	 */
+	public DownloadAuthorizationCache(B2ApiClient client, int validDurationInSeconds) {
+		this(client, validDurationInSeconds, Math.min(DEFAULT_SAFETY_MARGIN_SECONDS, validDurationInSeconds / 4), 
+				Math.min(DEFAULT_SAFETY_MARGIN_SECONDS, validDurationInSeconds / 4), TimeUnit.SECONDS, REFRESH_EXECUTOR);
+	}
+
+	/**
+	 * Create a cache of download authorization tokens
+	 * 
+	 * @param client the client to request the download authorizations with
+	 * @param validDurationInSeconds the number of seconds that each token is 
+	 *     valid for, at most 604800 (one week)
+	 * @param safetyMargin the time before a token expires after which it is 
+	 *     no longer used
+	 * @param refresh the time before the safety margin after which a token 
+	 *     is refreshed in the background
+	 * @param unit the unit of the safety margin and the refresh period
+	 * @param executor the executor to refresh the tokens in the background with
+	 */
+	public DownloadAuthorizationCache(B2ApiClient client, int validDurationInSeconds, long safetyMargin, long refresh, TimeUnit unit, Executor executor) {
+		if(unit.toSeconds(safetyMargin + refresh) >= validDurationInSeconds) {
+			throw new IllegalArgumentException("The safety margin and the refresh period must be less than the valid duration");
+		}
+		this.client = client;
+		this.validDurationInSeconds = validDurationInSeconds;
+		this.safetyMarginNanos = unit.toNanos(safetyMargin);
+		this.refreshNanos = unit.toNanos(refresh);
+		this.executor = executor;
+	}
+
+	/**
+	 * Set the number of cached prefixes at which the tokens that may no longer
+	 * be used are removed, and then (if there are still too many) the tokens
+	 * that expire first, the default is {@link #DEFAULT_MAX_ENTRIES}
+	 * 
+	 * @param maxEntries the maximum number of cached prefixes
+	 * 
+	 * @return this cache
+	 */
+	public DownloadAuthorizationCache setMaxEntries(int maxEntries) {
+		if(maxEntries < 1) {
+			throw new IllegalArgumentException("The maximum number of entries must be at least 1");
+		}
+		this.maxEntries = maxEntries;
+		return this;
+	}
+
+	/**
+	 * Return the number of cached prefixes at which tokens are removed
+	 * 
+	 * @return the maximum number of cached prefixes
+	 */
+	public int getMaxEntries() {
+		return this.maxEntries;
+	}
+
+	/**
+	 * Return a download authorization token for the files in a bucket whose 
+	 * names start with the prefix, which is valid for at least the safety
+	 * margin.
+	 * 
+	 * @param bucketId the id of the bucket
+	 * @param fileNamePrefix the prefix of the names of the files
+	 * 
+	 * @return the download authorization token
+	 * 
+	 * @throws B2ApiException if there was an error with the request
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public String getDownloadAuthorization(String bucketId, String fileNamePrefix) throws B2ApiException, IOException {
+		final Key key = new Key(bucketId, fileNamePrefix);
+		Entry entry = entries.get(key);
+		if(null == entry) {
+			final int max = this.maxEntries;
+			if(entries.size() >= max) {
+				this.purge(max);
+			}
+			final Entry created = new Entry(key);
+			entry = entries.putIfAbsent(key, created);
+			if(null == entry) {
+				entry = created;
+			}
+		}
+		final long now = this.nanoTime();
+		final Token token = entry.token;
+		if(null != token && now - token.usableUntil < 0) {
+			if(now - token.refreshAt >= 0) {
+				entry.refresh(executor);
+			}
+			return token.value;
+		}
+		try {
+			return entry.refresh(null).get().value;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a download authorization", ex);
+		} catch (ExecutionException ex) {
+			if(ex.getCause() instanceof B2ApiException) {
+				throw (B2ApiException)ex.getCause();
+			}
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Remove all of the cached tokens
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Return the number of bucket and prefix combinations that are cached
+	 * 
+	 * @return the number of cached entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Remove the entries whose tokens may no longer be used, or which have no
+	 * token as the first request for one failed.  If that is not enough, the 
+	 * entries whose tokens expire first are removed as well, down to nine 
+	 * tenths of the maximum so that the next new prefixes do not each have to 
+	 * purge again.  Entries with a request in flight are never removed.
+	 * 
+	 * @param max the maximum number of entries
+	 */
+	private void purge(int max) {
+		final long now = this.nanoTime();
+		final List<Long> remaining = new ArrayList<Long>();
+		for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+			final Entry entry = iterator.next();
+			final Token token = entry.token;
+			if(null != entry.pending.get()) {
+				continue;
+			}
+			if(null == token || now - token.usableUntil >= 0) {
+				iterator.remove();
+			} else {
+				remaining.add(token.usableUntil - now);
+			}
+		}
+
+		final int excess = entries.size() - (max - Math.max(1, max / 10));
+		if(excess <= 0 || remaining.isEmpty()) {
+			return;
+		}
+		// the time left of the last of the tokens to remove, ties may remove a few more
+		Collections.sort(remaining);
+		final long cutoff = remaining.get(Math.min(excess, remaining.size()) - 1);
+		int evicted = 0;
+		for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+			final Entry entry = iterator.next();
+			final Token token = entry.token;
+			if(null != token && null == entry.pending.get() && token.usableUntil - now <= cutoff) {
+				iterator.remove();
+				evicted++;
+			}
+		}
+		LOGGER.debug("Evicted {} download authorizations that expire first", evicted);
+	}
+
+	/**
+	 * Return the current value of the time source, in nanoseconds
+	 * 
+	 * @return the current time
+	 */
+	long nanoTime() {
+		return System.nanoTime();
+	}
+
+	private static Executor refreshExecutor() {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "b2-download-authorization-refresh");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static class Key {
+		private final String bucketId;
+		private final String fileNamePrefix;
+
+		Key(String bucketId, String fileNamePrefix) {
+			this.bucketId = bucketId;
+			this.fileNamePrefix = fileNamePrefix;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key)object;
+			return bucketId.equals(other.bucketId) && fileNamePrefix.equals(other.fileNamePrefix);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * bucketId.hashCode() + fileNamePrefix.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return bucketId + "/" + fileNamePrefix;
+		}
+	}
+
+	private static class Token {
+		private final String value;
+		private final long usableUntil;
+		private final long refreshAt;
+
+		Token(String value, long usableUntil, long refreshAt) {
+			this.value = value;
+			this.usableUntil = usableUntil;
+			this.refreshAt = refreshAt;
+		}
+	}
+
+	private class Entry {
+		private final Key key;
+		private final AtomicReference<FutureTask<Token>> pending = new AtomicReference<FutureTask<Token>>();
+		private volatile Token token;
+
+		Entry(Key key) {
+			this.key = key;
+		}
+
+		/**
+		 * Start a request for a new token, unless one is already in flight
+		 * 
+		 * @param executor the executor to run the request with, or null to run 
+		 *     it in the calling thread
+		 * 
+		 * @return the request for the new token
+		 */
+		FutureTask<Token> refresh(final Executor executor) {
+			FutureTask<Token> task = pending.get();
+			if(null != task) {
+				return task;
+			}
+			final FutureTask<Token> created = new FutureTask<Token>(new Callable<Token>() {
+				@Override
+				public Token call() throws B2ApiException, IOException {
+					final long requested = nanoTime();
+					final String value = client.getDownloadAuthorization(key.bucketId, key.fileNamePrefix, validDurationInSeconds);
+					final long usableUntil = requested + TimeUnit.SECONDS.toNanos(validDurationInSeconds) - safetyMarginNanos;
+					token = new Token(value, usableUntil, usableUntil - refreshNanos);
+					return token;
+				}
+			}) {
+				@Override
+				protected void done() {
+					pending.compareAndSet(this, null);
+					if(null == executor) {
+						// the failure of a request in the calling thread is thrown to the caller
+						return;
+					}
+					try {
+						get();
+					} catch (InterruptedException | ExecutionException ex) {
+						LOGGER.warn("Could not refresh the download authorization for '{}'", key, ex.getCause());
+					}
+				}
+			};
+			if(!pending.compareAndSet(null, created)) {
+				task = pending.get();
+				return null == task ? refresh(executor) : task;
+			}
+			if(null == executor) {
+				created.run();
+			} else {
+				LOGGER.debug("Refreshing the download authorization for '{}'", key);
+				executor.execute(created);
+			}
+			return created;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * Stores each authorization in a file in a directory, which is only readable 
+ * by its owner.  Files are replaced atomically, so that processes which start
+ * at the same time read either the previous or the new authorization.
+ *
+ * @author synapticloop
+ */
+public class FileTokenStore implements B2TokenStore {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileTokenStore.class);
+
+	private static final String SUFFIX = ".json";
+
+	private final File directory;
+
+	/**
+	 * Create a store of authorizations in a directory, which is created if it 
+	 * does not exist
+	 * 
+	 * @param directory the directory to store the authorizations in
+	 */
+	public FileTokenStore(File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public B2StoredAuthorization load(String key) throws IOException {
+		final File file = new File(directory, key + SUFFIX);
+		final String json;
+		try {
+			json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+		try {
+			return B2StoredAuthorization.fromJson(json);
+		} catch (B2ApiException ex) {
+			LOGGER.warn("Ignoring the unreadable stored authorization '{}'", file);
+			return null;
+		}
+	}
+
+	@Override
+	public void save(String key, B2StoredAuthorization authorization) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create the directory '" + directory + "'");
+		}
+		final File temporary = File.createTempFile(key, ".tmp", directory);
+		try {
+			ownerOnly(temporary);
+			Files.write(temporary.toPath(), authorization.toJson().getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(temporary.toPath(), new File(directory, key + SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temporary.toPath(), new File(directory, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	@Override
+	public void remove(String key) throws IOException {
+		Files.deleteIfExists(new File(directory, key + SUFFIX).toPath());
+	}
+
+	private static void ownerOnly(File file) {
+		if(!(file.setReadable(false, false) && file.setReadable(true, true) && 
+				file.setWritable(false, false) && file.setWritable(true, true))) {
+			LOGGER.warn("Could not restrict the permissions of '{}' to its owner", file);
+		}
+	}
+}
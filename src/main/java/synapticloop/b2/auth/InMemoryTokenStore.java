@@ -0,0 +1,46 @@
+package synapticloop.b2.auth;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the authorizations in memory, so that clients in the same process 
+ * may share them.
+ *
+ * @author synapticloop
+ */
+public class InMemoryTokenStore implements B2TokenStore {
+	private final ConcurrentMap<String, B2StoredAuthorization> authorizations = new ConcurrentHashMap<String, B2StoredAuthorization>();
+
+	@Override
+	public B2StoredAuthorization load(String key) {
+		return authorizations.get(key);
+	}
+
+	@Override
+	public void save(String key, B2StoredAuthorization authorization) {
+		authorizations.put(key, authorization);
+	}
+
+	@Override
+	public void remove(String key) {
+		authorizations.remove(key);
+	}
+}
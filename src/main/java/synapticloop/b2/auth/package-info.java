@@ -0,0 +1,8 @@
+/**
+ * This package contains the storage of authorization tokens between runs, 
+ * and the re-authorization of expired tokens
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.auth;
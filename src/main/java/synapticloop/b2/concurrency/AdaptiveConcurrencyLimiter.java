@@ -0,0 +1,252 @@
+package synapticloop.b2.concurrency;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of operations which are in flight at the same time, and 
+ * adapts the limit to the capacity of the service (additive increase, 
+ * multiplicative decrease):
+ * 
+ * <ul>
+ *   <li>While the latency stays close to the lowest latency seen, the limit 
+ *     grows by one for each successful operation (up to the first back off), 
+ *     and by one for each limit's worth of successful operations after that.</li>
+ *   <li>When the service throttles an operation (e.g. a 503 or a 429 status)
+ *     the limit is halved.</li>
+ *   <li>When the smoothed latency rises above twice the lowest latency seen, 
+ *     the limit is reduced by a tenth, unless the limiter was created without 
+ *     latency back off.</li>
+ * </ul>
+ * 
+ * The latency of an operation is only a sign of load when the operations are
+ * of a similar size.  Transfers (uploads and downloads) take as long as their
+ * content takes to send, so a limiter for transfers should be created without
+ * latency back off, leaving throttling as the only reason to reduce the limit.
+ * 
+ * The limit is reduced at most once per smoothed latency, so that a burst of 
+ * failures from the same overload only counts once.  The limit only grows 
+ * while at least half of it is in use.
+ * 
+ * Each operation acquires a {@link Permit}, and must release it exactly once
+ * through one of {@link Permit#success()}, {@link Permit#throttled()} or 
+ * {@link Permit#ignore()}.
+ *
+ * @author synapticloop
+ */
+public class AdaptiveConcurrencyLimiter {
+	private static final double LATENCY_TOLERANCE = 2.0d;
+	private static final double LATENCY_SMOOTHING = 0.1d;
+	private static final double THROTTLED_DECREASE = 0.5d;
+	private static final double LATENCY_DECREASE = 0.9d;
+
+	// differences in latency below a millisecond are noise rather than load
+	private static final long LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	// the lowest latency is re-measured periodically, as the service (and the route to it) changes
+	private static final long MIN_LATENCY_RESET_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final boolean latencyBackOff;
+
+	private double limit;
+	private double slowStartThreshold;
+	private int inFlight = 0;
+
+	private long minLatencyNanos = Long.MAX_VALUE;
+	private long minLatencyMeasuredAt = System.nanoTime();
+	private double smoothedLatencyNanos = 0d;
+	private long lastDecreaseAt = System.nanoTime() - MIN_LATENCY_RESET_NANOS;
+
+	/**
+	 * Create an adaptive limiter
+	 * 
+	 * @param initialLimit the number of operations allowed in flight to start with
+	 * @param minLimit the lowest the limit will go
+	 * @param maxLimit the highest the limit will go
+	 * 
+	 * @throws IllegalArgumentException if the limits are not ordered, or the 
+	 *     minimum is less than one
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this(initialLimit, minLimit, maxLimit, true);
+	}
+
+	/**
+	 * Create an adaptive limiter
+	 * 
+	 * @param initialLimit the number of operations allowed in flight to start with
+	 * @param minLimit the lowest the limit will go
+	 * @param maxLimit the highest the limit will go
+	 * @param latencyBackOff whether the limit is reduced when the latency 
+	 *     rises, which should be false when the latency depends on the size of 
+	 *     the operation
+	 * 
+	 * @throws IllegalArgumentException if the limits are not ordered, or the 
+	 *     minimum is less than one
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, boolean latencyBackOff) {
+		if(minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+			throw new IllegalArgumentException("Limits must be 1 <= minimum (" + minLimit + ") <= initial (" + 
+					initialLimit + ") <= maximum (" + maxLimit + ")");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.latencyBackOff = latencyBackOff;
+		this.limit = initialLimit;
+		this.slowStartThreshold = maxLimit;
+	}
+
+	/**
+	 * Acquire a permit for an operation, waiting until the number of 
+	 * operations in flight is below the limit.
+	 * 
+	 * @return the permit, which must be released
+	 * 
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public synchronized Permit acquire() throws InterruptedException {
+		while(inFlight >= (int)limit) {
+			this.wait();
+		}
+		inFlight++;
+		return new Permit();
+	}
+
+	/**
+	 * Acquire a permit for an operation if the number of operations in flight
+	 * is below the limit.
+	 * 
+	 * @return the permit, which must be released, or null if the limit has 
+	 *     been reached
+	 */
+	public synchronized Permit tryAcquire() {
+		if(inFlight >= (int)limit) {
+			return null;
+		}
+		inFlight++;
+		return new Permit();
+	}
+
+	/**
+	 * Return the current limit
+	 * 
+	 * @return the number of operations which are allowed in flight
+	 */
+	public synchronized int getLimit() {
+		return (int)limit;
+	}
+
+	/**
+	 * Return the number of operations in flight
+	 * 
+	 * @return the number of permits which have not been released
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Return the smoothed latency of the successful operations
+	 * 
+	 * @param unit the unit of the latency
+	 * 
+	 * @return the smoothed latency, or 0 if no operation has succeeded yet
+	 */
+	public synchronized long getLatency(TimeUnit unit) {
+		return unit.convert((long)smoothedLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized void release(long latencyNanos, boolean success, boolean throttled) {
+		final long now = System.nanoTime();
+		final boolean saturated = inFlight * 2 >= limit;
+		inFlight--;
+
+		if(throttled) {
+			decrease(now, THROTTLED_DECREASE);
+		} else if(success) {
+			if(now - minLatencyMeasuredAt > MIN_LATENCY_RESET_NANOS) {
+				minLatencyNanos = Long.MAX_VALUE;
+				minLatencyMeasuredAt = now;
+			}
+			minLatencyNanos = Math.min(minLatencyNanos, Math.max(LATENCY_FLOOR_NANOS, latencyNanos));
+			smoothedLatencyNanos = smoothedLatencyNanos == 0d ? latencyNanos : 
+				(1d - LATENCY_SMOOTHING) * smoothedLatencyNanos + LATENCY_SMOOTHING * latencyNanos;
+
+			if(latencyBackOff && smoothedLatencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+				decrease(now, LATENCY_DECREASE);
+			} else if(saturated) {
+				limit = Math.min(maxLimit, limit + (limit < slowStartThreshold ? 1d : 1d / limit));
+			}
+		}
+		this.notifyAll();
+	}
+
+	private void decrease(long now, double factor) {
+		if(now - lastDecreaseAt > smoothedLatencyNanos) {
+			limit = Math.max(minLimit, limit * factor);
+			slowStartThreshold = limit;
+			lastDecreaseAt = now;
+		}
+	}
+
+	/**
+	 * The permission for a single operation to run, which must be released 
+	 * exactly once when the operation has completed.
+	 */
+	public class Permit {
+		private final long start = System.nanoTime();
+		private boolean released = false;
+
+		private Permit() {}
+
+		/**
+		 * The operation succeeded, its latency is used to adapt the limit
+		 */
+		public void success() {
+			release(true, false);
+		}
+
+		/**
+		 * The operation was throttled by the service, the limit is decreased
+		 */
+		public void throttled() {
+			release(false, true);
+		}
+
+		/**
+		 * The operation failed for a reason unrelated to the load on the 
+		 * service, the limit is not changed
+		 */
+		public void ignore() {
+			release(false, false);
+		}
+
+		private void release(boolean success, boolean throttled) {
+			synchronized (AdaptiveConcurrencyLimiter.this) {
+				if(released) {
+					throw new IllegalStateException("Permit has already been released");
+				}
+				released = true;
+				AdaptiveConcurrencyLimiter.this.release(System.nanoTime() - start, success, throttled);
+			}
+		}
+	}
+}
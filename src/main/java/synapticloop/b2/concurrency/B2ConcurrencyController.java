@@ -0,0 +1,241 @@
+package synapticloop.b2.concurrency;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.io.input.NullInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2DownloadFileResponse;
+
+/**
+ * Runs bulk operations (uploads, downloads, deletes) with a separate 
+ * {@link AdaptiveConcurrencyLimiter} for each {@link OperationClass}, so that
+ * the number of operations in flight follows the capacity of the service.
+ * 
+ * An operation is counted as throttled when the API returns a 
+ * 'too_many_requests' (429) or 'service_unavailable' (503) status, or when the
+ * connection times out.  Other failures do not change the limit.  A rise in 
+ * latency only reduces the limit for the classes of operation which do not 
+ * transfer content, as a larger upload or download takes longer without the
+ * service being any busier.
+ * 
+ * <pre>
+ * final B2ConcurrencyController controller = new B2ConcurrencyController();
+ * // from each of the worker threads
+ * controller.execute(OperationClass.UPLOAD, new B2Operation&lt;B2FileResponse&gt;() {
+ *     public B2FileResponse execute() throws B2ApiException, IOException {
+ *         return client.uploadFile(bucketId, fileName, file);
+ *     }
+ * });
+ * </pre>
+ *
+ * @author synapticloop
+ */
+public class B2ConcurrencyController {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2ConcurrencyController.class);
+
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 64;
+
+	private static final int STATUS_TOO_MANY_REQUESTS = 429;
+	private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+
+	private final Map<OperationClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(OperationClass.class);
+
+	/**
+	 * Create a controller with the default limits for every class of operation
+	 */
+	public B2ConcurrencyController() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * Create a controller with the same limits for every class of operation
+	 * 
+	 * @param initialLimit the number of operations allowed in flight to start with
+	 * @param minLimit the lowest the limit will go
+	 * @param maxLimit the highest the limit will go
+	 */
+	public B2ConcurrencyController(int initialLimit, int minLimit, int maxLimit) {
+		for (OperationClass operationClass : OperationClass.values()) {
+			limiters.put(operationClass, new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, !operationClass.isTransfer()));
+		}
+	}
+
+	/**
+	 * Replace the limiter for a class of operation, e.g. to allow more 
+	 * downloads than uploads.  This must be done before operations are run.
+	 * 
+	 * @param operationClass the class of operation
+	 * @param limiter the limiter to use
+	 */
+	public void setLimiter(OperationClass operationClass, AdaptiveConcurrencyLimiter limiter) {
+		limiters.put(operationClass, limiter);
+	}
+
+	/**
+	 * Return the limiter for a class of operation
+	 * 
+	 * @param operationClass the class of operation
+	 * 
+	 * @return the limiter
+	 */
+	public AdaptiveConcurrencyLimiter getLimiter(OperationClass operationClass) {
+		return limiters.get(operationClass);
+	}
+
+	/**
+	 * Run an operation once the limit for its class allows it, and adapt the 
+	 * limit to the outcome of the operation.
+	 * 
+	 * When the operation returns a {@link B2DownloadFileResponse} (e.g. from
+	 * downloadFileById) its content has not been read yet, so the response is
+	 * returned with content which holds the permit until it is closed, and 
+	 * the content must be closed.
+	 * 
+	 * @param operationClass the class of the operation
+	 * @param operation the operation to run
+	 * @param <T> the result of the operation
+	 * 
+	 * @return the result of the operation
+	 * 
+	 * @throws B2ApiException if the API returned an error
+	 * @throws IOException if there was an error communicating with the API 
+	 *     service, or the thread was interrupted while waiting for a permit
+	 */
+	public <T> T execute(OperationClass operationClass, B2Operation<T> operation) throws B2ApiException, IOException {
+		final AdaptiveConcurrencyLimiter limiter = limiters.get(operationClass);
+		final AdaptiveConcurrencyLimiter.Permit permit;
+		try {
+			permit = limiter.acquire();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a " + operationClass + " permit");
+		}
+
+		boolean released = false;
+		try {
+			final T result = operation.execute();
+			released = true;
+			return handOver(result, permit);
+		} catch (B2ApiException ex) {
+			if(isThrottled(ex)) {
+				LOGGER.debug("{} operation throttled with status {}, limit is {}", operationClass, ex.getStatus(), limiter.getLimit());
+				permit.throttled();
+			} else {
+				permit.ignore();
+			}
+			released = true;
+			throw ex;
+		} catch (SocketTimeoutException | ConnectTimeoutException ex) {
+			permit.throttled();
+			released = true;
+			throw ex;
+		} finally {
+			if(!released) {
+				permit.ignore();
+			}
+		}
+	}
+
+	/**
+	 * Release the permit of a successful operation, or hand it over to the 
+	 * content of a download, which releases it when it is closed
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T handOver(T result, AdaptiveConcurrencyLimiter.Permit permit) {
+		if(result instanceof B2DownloadFileResponse) {
+			final B2DownloadFileResponse response = (B2DownloadFileResponse)result;
+			if(null != response.getContent() && !(response.getContent() instanceof NullInputStream)) {
+				return (T)new B2DownloadFileResponse(response, new PermitInputStream(response.getContent(), permit));
+			}
+		}
+		permit.success();
+		return result;
+	}
+
+	/**
+	 * Return whether the exception is the service asking for fewer requests
+	 * 
+	 * @param ex the exception
+	 * 
+	 * @return true if the status was 429 or 503
+	 */
+	public static boolean isThrottled(B2ApiException ex) {
+		return ex.getStatus() == STATUS_TOO_MANY_REQUESTS || ex.getStatus() == STATUS_SERVICE_UNAVAILABLE;
+	}
+
+	/**
+	 * The content of a download, which releases the permit of the download 
+	 * once it has been read and closed
+	 */
+	private static class PermitInputStream extends ProxyInputStream {
+		private final AdaptiveConcurrencyLimiter.Permit permit;
+		private boolean released = false;
+		private boolean failed = false;
+
+		PermitInputStream(InputStream in, AdaptiveConcurrencyLimiter.Permit permit) {
+			super(in);
+			this.permit = permit;
+		}
+
+		@Override
+		protected void handleIOException(IOException ex) throws IOException {
+			failed = true;
+			if(ex instanceof SocketTimeoutException) {
+				release(true);
+			}
+			throw ex;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release(false);
+			}
+		}
+
+		private synchronized void release(boolean throttled) {
+			if(released) {
+				return;
+			}
+			released = true;
+			if(throttled) {
+				permit.throttled();
+			} else if(failed) {
+				permit.ignore();
+			} else {
+				permit.success();
+			}
+		}
+	}
+}
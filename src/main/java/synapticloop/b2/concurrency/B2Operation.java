@@ -0,0 +1,42 @@
+package synapticloop.b2.concurrency;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * An operation against the B2 API, which is run by the 
+ * {@link B2ConcurrencyController} once a permit is available.
+ *
+ * @param <T> the result of the operation
+ *
+ * @author synapticloop
+ */
+public interface B2Operation<T> {
+	/**
+	 * Run the operation
+	 * 
+	 * @return the result of the operation
+	 * 
+	 * @throws B2ApiException if the API returned an error
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	T execute() throws B2ApiException, IOException;
+}
@@ -0,0 +1,77 @@
+package synapticloop.b2.concurrency;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+/**
+ * The classes of operation that have separate concurrency limits, as their 
+ * latency and capacity differ widely.
+ *
+ * @author synapticloop
+ */
+public enum OperationClass {
+	/**
+	 * Uploads of files and of large file parts
+	 */
+	UPLOAD,
+	/**
+	 * Downloads of files, by id or by name
+	 */
+	DOWNLOAD,
+	/**
+	 * Deletion and hiding of file versions
+	 */
+	DELETE,
+	/**
+	 * All other calls to the API, e.g. listing files
+	 */
+	API;
+
+	/**
+	 * Return the class of a B2 operation
+	 * 
+	 * @param operation the name of the operation, e.g. 'b2_upload_file'
+	 * 
+	 * @return the class of the operation
+	 */
+	public static OperationClass of(String operation) {
+		switch(operation) {
+		case "b2_upload_file":
+		case "b2_upload_part":
+			return UPLOAD;
+		case "b2_download_file_by_id":
+		case "b2_download_file_by_name":
+			return DOWNLOAD;
+		case "b2_delete_file_version":
+		case "b2_hide_file":
+			return DELETE;
+		default:
+			return API;
+		}
+	}
+
+	/**
+	 * Return whether the operations transfer file content, so that their 
+	 * latency depends on the size of the content rather than on the load on 
+	 * the service
+	 * 
+	 * @return true for uploads and downloads
+	 */
+	public boolean isTransfer() {
+		return this == UPLOAD || this == DOWNLOAD;
+	}
+}
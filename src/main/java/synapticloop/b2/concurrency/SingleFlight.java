@@ -0,0 +1,144 @@
+package synapticloop.b2.concurrency;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * Coalesces identical concurrent operations, so that callers which execute
+ * an operation with the same key while it is in flight wait for, and share,
+ * the result of the one execution rather than each making its own call to
+ * the API.
+ * 
+ * The first caller for a key runs the operation in its own thread, and the 
+ * key is removed as soon as the operation has finished - a result is never
+ * cached beyond the callers that were waiting for it.  A failure is thrown 
+ * to all of the waiting callers, each of which is given its own exception 
+ * (wrapping the original failure) so that its stack trace shows where the
+ * caller was waiting.  As the result is shared between threads, 
+ * it must not be modified by the callers.  Only idempotent operations should
+ * be coalesced.
+ *
+ * @author synapticloop
+ */
+public class SingleFlight {
+	private final ConcurrentMap<Object, FutureTask<?>> calls = new ConcurrentHashMap<Object, FutureTask<?>>();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * Execute the operation, or wait for the result of the operation with the
+	 * same key that is already in flight
+	 * 
+	 * @param key the key that identifies identical operations, which must 
+	 *     implement equals and hashCode
+	 * @param operation the operation to execute
+	 * @param <T> the type of the result
+	 * 
+	 * @return the result of the operation
+	 * 
+	 * @throws B2ApiException if the API returned an error
+	 * @throws IOException if there was an error communicating with the API 
+	 *     service, or the thread was interrupted while waiting
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(Object key, final B2Operation<T> operation) throws B2ApiException, IOException {
+		final FutureTask<T> created = new FutureTask<T>(new Callable<T>() {
+			@Override
+			public T call() throws B2ApiException, IOException {
+				return operation.execute();
+			}
+		});
+		final FutureTask<T> existing = (FutureTask<T>)calls.putIfAbsent(key, created);
+		if(null != existing) {
+			shared.incrementAndGet();
+			return get(existing, true);
+		}
+		executed.incrementAndGet();
+		try {
+			created.run();
+		} finally {
+			calls.remove(key, created);
+		}
+		return get(created, false);
+	}
+
+	/**
+	 * Return the number of operations that are in flight
+	 * 
+	 * @return the number of operations in flight
+	 */
+	public int getInFlight() { return calls.size(); }
+
+	/**
+	 * Return the number of operations that have been executed
+	 * 
+	 * @return the number of operations executed
+	 */
+	public long getExecutedCount() { return executed.get(); }
+
+	/**
+	 * Return the number of callers which shared the result of an operation 
+	 * that was already in flight, rather than executing it
+	 * 
+	 * @return the number of callers which shared a result
+	 */
+	public long getSharedCount() { return shared.get(); }
+
+	private static <T> T get(FutureTask<T> task, boolean waiting) throws B2ApiException, IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a coalesced request");
+		} catch (ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if(cause instanceof B2ApiException) {
+				if(waiting) {
+					B2ApiException shared = (B2ApiException)cause;
+					throw new B2ApiException(shared.getJson(), shared, true)
+							.withHttpStatus(shared.getStatus())
+							.withRetry(shared.getRetry());
+				}
+				throw (B2ApiException)cause;
+			}
+			if(cause instanceof IOException) {
+				if(waiting) {
+					throw new IOException(cause.getMessage(), cause);
+				}
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
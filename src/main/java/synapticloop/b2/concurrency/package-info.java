@@ -0,0 +1,8 @@
+/**
+ * This package contains the adaptive concurrency limits for bulk operations,
+ * and the coalescing of identical concurrent requests
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.concurrency;
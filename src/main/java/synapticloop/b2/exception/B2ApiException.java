@@ -25,6 +25,12 @@ public class B2ApiException extends Exception {
 	private String code;
 	private String message;
 	private int status;
+	private boolean parsed = false;
+
+	/**
+	 * The HTTP status of the response, when it is not in the JSON
+	 */
+	private int httpStatus;
 
 	/**
 	 * Retry-After header value (in seconds)
@@ -50,11 +56,34 @@ public class B2ApiException extends Exception {
 	public B2ApiException(String json, Throwable cause) {
 		super(json, cause);
 		this.json = json;
-		this.parse(json);
 	}
 
+	/**
+	 * Create a new B2Api Exception, optionally without a stack trace.  Filling
+	 * in the stack trace is the most expensive part of creating an exception,
+	 * and is not needed where the exception is an expected answer (e.g. a 404
+	 * for a file that does not exist) that is handled by the caller.
+	 *
+	 * @param json The message of the exception
+	 * @param cause the root cause of the exception, or null
+	 * @param stackTrace whether the stack trace is filled in
+	 */
+	public B2ApiException(String json, Throwable cause, boolean stackTrace) {
+		super(json, cause, true, stackTrace);
+		this.json = json;
+	}
 
-	private void parse(String json) {
+	/**
+	 * Parse the JSON message the first time that one of its fields is read,
+	 * so that exceptions which are only caught and checked for their status 
+	 * do not pay for it.  The exception may be read by more than one thread
+	 * (e.g. when it is shared between coalesced callers), so the fields are
+	 * filled in before the flag is set, under the lock.
+	 */
+	private synchronized void parse() {
+		if (parsed) {
+			return;
+		}
 		if (null != json) {
 			try {
 				JSONObject jsonObject = new JSONObject(json);
@@ -67,6 +96,7 @@ public class B2ApiException extends Exception {
 				this.message = json;
 			}
 		}
+		parsed = true;
 	}
 
 	/**
@@ -79,12 +109,25 @@ public class B2ApiException extends Exception {
 		return this;
 	}
 
+	/**
+	 * @param httpStatus the HTTP status of the response, which is returned by 
+	 *     {@link #getStatus()} if the response did not contain a status in 
+	 *     its JSON (e.g. the response to a HEAD request)
+	 * 
+	 * @return the exception with the HTTP status
+	 */
+	public B2ApiException withHttpStatus(int httpStatus) {
+		this.httpStatus = httpStatus;
+		return this;
+	}
+
 	/**
 	 * Return the backblaze error code
 	 *
 	 * @return the backblaze error code
 	 */
 	public String getCode() {
+		this.parse();
 		return this.code;
 	}
 
@@ -95,6 +138,7 @@ public class B2ApiException extends Exception {
 	 * @return the message
 	 */
 	public String getMessage() {
+		this.parse();
 		return this.message;
 	}
 
@@ -115,6 +159,10 @@ public class B2ApiException extends Exception {
 	 * @return the HTTP status code
 	 */
 	public int getStatus() {
+		this.parse();
+		if (this.status <= 0 && this.httpStatus > 0) {
+			return this.httpStatus;
+		}
 		return this.status;
 	}
 
@@ -0,0 +1,184 @@
+package synapticloop.b2.inventory;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import synapticloop.b2.Action;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.Sha1VerifyingInputStream;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ResponseProperties;
+
+/**
+ * A version of a file in a {@link B2InventoryIndex}
+ *
+ * @author synapticloop
+ */
+public class B2InventoryEntry {
+	private static final String NONE = "none";
+
+	private final String fileName;
+	private final String fileId;
+	private final Action action;
+	private final long contentLength;
+	private final String contentSha1;
+	private final String largeFileSha1;
+	private final String contentType;
+	private final long uploadTimestamp;
+
+	/**
+	 * Create an entry
+	 * 
+	 * @param fileName the name of the file
+	 * @param fileId the id of the file version
+	 * @param action the action of the file version
+	 * @param contentLength the length of the content
+	 * @param contentSha1 the SHA1 of the content, or 'none' for a large file
+	 * @param largeFileSha1 the 'large_file_sha1' file info of a large file, or null
+	 * @param contentType the content type
+	 * @param uploadTimestamp the upload timestamp, in milliseconds
+	 */
+	public B2InventoryEntry(String fileName, String fileId, Action action, long contentLength, String contentSha1, String largeFileSha1, String contentType, long uploadTimestamp) {
+		this.fileName = fileName;
+		this.fileId = fileId;
+		this.action = action;
+		this.contentLength = contentLength;
+		this.contentSha1 = contentSha1;
+		this.largeFileSha1 = largeFileSha1;
+		this.contentType = contentType;
+		this.uploadTimestamp = uploadTimestamp;
+	}
+
+	/**
+	 * Create an entry from a file of a listing
+	 * 
+	 * @param file the file
+	 * 
+	 * @return the entry
+	 */
+	public static B2InventoryEntry of(B2FileInfoResponse file) {
+		return new B2InventoryEntry(file.getFileName(), file.getFileId(), file.getAction(), 
+				null == file.getContentLength() ? 0L : file.getContentLength(), file.getContentSha1(), 
+				largeFileSha1(file.getFileInfo()), file.getContentType(), 
+				null == file.getUploadTimestamp() ? 0L : file.getUploadTimestamp());
+	}
+
+	static String largeFileSha1(Map<String, String> fileInfo) {
+		return null == fileInfo ? null : fileInfo.get(Sha1VerifyingInputStream.LARGE_FILE_SHA1);
+	}
+
+	/**
+	 * @return the name of the file
+	 */
+	public String getFileName() { return this.fileName; }
+
+	/**
+	 * @return the id of the file version
+	 */
+	public String getFileId() { return this.fileId; }
+
+	/**
+	 * @return the action of the file version, e.g. 'upload' or 'hide'
+	 */
+	public Action getAction() { return this.action; }
+
+	/**
+	 * @return the length of the content
+	 */
+	public long getContentLength() { return this.contentLength; }
+
+	/**
+	 * @return the SHA1 of the content, or 'none' for a large file
+	 */
+	public String getContentSha1() { return this.contentSha1; }
+
+	/**
+	 * @return the 'large_file_sha1' file info of a large file, or null
+	 */
+	public String getLargeFileSha1() { return this.largeFileSha1; }
+
+	/**
+	 * Return the SHA1 of the content, which for a large file is its 
+	 * 'large_file_sha1' file info
+	 * 
+	 * @return the SHA1, or null if it is not known
+	 */
+	public String getSha1() {
+		final String sha1 = null == contentSha1 || NONE.equals(contentSha1) ? largeFileSha1 : contentSha1;
+		return null == sha1 || NONE.equals(sha1) ? null : sha1;
+	}
+
+	/**
+	 * @return the content type
+	 */
+	public String getContentType() { return this.contentType; }
+
+	/**
+	 * @return the upload timestamp, in milliseconds
+	 */
+	public long getUploadTimestamp() { return this.uploadTimestamp; }
+
+	/**
+	 * Return this entry as a file of a listing, e.g. to compare it with a 
+	 * listing with a {@link synapticloop.b2.list.B2InventoryDiff}
+	 * 
+	 * @return the file
+	 * 
+	 * @throws B2ApiException if the file could not be created
+	 */
+	public B2FileInfoResponse toFileInfoResponse() throws B2ApiException {
+		return new B2FileInfoResponse(toJson());
+	}
+
+	JSONObject toJson() {
+		final JSONObject json = new JSONObject()
+				.put(B2ResponseProperties.KEY_FILE_ID, fileId)
+				.put(B2ResponseProperties.KEY_FILE_NAME, fileName)
+				.put(B2ResponseProperties.KEY_ACTION, null == action ? JSONObject.NULL : action.name())
+				.put(B2ResponseProperties.KEY_CONTENT_LENGTH, contentLength)
+				.put(B2ResponseProperties.KEY_SIZE, contentLength)
+				.put(B2ResponseProperties.KEY_CONTENT_SHA1, null == contentSha1 ? JSONObject.NULL : contentSha1)
+				.put(B2ResponseProperties.KEY_CONTENT_TYPE, null == contentType ? JSONObject.NULL : contentType)
+				.put(B2ResponseProperties.KEY_UPLOAD_TIMESTAMP, uploadTimestamp)
+				.put(B2ResponseProperties.KEY_FILE_INFO, new JSONObject(null == largeFileSha1 ? Collections.<String, String>emptyMap() 
+						: Collections.singletonMap(Sha1VerifyingInputStream.LARGE_FILE_SHA1, largeFileSha1)));
+		return json;
+	}
+
+	static B2InventoryEntry fromJson(JSONObject json) {
+		final JSONObject fileInfo = json.optJSONObject(B2ResponseProperties.KEY_FILE_INFO);
+		return new B2InventoryEntry(json.getString(B2ResponseProperties.KEY_FILE_NAME), 
+				json.getString(B2ResponseProperties.KEY_FILE_ID), 
+				json.isNull(B2ResponseProperties.KEY_ACTION) ? null : Action.valueOf(json.getString(B2ResponseProperties.KEY_ACTION)), 
+				json.getLong(B2ResponseProperties.KEY_CONTENT_LENGTH), 
+				json.isNull(B2ResponseProperties.KEY_CONTENT_SHA1) ? null : json.getString(B2ResponseProperties.KEY_CONTENT_SHA1), 
+				null == fileInfo ? null : fileInfo.optString(Sha1VerifyingInputStream.LARGE_FILE_SHA1, null), 
+				json.isNull(B2ResponseProperties.KEY_CONTENT_TYPE) ? null : json.getString(B2ResponseProperties.KEY_CONTENT_TYPE), 
+				json.getLong(B2ResponseProperties.KEY_UPLOAD_TIMESTAMP));
+	}
+
+	@Override
+	public String toString() {
+		return "B2InventoryEntry{fileName='" + fileName + "', fileId='" + fileId + "', action=" + action 
+				+ ", contentLength=" + contentLength + ", sha1='" + getSha1() + "', uploadTimestamp=" + uploadTimestamp + "}";
+	}
+}
@@ -0,0 +1,858 @@
+package synapticloop.b2.inventory;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.Action;
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.list.B2DiffListener;
+import synapticloop.b2.list.B2FileSource;
+import synapticloop.b2.list.B2FileVisitor;
+import synapticloop.b2.list.B2InventoryDiff;
+import synapticloop.b2.list.FileNames;
+import synapticloop.b2.response.B2DeleteFileVersionResponse;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2FinishLargeFileResponse;
+import synapticloop.b2.response.B2HideFileResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+import synapticloop.b2.response.B2ResponseProperties;
+
+/**
+ * A local index of the file versions of a bucket, which answers whether a 
+ * file exists, and its SHA1, size and versions, without calling the B2 
+ * service.
+ * 
+ * The index is held in a directory for the bucket, as a memory mapped 
+ * segment of the file versions sorted by name (built from a listing of the 
+ * versions of the bucket by {@link #reconcile(B2ApiClient, B2DiffListener)}), 
+ * and a journal of the uploads, hides and deletes since the segment was 
+ * written, which is synced to disk as each update is recorded and replayed 
+ * when the index is opened.  The journal is merged into a new segment when it
+ * reaches the compaction threshold, or by {@link #compact()}.
+ * 
+ * The updates made through a {@link B2ApiClient} are recorded when the index
+ * is added to the client with {@link B2ApiClient#addInventoryIndex(B2InventoryIndex)};
+ * changes made by other clients are only seen after the next reconcile.
+ * 
+ * The index is thread safe: lookups run concurrently with each other and
+ * with compactions, and only wait for updates to be recorded.
+ *
+ * @author synapticloop
+ */
+public class B2InventoryIndex implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2InventoryIndex.class);
+
+	public static final int DEFAULT_COMPACTION_THRESHOLD = 100000;
+
+	private static final int PAGE_SIZE = 1000;
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".idx";
+	private static final String JOURNAL = "journal.log";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final String KEY_SEQ = "seq";
+	private static final String KEY_OP = "op";
+	private static final String KEY_ENTRY = "entry";
+	private static final String OP_PUT = "put";
+	private static final String OP_DELETE = "delete";
+
+	private static final Comparator<B2InventoryEntry> NEWEST_FIRST = new Comparator<B2InventoryEntry>() {
+		@Override
+		public int compare(B2InventoryEntry first, B2InventoryEntry second) {
+			return Long.compare(second.getUploadTimestamp(), first.getUploadTimestamp());
+		}
+	};
+
+	private static final B2DiffListener NO_LISTENER = new B2DiffListener() {
+		@Override
+		public void added(B2FileInfoResponse target) {}
+
+		@Override
+		public void removed(B2FileInfoResponse source) {}
+
+		@Override
+		public void changed(B2FileInfoResponse source, B2FileInfoResponse target) {}
+	};
+
+	private final File directory;
+	private final String bucketId;
+	private final int regionSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// compactions and reconciles are run one at a time
+	private final Object maintenance = new Object();
+
+	private IndexSegment segment;
+	private long generation = 0L;
+	// the updates since the segment was written, in the order of the journal
+	private final List<Op> ops = new ArrayList<>();
+	// the versions put by the updates, newest first, which are replaced 
+	// rather than modified so that views can share them
+	private TreeMap<String, List<B2InventoryEntry>> overlay = new TreeMap<>(FileNames.ORDER);
+	private Set<String> deleted = new HashSet<>();
+	private long seq = 0L;
+	private FileOutputStream journal;
+	private volatile int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	private boolean closed = false;
+
+	/**
+	 * Open the index of a bucket, creating the directory if it does not exist
+	 * 
+	 * @param directory the directory of the index, which holds the index of 
+	 *     one bucket
+	 * @param bucketId the id of the bucket
+	 * 
+	 * @throws IOException if the index could not be read
+	 */
+	public B2InventoryIndex(File directory, String bucketId) throws IOException {
+		this(directory, bucketId, IndexSegment.DEFAULT_REGION_SIZE);
+	}
+
+	B2InventoryIndex(File directory, String bucketId, int regionSize) throws IOException {
+		this.directory = directory;
+		this.bucketId = bucketId;
+		this.regionSize = regionSize;
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create the index directory '" + directory + "'");
+		}
+		this.segment = this.openSegment();
+		try {
+			this.replay();
+		} catch (IOException ex) {
+			segment.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Open the newest segment, removing older segments and any left by a 
+	 * compaction that did not finish
+	 */
+	private IndexSegment openSegment() throws IOException {
+		final File[] files = directory.listFiles();
+		if(null == files) {
+			throw new IOException("Could not list the index directory '" + directory + "'");
+		}
+		for (File file : files) {
+			final String name = file.getName();
+			if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					generation = Math.max(generation, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException ex) {
+					LOGGER.warn("Ignoring the file '{}' in the index directory", file);
+				}
+			}
+		}
+		for (File file : files) {
+			final String name = file.getName();
+			if(name.endsWith(TMP_SUFFIX) || (name.startsWith(SEGMENT_PREFIX) && !file.equals(this.segmentFile(generation)))) {
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+		return 0L == generation ? IndexSegment.empty() : new IndexSegment(this.segmentFile(generation), regionSize);
+	}
+
+	/**
+	 * Apply the updates in the journal, rewriting it without a last update 
+	 * that was not completely written
+	 */
+	private void replay() throws IOException {
+		final File file = new File(directory, JOURNAL);
+		boolean truncated = false;
+		if(file.exists()) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), IndexSegment.UTF_8))) {
+				String line;
+				while(null != (line = reader.readLine())) {
+					final Op op;
+					try {
+						op = Op.fromJson(new JSONObject(line));
+					} catch (JSONException | IllegalArgumentException ex) {
+						LOGGER.warn("Ignoring the end of the journal '{}' from an incomplete update: {}", file, ex.getMessage());
+						truncated = true;
+						break;
+					}
+					ops.add(op);
+					this.apply(op);
+					seq = Math.max(seq, op.seq);
+				}
+			}
+		}
+		if(truncated) {
+			this.rewriteJournal();
+		} else {
+			journal = new FileOutputStream(file, true);
+		}
+	}
+
+	/**
+	 * Set the number of updates in the journal at which they are merged into a
+	 * new segment, the default is {@link #DEFAULT_COMPACTION_THRESHOLD}
+	 * 
+	 * @param compactionThreshold the number of updates, or 0 to only compact
+	 *     when {@link #compact()} is called
+	 * 
+	 * @return this index
+	 */
+	public B2InventoryIndex setCompactionThreshold(int compactionThreshold) {
+		if(compactionThreshold < 0) {
+			throw new IllegalArgumentException("The compaction threshold must not be negative");
+		}
+		this.compactionThreshold = compactionThreshold;
+		return this;
+	}
+
+	/**
+	 * @return the id of the bucket of the index
+	 */
+	public String getBucketId() {
+		return bucketId;
+	}
+
+	/**
+	 * @return the number of updates in the journal, which have not been merged
+	 *     into the segment
+	 */
+	public int getPendingUpdates() {
+		lock.readLock().lock();
+		try {
+			return ops.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 *
+	 *   LOOKUPS
+	 *
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/**
+	 * Return the current version of a file, i.e. its newest version, if that 
+	 * was an upload rather than a hide
+	 * 
+	 * @param fileName the name of the file
+	 * 
+	 * @return the current version of the file, or null if the file does not
+	 *     exist, or is hidden
+	 */
+	public B2InventoryEntry get(String fileName) {
+		final List<B2InventoryEntry> versions = this.getVersions(fileName);
+		if(versions.isEmpty() || Action.upload != versions.get(0).getAction()) {
+			return null;
+		}
+		return versions.get(0);
+	}
+
+	/**
+	 * @param fileName the name of the file
+	 * 
+	 * @return whether the file exists, and is not hidden
+	 */
+	public boolean exists(String fileName) {
+		return null != this.get(fileName);
+	}
+
+	/**
+	 * Return the versions of a file, including hide markers
+	 * 
+	 * @param fileName the name of the file
+	 * 
+	 * @return the versions of the file, from the newest to the oldest
+	 */
+	public List<B2InventoryEntry> getVersions(String fileName) {
+		lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			final List<B2InventoryEntry> base = new ArrayList<>();
+			for (long i = segment.lowerBound(fileName); i < segment.size() && fileName.equals(segment.name(i)); i++) {
+				base.add(segment.get(i));
+			}
+			final List<B2InventoryEntry> updated = overlay.get(fileName);
+			return merge(base, null == updated ? Collections.<B2InventoryEntry>emptyList() : updated, deleted);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Return a source of the current versions of the files with names that 
+	 * start with a prefix, in the order of their names, e.g. to compare with
+	 * a snapshot with a {@link B2InventoryDiff}.  The source reads the index as
+	 * it was when the source was created.
+	 * 
+	 * @param prefix the prefix of the file names, or null for all files
+	 * 
+	 * @return the source of the files
+	 */
+	public B2FileSource source(String prefix) {
+		return new Cursor(this.view(null == prefix ? "" : prefix), null == prefix ? "" : prefix, true);
+	}
+
+	/**
+	 * Pass the current versions of the files with names that start with a 
+	 * prefix to a visitor, in the order of their names
+	 * 
+	 * @param prefix the prefix of the file names, or null for all files
+	 * @param visitor the visitor, which may stop the listing
+	 * 
+	 * @return the number of files passed to the visitor
+	 * 
+	 * @throws B2ApiException if the visitor threw an exception
+	 * @throws IOException if the visitor threw an exception
+	 */
+	public long list(String prefix, B2FileVisitor visitor) throws B2ApiException, IOException {
+		long count = 0L;
+		try (B2FileSource source = this.source(prefix)) {
+			B2FileInfoResponse file;
+			while(null != (file = source.next())) {
+				count++;
+				if(!visitor.visit(file)) {
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 *
+	 *   UPDATES
+	 *
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/**
+	 * Record an uploaded file, if it is in the bucket of the index
+	 * 
+	 * @param response the response of the upload
+	 * 
+	 * @throws IOException if the update could not be written to the journal
+	 */
+	public void uploaded(B2FileResponse response) throws IOException {
+		if(bucketId.equals(response.getBucketId())) {
+			this.put(new B2InventoryEntry(response.getFileName(), response.getFileId(), null == response.getAction() ? Action.upload : response.getAction(), 
+					response.getContentLength(), response.getContentSha1(), B2InventoryEntry.largeFileSha1(response.getFileInfo()), 
+					response.getContentType(), timestamp(response.getUploadTimestamp())));
+		}
+	}
+
+	/**
+	 * Record a finished large file, if it is in the bucket of the index
+	 * 
+	 * @param response the response of finishing the large file
+	 * 
+	 * @throws IOException if the update could not be written to the journal
+	 */
+	public void uploaded(B2FinishLargeFileResponse response) throws IOException {
+		if(bucketId.equals(response.getBucketId())) {
+			this.put(new B2InventoryEntry(response.getFileName(), response.getFileId(), null == response.getAction() ? Action.upload : response.getAction(), 
+					null == response.getContentLength() ? 0L : response.getContentLength(), response.getContentSha1(), 
+					B2InventoryEntry.largeFileSha1(response.getFileInfo()), response.getContentType(), timestamp(response.getUploadTimestamp())));
+		}
+	}
+
+	/**
+	 * Record a hidden file, if it is in the bucket of the index
+	 * 
+	 * @param bucketId the id of the bucket of the file
+	 * @param response the response of hiding the file
+	 * 
+	 * @throws IOException if the update could not be written to the journal
+	 */
+	public void hidden(String bucketId, B2HideFileResponse response) throws IOException {
+		if(this.bucketId.equals(bucketId)) {
+			this.put(new B2InventoryEntry(response.getFileName(), response.getFileId(), null == response.getAction() ? Action.hide : response.getAction(), 
+					0L, null, null, null, timestamp(response.getUploadTimestamp())));
+		}
+	}
+
+	/**
+	 * Record a deleted file version, if it is in the index
+	 * 
+	 * @param response the response of deleting the file version
+	 * 
+	 * @throws IOException if the update could not be written to the journal
+	 */
+	public void deleted(B2DeleteFileVersionResponse response) throws IOException {
+		final String fileName = response.getFileName();
+		final String fileId = response.getFileId();
+		boolean known = false;
+		for (B2InventoryEntry version : this.getVersions(fileName)) {
+			known |= fileId.equals(version.getFileId());
+		}
+		if(known) {
+			this.record(new Op(fileName, fileId));
+		}
+	}
+
+	private void put(B2InventoryEntry entry) throws IOException {
+		this.record(new Op(entry));
+	}
+
+	private static long timestamp(Long uploadTimestamp) {
+		return null == uploadTimestamp ? System.currentTimeMillis() : uploadTimestamp;
+	}
+
+	/**
+	 * Write an update to the journal and apply it, compacting the index if 
+	 * the journal has reached the threshold
+	 */
+	private void record(Op op) throws IOException {
+		final boolean compact;
+		lock.writeLock().lock();
+		try {
+			this.ensureOpen();
+			op.seq = ++seq;
+			journal.write((op.toJson().toString() + "\n").getBytes(IndexSegment.UTF_8));
+			journal.getChannel().force(false);
+			ops.add(op);
+			this.apply(op);
+			compact = compactionThreshold > 0 && ops.size() >= compactionThreshold;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if(compact) {
+			synchronized(maintenance) {
+				// another thread may have compacted while this thread waited
+				if(this.getPendingUpdates() >= compactionThreshold) {
+					this.compact();
+				}
+			}
+		}
+	}
+
+	private void apply(Op op) {
+		final List<B2InventoryEntry> versions = new ArrayList<>();
+		final List<B2InventoryEntry> current = overlay.get(op.fileName);
+		if(null != current) {
+			for (B2InventoryEntry version : current) {
+				if(!version.getFileId().equals(op.fileId)) {
+					versions.add(version);
+				}
+			}
+		}
+		if(null == op.entry) {
+			deleted.add(op.fileId);
+		} else {
+			versions.add(op.entry);
+			Collections.sort(versions, NEWEST_FIRST);
+		}
+		if(versions.isEmpty()) {
+			overlay.remove(op.fileName);
+		} else {
+			overlay.put(op.fileName, versions);
+		}
+	}
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 *
+	 *   MAINTENANCE
+	 *
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/**
+	 * Merge the updates in the journal into a new segment.  Lookups and 
+	 * updates continue while the segment is written.
+	 * 
+	 * @throws IOException if the segment could not be written
+	 */
+	public void compact() throws IOException {
+		synchronized(maintenance) {
+			final View view;
+			final long upTo;
+			final long next;
+			lock.readLock().lock();
+			try {
+				view = this.view("");
+				upTo = seq;
+				next = generation + 1;
+			} finally {
+				lock.readLock().unlock();
+			}
+			final File file = this.segmentFile(next);
+			final File tmp = new File(file.getPath() + TMP_SUFFIX);
+			try (IndexSegment.Writer writer = new IndexSegment.Writer(tmp, regionSize)) {
+				final Cursor cursor = new Cursor(view, "", false);
+				B2InventoryEntry entry;
+				while(null != (entry = cursor.nextEntry())) {
+					writer.write(entry);
+				}
+				writer.finish();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			this.install(next, upTo);
+		}
+	}
+
+	/**
+	 * Rebuild the index from a listing of the versions of the files in the
+	 * bucket, replacing what was recorded before the listing started, and 
+	 * pass the differences in the current versions of the files to a 
+	 * listener, e.g. the changes made by other clients.  Lookups and updates
+	 * continue while the bucket is listed.
+	 * 
+	 * @param client the client to list the bucket with
+	 * @param listener the listener to pass the differences to, or null
+	 * 
+	 * @return the summary of the differences
+	 * 
+	 * @throws B2ApiException if there was an error listing the bucket, or from the listener
+	 * @throws IOException if there was an error listing the bucket, or writing the index
+	 */
+	public B2InventoryDiff.Summary reconcile(B2ApiClient client, B2DiffListener listener) throws B2ApiException, IOException {
+		synchronized(maintenance) {
+			final long upTo;
+			final long next;
+			lock.readLock().lock();
+			try {
+				this.ensureOpen();
+				upTo = seq;
+				next = generation + 1;
+			} finally {
+				lock.readLock().unlock();
+			}
+			final File file = this.segmentFile(next);
+			final File tmp = new File(file.getPath() + TMP_SUFFIX);
+			try (IndexSegment.Writer writer = new IndexSegment.Writer(tmp, regionSize)) {
+				String startFileName = null;
+				String startFileId = null;
+				do {
+					final B2ListFilesResponse response = client.listFileVersions(bucketId, startFileName, startFileId, PAGE_SIZE);
+					for (B2FileInfoResponse version : response.getFiles()) {
+						writer.write(B2InventoryEntry.of(version));
+					}
+					startFileName = response.getNextFileName();
+					startFileId = response.getNextFileId();
+				} while(null != startFileName);
+				writer.finish();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			final View before = this.view("");
+			this.install(next, upTo);
+			final View after = this.view("");
+			return new B2InventoryDiff().diff(new Cursor(before, "", true), new Cursor(after, "", true), null == listener ? NO_LISTENER : listener);
+		}
+	}
+
+	/**
+	 * Replace the segment, and drop the updates that it includes from the 
+	 * journal
+	 */
+	private void install(long next, long upTo) throws IOException {
+		final IndexSegment installed = new IndexSegment(this.segmentFile(next), regionSize);
+		final IndexSegment previous;
+		final long previousGeneration;
+		lock.writeLock().lock();
+		try {
+			if(closed) {
+				installed.close();
+				throw new IOException("The index of the bucket '" + bucketId + "' is closed");
+			}
+			previous = segment;
+			previousGeneration = generation;
+			segment = installed;
+			generation = next;
+			final Iterator<Op> iterator = ops.iterator();
+			while(iterator.hasNext()) {
+				if(iterator.next().seq <= upTo) {
+					iterator.remove();
+				}
+			}
+			overlay = new TreeMap<>(FileNames.ORDER);
+			deleted = new HashSet<>();
+			for (Op op : ops) {
+				this.apply(op);
+			}
+			this.rewriteJournal();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		// the mapping of the previous segment stays valid for the views that 
+		// are still reading it
+		previous.close();
+		try {
+			Files.deleteIfExists(this.segmentFile(previousGeneration).toPath());
+		} catch (IOException ex) {
+			LOGGER.warn("Could not delete the previous index segment, it will be deleted when the index is opened: {}", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Write the updates to a new journal, which replaces the journal 
+	 * atomically.  Replaying updates that are already in the segment (from a 
+	 * journal that was not replaced) has no effect.
+	 */
+	private void rewriteJournal() throws IOException {
+		final File file = new File(directory, JOURNAL);
+		final File tmp = new File(directory, JOURNAL + TMP_SUFFIX);
+		if(null != journal) {
+			journal.close();
+			journal = null;
+		}
+		try (FileOutputStream out = new FileOutputStream(tmp)) {
+			final StringBuilder lines = new StringBuilder();
+			for (Op op : ops) {
+				lines.append(op.toJson().toString()).append('\n');
+			}
+			out.write(lines.toString().getBytes(IndexSegment.UTF_8));
+			out.getFD().sync();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		journal = new FileOutputStream(file, true);
+	}
+
+	private File segmentFile(long generation) {
+		return new File(directory, SEGMENT_PREFIX + generation + SEGMENT_SUFFIX);
+	}
+
+	private View view(String prefix) {
+		lock.readLock().lock();
+		try {
+			this.ensureOpen();
+			return new View(segment, new TreeMap<>(overlay.tailMap(prefix, true)), new HashSet<>(deleted));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void ensureOpen() {
+		if(closed) {
+			throw new IllegalStateException("The index of the bucket '" + bucketId + "' is closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if(null != journal) {
+					journal.close();
+				}
+			} finally {
+				segment.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merge the versions of a file in the segment with the versions put by
+	 * updates, without the deleted versions
+	 */
+	private static List<B2InventoryEntry> merge(List<B2InventoryEntry> base, List<B2InventoryEntry> updated, Set<String> deleted) {
+		if(base.isEmpty()) {
+			return new ArrayList<>(updated);
+		}
+		final Set<String> fileIds = new HashSet<>();
+		final List<B2InventoryEntry> versions = new ArrayList<>(updated);
+		for (B2InventoryEntry version : updated) {
+			fileIds.add(version.getFileId());
+		}
+		for (B2InventoryEntry version : base) {
+			if(!deleted.contains(version.getFileId()) && !fileIds.contains(version.getFileId())) {
+				versions.add(version);
+			}
+		}
+		if(!updated.isEmpty()) {
+			Collections.sort(versions, NEWEST_FIRST);
+		}
+		return versions;
+	}
+
+	/**
+	 * An update in the journal, which puts a version of a file, or deletes it
+	 */
+	private static class Op {
+		private long seq;
+		private final String fileName;
+		private final String fileId;
+		private final B2InventoryEntry entry;
+
+		private Op(B2InventoryEntry entry) {
+			this.fileName = entry.getFileName();
+			this.fileId = entry.getFileId();
+			this.entry = entry;
+		}
+
+		private Op(String fileName, String fileId) {
+			this.fileName = fileName;
+			this.fileId = fileId;
+			this.entry = null;
+		}
+
+		private JSONObject toJson() {
+			final JSONObject json = new JSONObject().put(KEY_SEQ, seq);
+			if(null == entry) {
+				return json.put(KEY_OP, OP_DELETE)
+						.put(B2ResponseProperties.KEY_FILE_NAME, fileName)
+						.put(B2ResponseProperties.KEY_FILE_ID, fileId);
+			}
+			return json.put(KEY_OP, OP_PUT).put(KEY_ENTRY, entry.toJson());
+		}
+
+		private static Op fromJson(JSONObject json) {
+			final Op op;
+			switch(json.getString(KEY_OP)) {
+				case OP_PUT:
+					op = new Op(B2InventoryEntry.fromJson(json.getJSONObject(KEY_ENTRY)));
+					break;
+				case OP_DELETE:
+					op = new Op(json.getString(B2ResponseProperties.KEY_FILE_NAME), json.getString(B2ResponseProperties.KEY_FILE_ID));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown update '" + json.getString(KEY_OP) + "'");
+			}
+			op.seq = json.getLong(KEY_SEQ);
+			return op;
+		}
+	}
+
+	/**
+	 * The index at a point in time
+	 */
+	private static class View {
+		private final IndexSegment segment;
+		private final NavigableMap<String, List<B2InventoryEntry>> overlay;
+		private final Set<String> deleted;
+
+		private View(IndexSegment segment, NavigableMap<String, List<B2InventoryEntry>> overlay, Set<String> deleted) {
+			this.segment = segment;
+			this.overlay = overlay;
+			this.deleted = deleted;
+		}
+	}
+
+	/**
+	 * Reads the versions of the files of a view with a prefix, in the order of 
+	 * their names, merging the segment with the updates
+	 */
+	private static class Cursor implements B2FileSource {
+		private final View view;
+		private final String prefix;
+		private final boolean current;
+		private final Iterator<Map.Entry<String, List<B2InventoryEntry>>> updates;
+		private final Deque<B2InventoryEntry> pending = new ArrayDeque<>();
+		private Map.Entry<String, List<B2InventoryEntry>> update = null;
+		private boolean updatesDone = false;
+		private long index;
+
+		/**
+		 * @param view the view to read
+		 * @param prefix the prefix of the file names
+		 * @param current whether to only read the current version of each file,
+		 *     rather than all of the versions
+		 */
+		private Cursor(View view, String prefix, boolean current) {
+			this.view = view;
+			this.prefix = prefix;
+			this.current = current;
+			this.updates = view.overlay.tailMap(prefix, true).entrySet().iterator();
+			this.index = view.segment.lowerBound(prefix);
+		}
+
+		private B2InventoryEntry nextEntry() {
+			while(pending.isEmpty()) {
+				String name = index < view.segment.size() ? view.segment.name(index) : null;
+				if(null != name && !name.startsWith(prefix)) {
+					index = view.segment.size();
+					name = null;
+				}
+				if(null == update && !updatesDone && updates.hasNext()) {
+					update = updates.next();
+					if(!update.getKey().startsWith(prefix)) {
+						update = null;
+						updatesDone = true;
+					}
+				}
+				if(null == name && null == update) {
+					return null;
+				}
+				if(null == name || (null != update && FileNames.compare(update.getKey(), name) < 0)) {
+					name = update.getKey();
+				}
+				final List<B2InventoryEntry> base = new ArrayList<>();
+				while(index < view.segment.size() && name.equals(view.segment.name(index))) {
+					base.add(view.segment.get(index++));
+				}
+				List<B2InventoryEntry> updated = Collections.emptyList();
+				if(null != update && name.equals(update.getKey())) {
+					updated = update.getValue();
+					update = null;
+				}
+				final List<B2InventoryEntry> versions = merge(base, updated, view.deleted);
+				if(!current) {
+					pending.addAll(versions);
+				} else if(!versions.isEmpty() && Action.upload == versions.get(0).getAction()) {
+					pending.add(versions.get(0));
+				}
+			}
+			return pending.poll();
+		}
+
+		@Override
+		public B2FileInfoResponse next() throws B2ApiException {
+			final B2InventoryEntry entry = this.nextEntry();
+			return null == entry ? null : entry.toFileInfoResponse();
+		}
+
+		@Override
+		public void close() {
+			index = view.segment.size();
+			pending.clear();
+			update = null;
+			updatesDone = true;
+		}
+	}
+}
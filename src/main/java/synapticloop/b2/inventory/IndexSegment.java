@@ -0,0 +1,375 @@
+package synapticloop.b2.inventory;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import synapticloop.b2.Action;
+
+/**
+ * An immutable, memory mapped file of index entries in the order of their 
+ * file names (and, for each name, from the newest version to the oldest, as
+ * they are listed), with a table of the offsets of the entries for a binary
+ * search by name.
+ * 
+ * The file is mapped in regions of at most 1GB, which no entry crosses, so 
+ * that files larger than 2GB can be mapped.  The layout is:
+ * 
+ * <pre>
+ * magic (int), version (int)
+ * entries, each: name, file id (UTF-8 with an unsigned short length), 
+ *     action (byte), content length (long), upload timestamp (long), 
+ *     content SHA1, large file SHA1, content type (UTF-8 with a short 
+ *     length, -1 for null)
+ * offsets of the entries (long), aligned to 8 bytes
+ * offset of the offsets (long), number of entries (long), magic (int)
+ * </pre>
+ *
+ * @author synapticloop
+ */
+class IndexSegment implements Closeable {
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final int DEFAULT_REGION_SIZE = 1 << 30;
+
+	private static final int MAGIC = 0x42324958;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int FOOTER_SIZE = 20;
+	private static final int NULL_LENGTH = 0xffff;
+
+	private final RandomAccessFile file;
+	private final long regionSize;
+	private final ByteBuffer[] regions;
+	private final long offsetsStart;
+	private final long count;
+
+	/**
+	 * Map a segment file
+	 * 
+	 * @param path the file
+	 * @param regionSize the size of the regions it was written with
+	 * 
+	 * @throws IOException if the file could not be mapped, or is not a segment
+	 */
+	IndexSegment(File path, int regionSize) throws IOException {
+		this.file = new RandomAccessFile(path, "r");
+		this.regionSize = regionSize;
+		try {
+			final long length = file.length();
+			if(length < HEADER_SIZE + FOOTER_SIZE) {
+				throw new IOException("The index segment '" + path + "' is truncated");
+			}
+			file.seek(length - FOOTER_SIZE);
+			this.offsetsStart = file.readLong();
+			this.count = file.readLong();
+			if(file.readInt() != MAGIC) {
+				throw new IOException("The index segment '" + path + "' is incomplete");
+			}
+			file.seek(0L);
+			if(file.readInt() != MAGIC || file.readInt() != VERSION) {
+				throw new IOException("The file '" + path + "' is not an index segment");
+			}
+			final FileChannel channel = file.getChannel();
+			this.regions = new ByteBuffer[(int)((length + regionSize - 1) / regionSize)];
+			for (int i = 0; i < regions.length; i++) {
+				final long position = (long)i * regionSize;
+				final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, length - position));
+				regions[i] = region;
+			}
+		} catch (IOException ex) {
+			file.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * An empty segment
+	 */
+	private IndexSegment() {
+		this.file = null;
+		this.regionSize = DEFAULT_REGION_SIZE;
+		this.regions = new ByteBuffer[0];
+		this.offsetsStart = 0L;
+		this.count = 0L;
+	}
+
+	static IndexSegment empty() {
+		return new IndexSegment();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	long size() {
+		return count;
+	}
+
+	/**
+	 * Return the index of the first entry with a name that is not before a 
+	 * name
+	 * 
+	 * @param name the name
+	 * 
+	 * @return the index of the entry, or the number of entries if all of the 
+	 *     names are before the name
+	 */
+	long lowerBound(String name) {
+		final byte[] key = name.getBytes(UTF_8);
+		long low = 0L;
+		long high = count;
+		while(low < high) {
+			final long middle = (low + high) >>> 1;
+			if(this.compareName(this.offset(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Return the name of an entry
+	 * 
+	 * @param index the index of the entry
+	 * 
+	 * @return the name
+	 */
+	String name(long index) {
+		final long offset = this.offset(index);
+		final ByteBuffer region = this.region(offset);
+		final int position = this.position(offset);
+		return string(region, position);
+	}
+
+	/**
+	 * Read an entry
+	 * 
+	 * @param index the index of the entry
+	 * 
+	 * @return the entry
+	 */
+	B2InventoryEntry get(long index) {
+		final long offset = this.offset(index);
+		final ByteBuffer region = this.region(offset);
+		int position = this.position(offset);
+		final String name = string(region, position);
+		position += length(region, position);
+		final String fileId = string(region, position);
+		position += length(region, position);
+		final int action = region.get(position);
+		position += 1;
+		final long contentLength = region.getLong(position);
+		position += 8;
+		final long uploadTimestamp = region.getLong(position);
+		position += 8;
+		final String contentSha1 = string(region, position);
+		position += length(region, position);
+		final String largeFileSha1 = string(region, position);
+		position += length(region, position);
+		final String contentType = string(region, position);
+		return new B2InventoryEntry(name, fileId, action < 0 ? null : Action.values()[action], contentLength, contentSha1, largeFileSha1, contentType, uploadTimestamp);
+	}
+
+	private long offset(long index) {
+		final long position = offsetsStart + index * 8L;
+		return this.region(position).getLong(this.position(position));
+	}
+
+	private ByteBuffer region(long offset) {
+		return regions[(int)(offset / regionSize)];
+	}
+
+	private int position(long offset) {
+		return (int)(offset % regionSize);
+	}
+
+	private int compareName(long offset, byte[] key) {
+		final ByteBuffer region = this.region(offset);
+		final int position = this.position(offset);
+		final int length = region.getShort(position) & 0xffff;
+		final int common = Math.min(length, key.length);
+		for (int i = 0; i < common; i++) {
+			final int a = region.get(position + 2 + i) & 0xff;
+			final int b = key[i] & 0xff;
+			if(a != b) {
+				return a - b;
+			}
+		}
+		return length - key.length;
+	}
+
+	private static int length(ByteBuffer region, int position) {
+		final int length = region.getShort(position) & 0xffff;
+		return 2 + (NULL_LENGTH == length ? 0 : length);
+	}
+
+	private static String string(ByteBuffer region, int position) {
+		final int length = region.getShort(position) & 0xffff;
+		if(NULL_LENGTH == length) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		final ByteBuffer duplicate = region.duplicate();
+		duplicate.position(position + 2);
+		duplicate.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(null != file) {
+			file.close();
+		}
+	}
+
+	/**
+	 * Writes a segment file, from entries in the order of their names
+	 */
+	static class Writer implements Closeable {
+		private final File path;
+		private final File offsets;
+		private final long regionSize;
+		private final FileOutputStream fileOut;
+		private final DataOutputStream out;
+		private final DataOutputStream offsetsOut;
+		private long position = 0L;
+		private long count = 0L;
+		private boolean finished = false;
+
+		Writer(File path, int regionSize) throws IOException {
+			this.path = path;
+			this.regionSize = regionSize;
+			this.offsets = new File(path.getPath() + ".offsets");
+			this.fileOut = new FileOutputStream(path);
+			this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+			this.offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsets), 64 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			position = HEADER_SIZE;
+		}
+
+		void write(B2InventoryEntry entry) throws IOException {
+			final byte[] name = bytes(entry.getFileName());
+			final byte[] fileId = bytes(entry.getFileId());
+			final byte[] contentSha1 = bytes(entry.getContentSha1());
+			final byte[] largeFileSha1 = bytes(entry.getLargeFileSha1());
+			final byte[] contentType = bytes(entry.getContentType());
+			final int length = 2 + name.length + 2 + fileId.length + 1 + 8 + 8 
+					+ 2 + (null == contentSha1 ? 0 : contentSha1.length) 
+					+ 2 + (null == largeFileSha1 ? 0 : largeFileSha1.length) 
+					+ 2 + (null == contentType ? 0 : contentType.length);
+			if(length > regionSize) {
+				throw new IOException("The entry for '" + entry.getFileName() + "' is larger than a region of the index segment");
+			}
+			if(position % regionSize + length > regionSize) {
+				// entries do not cross the regions that the file is mapped in
+				this.pad(regionSize - position % regionSize);
+			}
+			offsetsOut.writeLong(position);
+			writeBytes(name);
+			writeBytes(fileId);
+			out.writeByte(null == entry.getAction() ? -1 : entry.getAction().ordinal());
+			out.writeLong(entry.getContentLength());
+			out.writeLong(entry.getUploadTimestamp());
+			writeBytes(contentSha1);
+			writeBytes(largeFileSha1);
+			writeBytes(contentType);
+			position += length;
+			count++;
+		}
+
+		private static byte[] bytes(String value) throws IOException {
+			if(null == value) {
+				return null;
+			}
+			final byte[] bytes = value.getBytes(UTF_8);
+			if(bytes.length >= NULL_LENGTH) {
+				throw new IOException("The value is too long to index: " + value);
+			}
+			return bytes;
+		}
+
+		private void writeBytes(byte[] bytes) throws IOException {
+			if(null == bytes) {
+				out.writeShort(NULL_LENGTH);
+			} else {
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		private void pad(long length) throws IOException {
+			for (long i = 0; i < length; i++) {
+				out.write(0);
+			}
+			position += length;
+		}
+
+		/**
+		 * Append the table of offsets and the footer, and sync the file
+		 */
+		void finish() throws IOException {
+			offsetsOut.close();
+			this.pad((8 - position % 8) % 8);
+			final long offsetsStart = position;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(offsets), 64 * 1024))) {
+				for (long i = 0; i < count; i++) {
+					out.writeLong(in.readLong());
+				}
+			} catch (EOFException ex) {
+				throw new IOException("The offsets of the index segment '" + path + "' are truncated", ex);
+			}
+			out.writeLong(offsetsStart);
+			out.writeLong(count);
+			out.writeInt(MAGIC);
+			out.flush();
+			fileOut.getFD().sync();
+			finished = true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				out.close();
+				offsetsOut.close();
+			} finally {
+				Files.deleteIfExists(offsets.toPath());
+				if(!finished) {
+					Files.deleteIfExists(path.toPath());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains a local index of the file versions of a bucket, 
+ * which answers lookups by file name and prefix without calling the API
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.inventory;
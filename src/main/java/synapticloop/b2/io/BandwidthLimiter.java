@@ -0,0 +1,189 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket which limits the number of bytes per second that are 
+ * transferred through the {@link ThrottledInputStream}s, 
+ * {@link ThrottledOutputStream}s and {@link ThrottledHttpEntity}s that share
+ * it.  The rate may be changed at any time, including while transfers are 
+ * running, and a rate of {@link #UNLIMITED} disables the limiter.
+ * 
+ * Tokens are reserved with a single compare and set of the time at which the
+ * bucket will next be empty - callers that overdraw the bucket sleep (without 
+ * holding any lock) until their reservation is due.  Up to a tenth of a 
+ * second of transfer may be sent as a burst.
+ * 
+ * There are two global limiters ({@link #GLOBAL_UPLOAD} and 
+ * {@link #GLOBAL_DOWNLOAD}) which apply to all clients, each client has its own
+ * upload and download limiter, and single transfers may be limited by 
+ * wrapping the entity or stream with a limiter of their own.
+ *
+ * @author synapticloop
+ */
+public class BandwidthLimiter {
+	/**
+	 * The rate which disables the limiter
+	 */
+	public static final long UNLIMITED = 0L;
+
+	/**
+	 * Limits the upload rate of all clients, unlimited by default
+	 */
+	public static final BandwidthLimiter GLOBAL_UPLOAD = new BandwidthLimiter();
+
+	/**
+	 * Limits the download rate of all clients, unlimited by default
+	 */
+	public static final BandwidthLimiter GLOBAL_DOWNLOAD = new BandwidthLimiter();
+
+	private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private volatile long bytesPerSecond;
+
+	// the time (in nanoseconds) at which all the tokens handed out so far will have been replenished
+	private final AtomicLong replenished = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Create an unlimited bandwidth limiter
+	 */
+	public BandwidthLimiter() {
+		this(UNLIMITED);
+	}
+
+	/**
+	 * Create a bandwidth limiter
+	 * 
+	 * @param bytesPerSecond the maximum number of bytes per second, or 
+	 *     {@link #UNLIMITED}
+	 */
+	public BandwidthLimiter(long bytesPerSecond) {
+		this.setRate(bytesPerSecond);
+	}
+
+	/**
+	 * Change the maximum number of bytes per second, which takes effect 
+	 * immediately for all transfers using this limiter.
+	 * 
+	 * @param bytesPerSecond the maximum number of bytes per second, or 
+	 *     {@link #UNLIMITED} (or any value less than 1) to disable the limiter
+	 */
+	public void setRate(long bytesPerSecond) {
+		this.bytesPerSecond = Math.max(UNLIMITED, bytesPerSecond);
+		// forget the reservations made at the previous rate
+		this.replenished.set(System.nanoTime());
+	}
+
+	/**
+	 * Return the maximum number of bytes per second
+	 * 
+	 * @return the maximum number of bytes per second, or {@link #UNLIMITED}
+	 */
+	public long getRate() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Return whether this limiter limits the transfer rate
+	 * 
+	 * @return true if a rate has been set
+	 */
+	public boolean isLimited() {
+		return bytesPerSecond > UNLIMITED;
+	}
+
+	/**
+	 * Take a number of bytes from the bucket, waiting until they are available
+	 * 
+	 * @param bytes the number of bytes which are about to be transferred
+	 * 
+	 * @throws InterruptedIOException if the thread was interrupted while waiting
+	 */
+	public void acquire(long bytes) throws InterruptedIOException {
+		final long waitNanos = reserve(bytes);
+		if(waitNanos > 0L) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+			}
+		}
+	}
+
+	/**
+	 * Reserve a number of bytes from the bucket without waiting
+	 * 
+	 * @param bytes the number of bytes which are about to be transferred
+	 * 
+	 * @return the number of nanoseconds to wait before transferring the bytes
+	 */
+	long reserve(long bytes) {
+		final long rate = bytesPerSecond;
+		if(rate <= UNLIMITED || bytes <= 0L) {
+			return 0L;
+		}
+		final long cost = (long)(bytes * (double)TimeUnit.SECONDS.toNanos(1) / rate);
+		while(true) {
+			final long now = System.nanoTime();
+			final long current = replenished.get();
+			// an idle bucket is full, but holds no more than the burst
+			final long from = current - now < 0L ? now : current;
+			final long next = from + cost;
+			if(replenished.compareAndSet(current, next)) {
+				return next - BURST_NANOS - now;
+			}
+		}
+	}
+
+	/**
+	 * Return whether any of the limiters limit the transfer rate
+	 * 
+	 * @param limiters the limiters, any of which may be null
+	 * 
+	 * @return true if any of the limiters has a rate set
+	 */
+	static boolean isLimited(BandwidthLimiter[] limiters) {
+		for (BandwidthLimiter limiter : limiters) {
+			if(null != limiter && limiter.isLimited()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Acquire the bytes from each of the limiters in turn
+	 * 
+	 * @param limiters the limiters, any of which may be null
+	 * @param bytes the number of bytes which are about to be transferred
+	 * 
+	 * @throws InterruptedIOException if the thread was interrupted while waiting
+	 */
+	static void acquire(BandwidthLimiter[] limiters, long bytes) throws InterruptedIOException {
+		for (BandwidthLimiter limiter : limiters) {
+			if(null != limiter) {
+				limiter.acquire(bytes);
+			}
+		}
+	}
+}
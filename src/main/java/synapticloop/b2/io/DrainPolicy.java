@@ -0,0 +1,111 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether the rest of a download that is closed before it has been 
+ * read to the end is read and discarded (so that the connection can be reused)
+ * or the connection is aborted (so that a new connection, and TLS handshake, 
+ * is needed for the next request).
+ * 
+ * The rest is drained when it is no more than the byte threshold, or when at
+ * the rate the download has been read so far it can be read within the time
+ * budget.  Draining always stops (and the connection is aborted) once the time
+ * budget has been used up.
+ *
+ * @author synapticloop
+ */
+public class DrainPolicy {
+	public static final long DEFAULT_MAX_DRAIN_BYTES = 64L * 1024L;
+	public static final long DEFAULT_MAX_DRAIN_MILLIS = 100L;
+
+	/**
+	 * Drains up to 64 KiB, or as much as can be read in 100 milliseconds
+	 */
+	public static final DrainPolicy DEFAULT = new DrainPolicy(DEFAULT_MAX_DRAIN_BYTES, DEFAULT_MAX_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+
+	/**
+	 * Never drains, the connection is always aborted
+	 */
+	public static final DrainPolicy ABORT = new DrainPolicy(0L, 0L, TimeUnit.MILLISECONDS);
+
+	private final long maxDrainBytes;
+	private final long maxDrainNanos;
+
+	/**
+	 * Create a drain policy
+	 * 
+	 * @param maxDrainBytes drain the rest of the download if it is no more than
+	 *     this number of bytes
+	 * @param maxDrainTime drain the rest of the download if it can be read 
+	 *     within this time, and stop draining once it has passed
+	 * @param unit the unit of the time
+	 */
+	public DrainPolicy(long maxDrainBytes, long maxDrainTime, TimeUnit unit) {
+		this.maxDrainBytes = Math.max(0L, maxDrainBytes);
+		this.maxDrainNanos = Math.max(0L, unit.toNanos(maxDrainTime));
+	}
+
+	/**
+	 * Return the number of bytes to drain from a download
+	 * 
+	 * @param remaining the number of bytes that have not been read, or -1 if 
+	 *     not known (i.e. there was no content length)
+	 * @param bytesRead the number of bytes read so far
+	 * @param elapsedNanos the time since the download started
+	 * 
+	 * @return the maximum number of bytes to drain, or 0 if the connection 
+	 *     should be aborted
+	 */
+	public long getDrainLimit(long remaining, long bytesRead, long elapsedNanos) {
+		if(maxDrainNanos == 0L) {
+			return 0L;
+		}
+		if(remaining < 0L) {
+			return maxDrainBytes;
+		}
+		if(remaining <= maxDrainBytes) {
+			return remaining;
+		}
+		if(bytesRead > 0L && elapsedNanos > 0L) {
+			final double estimatedNanos = remaining * (double)elapsedNanos / bytesRead;
+			if(estimatedNanos <= maxDrainNanos) {
+				return remaining;
+			}
+		}
+		return 0L;
+	}
+
+	/**
+	 * Get the maximum number of bytes that are always drained
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getMaxDrainBytes() { return this.maxDrainBytes; }
+
+	/**
+	 * Get the maximum time spent draining
+	 * 
+	 * @param unit the unit of the time
+	 * 
+	 * @return the time
+	 */
+	public long getMaxDrainTime(TimeUnit unit) { return unit.convert(this.maxDrainNanos, TimeUnit.NANOSECONDS); }
+}
@@ -0,0 +1,92 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A repeatable HTTP entity with the content of a range of a file, for the 
+ * upload of a part of a large file.
+ *
+ * @author synapticloop
+ */
+public class FileRangeEntity extends AbstractHttpEntity {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final long offset;
+	private final long length;
+
+	/**
+	 * Create an entity with a range of a file
+	 * 
+	 * @param file the file
+	 * @param offset the offset of the first byte of the range
+	 * @param length the number of bytes in the range
+	 */
+	public FileRangeEntity(File file, long offset, long length) {
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			IOUtils.skipFully(in, offset);
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+		return new BoundedInputStream(in, length);
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		try (InputStream in = this.getContent()) {
+			final long copied = IOUtils.copyLarge(in, outstream, new byte[BUFFER_SIZE]);
+			if(copied != length) {
+				throw new IOException("Expected " + length + " bytes from offset " + offset + " of '" + file + "', but read " + copied);
+			}
+		}
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
@@ -23,15 +23,23 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import synapticloop.b2.metrics.B2FlightRecorder;
+import synapticloop.b2.response.B2ResponseHeaders;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 public class HttpMethodReleaseInputStream extends CountingInputStream {
 	private static final Logger LOGGER = LoggerFactory.getLogger(HttpMethodReleaseInputStream.class);
 
 	private HttpResponse response;
+	private DrainPolicy drainPolicy;
+	private Object event;
+	private final long start = System.nanoTime();
 
 	/**
-	 * Create a HTTP method release input Stream
+	 * Create a HTTP method release input Stream, with the default drain policy
 	 * 
 	 * @param response The HTTP response to read from
 	 * 
@@ -39,12 +47,30 @@ public class HttpMethodReleaseInputStream extends CountingInputStream {
 	 * @throws NullPointerException If the response has no message entity
 	 */
 	public HttpMethodReleaseInputStream(final HttpResponse response) throws IOException {
+		this(response, DrainPolicy.DEFAULT);
+	}
+
+	/**
+	 * Create a HTTP method release input Stream
+	 * 
+	 * @param response The HTTP response to read from
+	 * @param drainPolicy decides whether the rest of the content is drained 
+	 *     when the stream is closed early
+	 * 
+	 * @throws IOException If there is a problem reading from the response
+	 * @throws NullPointerException If the response has no message entity
+	 */
+	public HttpMethodReleaseInputStream(final HttpResponse response, DrainPolicy drainPolicy) throws IOException {
 		super(response.getEntity().getContent());
 		this.response = response;
+		this.drainPolicy = drainPolicy;
+		this.event = B2FlightRecorder.TRANSFER.begin();
 	}
 
 	/**
-	 * This will force close the connection if the content has not been fully consumed
+	 * This will force close the connection if the content has not been fully 
+	 * consumed, unless the drain policy allows the rest of the content to be
+	 * read so that the connection may be reused.
 	 *
 	 * @throws IOException if an I/O error occurs
 	 * @see CloseableHttpResponse#close()
@@ -54,9 +80,14 @@ public class HttpMethodReleaseInputStream extends CountingInputStream {
 	public void close() throws IOException {
 		if(response instanceof CloseableHttpResponse) {
 			long read = this.getByteCount();
-			if(read == response.getEntity().getContentLength()) {
+			long contentLength = response.getEntity().getContentLength();
+			if(read == contentLength) {
 				// Fully consumed
 				super.close();
+				this.transferred(B2FlightRecorder.OUTCOME_SUCCESS);
+			} else if(this.drain(contentLength < 0L ? -1L : contentLength - read)) {
+				super.close();
+				this.transferred(B2FlightRecorder.OUTCOME_ABORTED);
 			} else {
 				LOGGER.warn("Abort connection for response '{}'", response);
 				// Close an HTTP response as quickly as possible, avoiding consuming
@@ -64,10 +95,83 @@ public class HttpMethodReleaseInputStream extends CountingInputStream {
 				// connections unavailable for reuse.
 				// The response proxy will force close the connection.
 				((CloseableHttpResponse) response).close();
+				MeteredInputStream.abandon(in);
+				this.transferred(B2FlightRecorder.OUTCOME_ABORTED);
 			}
 		} else {
 			// Consume and close
 			super.close();
+			this.transferred(B2FlightRecorder.OUTCOME_SUCCESS);
+		}
+	}
+
+	/**
+	 * Read and discard the rest of the content, if the drain policy allows it.
+	 * The content is read from beneath any throttled or progress streams, so 
+	 * that draining is neither held back by a bandwidth limiter nor reported 
+	 * as progress.
+	 * 
+	 * @param remaining the number of bytes not read, or -1 if not known
+	 * 
+	 * @return true if the end of the content was reached
+	 */
+	private boolean drain(long remaining) {
+		final long limit = drainPolicy.getDrainLimit(remaining, this.getByteCount(), System.nanoTime() - start);
+		if(limit <= 0L) {
+			return false;
+		}
+		final long deadline = System.nanoTime() + drainPolicy.getMaxDrainTime(TimeUnit.NANOSECONDS);
+		final InputStream content = unwrap(in);
+		final byte[] buffer = new byte[(int)Math.min(8192L, limit + 1L)];
+		long drained = 0L;
+		try {
+			int length;
+			while((length = content.read(buffer)) != -1) {
+				drained += length;
+				if(drained > limit || System.nanoTime() - deadline > 0L) {
+					return false;
+				}
+			}
+			LOGGER.debug("Drained {} bytes for response '{}'", drained, response);
+			return true;
+		} catch (IOException ex) {
+			LOGGER.debug("Could not drain response '{}'", response, ex);
+			return false;
+		}
+	}
+
+	/**
+	 * Return the stream underneath the throttled and progress streams that 
+	 * wrap the response content
+	 * 
+	 * @param in the content stream
+	 * 
+	 * @return the unthrottled content stream
+	 */
+	private static InputStream unwrap(InputStream in) {
+		InputStream content = in;
+		while(true) {
+			if(content instanceof ThrottledInputStream) {
+				content = ((ThrottledInputStream)content).getWrapped();
+			} else if(content instanceof ProgressInputStream) {
+				content = ((ProgressInputStream)content).getWrapped();
+			} else {
+				return content;
+			}
+		}
+	}
+
+	/**
+	 * Commit the flight recorder event for this download, if it was started
+	 * 
+	 * @param outcome the outcome of the download
+	 */
+	private void transferred(String outcome) {
+		if(null != event) {
+			B2FlightRecorder.TRANSFER.commit(event, B2FlightRecorder.DIRECTION_DOWNLOAD, 
+					response.containsHeader(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME) ? response.getFirstHeader(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME).getValue() : null, 
+					this.getByteCount(), response.getEntity().getContentLength(), outcome);
+			event = null;
 		}
 	}
 }
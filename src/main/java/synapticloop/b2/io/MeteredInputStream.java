@@ -0,0 +1,132 @@
+package synapticloop.b2.io;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * An input stream which counts the bytes read and notifies a listener exactly
+ * once, when the end of the stream is reached, the stream is closed or 
+ * abandoned, or a read fails.
+ *
+ * @author synapticloop
+ */
+public class MeteredInputStream extends ProxyInputStream {
+
+	/**
+	 * Notified once the stream has been completed
+	 */
+	public interface Listener {
+		/**
+		 * Called once when the stream is completed
+		 * 
+		 * @param bytesRead the number of bytes read from the stream
+		 * @param failure the error that completed the stream, or null
+		 */
+		void streamCompleted(long bytesRead, IOException failure);
+	}
+
+	private final Listener listener;
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+
+	private long bytesRead = 0L;
+
+	/**
+	 * Create a new metered input stream
+	 * 
+	 * @param in the stream to read from
+	 * @param listener the listener to notify on completion
+	 */
+	public MeteredInputStream(InputStream in, Listener listener) {
+		super(in);
+		this.listener = listener;
+	}
+
+	@Override
+	protected void afterRead(int n) throws IOException {
+		if(n == -1) {
+			complete(null);
+		} else {
+			bytesRead += n;
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	@Override
+	protected void handleIOException(IOException ex) throws IOException {
+		complete(ex);
+		throw ex;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			complete(null);
+		}
+	}
+
+	/**
+	 * Complete the stream without closing the underlying stream, this is used 
+	 * when the underlying connection has been aborted.
+	 */
+	public void abandon() {
+		complete(null);
+	}
+
+	/**
+	 * Abandon the metered stream underneath a stream, looking through the 
+	 * throttled and progress streams that wrap it
+	 * 
+	 * @param in the stream, which may be (or wrap) a metered stream
+	 */
+	static void abandon(InputStream in) {
+		if(in instanceof MeteredInputStream) {
+			((MeteredInputStream)in).abandon();
+		} else if(in instanceof ThrottledInputStream) {
+			((ThrottledInputStream)in).abandon();
+		} else if(in instanceof ProgressInputStream) {
+			((ProgressInputStream)in).abandon();
+		}
+	}
+
+	/**
+	 * Return the number of bytes read so far
+	 * 
+	 * @return the number of bytes read
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	private void complete(IOException failure) {
+		if(completed.compareAndSet(false, true)) {
+			listener.streamCompleted(bytesRead, failure);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * An HTTP entity which reports the bytes written (for uploads) or read (for 
+ * downloads) to a {@link ProgressTracker}.  The tracker of an upload is 
+ * completed once the entity has been written.
+ *
+ * @author synapticloop
+ */
+public class ProgressHttpEntity extends HttpEntityWrapper {
+	private final ProgressTracker tracker;
+
+	private InputStream content;
+
+	/**
+	 * Create a progress entity
+	 * 
+	 * @param wrappedEntity the entity to report the progress of
+	 * @param tracker the tracker to report the bytes transferred to
+	 */
+	public ProgressHttpEntity(HttpEntity wrappedEntity, ProgressTracker tracker) {
+		super(wrappedEntity);
+		this.tracker = tracker;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if(null == content || wrappedEntity.isRepeatable()) {
+			final InputStream wrapped = wrappedEntity.getContent();
+			content = null == wrapped ? null : new ProgressInputStream(wrapped, tracker);
+		}
+		return content;
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		// a retried request writes the entity again
+		tracker.reset();
+		wrappedEntity.writeTo(new ProxyOutputStream(outstream) {
+			@Override
+			protected void afterWrite(int n) {
+				tracker.update(n);
+			}
+		});
+		tracker.complete();
+	}
+
+	/**
+	 * Return the tracker of this entity
+	 * 
+	 * @return the tracker
+	 */
+	public ProgressTracker getTracker() {
+		return tracker;
+	}
+}
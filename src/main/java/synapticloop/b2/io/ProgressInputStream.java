@@ -0,0 +1,86 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * An input stream which reports the bytes read to a {@link ProgressTracker},
+ * completing the tracker when the end of the stream is reached.
+ *
+ * @author synapticloop
+ */
+public class ProgressInputStream extends ProxyInputStream {
+	private final ProgressTracker tracker;
+
+	/**
+	 * Create a progress input stream
+	 * 
+	 * @param in the stream to read from
+	 * @param tracker the tracker to report the bytes read to
+	 */
+	public ProgressInputStream(InputStream in, ProgressTracker tracker) {
+		super(in);
+		this.tracker = tracker;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		final long skipped = super.skip(n);
+		tracker.update(skipped);
+		return skipped;
+	}
+
+	@Override
+	protected void afterRead(int n) throws IOException {
+		if(n == -1) {
+			tracker.complete();
+		} else {
+			tracker.update(n);
+		}
+	}
+
+	/**
+	 * Abandon the stream that this stream reads from, without closing it, 
+	 * when the underlying connection has been aborted
+	 */
+	public void abandon() {
+		MeteredInputStream.abandon(in);
+	}
+
+	/**
+	 * Return the stream that this stream reads from
+	 * 
+	 * @return the wrapped stream
+	 */
+	InputStream getWrapped() {
+		return in;
+	}
+
+	/**
+	 * Return the tracker of this stream
+	 * 
+	 * @return the tracker
+	 */
+	public ProgressTracker getTracker() {
+		return tracker;
+	}
+}
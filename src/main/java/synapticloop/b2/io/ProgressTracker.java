@@ -0,0 +1,222 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import synapticloop.b2.io.TransferProgress.Direction;
+
+/**
+ * Tracks the number of bytes transferred for an upload or a download and 
+ * notifies a {@link TransferProgressListener} each time a number of bytes 
+ * (the granularity) has been transferred, or an interval has passed with bytes
+ * transferred - counting each read or write costs an atomic add and a 
+ * comparison, the time is only looked at every 64 KiB.
+ * 
+ * The parts of a large file are tracked by the trackers returned from 
+ * {@link #newPart(String, long)}, which add their bytes to this tracker, so 
+ * that the progress of the whole file is reported.  A part that fails is 
+ * {@link #reset()} before it is retried.
+ * 
+ * The tracker may be updated from several threads, and polled through 
+ * {@link #getProgress()}, e.g. to find transfers that have stalled.
+ *
+ * @author synapticloop
+ */
+public class ProgressTracker {
+	public static final long DEFAULT_GRANULARITY_BYTES = 1024L * 1024L;
+	public static final long DEFAULT_INTERVAL_MILLIS = 1000L;
+
+	private static final long TIME_CHECK_MASK = ~(64L * 1024L - 1L);
+	private static final double RATE_SMOOTHING = 0.3d;
+
+	private final String name;
+	private final Direction direction;
+	private final long totalBytes;
+	private final TransferProgressListener listener;
+	private final long granularityBytes;
+	private final long intervalNanos;
+	private final ProgressTracker parent;
+
+	private final AtomicLong transferred = new AtomicLong();
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private final long start = System.nanoTime();
+
+	private volatile long lastActivity = start;
+	private volatile long nextNotificationBytes;
+	private volatile long nextNotificationNanos;
+
+	// guarded by this, only updated when notifying
+	private long lastNotificationBytes = 0L;
+	private long lastNotificationNanos = start;
+	private double bytesPerSecond = 0d;
+
+	/**
+	 * Create a tracker which notifies at the default granularity (every MiB, 
+	 * or every second)
+	 * 
+	 * @param name the name of the transfer, e.g. the file name
+	 * @param direction whether this is an upload or a download
+	 * @param totalBytes the total number of bytes, or -1 if not known
+	 * @param listener the listener to notify, or null to only poll
+	 */
+	public ProgressTracker(String name, Direction direction, long totalBytes, TransferProgressListener listener) {
+		this(name, direction, totalBytes, listener, DEFAULT_GRANULARITY_BYTES, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Create a tracker
+	 * 
+	 * @param name the name of the transfer, e.g. the file name
+	 * @param direction whether this is an upload or a download
+	 * @param totalBytes the total number of bytes, or -1 if not known
+	 * @param listener the listener to notify, or null to only poll
+	 * @param granularityBytes notify each time this number of bytes has been 
+	 *     transferred
+	 * @param intervalMillis notify when this number of milliseconds has 
+	 *     passed since the last notification (and bytes were transferred)
+	 */
+	public ProgressTracker(String name, Direction direction, long totalBytes, TransferProgressListener listener, long granularityBytes, long intervalMillis) {
+		this(name, direction, totalBytes, listener, granularityBytes, intervalMillis, null);
+	}
+
+	private ProgressTracker(String name, Direction direction, long totalBytes, TransferProgressListener listener, long granularityBytes, long intervalMillis, ProgressTracker parent) {
+		this.name = name;
+		this.direction = direction;
+		this.totalBytes = totalBytes;
+		this.listener = listener;
+		this.granularityBytes = Math.max(1L, granularityBytes);
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.parent = parent;
+		this.nextNotificationBytes = this.granularityBytes;
+		this.nextNotificationNanos = start + intervalNanos;
+	}
+
+	/**
+	 * Create a tracker for a part of this transfer (e.g. a part of a large 
+	 * file), the bytes transferred for the part are added to this tracker.
+	 * The part does not notify a listener of its own.
+	 * 
+	 * @param partName the name of the part
+	 * @param partBytes the number of bytes in the part, or -1 if not known
+	 * 
+	 * @return the tracker for the part
+	 */
+	public ProgressTracker newPart(String partName, long partBytes) {
+		return new ProgressTracker(partName, direction, partBytes, null, granularityBytes, TimeUnit.NANOSECONDS.toMillis(intervalNanos), this);
+	}
+
+	/**
+	 * Record that bytes have been transferred
+	 * 
+	 * @param bytes the number of bytes
+	 */
+	public void update(long bytes) {
+		if(bytes <= 0L) {
+			return;
+		}
+		final long total = transferred.addAndGet(bytes);
+		if(null != parent) {
+			parent.update(bytes);
+		}
+		if(null == listener) {
+			if(((total - bytes) & TIME_CHECK_MASK) != (total & TIME_CHECK_MASK)) {
+				lastActivity = System.nanoTime();
+			}
+			return;
+		}
+		if(total >= nextNotificationBytes) {
+			this.notifyListener(total, System.nanoTime(), false);
+		} else if(((total - bytes) & TIME_CHECK_MASK) != (total & TIME_CHECK_MASK)) {
+			final long now = System.nanoTime();
+			lastActivity = now;
+			if(now - nextNotificationNanos >= 0L) {
+				this.notifyListener(total, now, false);
+			}
+		}
+	}
+
+	/**
+	 * Forget the bytes transferred so far (also removing them from the 
+	 * tracker of the whole transfer), so that a failed part may be retried.
+	 */
+	public void reset() {
+		final long bytes = transferred.getAndSet(0L);
+		for (ProgressTracker tracker = parent; null != tracker; tracker = tracker.parent) {
+			tracker.transferred.addAndGet(-bytes);
+		}
+		synchronized (this) {
+			lastNotificationBytes = 0L;
+			nextNotificationBytes = granularityBytes;
+		}
+	}
+
+	/**
+	 * Mark the transfer as complete, notifying the listener for the last time
+	 */
+	public void complete() {
+		if(completed.compareAndSet(false, true)) {
+			this.notifyListener(transferred.get(), System.nanoTime(), true);
+		}
+	}
+
+	/**
+	 * Return the progress of the transfer
+	 * 
+	 * @return the current progress
+	 */
+	public TransferProgress getProgress() {
+		final long now = System.nanoTime();
+		synchronized (this) {
+			return this.progress(transferred.get(), now);
+		}
+	}
+
+	private TransferProgress progress(long bytes, long now) {
+		final long active = Math.max(lastActivity, lastNotificationNanos);
+		final long rate = bytesPerSecond > 0d ? (long)bytesPerSecond : 
+			now == start ? 0L : (long)(bytes * (double)TimeUnit.SECONDS.toNanos(1) / (now - start));
+		return new TransferProgress(name, direction, bytes, totalBytes, rate, now - start, Math.max(0L, now - active), completed.get());
+	}
+
+	private void notifyListener(long bytes, long now, boolean complete) {
+		final TransferProgress progress;
+		synchronized (this) {
+			if(!complete && bytes < nextNotificationBytes && now - nextNotificationNanos < 0L) {
+				// another thread has already notified for these bytes
+				return;
+			}
+			final long elapsed = now - lastNotificationNanos;
+			if(elapsed > 0L && bytes > lastNotificationBytes) {
+				final double rate = (bytes - lastNotificationBytes) * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+				bytesPerSecond = bytesPerSecond == 0d ? rate : (1d - RATE_SMOOTHING) * bytesPerSecond + RATE_SMOOTHING * rate;
+			}
+			lastNotificationBytes = bytes;
+			lastNotificationNanos = now;
+			lastActivity = now;
+			nextNotificationBytes = bytes + granularityBytes;
+			nextNotificationNanos = now + intervalNanos;
+			progress = this.progress(bytes, now);
+		}
+		if(null != listener) {
+			listener.progressed(progress);
+		}
+	}
+}
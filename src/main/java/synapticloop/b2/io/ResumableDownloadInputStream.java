@@ -0,0 +1,216 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2DownloadFileResponse;
+
+/**
+ * An input stream over the content of a downloaded file which survives the
+ * loss of the connection part way through the body.  When reading fails with
+ * an I/O error, or the content ends early, the rest of the file is requested
+ * again with a ranged GET starting at the current offset, and reading 
+ * continues from the new response, so that the caller sees one continuous
+ * stream.
+ * 
+ * Before continuing, the file id and the SHA1 of the new response are 
+ * checked against the original response, so that the content of a file that
+ * was replaced in the meantime is never mixed into the stream.  The number of
+ * resumes is capped, after which the error is thrown to the caller.
+ *
+ * @author synapticloop
+ */
+public class ResumableDownloadInputStream extends InputStream {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResumableDownloadInputStream.class);
+
+	public static final int DEFAULT_MAX_RESUMES = 5;
+
+	/**
+	 * Requests the rest of a file, from an offset to the end of the file
+	 */
+	public interface RangeOpener {
+		/**
+		 * Download a file from an offset to the end of the file
+		 * 
+		 * @param fileId the id of the file
+		 * @param rangeStart the offset of the first byte to download
+		 * 
+		 * @return the download response
+		 * 
+		 * @throws B2ApiException if the file could not be downloaded
+		 * @throws IOException if there was an error communicating with the API service
+		 */
+		B2DownloadFileResponse open(String fileId, long rangeStart) throws B2ApiException, IOException;
+	}
+
+	private final RangeOpener opener;
+	private final int maxResumes;
+	private final String fileId;
+	private final String contentSha1;
+	private final long contentLength;
+
+	private InputStream in;
+	private long offset = 0L;
+	private int resumes = 0;
+	private boolean closed = false;
+
+	/**
+	 * Create a resumable stream over the content of a complete (i.e. not a 
+	 * range) download, allowing up to {@link #DEFAULT_MAX_RESUMES} resumes
+	 * 
+	 * @param response the response of the download of the whole file
+	 * @param opener requests the rest of the file when the connection is lost
+	 */
+	public ResumableDownloadInputStream(B2DownloadFileResponse response, RangeOpener opener) {
+		this(response, opener, DEFAULT_MAX_RESUMES);
+	}
+
+	/**
+	 * Create a resumable stream over the content of a complete (i.e. not a 
+	 * range) download
+	 * 
+	 * @param response the response of the download of the whole file
+	 * @param opener requests the rest of the file when the connection is lost
+	 * @param maxResumes the maximum number of times that the download is 
+	 *     resumed before the error is thrown to the caller
+	 */
+	public ResumableDownloadInputStream(B2DownloadFileResponse response, RangeOpener opener, int maxResumes) {
+		if(maxResumes < 0) {
+			throw new IllegalArgumentException("The maximum number of resumes must not be negative");
+		}
+		this.opener = opener;
+		this.maxResumes = maxResumes;
+		this.fileId = response.getFileId();
+		this.contentSha1 = response.getContentSha1();
+		this.contentLength = response.getContentLength();
+		this.in = response.getContent();
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] single = new byte[1];
+		final int length = this.read(single, 0, 1);
+		return -1 == length ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(closed) {
+			throw new IOException("Stream closed");
+		}
+		if(0 == len) {
+			return 0;
+		}
+		while(true) {
+			try {
+				final int length = in.read(b, off, len);
+				if(-1 == length) {
+					if(offset >= contentLength) {
+						return -1;
+					}
+					throw new IOException("Premature end of content at byte " + offset + " of " + contentLength + " for file '" + fileId + "'");
+				}
+				offset += length;
+				return length;
+			} catch (IOException ex) {
+				this.resume(ex);
+			}
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		if(closed) {
+			return 0;
+		}
+		try {
+			return in.available();
+		} catch (IOException ex) {
+			return 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			in.close();
+		}
+	}
+
+	/**
+	 * Abandon the current response and request the rest of the file from the
+	 * current offset, until a response is received or the maximum number of 
+	 * resumes has been reached
+	 * 
+	 * @param cause the error reading the current response
+	 * 
+	 * @throws IOException the last error, if the download could not be resumed
+	 */
+	private void resume(IOException cause) throws IOException {
+		IOUtils.closeQuietly(in);
+		IOException last = cause;
+		while(resumes < maxResumes) {
+			resumes++;
+			LOGGER.warn("Resuming download of file '{}' at byte {} of {} ({} of {} resumes), after: {}", fileId, offset, contentLength, resumes, maxResumes, last.getMessage());
+			final B2DownloadFileResponse response;
+			try {
+				response = opener.open(fileId, offset);
+			} catch (B2ApiException ex) {
+				throw new IOException("Could not resume download of file '" + fileId + "' at byte " + offset, ex);
+			} catch (IOException ex) {
+				last = ex;
+				continue;
+			}
+			if(!fileId.equals(response.getFileId()) 
+					|| !contentSha1.equals(response.getContentSha1()) 
+					|| response.getContentLength() != contentLength - offset) {
+				IOUtils.closeQuietly(response.getContent());
+				throw new IOException("Could not resume download of file '" + fileId + "' at byte " + offset + ", the file has changed");
+			}
+			in = response.getContent();
+			return;
+		}
+		throw last;
+	}
+
+	/**
+	 * Return the number of times that the download has been resumed
+	 * 
+	 * @return the number of resumes
+	 */
+	public int getResumeCount() {
+		return resumes;
+	}
+
+	/**
+	 * Return the number of bytes that have been read from the stream
+	 * 
+	 * @return the offset of the next byte in the file
+	 */
+	public long getOffset() {
+		return offset;
+	}
+}
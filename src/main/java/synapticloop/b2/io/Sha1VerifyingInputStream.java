@@ -0,0 +1,201 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+import synapticloop.b2.metrics.B2FlightRecorder;
+import synapticloop.b2.response.B2DownloadFileResponse;
+
+/**
+ * An input stream which calculates the SHA1 of the content as it is read, 
+ * and throws an {@link IOException} when the end of the stream is reached if
+ * it does not match the expected SHA1, so that the content of a download is
+ * verified without reading it a second time.
+ * 
+ * The caller must not act on the content (e.g. rename a downloaded file into
+ * place) until the end of the stream has been read without an error.
+ *
+ * @author synapticloop
+ */
+public class Sha1VerifyingInputStream extends ProxyInputStream {
+	public static final String LARGE_FILE_SHA1 = "large_file_sha1";
+
+	private static final String NONE = "none";
+	private static final int SKIP_BUFFER_SIZE = 8192;
+
+	private final String expectedSha1;
+	private final String name;
+	private final MessageDigest digest;
+	private final Object event;
+
+	private long size = 0L;
+	private boolean complete = false;
+	private boolean verified = false;
+
+	/**
+	 * Create a stream which verifies the content of a download against the 
+	 * SHA1 of the file, which for a large file is taken from the 
+	 * 'large_file_sha1' file info.  The content is not verified if only a 
+	 * range of the file was downloaded, or the SHA1 of the file is not known.
+	 * 
+	 * @param in the content of the download
+	 * @param response the response of the download
+	 */
+	public Sha1VerifyingInputStream(InputStream in, B2DownloadFileResponse response) {
+		this(in, getExpectedSha1(response), response.getFileName());
+	}
+
+	/**
+	 * Create a stream which verifies the content against a SHA1
+	 * 
+	 * @param in the stream to read from
+	 * @param expectedSha1 the expected SHA1 of the content, or null to not
+	 *     verify the content
+	 * @param name the name of the content, for the error message
+	 */
+	public Sha1VerifyingInputStream(InputStream in, String expectedSha1, String name) {
+		super(in);
+		this.expectedSha1 = expectedSha1;
+		this.name = name;
+		if(null == expectedSha1) {
+			this.digest = null;
+			this.event = null;
+		} else {
+			try {
+				this.digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException ex) {
+				throw new IllegalStateException(ex);
+			}
+			this.event = B2FlightRecorder.CHECKSUM.begin();
+		}
+	}
+
+	/**
+	 * Return the SHA1 that the content of a download can be verified against
+	 * 
+	 * @param response the response of the download
+	 * 
+	 * @return the SHA1 of the file, or null if only a range of the file was 
+	 *     downloaded, or the SHA1 of the file is not known
+	 */
+	public static String getExpectedSha1(B2DownloadFileResponse response) {
+		if(response.isPartial()) {
+			return null;
+		}
+		String sha1 = response.getContentSha1();
+		if(null == sha1 || NONE.equals(sha1)) {
+			sha1 = response.getFileInfo().get(LARGE_FILE_SHA1);
+		}
+		return null == sha1 || NONE.equals(sha1) ? null : sha1;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = super.read();
+		if(-1 != b && null != digest) {
+			digest.update((byte)b);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return this.read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int length = super.read(b, off, len);
+		if(length > 0 && null != digest) {
+			digest.update(b, off, length);
+		}
+		return length;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if(null == digest) {
+			return super.skip(n);
+		}
+		// skipped bytes must still be part of the digest
+		final byte[] buffer = new byte[(int)Math.min(SKIP_BUFFER_SIZE, Math.max(n, 1L))];
+		long skipped = 0L;
+		while(skipped < n) {
+			final int length = this.read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+			if(-1 == length) {
+				break;
+			}
+			skipped += length;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	protected void afterRead(int n) throws IOException {
+		if(n > 0) {
+			size += n;
+		} else if(-1 == n) {
+			this.verify();
+		}
+	}
+
+	/**
+	 * Compare the SHA1 of the content with the expected SHA1, once the end of
+	 * the stream has been reached
+	 * 
+	 * @throws IOException if the SHA1 does not match
+	 */
+	private void verify() throws IOException {
+		if(null == digest || complete) {
+			return;
+		}
+		complete = true;
+		final String actual = new HexBinaryAdapter().marshal(digest.digest());
+		final boolean matches = actual.equalsIgnoreCase(expectedSha1);
+		verified = matches;
+		if(null != event) {
+			B2FlightRecorder.CHECKSUM.commit(event, "SHA-1", size, matches ? B2FlightRecorder.OUTCOME_SUCCESS : B2FlightRecorder.OUTCOME_FAILURE);
+		}
+		if(!matches) {
+			throw new IOException("SHA1 mismatch for '" + name + "', expected " + expectedSha1 + " but the content has " + actual.toLowerCase());
+		}
+	}
+
+	/**
+	 * Return whether the content has been read to the end and matched the 
+	 * expected SHA1
+	 * 
+	 * @return true if the content has been verified
+	 */
+	public boolean isVerified() {
+		return verified;
+	}
+}
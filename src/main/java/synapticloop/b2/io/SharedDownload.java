@@ -0,0 +1,242 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.response.B2DownloadFileResponse;
+
+/**
+ * Shares the content of one download between several callers, by teeing the
+ * content into a buffer as it is read.  Each caller opens its own response,
+ * whose content stream reads from the buffer at its own position - the 
+ * caller that is furthest ahead reads the next bytes from the connection 
+ * into the buffer, while the others read the bytes that are already 
+ * buffered without waiting.
+ * 
+ * The content is only shared if its length is at most the maximum size of 
+ * the buffer, otherwise the response is returned to the first caller that
+ * opens it.  The connection is released once all of the content has been 
+ * read, or once all of the callers have closed their streams before then - 
+ * after which a caller can no longer open the response.
+ *
+ * @author synapticloop
+ */
+public class SharedDownload {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SharedDownload.class);
+
+	/**
+	 * The default maximum size of the content which is shared, 8 MiB
+	 */
+	public static final long DEFAULT_MAX_SIZE = 8L * 1024L * 1024L;
+
+	private final B2DownloadFileResponse response;
+	private final InputStream upstream;
+	private final byte[] buffer;
+
+	private int filled = 0;
+	private boolean filling = false;
+	private boolean complete = false;
+	private IOException failure;
+	private int readers = 0;
+	private boolean released = false;
+
+	/**
+	 * Create a shared download of the content of a response
+	 * 
+	 * @param response the response of the download
+	 * @param maxSize the maximum length of the content that is shared
+	 */
+	public SharedDownload(B2DownloadFileResponse response, long maxSize) {
+		this.response = response;
+		this.upstream = response.getContent();
+		final Long contentLength = response.getContentLength();
+		if(null != contentLength && contentLength <= Math.min(maxSize, Integer.MAX_VALUE)) {
+			this.buffer = new byte[contentLength.intValue()];
+			if(this.buffer.length == 0) {
+				this.complete = true;
+				IOUtils.closeQuietly(upstream);
+			}
+		} else {
+			this.buffer = null;
+		}
+	}
+
+	/**
+	 * Return whether the content is shared between the callers that open the
+	 * response
+	 * 
+	 * @return whether the content is shared
+	 */
+	public boolean isShared() { return null != buffer; }
+
+	/**
+	 * Open the response for a caller, with its own content stream that must 
+	 * be closed by the caller
+	 * 
+	 * @return the response, or null if the content is no longer available, 
+	 *     in which case the caller must download the file itself
+	 */
+	public synchronized B2DownloadFileResponse open() {
+		if(released) {
+			return null;
+		}
+		if(null == buffer) {
+			released = true;
+			return response;
+		}
+		readers++;
+		return new B2DownloadFileResponse(response, new Reader());
+	}
+
+	/**
+	 * Wait until there are bytes available at the position, filling the 
+	 * buffer from the connection if no other reader is
+	 * 
+	 * @param position the position in the content
+	 * 
+	 * @return the number of bytes available at the position, or -1 at the end
+	 *     of the content
+	 * 
+	 * @throws IOException if the content could not be read from the connection
+	 */
+	private int await(int position) throws IOException {
+		while(true) {
+			final int start;
+			synchronized(this) {
+				while(true) {
+					if(position < filled) {
+						return filled - position;
+					}
+					if(complete) {
+						return -1;
+					}
+					if(null != failure) {
+						throw new IOException("Could not read the shared download", failure);
+					}
+					if(!filling) {
+						break;
+					}
+					try {
+						this.wait();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for the shared download");
+					}
+				}
+				filling = true;
+				start = filled;
+			}
+
+			int read;
+			IOException error = null;
+			try {
+				read = upstream.read(buffer, start, buffer.length - start);
+				if(read < 0) {
+					error = new EOFException("The download ended after " + start + " of " + buffer.length + " bytes");
+				}
+			} catch (IOException ex) {
+				read = -1;
+				error = ex;
+			}
+
+			final boolean finished;
+			synchronized(this) {
+				filling = false;
+				if(null != error) {
+					failure = error;
+				} else {
+					filled += read;
+					complete = filled == buffer.length;
+				}
+				finished = complete || null != failure;
+				this.notifyAll();
+			}
+			if(finished) {
+				IOUtils.closeQuietly(upstream);
+			}
+		}
+	}
+
+	/**
+	 * Release the connection if all of the readers have been closed before 
+	 * all of the content was read
+	 */
+	private void closed() {
+		synchronized(this) {
+			readers--;
+			if(readers > 0 || complete || released) {
+				return;
+			}
+			released = true;
+		}
+		LOGGER.debug("All of the readers of the shared download of '{}' were closed, releasing the connection", response.getFileName());
+		IOUtils.closeQuietly(upstream);
+	}
+
+	private class Reader extends InputStream {
+		private int position = 0;
+		private boolean closed = false;
+
+		@Override
+		public int read() throws IOException {
+			final byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if(closed) {
+				throw new IOException("The stream has been closed");
+			}
+			if(length == 0) {
+				return 0;
+			}
+			final int available = await(position);
+			if(available < 0) {
+				return -1;
+			}
+			final int count = Math.min(length, available);
+			System.arraycopy(buffer, position, bytes, offset, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			synchronized(SharedDownload.this) {
+				return filled - position;
+			}
+		}
+
+		@Override
+		public void close() {
+			if(!closed) {
+				closed = true;
+				closed();
+			}
+		}
+	}
+}
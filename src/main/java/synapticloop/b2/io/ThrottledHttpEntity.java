@@ -0,0 +1,63 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * An HTTP entity which limits the rate at which its content is written (for
+ * uploads) or read (for downloads) through one or more 
+ * {@link BandwidthLimiter}s.
+ *
+ * @author synapticloop
+ */
+public class ThrottledHttpEntity extends HttpEntityWrapper {
+	private final BandwidthLimiter[] limiters;
+
+	private InputStream content;
+
+	/**
+	 * Create a throttled entity
+	 * 
+	 * @param wrappedEntity the entity to throttle
+	 * @param limiters the limiters to acquire the bytes that are transferred from
+	 */
+	public ThrottledHttpEntity(HttpEntity wrappedEntity, BandwidthLimiter... limiters) {
+		super(wrappedEntity);
+		this.limiters = limiters;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		if(null == content || wrappedEntity.isRepeatable()) {
+			final InputStream wrapped = wrappedEntity.getContent();
+			content = null == wrapped ? null : new ThrottledInputStream(wrapped, limiters);
+		}
+		return content;
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		wrappedEntity.writeTo(new ThrottledOutputStream(outstream, limiters));
+	}
+}
@@ -0,0 +1,84 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * An input stream which limits the rate at which it can be read through one 
+ * or more {@link BandwidthLimiter}s.  Reads are split into chunks of at most 
+ * 16 KiB while any of the limiters has a rate set, so that the rate stays 
+ * smooth.
+ *
+ * @author synapticloop
+ */
+public class ThrottledInputStream extends ProxyInputStream {
+	static final int CHUNK_SIZE = 16 * 1024;
+
+	private final BandwidthLimiter[] limiters;
+
+	/**
+	 * Create a throttled input stream
+	 * 
+	 * @param in the stream to read from
+	 * @param limiters the limiters to acquire the bytes that are read from
+	 */
+	public ThrottledInputStream(InputStream in, BandwidthLimiter... limiters) {
+		super(in);
+		this.limiters = limiters;
+	}
+
+	@Override
+	public int read(byte[] bts, int off, int len) throws IOException {
+		return super.read(bts, off, BandwidthLimiter.isLimited(limiters) ? Math.min(len, CHUNK_SIZE) : len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		final long skipped = super.skip(n);
+		BandwidthLimiter.acquire(limiters, skipped);
+		return skipped;
+	}
+
+	@Override
+	protected void afterRead(int n) throws IOException {
+		if(n > 0) {
+			BandwidthLimiter.acquire(limiters, n);
+		}
+	}
+
+	/**
+	 * Abandon the stream that this stream reads from, without closing it, 
+	 * when the underlying connection has been aborted
+	 */
+	public void abandon() {
+		MeteredInputStream.abandon(in);
+	}
+
+	/**
+	 * Return the stream that this stream reads from
+	 * 
+	 * @return the wrapped stream
+	 */
+	InputStream getWrapped() {
+		return in;
+	}
+}
@@ -0,0 +1,74 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.io.output.ProxyOutputStream;
+
+/**
+ * An output stream which limits the rate at which it can be written through 
+ * one or more {@link BandwidthLimiter}s.  Writes are split into chunks of at 
+ * most 16 KiB while any of the limiters has a rate set, so that the rate 
+ * stays smooth.
+ *
+ * @author synapticloop
+ */
+public class ThrottledOutputStream extends ProxyOutputStream {
+	private final BandwidthLimiter[] limiters;
+
+	/**
+	 * Create a throttled output stream
+	 * 
+	 * @param out the stream to write to
+	 * @param limiters the limiters to acquire the bytes that are written from
+	 */
+	public ThrottledOutputStream(OutputStream out, BandwidthLimiter... limiters) {
+		super(out);
+		this.limiters = limiters;
+	}
+
+	@Override
+	public void write(int idx) throws IOException {
+		BandwidthLimiter.acquire(limiters, 1);
+		super.write(idx);
+	}
+
+	@Override
+	public void write(byte[] bts) throws IOException {
+		this.write(bts, 0, bts.length);
+	}
+
+	@Override
+	public void write(byte[] bts, int st, int end) throws IOException {
+		if(!BandwidthLimiter.isLimited(limiters)) {
+			super.write(bts, st, end);
+			return;
+		}
+		int offset = st;
+		int remaining = end;
+		while(remaining > 0) {
+			final int chunk = Math.min(remaining, ThrottledInputStream.CHUNK_SIZE);
+			BandwidthLimiter.acquire(limiters, chunk);
+			super.write(bts, offset, chunk);
+			offset += chunk;
+			remaining -= chunk;
+		}
+	}
+}
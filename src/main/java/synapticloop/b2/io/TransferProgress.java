@@ -0,0 +1,157 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the progress of an upload or download
+ *
+ * @author synapticloop
+ */
+public class TransferProgress {
+	/**
+	 * The direction of a transfer
+	 */
+	public enum Direction {
+		UPLOAD,
+		DOWNLOAD
+	}
+
+	private final String name;
+	private final Direction direction;
+	private final long bytesTransferred;
+	private final long totalBytes;
+	private final long bytesPerSecond;
+	private final long elapsedNanos;
+	private final long idleNanos;
+	private final boolean complete;
+
+	TransferProgress(String name, Direction direction, long bytesTransferred, long totalBytes, long bytesPerSecond, long elapsedNanos, long idleNanos, boolean complete) {
+		this.name = name;
+		this.direction = direction;
+		this.bytesTransferred = bytesTransferred;
+		this.totalBytes = totalBytes;
+		this.bytesPerSecond = bytesPerSecond;
+		this.elapsedNanos = elapsedNanos;
+		this.idleNanos = idleNanos;
+		this.complete = complete;
+	}
+
+	/**
+	 * Get the name of the transfer, e.g. the name of the file
+	 * 
+	 * @return the name of the transfer, which may be null
+	 */
+	public String getName() { return this.name; }
+
+	/**
+	 * Get the direction of the transfer
+	 * 
+	 * @return whether this is an upload or a download
+	 */
+	public Direction getDirection() { return this.direction; }
+
+	/**
+	 * Get the number of bytes transferred so far
+	 * 
+	 * @return the number of bytes transferred
+	 */
+	public long getBytesTransferred() { return this.bytesTransferred; }
+
+	/**
+	 * Get the total number of bytes to transfer
+	 * 
+	 * @return the total number of bytes, or -1 if not known
+	 */
+	public long getTotalBytes() { return this.totalBytes; }
+
+	/**
+	 * Get the recent transfer rate, smoothed over the last few notifications
+	 * 
+	 * @return the rate in bytes per second
+	 */
+	public long getBytesPerSecond() { return this.bytesPerSecond; }
+
+	/**
+	 * Get the time since the transfer started
+	 * 
+	 * @param unit the unit of the time
+	 * 
+	 * @return the elapsed time
+	 */
+	public long getElapsed(TimeUnit unit) { return unit.convert(this.elapsedNanos, TimeUnit.NANOSECONDS); }
+
+	/**
+	 * Get the time since bytes were last transferred, which allows stalled 
+	 * transfers to be spotted
+	 * 
+	 * @param unit the unit of the time
+	 * 
+	 * @return the idle time
+	 */
+	public long getIdle(TimeUnit unit) { return unit.convert(this.idleNanos, TimeUnit.NANOSECONDS); }
+
+	/**
+	 * Get the estimated time until the transfer completes at the current rate
+	 * 
+	 * @param unit the unit of the time
+	 * 
+	 * @return the estimated remaining time, or -1 if the total number of bytes
+	 *     or the rate is not known
+	 */
+	public long getEstimatedRemaining(TimeUnit unit) {
+		if(complete) {
+			return 0L;
+		}
+		if(totalBytes < 0L || bytesPerSecond <= 0L) {
+			return -1L;
+		}
+		final long remaining = Math.max(0L, totalBytes - bytesTransferred);
+		return unit.convert((long)(remaining * (double)TimeUnit.SECONDS.toNanos(1) / bytesPerSecond), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the fraction of the transfer that has completed
+	 * 
+	 * @return the fraction between 0 and 1, or -1 if the total number of bytes
+	 *     is not known
+	 */
+	public double getFraction() {
+		if(complete) {
+			return 1d;
+		}
+		if(totalBytes < 0L) {
+			return -1d;
+		}
+		return totalBytes == 0L ? 0d : Math.min(1d, bytesTransferred / (double)totalBytes);
+	}
+
+	/**
+	 * Return whether the transfer has completed
+	 * 
+	 * @return true if this is the final notification of the transfer
+	 */
+	public boolean isComplete() { return this.complete; }
+
+	@Override
+	public String toString() {
+		return "TransferProgress [name=" + name + ", direction=" + direction + ", bytesTransferred=" + bytesTransferred
+				+ ", totalBytes=" + totalBytes + ", bytesPerSecond=" + bytesPerSecond + ", complete=" + complete + "]";
+	}
+}
@@ -0,0 +1,36 @@
+package synapticloop.b2.io;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+/**
+ * Notified of the progress of uploads and downloads, at the granularity 
+ * configured on the {@link ProgressTracker}.  The listener is called on the 
+ * thread that is transferring the data, so it should return quickly.
+ *
+ * @author synapticloop
+ */
+public interface TransferProgressListener {
+	/**
+	 * Called when the configured number of bytes has been transferred (or 
+	 * the configured interval has passed with bytes transferred), and once 
+	 * when the transfer has completed.
+	 * 
+	 * @param progress the progress of the transfer
+	 */
+	void progressed(TransferProgress progress);
+}
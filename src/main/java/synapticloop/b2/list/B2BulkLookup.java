@@ -0,0 +1,276 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.concurrency.B2ConcurrencyController;
+import synapticloop.b2.concurrency.B2Operation;
+import synapticloop.b2.concurrency.OperationClass;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+
+/**
+ * Looks up many file names of a bucket at once.  Rather than a call for each
+ * name, the names are sorted and the runs of names that are close together 
+ * in the bucket are answered by listing a window of file names starting at
+ * the first name of the run, where every name up to the last file listed 
+ * either is one of the files listed, or does not exist.
+ * 
+ * The size of each window is estimated from the number of files listed for
+ * each name answered by the windows before it.  Names that are far apart 
+ * from the names around them are looked up on their own, by listing the 
+ * first two file names starting at the name.  Each 1000 files requested by a 
+ * window are billed as one transaction, so windows are rounded up to whole 
+ * transactions, and a name is only looked up on its own when a window of 
+ * one transaction is expected to answer fewer than two names.
+ *
+ * @author synapticloop
+ */
+public class B2BulkLookup {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2BulkLookup.class);
+
+	/**
+	 * The default number of runs of names that are looked up at the same time
+	 */
+	public static final int DEFAULT_THREADS = 4;
+
+	/**
+	 * The maximum number of files that a window lists
+	 */
+	public static final int MAX_WINDOW = 10000;
+
+	// the number of files that are billed as one transaction
+	private static final int FILES_PER_TRANSACTION = 1000;
+
+	// the fewest names that are split between the threads
+	private static final int MIN_NAMES_PER_THREAD = 1000;
+
+	private final B2ApiClient client;
+
+	private int threads = DEFAULT_THREADS;
+
+	private int maxWindow = MAX_WINDOW;
+
+	private B2ConcurrencyController concurrencyController;
+
+	/**
+	 * Create a lookup with an authenticated client
+	 * 
+	 * @param client the client to list with
+	 */
+	public B2BulkLookup(B2ApiClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Set the number of runs of names that are looked up at the same time, 
+	 * the names are only split between threads when there are at least 1000
+	 * names for each thread
+	 * 
+	 * @param threads the number of parallel lookups
+	 * 
+	 * @return this lookup
+	 */
+	public B2BulkLookup setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Set the largest number of files that a window lists
+	 * 
+	 * @param maxWindow the number of files, at most {@link #MAX_WINDOW}
+	 * 
+	 * @return this lookup
+	 */
+	public B2BulkLookup setMaxWindow(int maxWindow) {
+		this.maxWindow = Math.max(1, Math.min(MAX_WINDOW, maxWindow));
+		return this;
+	}
+
+	/**
+	 * Set the controller which limits the number of listing calls that are 
+	 * made at the same time, backing off when the service is busy
+	 * 
+	 * @param concurrencyController the controller, or null for no limit
+	 * 
+	 * @return this lookup
+	 */
+	public B2BulkLookup setConcurrencyController(B2ConcurrencyController concurrencyController) {
+		this.concurrencyController = concurrencyController;
+		return this;
+	}
+
+	/**
+	 * Look up file names in a bucket
+	 * 
+	 * @param bucketId the id of the bucket
+	 * @param fileNames the names of the files
+	 * 
+	 * @return the files that exist (and are not hidden), by name in the order 
+	 *     of their names - the names that do not exist are not in the map
+	 * 
+	 * @throws B2ApiException if there was an error listing the files
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public Map<String, B2FileInfoResponse> lookup(final String bucketId, Collection<String> fileNames) throws B2ApiException, IOException {
+		final TreeSet<String> sorted = new TreeSet<String>(FileNames.ORDER);
+		sorted.addAll(fileNames);
+		final List<String> names = new ArrayList<String>(sorted);
+		final Map<String, B2FileInfoResponse> found = new TreeMap<String, B2FileInfoResponse>(FileNames.ORDER);
+
+		final int parallelism = Math.max(1, Math.min(threads, names.size() / MIN_NAMES_PER_THREAD));
+		if(parallelism == 1) {
+			found.putAll(this.lookup(bucketId, names));
+			return found;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			final List<Future<Map<String, B2FileInfoResponse>>> futures = new ArrayList<Future<Map<String, B2FileInfoResponse>>>();
+			for (int i = 0; i < parallelism; i++) {
+				final List<String> run = names.subList(names.size() * i / parallelism, names.size() * (i + 1) / parallelism);
+				futures.add(executor.submit(new Callable<Map<String, B2FileInfoResponse>>() {
+					@Override
+					public Map<String, B2FileInfoResponse> call() throws Exception {
+						return lookup(bucketId, run);
+					}
+				}));
+			}
+			for (Future<Map<String, B2FileInfoResponse>> future : futures) {
+				found.putAll(get(future));
+			}
+			return found;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Look up a run of sorted names, with windows where the names are close 
+	 * together in the bucket
+	 */
+	private Map<String, B2FileInfoResponse> lookup(String bucketId, List<String> names) throws B2ApiException, IOException {
+		final Map<String, B2FileInfoResponse> found = new HashMap<String, B2FileInfoResponse>();
+		// the number of files listed for each name answered, which starts out
+		// assuming that the names are next to each other
+		double density = 1.0d;
+		int windows = 0;
+		int single = 0;
+		int index = 0;
+		while(index < names.size()) {
+			final int remaining = names.size() - index;
+			final boolean isolated = remaining == 1 || FILES_PER_TRANSACTION / density < 2;
+			// a name on its own is listed with the file after it, which may 
+			// answer the next name too
+			int window = Math.min(2, remaining);
+			if(!isolated) {
+				// enough to answer the rest of the names, in whole transactions
+				final double files = Math.ceil(remaining * density) + 1;
+				window = (int)Math.min(maxWindow, Math.ceil(files / FILES_PER_TRANSACTION) * FILES_PER_TRANSACTION);
+			}
+
+			final B2ListFilesResponse response = this.list(bucketId, names.get(index), window);
+			final List<B2FileInfoResponse> files = response.getFiles();
+			int answered = index;
+			for (B2FileInfoResponse file : files) {
+				// the names before the file do not exist
+				while(answered < names.size() && FileNames.compare(names.get(answered), file.getFileName()) < 0) {
+					answered++;
+				}
+				if(answered == names.size()) {
+					break;
+				}
+				if(names.get(answered).equals(file.getFileName())) {
+					found.put(file.getFileName(), file);
+					answered++;
+				}
+			}
+			if(null == response.getNextFileName() || files.isEmpty()) {
+				// the listing reached the end of the bucket
+				answered = names.size();
+			}
+
+			if(isolated) {
+				single++;
+				if(answered - index > 1) {
+					// the next file was also one of the names
+					density = Math.max(1.0d, density / 2);
+				}
+			} else {
+				windows++;
+				density = Math.max(1.0d / FILES_PER_TRANSACTION, (double)files.size() / (answered - index));
+			}
+			index = answered;
+		}
+		LOGGER.debug("Looked up {} names with {} windows and {} single lookups", names.size(), windows, single);
+		return found;
+	}
+
+	private B2ListFilesResponse list(final String bucketId, final String startFileName, final int maxFileCount) throws B2ApiException, IOException {
+		final B2Operation<B2ListFilesResponse> operation = new B2Operation<B2ListFilesResponse>() {
+			@Override
+			public B2ListFilesResponse execute() throws B2ApiException, IOException {
+				return client.listFileNames(bucketId, startFileName, maxFileCount, null, null);
+			}
+		};
+		if(null == concurrencyController) {
+			return operation.execute();
+		}
+		return concurrencyController.execute(OperationClass.API, operation);
+	}
+
+	private static <T> T get(Future<T> future) throws B2ApiException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while looking up files", ex);
+		} catch (ExecutionException ex) {
+			final Throwable cause = ex.getCause();
+			if(cause instanceof B2ApiException) {
+				throw (B2ApiException)cause;
+			}
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
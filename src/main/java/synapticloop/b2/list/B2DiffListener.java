@@ -0,0 +1,62 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+
+/**
+ * Receives the differences found by a {@link B2InventoryDiff}, in the order
+ * of the file names.
+ *
+ * @author synapticloop
+ */
+public interface B2DiffListener {
+	/**
+	 * A file is only in the target
+	 * 
+	 * @param target the file in the target
+	 * 
+	 * @throws B2ApiException if there was an error with a call made by the listener
+	 * @throws IOException if there was an error handling the difference
+	 */
+	void added(B2FileInfoResponse target) throws B2ApiException, IOException;
+
+	/**
+	 * A file is only in the source
+	 * 
+	 * @param source the file in the source
+	 * 
+	 * @throws B2ApiException if there was an error with a call made by the listener
+	 * @throws IOException if there was an error handling the difference
+	 */
+	void removed(B2FileInfoResponse source) throws B2ApiException, IOException;
+
+	/**
+	 * A file is in both, but differs
+	 * 
+	 * @param source the file in the source
+	 * @param target the file in the target
+	 * 
+	 * @throws B2ApiException if there was an error with a call made by the listener
+	 * @throws IOException if there was an error handling the difference
+	 */
+	void changed(B2FileInfoResponse source, B2FileInfoResponse target) throws B2ApiException, IOException;
+}
@@ -0,0 +1,42 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+
+/**
+ * A source of files in the order of their names, e.g. a listing of a bucket
+ * or a saved snapshot of one, which is read one file at a time.
+ *
+ * @author synapticloop
+ */
+public interface B2FileSource extends Closeable {
+	/**
+	 * Return the next file of the source
+	 * 
+	 * @return the next file, or null at the end of the source
+	 * 
+	 * @throws B2ApiException if there was an error listing the files
+	 * @throws IOException if there was an error reading the files
+	 */
+	B2FileInfoResponse next() throws B2ApiException, IOException;
+}
@@ -0,0 +1,43 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+
+/**
+ * Receives the files of a listing, one at a time, on the thread that 
+ * started the listing.
+ *
+ * @author synapticloop
+ */
+public interface B2FileVisitor {
+	/**
+	 * Visit a file (or a file version) of a listing
+	 * 
+	 * @param file the file
+	 * 
+	 * @return true to continue the listing, false to stop it
+	 * 
+	 * @throws B2ApiException if there was an error with a call made by the visitor
+	 * @throws IOException if there was an error with the file
+	 */
+	boolean visit(B2FileInfoResponse file) throws B2ApiException, IOException;
+}
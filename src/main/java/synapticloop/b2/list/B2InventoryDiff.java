@@ -0,0 +1,206 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.Sha1VerifyingInputStream;
+import synapticloop.b2.response.B2FileInfoResponse;
+
+/**
+ * Finds the differences between two sources of files, e.g. two buckets, or a
+ * bucket and a snapshot of it, with a merge join over the sources in the 
+ * order of their file names.  Only the current file of each source is held 
+ * in memory, so any number of files can be compared.
+ * 
+ * Files with the same name are changed if they differ by any of the compared
+ * attributes (by default their size, SHA1 and upload timestamp).  The SHA1 of
+ * a large file is taken from its 'large_file_sha1' file info, and is only 
+ * compared if it is known for both files.
+ *
+ * @author synapticloop
+ */
+public class B2InventoryDiff {
+	/**
+	 * The attributes of the files that are compared
+	 */
+	public enum Attribute {
+		SIZE,
+		SHA1,
+		UPLOAD_TIMESTAMP
+	}
+
+	private static final String NONE = "none";
+
+	private Set<Attribute> compared = EnumSet.allOf(Attribute.class);
+
+	/**
+	 * Set the attributes of the files that are compared, e.g. only the size
+	 * and SHA1 when comparing a bucket with a copy of it, as the upload 
+	 * timestamps of the copies differ
+	 * 
+	 * @param attributes the attributes to compare
+	 * 
+	 * @return this diff
+	 */
+	public B2InventoryDiff setCompared(Attribute... attributes) {
+		this.compared = attributes.length == 0 ? EnumSet.noneOf(Attribute.class) : EnumSet.copyOf(Arrays.asList(attributes));
+		return this;
+	}
+
+	/**
+	 * Compare two sources of files, passing the differences to a listener.
+	 * The sources are read to the end, and are not closed.
+	 * 
+	 * @param source the source, e.g. an earlier snapshot
+	 * @param target the target, e.g. the current listing of the bucket
+	 * @param listener the listener to pass the differences to
+	 * 
+	 * @return the summary of the differences
+	 * 
+	 * @throws B2ApiException if there was an error listing the files, or from the listener
+	 * @throws IOException if there was an error reading the files, or the 
+	 *     files of a source were not in the order of their names
+	 */
+	public Summary diff(B2FileSource source, B2FileSource target, B2DiffListener listener) throws B2ApiException, IOException {
+		final Summary summary = new Summary();
+		final Cursor from = new Cursor("source", source);
+		final Cursor to = new Cursor("target", target);
+		from.advance();
+		to.advance();
+		while(null != from.current || null != to.current) {
+			final int comparison = null == from.current ? 1 : null == to.current ? -1 
+					: FileNames.compare(from.current.getFileName(), to.current.getFileName());
+			if(comparison < 0) {
+				summary.removed++;
+				listener.removed(from.current);
+				from.advance();
+			} else if(comparison > 0) {
+				summary.added++;
+				listener.added(to.current);
+				to.advance();
+			} else {
+				if(this.differs(from.current, to.current)) {
+					summary.changed++;
+					listener.changed(from.current, to.current);
+				} else {
+					summary.unchanged++;
+				}
+				from.advance();
+				to.advance();
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Return whether two files with the same name differ by any of the 
+	 * compared attributes
+	 * 
+	 * @param source the file in the source
+	 * @param target the file in the target
+	 * 
+	 * @return true if the files differ
+	 */
+	public boolean differs(B2FileInfoResponse source, B2FileInfoResponse target) {
+		if(compared.contains(Attribute.SIZE) && !equals(source.getContentLength(), target.getContentLength())) {
+			return true;
+		}
+		if(compared.contains(Attribute.SHA1)) {
+			final String sourceSha1 = sha1(source);
+			final String targetSha1 = sha1(target);
+			if(null != sourceSha1 && null != targetSha1 && !sourceSha1.equalsIgnoreCase(targetSha1)) {
+				return true;
+			}
+		}
+		return compared.contains(Attribute.UPLOAD_TIMESTAMP) && !equals(source.getUploadTimestamp(), target.getUploadTimestamp());
+	}
+
+	private static boolean equals(Object first, Object second) {
+		return null == first ? null == second : first.equals(second);
+	}
+
+	private static String sha1(B2FileInfoResponse file) {
+		String sha1 = file.getContentSha1();
+		if((null == sha1 || NONE.equals(sha1)) && null != file.getFileInfo()) {
+			sha1 = file.getFileInfo().get(Sha1VerifyingInputStream.LARGE_FILE_SHA1);
+		}
+		return null == sha1 || NONE.equals(sha1) ? null : sha1;
+	}
+
+	/**
+	 * The current file of a source, checking that the files are in order
+	 */
+	private static class Cursor {
+		private final String name;
+		private final B2FileSource source;
+		private B2FileInfoResponse current = null;
+
+		private Cursor(String name, B2FileSource source) {
+			this.name = name;
+			this.source = source;
+		}
+
+		private void advance() throws B2ApiException, IOException {
+			final B2FileInfoResponse next = source.next();
+			if(null != next && null != current && FileNames.compare(current.getFileName(), next.getFileName()) >= 0) {
+				throw new IOException("The files of the " + name + " are not in order, '" + next.getFileName() + "' is not after '" + current.getFileName() + "'");
+			}
+			current = next;
+		}
+	}
+
+	/**
+	 * The numbers of files that were added, removed, changed and unchanged
+	 */
+	public static class Summary {
+		private long added = 0L;
+		private long removed = 0L;
+		private long changed = 0L;
+		private long unchanged = 0L;
+
+		/**
+		 * @return the number of files only in the target
+		 */
+		public long getAdded() { return this.added; }
+
+		/**
+		 * @return the number of files only in the source
+		 */
+		public long getRemoved() { return this.removed; }
+
+		/**
+		 * @return the number of files in both that differ
+		 */
+		public long getChanged() { return this.changed; }
+
+		/**
+		 * @return the number of files in both that do not differ
+		 */
+		public long getUnchanged() { return this.unchanged; }
+
+		@Override
+		public String toString() {
+			return "Summary{added=" + added + ", removed=" + removed + ", changed=" + changed + ", unchanged=" + unchanged + "}";
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+
+/**
+ * A source of the file names of a bucket, which pages through the listing of
+ * the bucket as the files are read, holding one page of files at a time.
+ *
+ * @author synapticloop
+ */
+public class B2ListingFileSource implements B2FileSource {
+	private final B2ApiClient client;
+	private final String bucketId;
+	private final String prefix;
+	private final int pageSize;
+
+	private Iterator<B2FileInfoResponse> page = null;
+	private String nextFileName = null;
+	private boolean last = false;
+
+	/**
+	 * Create a source of all of the file names of a bucket
+	 * 
+	 * @param client the client to list with
+	 * @param bucketId the id of the bucket
+	 */
+	public B2ListingFileSource(B2ApiClient client, String bucketId) {
+		this(client, bucketId, null, B2ParallelLister.DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Create a source of the file names of a bucket that start with a prefix
+	 * 
+	 * @param client the client to list with
+	 * @param bucketId the id of the bucket
+	 * @param prefix the prefix of the file names, or null for all files
+	 * @param pageSize the number of files requested by each call, at most 1000
+	 */
+	public B2ListingFileSource(B2ApiClient client, String bucketId, String prefix, int pageSize) {
+		this.client = client;
+		this.bucketId = bucketId;
+		this.prefix = prefix;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public B2FileInfoResponse next() throws B2ApiException, IOException {
+		while(null == page || !page.hasNext()) {
+			if(last) {
+				return null;
+			}
+			final B2ListFilesResponse response = client.listFileNames(bucketId, nextFileName, pageSize, prefix, null);
+			page = response.getFiles().iterator();
+			nextFileName = response.getNextFileName();
+			last = null == nextFileName;
+		}
+		return page.next();
+	}
+
+	@Override
+	public void close() {
+		page = null;
+		last = true;
+	}
+}
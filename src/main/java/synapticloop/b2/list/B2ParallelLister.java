@@ -0,0 +1,451 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.Action;
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.concurrency.B2ConcurrencyController;
+import synapticloop.b2.concurrency.B2Operation;
+import synapticloop.b2.concurrency.OperationClass;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+
+/**
+ * Lists the files (or file versions) of a bucket in parallel.  Rather than 
+ * paging through the bucket from a single start file name, the key space is
+ * split into partitions, which are each listed from their own start file 
+ * name up to the start of the next partition, at the same time.
+ * 
+ * The partitions are found from the top level folders of the bucket (with a
+ * single call using the '/' delimiter), and, if there are fewer than the 
+ * target number of partitions, by splitting the partitions at file names 
+ * found by probing part way between their bounds.
+ * 
+ * The files are passed to a {@link B2FileVisitor} on the calling thread, 
+ * either in the order of the file names (as a sequential listing would 
+ * return them) or, faster, in the order that they are listed.
+ *
+ * @author synapticloop
+ */
+public class B2ParallelLister {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2ParallelLister.class);
+
+	/**
+	 * The default number of partitions that are listed at the same time
+	 */
+	public static final int DEFAULT_THREADS = 8;
+
+	/**
+	 * The default (and maximum) number of files that are requested by each call
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	/**
+	 * The default number of pages of files that each partition lists ahead of
+	 * the visitor
+	 */
+	public static final int DEFAULT_BUFFERED_PAGES = 4;
+
+	private static final String DELIMITER = "/";
+	private static final int MAX_PROBES = 8;
+
+	private final B2ApiClient client;
+
+	private int threads = DEFAULT_THREADS;
+
+	private int targetPartitions = -1;
+
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	private int bufferedPages = DEFAULT_BUFFERED_PAGES;
+
+	private boolean versions = false;
+
+	private boolean ordered = true;
+
+	private B2ConcurrencyController concurrencyController;
+
+	/**
+	 * Create a lister with an authenticated client
+	 * 
+	 * @param client the client to list with
+	 */
+	public B2ParallelLister(B2ApiClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Set the number of partitions that are listed at the same time
+	 * 
+	 * @param threads the number of parallel listings
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Set the number of partitions that the key space is split into, by 
+	 * default four times the number of threads.  More partitions than this 
+	 * are listed if the bucket has more top level folders.
+	 * 
+	 * @param targetPartitions the number of partitions
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setTargetPartitions(int targetPartitions) {
+		this.targetPartitions = targetPartitions;
+		return this;
+	}
+
+	/**
+	 * Set the number of files that are requested by each call
+	 * 
+	 * @param pageSize the number of files, at most 1000
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setPageSize(int pageSize) {
+		this.pageSize = Math.max(1, Math.min(DEFAULT_PAGE_SIZE, pageSize));
+		return this;
+	}
+
+	/**
+	 * Set the number of pages of files that each partition lists ahead of the
+	 * visitor, which bounds the memory that is used
+	 * 
+	 * @param bufferedPages the number of pages
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setBufferedPages(int bufferedPages) {
+		this.bufferedPages = Math.max(1, bufferedPages);
+		return this;
+	}
+
+	/**
+	 * Set whether all of the versions of the files are listed, rather than 
+	 * the file names
+	 * 
+	 * @param versions true to list the file versions
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setVersions(boolean versions) {
+		this.versions = versions;
+		return this;
+	}
+
+	/**
+	 * Set whether the files are visited in the order of their names (the 
+	 * default), or in the order that they are listed.  When ordered, the 
+	 * partitions after the one being visited can only list as far ahead as 
+	 * their buffered pages.
+	 * 
+	 * @param ordered true to visit the files in the order of their names
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setOrdered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	/**
+	 * Set the controller which limits the number of listing calls that are 
+	 * made at the same time, backing off when the service is busy
+	 * 
+	 * @param concurrencyController the controller, or null for no limit
+	 * 
+	 * @return this lister
+	 */
+	public B2ParallelLister setConcurrencyController(B2ConcurrencyController concurrencyController) {
+		this.concurrencyController = concurrencyController;
+		return this;
+	}
+
+	/**
+	 * List all of the files of a bucket
+	 * 
+	 * @param bucketId the id of the bucket
+	 * @param visitor the visitor to pass the files to
+	 * 
+	 * @return the number of files that were visited
+	 * 
+	 * @throws B2ApiException if there was an error listing the files, or from the visitor
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public long list(String bucketId, B2FileVisitor visitor) throws B2ApiException, IOException {
+		return list(bucketId, null, visitor);
+	}
+
+	/**
+	 * List the files of a bucket with names starting with a prefix
+	 * 
+	 * @param bucketId the id of the bucket
+	 * @param prefix the prefix of the file names, or null for all files
+	 * @param visitor the visitor to pass the files to
+	 * 
+	 * @return the number of files that were visited
+	 * 
+	 * @throws B2ApiException if there was an error listing the files, or from the visitor
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public long list(final String bucketId, final String prefix, B2FileVisitor visitor) throws B2ApiException, IOException {
+		final List<Partition> partitions = this.partition(bucketId, prefix);
+		LOGGER.debug("Listing bucket {} with prefix '{}' in {} partitions", bucketId, prefix, partitions.size());
+
+		final int parallelism = Math.min(threads, partitions.size());
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+		final BlockingQueue<Page> shared = ordered ? null : new ArrayBlockingQueue<Page>(bufferedPages * parallelism);
+		final List<BlockingQueue<Page>> queues = new ArrayList<BlockingQueue<Page>>();
+		try {
+			for (final Partition partition : partitions) {
+				final BlockingQueue<Page> queue = ordered ? new ArrayBlockingQueue<Page>(bufferedPages) : shared;
+				queues.add(queue);
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						listPartition(bucketId, prefix, partition, queue, stopped);
+					}
+				});
+			}
+
+			long count = 0L;
+			int remaining = partitions.size();
+			int index = 0;
+			while(remaining > 0) {
+				final Page page = take(ordered ? queues.get(index) : shared);
+				page.rethrow();
+				for (B2FileInfoResponse file : page.files) {
+					count++;
+					if(!visitor.visit(file)) {
+						return count;
+					}
+				}
+				if(page.last) {
+					remaining--;
+					index++;
+				}
+			}
+			return count;
+		} finally {
+			stopped.set(true);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * List the files of a partition, passing each page of files to the queue
+	 */
+	private void listPartition(String bucketId, String prefix, Partition partition, BlockingQueue<Page> queue, AtomicBoolean stopped) {
+		String startFileName = partition.start.isEmpty() ? null : partition.start;
+		String startFileId = null;
+		try {
+			boolean last = false;
+			while(!last && !stopped.get()) {
+				final B2ListFilesResponse response = this.list(bucketId, startFileName, startFileId, pageSize, prefix, null);
+				final List<B2FileInfoResponse> files = new ArrayList<B2FileInfoResponse>(response.getFiles().size());
+				for (B2FileInfoResponse file : response.getFiles()) {
+					if(null != partition.end && FileNames.compare(file.getFileName(), partition.end) >= 0) {
+						last = true;
+						break;
+					}
+					files.add(file);
+				}
+				startFileName = response.getNextFileName();
+				startFileId = response.getNextFileId();
+				last = last || null == startFileName;
+				queue.put(new Page(files, last, null));
+			}
+		} catch (InterruptedException ex) {
+			// the listing has been stopped
+		} catch (B2ApiException | IOException | RuntimeException ex) {
+			try {
+				queue.put(new Page(Collections.<B2FileInfoResponse>emptyList(), true, ex));
+			} catch (InterruptedException e) {
+				// the listing has been stopped
+			}
+		}
+	}
+
+	/**
+	 * Split the key space into partitions, from the top level folders and 
+	 * then by probing for file names between the bounds of the partitions
+	 */
+	private List<Partition> partition(String bucketId, String prefix) throws B2ApiException, IOException {
+		final String start = null == prefix ? "" : prefix;
+		final TreeSet<String> bounds = new TreeSet<String>();
+		final B2ListFilesResponse top = this.list(bucketId, null, null, DEFAULT_PAGE_SIZE, prefix, DELIMITER);
+		for (B2FileInfoResponse file : top.getFiles()) {
+			if(Action.folder == file.getAction()) {
+				bounds.add(file.getFileName());
+			}
+		}
+		if(null != top.getNextFileName()) {
+			bounds.add(top.getNextFileName());
+		}
+
+		final List<Partition> partitions = new ArrayList<Partition>();
+		String lower = start;
+		for (String bound : bounds) {
+			if(FileNames.compare(bound, lower) > 0) {
+				partitions.add(new Partition(lower, bound));
+				lower = bound;
+			}
+		}
+		partitions.add(new Partition(lower, null));
+
+		final int target = targetPartitions > 0 ? targetPartitions : threads * 4;
+		int index = 0;
+		int unsplittable = 0;
+		while(partitions.size() < target && unsplittable < partitions.size()) {
+			index = index % partitions.size();
+			final Partition partition = partitions.get(index);
+			final String split = partition.splittable ? this.split(bucketId, prefix, partition) : null;
+			if(null == split) {
+				if(partition.splittable) {
+					partition.splittable = false;
+					unsplittable++;
+				}
+				index++;
+			} else {
+				partitions.set(index, new Partition(partition.start, split));
+				partitions.add(index + 1, new Partition(split, partition.end));
+				// move on to the next partition that has not just been split
+				index += 2;
+			}
+		}
+		return partitions;
+	}
+
+	/**
+	 * Find a file name inside a partition to split it at, by probing for the 
+	 * first file name after a name half way between the bounds, halving the 
+	 * upper half of the search until a name is found.  The second name of the
+	 * partition is used if no name is found by probing.
+	 * 
+	 * @return the file name, or null if no name was found
+	 */
+	private String split(String bucketId, String prefix, Partition partition) throws B2ApiException, IOException {
+		// a partition with fewer than two names can not be split
+		final List<B2FileInfoResponse> first = this.list(bucketId, partition.start.isEmpty() ? null : partition.start, null, 2, prefix, null).getFiles();
+		if(first.size() < 2 || (null != partition.end && FileNames.compare(first.get(1).getFileName(), partition.end) >= 0)) {
+			return null;
+		}
+		String high = partition.end;
+		for (int i = 0; i < MAX_PROBES; i++) {
+			final String midpoint = FileNames.midpoint(partition.start, high);
+			if(FileNames.compare(midpoint, partition.start) <= 0) {
+				break;
+			}
+			final List<B2FileInfoResponse> files = this.list(bucketId, midpoint, null, 1, prefix, null).getFiles();
+			if(files.isEmpty() || (null != partition.end && FileNames.compare(files.get(0).getFileName(), partition.end) >= 0)) {
+				// nothing between the midpoint and the end of the partition
+				high = midpoint;
+				continue;
+			}
+			return files.get(0).getFileName();
+		}
+		return first.get(1).getFileName();
+	}
+
+	private B2ListFilesResponse list(final String bucketId, final String startFileName, final String startFileId, final int maxFileCount, final String prefix, final String delimiter) throws B2ApiException, IOException {
+		final B2Operation<B2ListFilesResponse> operation = new B2Operation<B2ListFilesResponse>() {
+			@Override
+			public B2ListFilesResponse execute() throws B2ApiException, IOException {
+				if(versions) {
+					return client.listFileVersions(bucketId, startFileName, startFileId, maxFileCount, prefix, delimiter);
+				}
+				return client.listFileNames(bucketId, startFileName, maxFileCount, prefix, delimiter);
+			}
+		};
+		if(null == concurrencyController) {
+			return operation.execute();
+		}
+		return concurrencyController.execute(OperationClass.API, operation);
+	}
+
+	private static Page take(BlockingQueue<Page> queue) throws IOException {
+		try {
+			return queue.take();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while listing files", ex);
+		}
+	}
+
+	/**
+	 * A range of file names, from the start (inclusive) to the end (exclusive)
+	 */
+	private static class Partition {
+		private final String start;
+		private final String end;
+		private boolean splittable = true;
+
+		private Partition(String start, String end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * A page of the files of a partition, or the error that ended its listing
+	 */
+	private static class Page {
+		private final List<B2FileInfoResponse> files;
+		private final boolean last;
+		private final Exception error;
+
+		private Page(List<B2FileInfoResponse> files, boolean last, Exception error) {
+			this.files = files;
+			this.last = last;
+			this.error = error;
+		}
+
+		private void rethrow() throws B2ApiException, IOException {
+			if(error instanceof B2ApiException) {
+				throw (B2ApiException)error;
+			}
+			if(error instanceof IOException) {
+				throw (IOException)error;
+			}
+			if(error instanceof RuntimeException) {
+				throw (RuntimeException)error;
+			}
+		}
+	}
+}
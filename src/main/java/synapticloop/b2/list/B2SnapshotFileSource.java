@@ -0,0 +1,84 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+
+/**
+ * A source of the files of a snapshot written by a {@link B2SnapshotWriter},
+ * which is read one line at a time.
+ *
+ * @author synapticloop
+ */
+public class B2SnapshotFileSource implements B2FileSource {
+	private final File file;
+	private final BufferedReader reader;
+	private long line = 0L;
+
+	/**
+	 * Open a snapshot
+	 * 
+	 * @param file the file of the snapshot
+	 * 
+	 * @throws IOException if the snapshot could not be opened
+	 */
+	public B2SnapshotFileSource(File file) throws IOException {
+		this.file = file;
+		InputStream in = new FileInputStream(file);
+		try {
+			if(file.getName().endsWith(B2SnapshotWriter.GZIP_SUFFIX)) {
+				in = new GZIPInputStream(in, 64 * 1024);
+			}
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+		this.reader = new BufferedReader(new InputStreamReader(in, B2SnapshotWriter.UTF_8), 64 * 1024);
+	}
+
+	@Override
+	public B2FileInfoResponse next() throws B2ApiException, IOException {
+		final String json = reader.readLine();
+		if(null == json) {
+			return null;
+		}
+		line++;
+		try {
+			return new B2FileInfoResponse(new JSONObject(json));
+		} catch (JSONException ex) {
+			throw new IOException("Invalid line " + line + " of the snapshot '" + file + "'", ex);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
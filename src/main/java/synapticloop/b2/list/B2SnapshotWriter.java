@@ -0,0 +1,185 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONObject;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ResponseProperties;
+
+/**
+ * Writes a snapshot of the files of a bucket to a local file, with one JSON
+ * object per line in the same form as the listing calls return them, so that
+ * it can be compared with a later listing by a {@link B2InventoryDiff}.  
+ * The files must be written in the order of their names, and the snapshot is
+ * compressed if the name of the file ends with '.gz'.
+ * 
+ * The snapshot is written to a temporary file which only replaces the file 
+ * when the writer is finished, so that an incomplete snapshot never replaces
+ * a complete one.  Closing a writer that has not been finished discards the
+ * snapshot.
+ *
+ * @author synapticloop
+ */
+public class B2SnapshotWriter implements B2FileVisitor, Closeable {
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final String GZIP_SUFFIX = ".gz";
+
+	private final File file;
+	private final File temporary;
+	private final Writer writer;
+
+	private String previous = null;
+	private long count = 0L;
+	private boolean closed = false;
+
+	/**
+	 * Create a writer of a snapshot
+	 * 
+	 * @param file the file to write the snapshot to
+	 * 
+	 * @throws IOException if the file could not be created
+	 */
+	public B2SnapshotWriter(File file) throws IOException {
+		this.file = file.getAbsoluteFile();
+		this.temporary = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+		OutputStream out = new FileOutputStream(temporary);
+		if(file.getName().endsWith(GZIP_SUFFIX)) {
+			out = new GZIPOutputStream(out, 64 * 1024);
+		}
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8), 64 * 1024);
+	}
+
+	/**
+	 * Write all of the files of a source to a snapshot
+	 * 
+	 * @param source the source of the files, which is closed
+	 * @param file the file to write the snapshot to
+	 * 
+	 * @return the number of files written
+	 * 
+	 * @throws B2ApiException if there was an error listing the files
+	 * @throws IOException if there was an error writing the snapshot
+	 */
+	public static long write(B2FileSource source, File file) throws B2ApiException, IOException {
+		try (B2FileSource in = source; B2SnapshotWriter out = new B2SnapshotWriter(file)) {
+			B2FileInfoResponse next;
+			while(null != (next = in.next())) {
+				out.write(next);
+			}
+			out.finish();
+			return out.getCount();
+		}
+	}
+
+	@Override
+	public boolean visit(B2FileInfoResponse file) throws IOException {
+		this.write(file);
+		return true;
+	}
+
+	/**
+	 * Write a file to the snapshot
+	 * 
+	 * @param file the file, which must be after the previous file
+	 * 
+	 * @throws IOException if the file could not be written, or was not in 
+	 *     the order of the file names
+	 */
+	public void write(B2FileInfoResponse file) throws IOException {
+		if(null != previous && FileNames.compare(previous, file.getFileName()) >= 0) {
+			throw new IOException("The file '" + file.getFileName() + "' is not after '" + previous + "'");
+		}
+		final JSONObject json = new JSONObject();
+		put(json, B2ResponseProperties.KEY_FILE_ID, file.getFileId());
+		put(json, B2ResponseProperties.KEY_FILE_NAME, file.getFileName());
+		put(json, B2ResponseProperties.KEY_ACTION, null == file.getAction() ? null : file.getAction().name());
+		put(json, B2ResponseProperties.KEY_CONTENT_LENGTH, file.getContentLength());
+		put(json, B2ResponseProperties.KEY_CONTENT_TYPE, file.getContentType());
+		put(json, B2ResponseProperties.KEY_CONTENT_SHA1, file.getContentSha1());
+		put(json, B2ResponseProperties.KEY_FILE_INFO, null == file.getFileInfo() ? null : new JSONObject(file.getFileInfo()));
+		put(json, B2ResponseProperties.KEY_SIZE, file.getContentLength());
+		put(json, B2ResponseProperties.KEY_UPLOAD_TIMESTAMP, file.getUploadTimestamp());
+		put(json, B2ResponseProperties.KEY_ACCOUNT_ID, file.getAccountId());
+		put(json, B2ResponseProperties.KEY_BUCKET_ID, file.getBucketId());
+		writer.write(json.toString());
+		writer.write('\n');
+		previous = file.getFileName();
+		count++;
+	}
+
+	private static void put(JSONObject json, String key, Object value) {
+		if(null != value) {
+			json.put(key, value);
+		}
+	}
+
+	/**
+	 * Return the number of files that have been written
+	 * 
+	 * @return the number of files
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Complete the snapshot, replacing the file with it
+	 * 
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void finish() throws IOException {
+		closed = true;
+		try {
+			writer.close();
+		} catch (IOException ex) {
+			Files.deleteIfExists(temporary.toPath());
+			throw ex;
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Close the writer, discarding the snapshot if it has not been finished
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			try {
+				writer.close();
+			} finally {
+				Files.deleteIfExists(temporary.toPath());
+			}
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package synapticloop.b2.list;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Comparator;
+
+/**
+ * The ordering of file names used by the B2 service (by their UTF-8 bytes,
+ * which is the order of their code points), and the choice of names to split
+ * a range of file names at.
+ *
+ * @author synapticloop
+ */
+public final class FileNames {
+	private static final int FIRST = 0x20;
+	private static final int BASE = 0x7f - FIRST;
+
+	/**
+	 * The order that file names are listed in
+	 */
+	public static final Comparator<String> ORDER = new Comparator<String>() {
+		@Override
+		public int compare(String first, String second) {
+			return FileNames.compare(first, second);
+		}
+	};
+
+	private FileNames() {}
+
+	/**
+	 * Compare two file names in the order that they are listed in
+	 * 
+	 * @param first the first name
+	 * @param second the second name
+	 * 
+	 * @return a negative number, zero, or a positive number as the first name
+	 *     is before, the same as, or after the second name
+	 */
+	public static int compare(String first, String second) {
+		int i = 0;
+		int j = 0;
+		while(i < first.length() && j < second.length()) {
+			final int a = first.codePointAt(i);
+			final int b = second.codePointAt(j);
+			if(a != b) {
+				return a < b ? -1 : 1;
+			}
+			i += Character.charCount(a);
+			j += Character.charCount(b);
+		}
+		return (first.length() - i) - (second.length() - j);
+	}
+
+	/**
+	 * Return a name approximately half way between two names, treating the
+	 * names as numbers in base 95 of the printable ASCII characters (other 
+	 * characters are clamped to that range).  The result is only a guess at
+	 * where to look for a name to split the range at, and is not necessarily 
+	 * after the low name.
+	 * 
+	 * @param low the low name
+	 * @param high the high name, or null for the end of the key space
+	 * 
+	 * @return the name between the two names
+	 */
+	static String midpoint(String low, String high) {
+		final int length = Math.max(low.length(), null == high ? low.length() : high.length()) + 2;
+		final int[] sum = new int[length];
+		for (int i = 0; i < length; i++) {
+			sum[i] = digit(low, i) + (null == high ? BASE - 1 : digit(high, i));
+		}
+		// carry, from the least significant digit
+		for (int i = length - 1; i > 0; i--) {
+			sum[i - 1] += sum[i] / BASE;
+			sum[i] %= BASE;
+		}
+		// halve, from the most significant digit (an overflow of the first
+		// digit is halved back into range)
+		final StringBuilder midpoint = new StringBuilder(length);
+		int remainder = 0;
+		for (int i = 0; i < length; i++) {
+			final int value = remainder * BASE + sum[i];
+			midpoint.append((char)(FIRST + Math.min(BASE - 1, value / 2)));
+			remainder = value % 2;
+		}
+		int end = midpoint.length();
+		while(end > 0 && midpoint.charAt(end - 1) == FIRST) {
+			end--;
+		}
+		return midpoint.substring(0, end);
+	}
+
+	private static int digit(String name, int index) {
+		if(index >= name.length()) {
+			return 0;
+		}
+		return Math.max(0, Math.min(BASE - 1, name.charAt(index) - FIRST));
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the listing of the files of a bucket, with the key
+ * space split into partitions that are listed in parallel
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.list;
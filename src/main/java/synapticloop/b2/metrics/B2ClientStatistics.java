@@ -0,0 +1,228 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Live statistics for a single B2ApiClient, which are exposed through JMX 
+ * when the client's MBean is registered.  The connection pool statistics are
+ * only available if the client was created with a 
+ * {@link PoolingHttpClientConnectionManager} that it knows about.
+ *
+ * @author synapticloop
+ */
+public class B2ClientStatistics implements B2ClientStatisticsMXBean, B2RequestListener {
+	private static final String ROUTE_API = "api";
+	private static final String ROUTE_DOWNLOAD = "download";
+	private static final String ROUTE_UPLOAD = "upload";
+	private static final String ROUTE_TOTAL = "total";
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final AtomicInteger inFlightRequests = new AtomicInteger();
+	private final RateMeter bytesSent = new RateMeter();
+	private final RateMeter bytesReceived = new RateMeter();
+
+	private final CounterMap<String> requests = new CounterMap<String>();
+	private final CounterMap<String> failures = new CounterMap<String>();
+	private final CounterMap<String> retries = new CounterMap<String>();
+	private final CounterMap<String> reauthorizations = new CounterMap<String>();
+
+	private volatile String authorizationHost;
+	private volatile String apiHost;
+	private volatile String downloadHost;
+	private final Set<String> uploadHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Create the statistics for a client
+	 * 
+	 * @param connectionManager the connection manager of the client, or null 
+	 *     if it is not known
+	 */
+	public B2ClientStatistics(PoolingHttpClientConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+	}
+
+	/**
+	 * Set the API and download URLs that are returned from the authorization,
+	 * these are used to group the connection pool routes.
+	 * 
+	 * @param apiUrl the API URL
+	 * @param downloadUrl the download URL
+	 */
+	public void setUrls(String apiUrl, String downloadUrl) {
+		this.apiHost = URI.create(apiUrl).getHost();
+		this.downloadHost = URI.create(downloadUrl).getHost();
+	}
+
+	/**
+	 * Set the URL that the account is authorized with (e.g. 
+	 * 'https://api.backblazeb2.com'), whose routes are counted with the API
+	 * routes.
+	 * 
+	 * @param authorizationUrl the URL that the account is authorized with
+	 */
+	public void setAuthorizationUrl(String authorizationUrl) {
+		this.authorizationHost = URI.create(authorizationUrl).getHost();
+	}
+
+	/**
+	 * Add an upload URL that was returned for a bucket or a large file, whose
+	 * routes are counted as upload routes.
+	 * 
+	 * @param uploadUrl the upload URL
+	 */
+	public void addUploadUrl(String uploadUrl) {
+		final String host = URI.create(uploadUrl).getHost();
+		if(null != host) {
+			uploadHosts.add(host);
+		}
+	}
+
+	/**
+	 * Record that an operation was retried
+	 * 
+	 * @param operation the name of the operation
+	 */
+	public void recordRetry(String operation) {
+		retries.increment(operation);
+	}
+
+	/**
+	 * Record that an operation required the account to be re-authorized
+	 * 
+	 * @param operation the name of the operation
+	 */
+	public void recordReauthorization(String operation) {
+		reauthorizations.increment(operation);
+	}
+
+	@Override
+	public void requestStarted(B2RequestEvent event) {
+		inFlightRequests.incrementAndGet();
+	}
+
+	@Override
+	public void requestCompleted(B2RequestEvent event) {
+		inFlightRequests.decrementAndGet();
+		requests.increment(event.getOperation());
+		if(!event.isSuccess()) {
+			failures.increment(event.getOperation());
+		}
+		if(event.getBytesSent() > 0) {
+			bytesSent.mark(event.getBytesSent());
+		}
+		if(event.getBytesReceived() > 0) {
+			bytesReceived.mark(event.getBytesReceived());
+		}
+	}
+
+	@Override
+	public int getInFlightRequests() { return inFlightRequests.get(); }
+
+	@Override
+	public long getBytesSent() { return bytesSent.getTotal(); }
+
+	@Override
+	public long getBytesReceived() { return bytesReceived.getTotal(); }
+
+	@Override
+	public long getBytesSentPerSecond() { return bytesSent.getRate(); }
+
+	@Override
+	public long getBytesReceivedPerSecond() { return bytesReceived.getRate(); }
+
+	@Override
+	public RouteStatistics getApiRouteStatistics() {
+		final String authorization = authorizationHost;
+		final RouteStatistics statistics = getHostStatistics(ROUTE_API, apiHost);
+		if(null == authorization || authorization.equals(apiHost)) {
+			return statistics;
+		}
+		return statistics.add(getHostStatistics(ROUTE_API, authorization));
+	}
+
+	@Override
+	public RouteStatistics getDownloadRouteStatistics() { return getHostStatistics(ROUTE_DOWNLOAD, downloadHost); }
+
+	@Override
+	public RouteStatistics getUploadRouteStatistics() {
+		RouteStatistics statistics = new RouteStatistics(ROUTE_UPLOAD, 0, 0, 0, 0);
+		if(null != connectionManager) {
+			for (HttpRoute route : connectionManager.getRoutes()) {
+				if(uploadHosts.contains(route.getTargetHost().getHostName())) {
+					statistics = statistics.add(new RouteStatistics(ROUTE_UPLOAD, connectionManager.getStats(route)));
+				}
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public RouteStatistics getTotalStatistics() {
+		if(null == connectionManager) {
+			return new RouteStatistics(ROUTE_TOTAL, 0, 0, 0, 0);
+		}
+		return new RouteStatistics(ROUTE_TOTAL, connectionManager.getTotalStats());
+	}
+
+	@Override
+	public List<RouteStatistics> getRouteStatistics() {
+		List<RouteStatistics> statistics = new ArrayList<RouteStatistics>();
+		if(null != connectionManager) {
+			for (HttpRoute route : connectionManager.getRoutes()) {
+				statistics.add(new RouteStatistics(route.getTargetHost().toHostString(), connectionManager.getStats(route)));
+			}
+		}
+		return statistics;
+	}
+
+	private RouteStatistics getHostStatistics(String name, String host) {
+		RouteStatistics statistics = new RouteStatistics(name, 0, 0, 0, 0);
+		if(null != connectionManager && null != host) {
+			for (HttpRoute route : connectionManager.getRoutes()) {
+				if(host.equals(route.getTargetHost().getHostName())) {
+					statistics = statistics.add(new RouteStatistics(name, connectionManager.getStats(route)));
+				}
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public Map<String, Long> getRequests() { return requests.snapshot(); }
+
+	@Override
+	public Map<String, Long> getFailures() { return failures.snapshot(); }
+
+	@Override
+	public Map<String, Long> getRetries() { return retries.snapshot(); }
+
+	@Override
+	public Map<String, Long> getReauthorizations() { return reauthorizations.snapshot(); }
+}
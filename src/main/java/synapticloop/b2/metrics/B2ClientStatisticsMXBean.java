@@ -0,0 +1,101 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX management interface for the statistics of a B2ApiClient
+ *
+ * @author synapticloop
+ */
+public interface B2ClientStatisticsMXBean {
+
+	/**
+	 * @return the number of requests which have started, but not yet completed
+	 */
+	int getInFlightRequests();
+
+	/**
+	 * @return the total number of bytes sent in request bodies
+	 */
+	long getBytesSent();
+
+	/**
+	 * @return the total number of bytes read from response bodies
+	 */
+	long getBytesReceived();
+
+	/**
+	 * @return the upload rate, in bytes per second, over the last ten seconds
+	 */
+	long getBytesSentPerSecond();
+
+	/**
+	 * @return the download rate, in bytes per second, over the last ten seconds
+	 */
+	long getBytesReceivedPerSecond();
+
+	/**
+	 * @return the connection pool statistics for the API host, and the host 
+	 *     that the account is authorized with
+	 */
+	RouteStatistics getApiRouteStatistics();
+
+	/**
+	 * @return the connection pool statistics for the download host
+	 */
+	RouteStatistics getDownloadRouteStatistics();
+
+	/**
+	 * @return the combined connection pool statistics for all upload hosts 
+	 *     that have been returned since the statistics were created
+	 */
+	RouteStatistics getUploadRouteStatistics();
+
+	/**
+	 * @return the connection pool statistics over all routes
+	 */
+	RouteStatistics getTotalStatistics();
+
+	/**
+	 * @return the connection pool statistics for each route in the pool
+	 */
+	List<RouteStatistics> getRouteStatistics();
+
+	/**
+	 * @return the number of completed requests per operation
+	 */
+	Map<String, Long> getRequests();
+
+	/**
+	 * @return the number of failed requests per operation
+	 */
+	Map<String, Long> getFailures();
+
+	/**
+	 * @return the number of retries per operation - requests sent again after
+	 *     re-authorizing, resumed downloads and hedged requests
+	 */
+	Map<String, Long> getRetries();
+
+	/**
+	 * @return the number of re-authorizations per operation
+	 */
+	Map<String, Long> getReauthorizations();
+}
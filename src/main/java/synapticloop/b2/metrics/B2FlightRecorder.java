@@ -0,0 +1,97 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import synapticloop.b2.metrics.FlightRecorderEventType.Field;
+
+/**
+ * The Java Flight Recorder events that are emitted by this library.  The 
+ * events are in the 'Backblaze B2' category and are enabled and configured 
+ * (e.g. with a threshold) through the standard JFR settings, for example:
+ * 
+ * <pre>
+ * java -XX:StartFlightRecording=settings=profile,filename=b2.jfr ...
+ * </pre>
+ * 
+ * When the JVM does not support JFR, or no recording is running, each event 
+ * costs a single check.
+ *
+ * @author synapticloop
+ */
+public final class B2FlightRecorder {
+	/** Outcome of an event which completed successfully */
+	public static final String OUTCOME_SUCCESS = "success";
+	/** Outcome of an event which completed with an error response */
+	public static final String OUTCOME_ERROR = "error";
+	/** Outcome of an event which failed with an exception */
+	public static final String OUTCOME_FAILURE = "failure";
+	/** Outcome of a transfer which was closed before it was complete */
+	public static final String OUTCOME_ABORTED = "aborted";
+
+	/** Direction of an upload transfer */
+	public static final String DIRECTION_UPLOAD = "upload";
+	/** Direction of a download transfer */
+	public static final String DIRECTION_DOWNLOAD = "download";
+
+	/**
+	 * A call to the B2 API, from sending the request until the response body 
+	 * has been read, with fields: operation, method, host, status, code, 
+	 * bytesSent, bytesReceived, outcome
+	 */
+	public static final FlightRecorderEventType API_CALL = new FlightRecorderEventType("synapticloop.b2.ApiCall", "B2 API Call", 
+			"A call to the B2 API, from sending the request until the response body has been read", 
+			new Field(String.class, "operation", "Operation"),
+			new Field(String.class, "method", "Method"),
+			new Field(String.class, "host", "Host"),
+			new Field(int.class, "status", "Status"),
+			new Field(String.class, "code", "Error Code"),
+			new Field(long.class, "bytesSent", "Bytes Sent"),
+			new Field(long.class, "bytesReceived", "Bytes Received"),
+			new Field(String.class, "outcome", "Outcome"));
+
+	/**
+	 * The transfer of a file (or part) body, with fields: direction, name,
+	 * size, expectedSize, outcome
+	 */
+	public static final FlightRecorderEventType TRANSFER = new FlightRecorderEventType("synapticloop.b2.Transfer", "B2 Transfer", 
+			"An upload or download of file content", 
+			new Field(String.class, "direction", "Direction"),
+			new Field(String.class, "name", "Name"),
+			new Field(long.class, "size", "Bytes Transferred"),
+			new Field(long.class, "expectedSize", "Expected Bytes"),
+			new Field(String.class, "outcome", "Outcome"));
+
+	/**
+	 * The calculation of a checksum, with fields: algorithm, size, outcome
+	 */
+	public static final FlightRecorderEventType CHECKSUM = new FlightRecorderEventType("synapticloop.b2.Checksum", "B2 Checksum", 
+			"The calculation of a checksum over content", 
+			new Field(String.class, "algorithm", "Algorithm"),
+			new Field(long.class, "size", "Bytes"),
+			new Field(String.class, "outcome", "Outcome"));
+
+	/**
+	 * The parsing of a JSON response, with fields: responseType, size, outcome
+	 */
+	public static final FlightRecorderEventType RESPONSE_PARSE = new FlightRecorderEventType("synapticloop.b2.ResponseParse", "B2 Response Parse", 
+			"The parsing of a JSON response from the B2 API", 
+			new Field(String.class, "responseType", "Response Type"),
+			new Field(long.class, "size", "Characters"),
+			new Field(String.class, "outcome", "Outcome"));
+
+	private B2FlightRecorder() {}
+}
@@ -0,0 +1,165 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable event describing a single HTTP request to the B2 API.
+ *
+ * @author synapticloop
+ */
+public class B2RequestEvent {
+	private final String operation;
+	private final String method;
+	private final String host;
+	private final int status;
+	private final String code;
+	private final long bytesSent;
+	private final long bytesReceived;
+	private final long timeToFirstByte;
+	private final long duration;
+	private final Throwable failure;
+
+	/**
+	 * Create a new request event
+	 * 
+	 * @param operation the name of the B2 operation, e.g. 'b2_upload_file'
+	 * @param method the HTTP method
+	 * @param host the host that the request was sent to
+	 * @param status the HTTP status code, or -1 if no response was received
+	 * @param code the B2 error code, or null if the request succeeded
+	 * @param bytesSent the number of bytes in the request body, or -1 if unknown
+	 * @param bytesReceived the number of bytes read from the response body
+	 * @param timeToFirstByte the time (in nanoseconds) until the response 
+	 *     headers were received, or -1 if not known
+	 * @param duration the total time (in nanoseconds) of the request, or -1 
+	 *     if the request has not completed
+	 * @param failure the I/O error that caused the request to fail, or null
+	 */
+	public B2RequestEvent(String operation, String method, String host, int status, String code, 
+			long bytesSent, long bytesReceived, long timeToFirstByte, long duration, Throwable failure) {
+		this.operation = operation;
+		this.method = method;
+		this.host = host;
+		this.status = status;
+		this.code = code;
+		this.bytesSent = bytesSent;
+		this.bytesReceived = bytesReceived;
+		this.timeToFirstByte = timeToFirstByte;
+		this.duration = duration;
+		this.failure = failure;
+	}
+
+	/**
+	 * Return the name of the B2 operation, e.g. 'b2_list_file_names'
+	 * 
+	 * @return the name of the operation
+	 */
+	public String getOperation() { return this.operation; }
+
+	/**
+	 * Return the HTTP method of the request
+	 * 
+	 * @return the HTTP method
+	 */
+	public String getMethod() { return this.method; }
+
+	/**
+	 * Return the host that the request was sent to
+	 * 
+	 * @return the host name
+	 */
+	public String getHost() { return this.host; }
+
+	/**
+	 * Return the HTTP status code of the response
+	 * 
+	 * @return the HTTP status code, or -1 if no response was received
+	 */
+	public int getStatus() { return this.status; }
+
+	/**
+	 * Return the B2 error code that was returned in the response body
+	 * 
+	 * @return the B2 error code, or null if there was no error
+	 */
+	public String getCode() { return this.code; }
+
+	/**
+	 * Return the number of bytes sent in the request body
+	 * 
+	 * @return the number of bytes sent, or -1 if unknown
+	 */
+	public long getBytesSent() { return this.bytesSent; }
+
+	/**
+	 * Return the number of bytes read from the response body
+	 * 
+	 * @return the number of bytes received
+	 */
+	public long getBytesReceived() { return this.bytesReceived; }
+
+	/**
+	 * Return the time until the response headers were received
+	 * 
+	 * @param unit the time unit to return the value in
+	 * 
+	 * @return the time to first byte, or -1 if not known
+	 */
+	public long getTimeToFirstByte(TimeUnit unit) { return this.timeToFirstByte < 0 ? -1 : unit.convert(this.timeToFirstByte, TimeUnit.NANOSECONDS); }
+
+	/**
+	 * Return the total time of the request, including reading the response body
+	 * 
+	 * @param unit the time unit to return the value in
+	 * 
+	 * @return the total duration, or -1 if the request has not completed
+	 */
+	public long getDuration(TimeUnit unit) { return this.duration < 0 ? -1 : unit.convert(this.duration, TimeUnit.NANOSECONDS); }
+
+	/**
+	 * Return the I/O error that caused this request to fail
+	 * 
+	 * @return the I/O error, or null if a response was received
+	 */
+	public Throwable getFailure() { return this.failure; }
+
+	/**
+	 * Whether the request completed with a 2xx status code
+	 * 
+	 * @return true if the request was successful
+	 */
+	public boolean isSuccess() { return this.status >= 200 && this.status < 300; }
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("B2RequestEvent{");
+		sb.append("operation='").append(operation).append('\'');
+		sb.append(", method='").append(method).append('\'');
+		sb.append(", host='").append(host).append('\'');
+		sb.append(", status=").append(status);
+		sb.append(", code='").append(code).append('\'');
+		sb.append(", bytesSent=").append(bytesSent);
+		sb.append(", bytesReceived=").append(bytesReceived);
+		sb.append(", timeToFirstByte=").append(timeToFirstByte);
+		sb.append(", duration=").append(duration);
+		sb.append(", failure=").append(failure);
+		sb.append('}');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,49 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+/**
+ * Listener which is notified at the start and the end of every HTTP request
+ * that is made by a {@link synapticloop.b2.request.BaseB2Request}.
+ * 
+ * Listeners are called on the thread that executes (or reads the response of)
+ * the request, so implementations must be thread safe and should return as
+ * quickly as possible.  If no listener is set on a request, no events are
+ * created.
+ *
+ * @author synapticloop
+ */
+public interface B2RequestListener {
+
+	/**
+	 * Called before the request is sent.  Only the operation, method, host and
+	 * number of bytes to send are populated on the event.
+	 * 
+	 * @param event the request event
+	 */
+	void requestStarted(B2RequestEvent event);
+
+	/**
+	 * Called once the request has completed, which is when the response body
+	 * has been fully read (or closed), when the response has been turned into
+	 * a {@link synapticloop.b2.exception.B2ApiException}, or when the request
+	 * failed with an I/O error.
+	 * 
+	 * @param event the request event
+	 */
+	void requestCompleted(B2RequestEvent event);
+}
@@ -0,0 +1,86 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A request listener that dispatches events to any number of registered 
+ * listeners.  Listeners may be added and removed at any time.  A listener 
+ * that throws a runtime exception will not stop the other listeners (or the
+ * request) from proceeding.
+ *
+ * @author synapticloop
+ */
+public class CompositeRequestListener implements B2RequestListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CompositeRequestListener.class);
+
+	private final List<B2RequestListener> listeners = new CopyOnWriteArrayList<B2RequestListener>();
+
+	/**
+	 * Add a listener
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addListener(B2RequestListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a previously added listener
+	 * 
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(B2RequestListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Whether there are any listeners registered
+	 * 
+	 * @return true if there are no listeners
+	 */
+	public boolean isEmpty() {
+		return listeners.isEmpty();
+	}
+
+	@Override
+	public void requestStarted(B2RequestEvent event) {
+		for (B2RequestListener listener : listeners) {
+			try {
+				listener.requestStarted(event);
+			} catch (RuntimeException ex) {
+				LOGGER.warn("Request listener '{}' failed", listener, ex);
+			}
+		}
+	}
+
+	@Override
+	public void requestCompleted(B2RequestEvent event) {
+		for (B2RequestListener listener : listeners) {
+			try {
+				listener.requestCompleted(event);
+			} catch (RuntimeException ex) {
+				LOGGER.warn("Request listener '{}' failed", listener, ex);
+			}
+		}
+	}
+}
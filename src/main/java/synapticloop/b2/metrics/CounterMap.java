@@ -0,0 +1,73 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent map of keys to counters
+ *
+ * @author synapticloop
+ *
+ * @param <K> the type of the key
+ */
+class CounterMap<K> {
+	private final ConcurrentMap<K, AtomicLong> counters = new ConcurrentHashMap<K, AtomicLong>();
+
+	/**
+	 * Increment the counter for a key by one
+	 * 
+	 * @param key the key to increment
+	 */
+	void increment(K key) {
+		get(key).incrementAndGet();
+	}
+
+	private AtomicLong get(K key) {
+		AtomicLong counter = counters.get(key);
+		if(null == counter) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(key, created);
+			if(null == counter) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Return a sorted snapshot of the counters
+	 * 
+	 * @return the snapshot of the counter values
+	 */
+	Map<K, Long> snapshot() {
+		Map<K, Long> snapshot = new TreeMap<K, Long>();
+		for (Map.Entry<K, AtomicLong> entry : counters.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return snapshot;
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+}
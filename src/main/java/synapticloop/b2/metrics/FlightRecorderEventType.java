@@ -0,0 +1,240 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Java Flight Recorder event type which is created at runtime through the
+ * <code>jdk.jfr.EventFactory</code> API, so that this library can still be
+ * compiled for, and run on, Java versions without JFR.  If the JFR API is not
+ * available, {@link #begin()} always returns null and nothing is recorded.
+ * 
+ * Usage is:
+ * 
+ * <pre>
+ * Object event = TYPE.begin();
+ * // ... do the work
+ * if(null != event) {
+ *   TYPE.commit(event, value1, value2, ...);
+ * }
+ * </pre>
+ * 
+ * Field values must be passed in the order in which the fields were declared.
+ *
+ * @author synapticloop
+ */
+public class FlightRecorderEventType {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecorderEventType.class);
+
+	private static final String CATEGORY = "Backblaze B2";
+
+	private static final boolean AVAILABLE;
+
+	private static Constructor<?> annotationElementConstructor;
+	private static Constructor<?> valueDescriptorConstructor;
+	private static Method createMethod;
+	private static Method newEventMethod;
+	private static Method getEventTypeMethod;
+	private static Method isEnabledMethod;
+	private static Method beginMethod;
+	private static Method setMethod;
+	private static Method commitMethod;
+
+	private static Class<? extends Annotation> nameAnnotation;
+	private static Class<? extends Annotation> labelAnnotation;
+	private static Class<? extends Annotation> descriptionAnnotation;
+	private static Class<? extends Annotation> categoryAnnotation;
+	private static Class<? extends Annotation> stackTraceAnnotation;
+
+	static {
+		boolean available = false;
+		try {
+			Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+			annotationElementConstructor = annotationElement.getConstructor(Class.class, Object.class);
+			valueDescriptorConstructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+
+			Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+			createMethod = eventFactory.getMethod("create", List.class, List.class);
+			newEventMethod = eventFactory.getMethod("newEvent");
+			getEventTypeMethod = eventFactory.getMethod("getEventType");
+			isEnabledMethod = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			beginMethod = event.getMethod("begin");
+			setMethod = event.getMethod("set", int.class, Object.class);
+			commitMethod = event.getMethod("commit");
+
+			nameAnnotation = annotation("jdk.jfr.Name");
+			labelAnnotation = annotation("jdk.jfr.Label");
+			descriptionAnnotation = annotation("jdk.jfr.Description");
+			categoryAnnotation = annotation("jdk.jfr.Category");
+			stackTraceAnnotation = annotation("jdk.jfr.StackTrace");
+			available = true;
+		} catch (Exception ex) {
+			LOGGER.debug("Java Flight Recorder API is not available, events will not be recorded.");
+		} catch (LinkageError ex) {
+			LOGGER.debug("Java Flight Recorder API is not available, events will not be recorded.");
+		}
+		AVAILABLE = available;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+		return (Class<? extends Annotation>)Class.forName(name);
+	}
+
+	private final String name;
+	private final Object eventFactory;
+	private final Object eventType;
+	private final int fieldCount;
+
+	/**
+	 * Create (and register) a new event type
+	 * 
+	 * @param name the name of the event, e.g. 'synapticloop.b2.ApiCall'
+	 * @param label the human readable label of the event
+	 * @param description the description of the event
+	 * @param fields the fields of the event
+	 */
+	public FlightRecorderEventType(String name, String label, String description, Field... fields) {
+		this.name = name;
+		this.fieldCount = fields.length;
+
+		Object factory = null;
+		Object type = null;
+		if(AVAILABLE) {
+			try {
+				List<Object> annotations = new ArrayList<Object>();
+				annotations.add(annotationElementConstructor.newInstance(nameAnnotation, name));
+				annotations.add(annotationElementConstructor.newInstance(labelAnnotation, label));
+				annotations.add(annotationElementConstructor.newInstance(descriptionAnnotation, description));
+				annotations.add(annotationElementConstructor.newInstance(categoryAnnotation, new String[] { CATEGORY }));
+				annotations.add(annotationElementConstructor.newInstance(stackTraceAnnotation, Boolean.FALSE));
+
+				List<Object> valueDescriptors = new ArrayList<Object>();
+				for (Field field : fields) {
+					List<Object> fieldAnnotations = new ArrayList<Object>();
+					fieldAnnotations.add(annotationElementConstructor.newInstance(labelAnnotation, field.label));
+					valueDescriptors.add(valueDescriptorConstructor.newInstance(field.type, field.name, fieldAnnotations));
+				}
+
+				factory = createMethod.invoke(null, annotations, valueDescriptors);
+				type = getEventTypeMethod.invoke(factory);
+			} catch (Exception ex) {
+				LOGGER.warn("Could not create the flight recorder event '{}', events will not be recorded.", name, ex);
+				factory = null;
+				type = null;
+			}
+		}
+		this.eventFactory = factory;
+		this.eventType = type;
+	}
+
+	/**
+	 * Whether this event type is enabled in a running recording
+	 * 
+	 * @return true if events of this type will be recorded
+	 */
+	public boolean isEnabled() {
+		if(null == eventType) {
+			return false;
+		}
+		try {
+			return (Boolean)isEnabledMethod.invoke(eventType);
+		} catch (Exception ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create and begin a new event, if this event type is enabled
+	 * 
+	 * @return the started event, or null if the event is not enabled
+	 */
+	public Object begin() {
+		if(!isEnabled()) {
+			return null;
+		}
+		try {
+			Object event = newEventMethod.invoke(eventFactory);
+			beginMethod.invoke(event);
+			return event;
+		} catch (Exception ex) {
+			LOGGER.debug("Could not begin the flight recorder event '{}'", name, ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Set the field values of the event, end it and commit it to the recording
+	 * 
+	 * @param event the event returned from {@link #begin()}, may be null
+	 * @param values the field values, in the order the fields were declared
+	 */
+	public void commit(Object event, Object... values) {
+		if(null == event) {
+			return;
+		}
+		try {
+			for (int i = 0; i < Math.min(fieldCount, values.length); i++) {
+				if(null != values[i]) {
+					setMethod.invoke(event, i, values[i]);
+				}
+			}
+			commitMethod.invoke(event);
+		} catch (Exception ex) {
+			LOGGER.debug("Could not commit the flight recorder event '{}'", name, ex);
+		}
+	}
+
+	/**
+	 * Return the name of the event
+	 * 
+	 * @return the name of the event
+	 */
+	public String getName() { return this.name; }
+
+	/**
+	 * A field of an event type
+	 */
+	public static class Field {
+		private final Class<?> type;
+		private final String name;
+		private final String label;
+
+		/**
+		 * Create a new event field
+		 * 
+		 * @param type the type of the field, a String, or a primitive type
+		 * @param name the name of the field
+		 * @param label the human readable label of the field
+		 */
+		public Field(Class<?> type, String name, String label) {
+			this.type = type;
+			this.name = name;
+			this.label = label;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A request listener which keeps per operation counters and latency 
+ * histograms in memory.
+ * 
+ * <pre>
+ * InMemoryMetricsListener metrics = new InMemoryMetricsListener();
+ * b2ApiClient.addRequestListener(metrics);
+ * ...
+ * metrics.getOperation("b2_upload_file").getDuration().getPercentile(99, TimeUnit.MILLISECONDS);
+ * </pre>
+ *
+ * @author synapticloop
+ */
+public class InMemoryMetricsListener implements B2RequestListener {
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+
+	@Override
+	public void requestStarted(B2RequestEvent event) {
+		// nothing is recorded until the request completes
+	}
+
+	@Override
+	public void requestCompleted(B2RequestEvent event) {
+		getOrCreate(event.getOperation()).record(event);
+	}
+
+	private OperationMetrics getOrCreate(String operation) {
+		OperationMetrics metrics = operations.get(operation);
+		if(null == metrics) {
+			OperationMetrics created = new OperationMetrics(operation);
+			metrics = operations.putIfAbsent(operation, created);
+			if(null == metrics) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Return the metrics for a single operation
+	 * 
+	 * @param operation the name of the operation, e.g. 'b2_list_file_names'
+	 * 
+	 * @return the metrics for the operation, or null if no request for the 
+	 *     operation has completed
+	 */
+	public OperationMetrics getOperation(String operation) {
+		return operations.get(operation);
+	}
+
+	/**
+	 * Return the metrics for all operations, sorted by operation name
+	 * 
+	 * @return the metrics keyed on the operation name
+	 */
+	public Map<String, OperationMetrics> getOperations() {
+		return new TreeMap<String, OperationMetrics>(operations);
+	}
+
+	/**
+	 * Discard all recorded metrics
+	 */
+	public void reset() {
+		operations.clear();
+	}
+}
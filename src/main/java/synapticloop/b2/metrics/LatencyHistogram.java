@@ -0,0 +1,148 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free latency histogram with logarithmic buckets.  Each power of two
+ * is split into eight linear sub-buckets, so any recorded value is reported 
+ * to within 12.5% of its true value.  Values are recorded in microseconds.
+ *
+ * @author synapticloop
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a value
+	 * 
+	 * @param value the value to record
+	 * @param unit the unit of the value
+	 */
+	public void record(long value, TimeUnit unit) {
+		long micros = Math.max(0L, unit.toMicros(value));
+		buckets.incrementAndGet(bucketIndex(micros));
+		count.incrementAndGet();
+		sum.addAndGet(micros);
+
+		long current = max.get();
+		while(micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Return the number of recorded values
+	 * 
+	 * @return the number of recorded values
+	 */
+	public long getCount() { return count.get(); }
+
+	/**
+	 * Return the mean of the recorded values
+	 * 
+	 * @param unit the unit to return the value in
+	 * 
+	 * @return the mean, or 0 if nothing has been recorded
+	 */
+	public long getMean(TimeUnit unit) {
+		long total = count.get();
+		return total == 0 ? 0 : unit.convert(sum.get() / total, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Return the largest recorded value
+	 * 
+	 * @param unit the unit to return the value in
+	 * 
+	 * @return the largest recorded value
+	 */
+	public long getMax(TimeUnit unit) { return unit.convert(max.get(), TimeUnit.MICROSECONDS); }
+
+	/**
+	 * Return the value at a percentile, i.e. the upper bound of the bucket in 
+	 * which the percentile falls.
+	 * 
+	 * @param percentile the percentile, between 0 and 100
+	 * @param unit the unit to return the value in
+	 * 
+	 * @return the value at the percentile, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile, TimeUnit unit) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+
+		long rank = (long)Math.ceil(Math.min(100d, Math.max(0d, percentile)) / 100d * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if(seen >= Math.max(1L, rank)) {
+				return unit.convert(Math.min(bucketUpperBound(i), max.get()), TimeUnit.MICROSECONDS);
+			}
+		}
+		return getMax(unit);
+	}
+
+	/**
+	 * Clear all recorded values
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if(value < LINEAR_LIMIT) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if(index < LINEAR_LIMIT) {
+			return index;
+		}
+		int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+}
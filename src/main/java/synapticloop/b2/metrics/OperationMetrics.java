@@ -0,0 +1,158 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The aggregated metrics for a single B2 operation
+ *
+ * @author synapticloop
+ */
+public class OperationMetrics {
+	private final String operation;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong bytesReceived = new AtomicLong();
+
+	private final CounterMap<Integer> statusCodes = new CounterMap<Integer>();
+	private final CounterMap<String> errorCodes = new CounterMap<String>();
+
+	private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+	private final LatencyHistogram duration = new LatencyHistogram();
+
+	/**
+	 * Create the metrics for an operation
+	 * 
+	 * @param operation the name of the operation
+	 */
+	public OperationMetrics(String operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Record a completed request
+	 * 
+	 * @param event the completed request event
+	 */
+	public void record(B2RequestEvent event) {
+		requests.incrementAndGet();
+		if(!event.isSuccess()) {
+			failures.incrementAndGet();
+		}
+		if(event.getBytesSent() > 0) {
+			bytesSent.addAndGet(event.getBytesSent());
+		}
+		bytesReceived.addAndGet(event.getBytesReceived());
+
+		statusCodes.increment(event.getStatus());
+		if(null != event.getCode()) {
+			errorCodes.increment(event.getCode());
+		}
+
+		if(event.getTimeToFirstByte(TimeUnit.NANOSECONDS) >= 0) {
+			timeToFirstByte.record(event.getTimeToFirstByte(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		}
+		if(event.getDuration(TimeUnit.NANOSECONDS) >= 0) {
+			duration.record(event.getDuration(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Return the name of the operation
+	 * 
+	 * @return the name of the operation
+	 */
+	public String getOperation() { return this.operation; }
+
+	/**
+	 * Return the number of completed requests
+	 * 
+	 * @return the number of completed requests
+	 */
+	public long getRequests() { return this.requests.get(); }
+
+	/**
+	 * Return the number of requests that did not complete with a 2xx status code
+	 * 
+	 * @return the number of failed requests
+	 */
+	public long getFailures() { return this.failures.get(); }
+
+	/**
+	 * Return the total number of bytes sent in request bodies
+	 * 
+	 * @return the number of bytes sent
+	 */
+	public long getBytesSent() { return this.bytesSent.get(); }
+
+	/**
+	 * Return the total number of bytes read from response bodies
+	 * 
+	 * @return the number of bytes received
+	 */
+	public long getBytesReceived() { return this.bytesReceived.get(); }
+
+	/**
+	 * Return a snapshot of the number of responses per HTTP status code, with 
+	 * -1 being used for requests which received no response
+	 * 
+	 * @return the map of status code to count
+	 */
+	public Map<Integer, Long> getStatusCodes() { return this.statusCodes.snapshot(); }
+
+	/**
+	 * Return a snapshot of the number of responses per B2 error code
+	 * 
+	 * @return the map of error code to count
+	 */
+	public Map<String, Long> getErrorCodes() { return this.errorCodes.snapshot(); }
+
+	/**
+	 * Return the histogram of the time until the response headers were received
+	 * 
+	 * @return the time to first byte histogram
+	 */
+	public LatencyHistogram getTimeToFirstByte() { return this.timeToFirstByte; }
+
+	/**
+	 * Return the histogram of the total request duration
+	 * 
+	 * @return the duration histogram
+	 */
+	public LatencyHistogram getDuration() { return this.duration; }
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("OperationMetrics{");
+		sb.append("operation='").append(operation).append('\'');
+		sb.append(", requests=").append(requests);
+		sb.append(", failures=").append(failures);
+		sb.append(", bytesSent=").append(bytesSent);
+		sb.append(", bytesReceived=").append(bytesReceived);
+		sb.append(", statusCodes=").append(statusCodes);
+		sb.append(", errorCodes=").append(errorCodes);
+		sb.append(", p50=").append(duration.getPercentile(50, TimeUnit.MILLISECONDS)).append("ms");
+		sb.append(", p99=").append(duration.getPercentile(99, TimeUnit.MILLISECONDS)).append("ms");
+		sb.append('}');
+		return sb.toString();
+	}
+}
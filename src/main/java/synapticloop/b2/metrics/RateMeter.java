@@ -0,0 +1,81 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures a rate per second over a sliding window of the last ten seconds, 
+ * without locking.
+ *
+ * @author synapticloop
+ */
+public class RateMeter {
+	private static final int WINDOW_SECONDS = 10;
+
+	private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+	private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+	private final AtomicLong total = new AtomicLong();
+
+	/**
+	 * Record a number of events (e.g. bytes) that occurred now
+	 * 
+	 * @param count the number of events
+	 */
+	public void mark(long count) {
+		final long now = currentSecond();
+		final int slot = (int)(now % WINDOW_SECONDS);
+		final long slotSecond = seconds.get(slot);
+		if(slotSecond != now && seconds.compareAndSet(slot, slotSecond, now)) {
+			counts.set(slot, 0L);
+		}
+		counts.addAndGet(slot, count);
+		total.addAndGet(count);
+	}
+
+	/**
+	 * Return the average rate per second over the last ten complete seconds
+	 * 
+	 * @return the rate per second
+	 */
+	public long getRate() {
+		final long now = currentSecond();
+		long sum = 0L;
+		for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+			final long slotSecond = seconds.get(slot);
+			if(slotSecond < now && slotSecond >= now - WINDOW_SECONDS) {
+				sum += counts.get(slot);
+			}
+		}
+		return sum / WINDOW_SECONDS;
+	}
+
+	/**
+	 * Return the total number of events recorded
+	 * 
+	 * @return the total count
+	 */
+	public long getTotal() {
+		return total.get();
+	}
+
+	private static long currentSecond() {
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+	}
+}
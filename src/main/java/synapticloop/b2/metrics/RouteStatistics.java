@@ -0,0 +1,111 @@
+package synapticloop.b2.metrics;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.beans.ConstructorProperties;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * A snapshot of the connection pool statistics for a route (or a group of
+ * routes)
+ *
+ * @author synapticloop
+ */
+public class RouteStatistics {
+	private final String route;
+	private final int leased;
+	private final int pending;
+	private final int available;
+	private final int max;
+
+	/**
+	 * Create a route statistics snapshot
+	 * 
+	 * @param route the name of the route
+	 * @param leased the number of connections currently in use
+	 * @param pending the number of requests waiting for a connection
+	 * @param available the number of idle connections
+	 * @param max the maximum number of connections
+	 */
+	@ConstructorProperties({ "route", "leased", "pending", "available", "max" })
+	public RouteStatistics(String route, int leased, int pending, int available, int max) {
+		this.route = route;
+		this.leased = leased;
+		this.pending = pending;
+		this.available = available;
+		this.max = max;
+	}
+
+	/**
+	 * Create a route statistics snapshot from the pool statistics
+	 * 
+	 * @param route the name of the route
+	 * @param stats the pool statistics
+	 */
+	public RouteStatistics(String route, PoolStats stats) {
+		this(route, stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+	}
+
+	/**
+	 * Return a new snapshot which is the sum of this and another snapshot
+	 * 
+	 * @param other the other snapshot
+	 * 
+	 * @return the combined snapshot
+	 */
+	public RouteStatistics add(RouteStatistics other) {
+		return new RouteStatistics(route, leased + other.leased, pending + other.pending, available + other.available, max + other.max);
+	}
+
+	/**
+	 * @return the name of the route
+	 */
+	public String getRoute() { return this.route; }
+
+	/**
+	 * @return the number of connections currently leased to requests
+	 */
+	public int getLeased() { return this.leased; }
+
+	/**
+	 * @return the number of requests waiting for a connection from the pool
+	 */
+	public int getPending() { return this.pending; }
+
+	/**
+	 * @return the number of idle, kept alive, connections
+	 */
+	public int getAvailable() { return this.available; }
+
+	/**
+	 * @return the maximum number of connections
+	 */
+	public int getMax() { return this.max; }
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("RouteStatistics{");
+		sb.append("route='").append(route).append('\'');
+		sb.append(", leased=").append(leased);
+		sb.append(", pending=").append(pending);
+		sb.append(", available=").append(available);
+		sb.append(", max=").append(max);
+		sb.append('}');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,7 @@
+/**
+ * This package contains the request listener SPI and metrics implementations
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.metrics;
\ No newline at end of file
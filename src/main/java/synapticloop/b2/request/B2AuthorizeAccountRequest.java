@@ -49,7 +49,9 @@ import synapticloop.b2.response.B2AuthorizeAccountResponse;
  * @author synapticloop
  */
 public class B2AuthorizeAccountRequest extends BaseB2Request {
-	private static final String B2_AUTHORIZE_ACCOUNT = BASE_API + "b2_authorize_account";
+	public static final String DEFAULT_API_HOST = BASE_API_HOST;
+
+	private static final String B2_AUTHORIZE_ACCOUNT = BASE_API_VERSION + "b2_authorize_account";
 
 	/**
 	 * Instantiate a new authorize account request
@@ -59,8 +61,22 @@ public class B2AuthorizeAccountRequest extends BaseB2Request {
 	 * @param applicationKey the application key
 	 */
 	public B2AuthorizeAccountRequest(CloseableHttpClient client, String accountId,  String applicationKey) {
+		this(client, BASE_API_HOST, accountId, applicationKey);
+	}
+
+	/**
+	 * Instantiate a new authorize account request against a different API 
+	 * host, for example a local emulator of the B2 service.  All further 
+	 * requests will use the API and download URLs from the response.
+	 *
+	 * @param client Shared HTTP client instance
+	 * @param apiHost the scheme, host and port of the API, e.g. 'https://api.backblazeb2.com'
+	 * @param accountId the account id
+	 * @param applicationKey the application key
+	 */
+	public B2AuthorizeAccountRequest(CloseableHttpClient client, String apiHost, String accountId,  String applicationKey) {
 
-		super(client, B2_AUTHORIZE_ACCOUNT);
+		super(client, apiHost + B2_AUTHORIZE_ACCOUNT);
 
 		this.addHeader(HttpHeaders.AUTHORIZATION,  String.format("Basic %s", Base64.encodeBase64String((String.format("%s:%s", accountId, applicationKey)).getBytes())));
 	}
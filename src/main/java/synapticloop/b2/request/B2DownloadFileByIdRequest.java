@@ -117,6 +117,6 @@ public class B2DownloadFileByIdRequest extends BaseB2Request {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse getResponse() throws B2ApiException, IOException {
-		return new B2DownloadFileResponse(executeGet());
+		return new B2DownloadFileResponse(executeGet(), this.getDrainPolicy());
 	}
 }
@@ -95,6 +95,6 @@ public class B2DownloadFileByNameRequest extends BaseB2Request {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse getResponse() throws B2ApiException, IOException {
-		return new B2DownloadFileResponse(executeGet());
+		return new B2DownloadFileResponse(executeGet(), this.getDrainPolicy());
 	}
 }
@@ -18,12 +18,15 @@ package synapticloop.b2.request;
 
 import java.io.IOException;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 
 import synapticloop.b2.exception.B2ApiException;
 import synapticloop.b2.response.B2AuthorizeAccountResponse;
 import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2Result;
 
 /**
  * <p>Gets information about one file stored in B2.</p>
@@ -66,4 +69,23 @@ public class B2GetFileInfoRequest extends BaseB2Request {
 	public B2FileResponse getResponse() throws B2ApiException, IOException {
 		return new B2FileResponse(EntityUtils.toString(executePost().getEntity()));
 	}
+
+	/**
+	 * Execute the call and return the file information, or the error status
+	 * if the call failed (e.g. 404 if the file does not exist) without 
+	 * throwing an exception
+	 * 
+	 * @return the result of the call
+	 * 
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     request could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2FileResponse> getResult() throws B2ApiException, IOException {
+		final CloseableHttpResponse httpResponse = sendPost();
+		if(HttpStatus.SC_OK == httpResponse.getStatusLine().getStatusCode()) {
+			return B2Result.success(HttpStatus.SC_OK, new B2FileResponse(EntityUtils.toString(httpResponse.getEntity())));
+		}
+		return failed(httpResponse);
+	}
 }
@@ -18,11 +18,14 @@ package synapticloop.b2.request;
 
 import java.io.IOException;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 import synapticloop.b2.exception.B2ApiException;
 import synapticloop.b2.response.B2AuthorizeAccountResponse;
 import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2Result;
 
 /**
  * <p>Gets information on one file from B2.</p>
@@ -82,4 +85,23 @@ public class B2HeadFileByIdRequest extends BaseB2Request {
 	public B2DownloadFileResponse getResponse() throws B2ApiException, IOException {
 		return new B2DownloadFileResponse(this.executeHead());
 	}
+
+	/**
+	 * Return the response for the HEAD request, or the error status if the 
+	 * request failed (e.g. 404 if the file does not exist) without throwing 
+	 * an exception
+	 * 
+	 * @return the result of the request
+	 * 
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     request could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2DownloadFileResponse> getResult() throws B2ApiException, IOException {
+		final CloseableHttpResponse httpResponse = this.sendHead();
+		if(HttpStatus.SC_OK == httpResponse.getStatusLine().getStatusCode()) {
+			return B2Result.success(HttpStatus.SC_OK, new B2DownloadFileResponse(httpResponse));
+		}
+		return this.failed(httpResponse);
+	}
 }
@@ -0,0 +1,93 @@
+package synapticloop.b2.request;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2AuthorizeAccountResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2Result;
+import synapticloop.b2.util.URLEncoder;
+
+/**
+ * <p>Gets information on one file from B2, by the name of the bucket and the
+ * name of the file.</p>
+ * 
+ * <p><strong>NO</strong> file content is returned with this request, the 
+ * response contains the same headers as a download of the file by name.  A 
+ * hidden file is not found.</p>
+ * 
+ * This is the interaction class for HEAD requests of the 
+ * <strong>b2_download_file_by_name</strong> api calls, which can be found here:
+ * 
+ * <a href="http://www.backblaze.com/b2/docs/b2_download_file_by_name.html">http://www.backblaze.com/b2/docs/b2_download_file_by_name.html</a>
+ * 
+ * @author synapticloop
+ */
+public class B2HeadFileByNameRequest extends BaseB2Request {
+
+	/**
+	 * Create a head file by name request which returns the information about
+	 * the file and any attached file information
+	 * 
+	 * @param client The HTTPClient to use
+	 * @param b2AuthorizeAccountResponse the authorize account response
+	 * @param bucketName the name of the bucket
+	 * @param fileName the name and path of the file
+	 */
+	public B2HeadFileByNameRequest(CloseableHttpClient client, B2AuthorizeAccountResponse b2AuthorizeAccountResponse, String bucketName, String fileName) {
+		super(client, b2AuthorizeAccountResponse, 
+				b2AuthorizeAccountResponse.getDownloadUrl() + "/file/" + URLEncoder.encode(bucketName) + "/" + URLEncoder.encode(fileName));
+	}
+
+	/**
+	 * Return the response for the HEAD request 
+	 * 
+	 * @return the download file response - note that this does not contain any body content
+	 * 
+	 * @throws B2ApiException if something went wrong
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2DownloadFileResponse getResponse() throws B2ApiException, IOException {
+		return new B2DownloadFileResponse(this.executeHead());
+	}
+
+	/**
+	 * Return the response for the HEAD request, or the error status if the 
+	 * request failed (e.g. 404 if the file does not exist, or is hidden) 
+	 * without throwing an exception
+	 * 
+	 * @return the result of the request
+	 * 
+	 * @throws B2ApiException if the response could not be parsed, or the 
+	 *     request could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2Result<B2DownloadFileResponse> getResult() throws B2ApiException, IOException {
+		final CloseableHttpResponse httpResponse = this.sendHead();
+		if(HttpStatus.SC_OK == httpResponse.getStatusLine().getStatusCode()) {
+			return B2Result.success(HttpStatus.SC_OK, new B2DownloadFileResponse(httpResponse));
+		}
+		return this.failed(httpResponse);
+	}
+}
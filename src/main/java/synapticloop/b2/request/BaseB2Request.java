@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpResponseException;
@@ -35,6 +36,7 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
@@ -43,8 +45,22 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import synapticloop.b2.auth.B2Reauthorizer;
 import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.BandwidthLimiter;
+import synapticloop.b2.io.DrainPolicy;
+import synapticloop.b2.io.ProgressHttpEntity;
+import synapticloop.b2.io.ProgressTracker;
+import synapticloop.b2.io.ThrottledHttpEntity;
+import synapticloop.b2.io.TransferProgress;
+import synapticloop.b2.io.TransferProgressListener;
+import synapticloop.b2.metrics.B2ClientStatistics;
+import synapticloop.b2.metrics.B2FlightRecorder;
+import synapticloop.b2.metrics.B2RequestListener;
 import synapticloop.b2.response.B2AuthorizeAccountResponse;
+import synapticloop.b2.response.B2ResponseHeaders;
+import synapticloop.b2.response.B2Result;
+import synapticloop.b2.util.URLEncoder;
 
 public abstract class BaseB2Request {
 	private static final Logger LOGGER = LoggerFactory.getLogger(BaseB2Request.class);
@@ -56,6 +72,9 @@ public abstract class BaseB2Request {
 	public static final String VALUE_APPLICATION_X_WWW_FORM_URLENCODED = "application/x-www-form-urlencoded";
 	public static final String VALUE_UTF_8 = "UTF-8";
 
+	private static final String EXPIRED_AUTH_TOKEN = "expired_auth_token";
+	private static final String BAD_AUTH_TOKEN = "bad_auth_token";
+
 	private final Map<String, String> requestHeaders = new HashMap<>();
 
 	/**
@@ -72,6 +91,30 @@ public abstract class BaseB2Request {
 
 	private final String url;
 
+	private B2RequestListener requestListener;
+
+	private BandwidthLimiter[] uploadLimiters;
+
+	private BandwidthLimiter[] downloadLimiters;
+
+	private DrainPolicy drainPolicy = DrainPolicy.DEFAULT;
+
+	private TransferProgressListener progressListener;
+
+	private long progressGranularityBytes = ProgressTracker.DEFAULT_GRANULARITY_BYTES;
+
+	private long progressIntervalMillis = ProgressTracker.DEFAULT_INTERVAL_MILLIS;
+
+	private RequestObservation observation;
+
+	private B2Reauthorizer reauthorizer;
+
+	private boolean stackTraces = true;
+
+	private HedgingPolicy hedgingPolicy;
+
+	private B2ClientStatistics statistics;
+
 	/**
 	 * Instantiate the base B2 with no authorization header, this is used as the
 	 * request that will authorize the account.
@@ -113,6 +156,119 @@ public abstract class BaseB2Request {
 		this.addHeader(HttpHeaders.AUTHORIZATION, b2AuthorizeAccountResponse.getAuthorizationToken());
 	}
 
+	/**
+	 * Set the listener that is notified at the start and the end of each HTTP
+	 * request.  If no listener is set (the default) no events are created.
+	 *
+	 * @param requestListener the listener to notify, or null for none
+	 */
+	public void setRequestListener(B2RequestListener requestListener) {
+		this.requestListener = requestListener;
+	}
+
+	/**
+	 * Set the limiters for the upload of file content, the content of each 
+	 * upload is throttled by all of the limiters.  If none are set (the default)
+	 * the upload is not throttled.
+	 *
+	 * @param uploadLimiters the limiters for the upload rate
+	 */
+	public void setUploadLimiters(BandwidthLimiter... uploadLimiters) {
+		this.uploadLimiters = uploadLimiters;
+	}
+
+	/**
+	 * Set the limiters for the download of file content, the content of each 
+	 * download is throttled by all of the limiters.  If none are set (the 
+	 * default) the download is not throttled.
+	 *
+	 * @param downloadLimiters the limiters for the download rate
+	 */
+	public void setDownloadLimiters(BandwidthLimiter... downloadLimiters) {
+		this.downloadLimiters = downloadLimiters;
+	}
+
+	/**
+	 * Set the listener that is notified of the progress of the upload or 
+	 * download of file content.  If no listener is set (the default) the 
+	 * progress is not tracked.
+	 *
+	 * @param progressListener the listener to notify, or null for none
+	 * @param granularityBytes notify each time this number of bytes has been 
+	 *     transferred
+	 * @param intervalMillis notify when this number of milliseconds has 
+	 *     passed since the last notification
+	 */
+	public void setProgressListener(TransferProgressListener progressListener, long granularityBytes, long intervalMillis) {
+		this.progressListener = progressListener;
+		this.progressGranularityBytes = granularityBytes;
+		this.progressIntervalMillis = intervalMillis;
+	}
+
+	/**
+	 * Set the policy which decides whether the rest of a download is drained
+	 * when its content stream is closed before it has been fully read, so 
+	 * that the connection can be reused.
+	 *
+	 * @param drainPolicy the drain policy
+	 */
+	public void setDrainPolicy(DrainPolicy drainPolicy) {
+		this.drainPolicy = drainPolicy;
+	}
+
+	/**
+	 * Set the reauthorizer which is asked for a new authorization token when 
+	 * the API rejects the token of this request as expired, after which the 
+	 * request is sent once more.  If none is set (the default) the rejection 
+	 * is thrown as a {@link B2ApiException}.
+	 *
+	 * @param reauthorizer the reauthorizer, or null for none
+	 */
+	public void setReauthorizer(B2Reauthorizer reauthorizer) {
+		this.reauthorizer = reauthorizer;
+	}
+
+	/**
+	 * Set whether the {@link B2ApiException} thrown for an error response has
+	 * a stack trace (and the {@link HttpResponseException} of the status as 
+	 * its cause), the default is true.  Without them the exception is much 
+	 * cheaper to create.
+	 *
+	 * @param stackTraces whether exceptions have stack traces
+	 */
+	public void setStackTraces(boolean stackTraces) {
+		this.stackTraces = stackTraces;
+	}
+
+	/**
+	 * Set the policy which hedges the GET and HEAD requests that are slow to 
+	 * receive a response, if none is set (the default) requests are not hedged
+	 *
+	 * @param hedgingPolicy the hedging policy, or null for none
+	 */
+	public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+		this.hedgingPolicy = hedgingPolicy;
+	}
+
+	/**
+	 * Set the statistics that the retries of this request (sending it again 
+	 * after re-authorizing, or hedging it) are recorded in
+	 *
+	 * @param statistics the statistics, or null for none
+	 */
+	public void setStatistics(B2ClientStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Return the policy for draining downloads which are closed early
+	 *
+	 * @return the drain policy
+	 */
+	protected DrainPolicy getDrainPolicy() {
+		return drainPolicy;
+	}
+
 	/**
 	 * Add header to request replacing previous if any
 	 *
@@ -152,25 +308,32 @@ public abstract class BaseB2Request {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	protected CloseableHttpResponse executeHead() throws B2ApiException, IOException {
-		URI uri = this.buildUri();
-
-		LOGGER.debug("HEAD request to URL '{}'", uri.toString());
-
-		HttpHead httpHead = new HttpHead(uri);
-
-		CloseableHttpResponse httpResponse = this.execute(httpHead);
+		CloseableHttpResponse httpResponse = this.sendHead();
 
 		switch(httpResponse.getStatusLine().getStatusCode()) {
 		case HttpStatus.SC_OK:
 			return httpResponse;
 		}
 
-		final B2ApiException failure = new B2ApiException(EntityUtils.toString(httpResponse.getEntity()), new HttpResponseException(
-				httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase()));
-		if(httpResponse.containsHeader(HttpHeaders.RETRY_AFTER)) {
-			throw failure.withRetry(Integer.valueOf(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue()));
-		}
-		throw failure;
+		throw this.failure(httpResponse);
+	}
+
+	/**
+	 * Send an HTTP HEAD request and return the response, whatever its status
+	 *
+	 * @return the response object
+	 *
+	 * @throws B2ApiException if the request could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	protected CloseableHttpResponse sendHead() throws B2ApiException, IOException {
+		URI uri = this.buildUri();
+
+		LOGGER.debug("HEAD request to URL '{}'", uri.toString());
+
+		HttpHead httpHead = new HttpHead(uri);
+
+		return this.execute(httpHead);
 	}
 
 	/**
@@ -192,15 +355,19 @@ public abstract class BaseB2Request {
 		switch(httpResponse.getStatusLine().getStatusCode()) {
 		case HttpStatus.SC_OK:
 		case HttpStatus.SC_PARTIAL_CONTENT:
+			if(isLimited(downloadLimiters) && null != httpResponse.getEntity()) {
+				httpResponse.setEntity(new ThrottledHttpEntity(httpResponse.getEntity(), downloadLimiters));
+			}
+			if(null != progressListener && null != httpResponse.getEntity()) {
+				final String fileName = httpResponse.containsHeader(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME) ? 
+						httpResponse.getFirstHeader(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME).getValue() : null;
+				httpResponse.setEntity(new ProgressHttpEntity(httpResponse.getEntity(), this.progressTracker(fileName, 
+						TransferProgress.Direction.DOWNLOAD, httpResponse.getEntity().getContentLength())));
+			}
 			return httpResponse;
 		}
 
-		final B2ApiException failure = new B2ApiException(EntityUtils.toString(httpResponse.getEntity()), new HttpResponseException(
-				httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase()));
-		if(httpResponse.containsHeader(HttpHeaders.RETRY_AFTER)) {
-			throw failure.withRetry(Integer.valueOf(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue()));
-		}
-		throw failure;
+		throw this.failure(httpResponse);
 	}
 
 	/**
@@ -213,25 +380,32 @@ public abstract class BaseB2Request {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	protected CloseableHttpResponse executePost() throws B2ApiException, IOException {
-		URI uri = this.buildUri();
-
-		String postData = convertPostData();
-		HttpPost httpPost = new HttpPost(uri);
-
-		httpPost.setEntity(new StringEntity(postData, APPLICATION_JSON));
-		CloseableHttpResponse httpResponse = this.execute(httpPost);
+		CloseableHttpResponse httpResponse = this.sendPost();
 
 		switch(httpResponse.getStatusLine().getStatusCode()) {
 		case HttpStatus.SC_OK:
 			return httpResponse;
 		}
 
-		final B2ApiException failure = new B2ApiException(EntityUtils.toString(httpResponse.getEntity()), new HttpResponseException(
-				httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase()));
-		if(httpResponse.containsHeader(HttpHeaders.RETRY_AFTER)) {
-			throw failure.withRetry(Integer.valueOf(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue()));
-		}
-		throw failure;
+		throw this.failure(httpResponse);
+	}
+
+	/**
+	 * Send a POST request and return the response, whatever its status
+	 *
+	 * @return the response object
+	 *
+	 * @throws B2ApiException if the request could not be re-authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	protected CloseableHttpResponse sendPost() throws B2ApiException, IOException {
+		URI uri = this.buildUri();
+
+		String postData = convertPostData();
+		HttpPost httpPost = new HttpPost(uri);
+
+		httpPost.setEntity(new StringEntity(postData, APPLICATION_JSON));
+		return this.execute(httpPost);
 	}
 
 	/**
@@ -250,16 +424,112 @@ public abstract class BaseB2Request {
 
 		HttpPost httpPost = new HttpPost(uri);
 
-		httpPost.setEntity(entity);
-		CloseableHttpResponse httpResponse = this.execute(httpPost);
+		HttpEntity upload = isLimited(uploadLimiters) ? new ThrottledHttpEntity(entity, uploadLimiters) : entity;
+		if(null != progressListener) {
+			upload = new ProgressHttpEntity(upload, this.progressTracker(this.transferName(), TransferProgress.Direction.UPLOAD, entity.getContentLength()));
+		}
+		httpPost.setEntity(upload);
+		final Object event = B2FlightRecorder.TRANSFER.begin();
+		String outcome = B2FlightRecorder.OUTCOME_FAILURE;
+		try {
+			CloseableHttpResponse httpResponse = this.execute(httpPost);
 
-		switch(httpResponse.getStatusLine().getStatusCode()) {
-		case HttpStatus.SC_OK:
-			return httpResponse;
+			switch(httpResponse.getStatusLine().getStatusCode()) {
+			case HttpStatus.SC_OK:
+				outcome = B2FlightRecorder.OUTCOME_SUCCESS;
+				return httpResponse;
+			}
+
+			outcome = B2FlightRecorder.OUTCOME_ERROR;
+			throw this.failure(httpResponse);
+		} finally {
+			if(null != event) {
+				B2FlightRecorder.TRANSFER.commit(event, B2FlightRecorder.DIRECTION_UPLOAD, this.transferName(), 
+						B2FlightRecorder.OUTCOME_SUCCESS.equals(outcome) ? entity.getContentLength() : 0L, 
+						entity.getContentLength(), outcome);
+			}
+		}
+	}
+
+	/**
+	 * Return the name of the file (or the part number) that is being uploaded
+	 *
+	 * @return the name of the upload, for the flight recorder
+	 */
+	private String transferName() {
+		if(requestHeaders.containsKey(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME)) {
+			return requestHeaders.get(B2ResponseHeaders.HEADER_X_BZ_FILE_NAME);
+		}
+		if(requestHeaders.containsKey(B2ResponseHeaders.HEADER_X_BZ_PART_NUMBER)) {
+			return "part " + requestHeaders.get(B2ResponseHeaders.HEADER_X_BZ_PART_NUMBER);
+		}
+		return null;
+	}
+
+	/**
+	 * Create the tracker for the progress of an upload or download
+	 *
+	 * @param name the (URL encoded) name of the file or part
+	 * @param direction the direction of the transfer
+	 * @param totalBytes the number of bytes to transfer, or -1 if not known
+	 *
+	 * @return the tracker, which notifies the progress listener
+	 */
+	private ProgressTracker progressTracker(String name, TransferProgress.Direction direction, long totalBytes) {
+		return new ProgressTracker(null == name ? null : URLEncoder.decode(name), direction, totalBytes, 
+				progressListener, progressGranularityBytes, progressIntervalMillis);
+	}
+
+	/**
+	 * Read the error response and convert it into an exception, including the
+	 * 'Retry-After' header value if present.
+	 *
+	 * @param httpResponse the non OK response
+	 *
+	 * @return the exception to throw
+	 *
+	 * @throws IOException if the response could not be read
+	 */
+	private B2ApiException failure(CloseableHttpResponse httpResponse) throws IOException {
+		final HttpEntity entity = httpResponse.getEntity();
+		final String json = null == entity ? null : EntityUtils.toString(entity);
+		final int status = httpResponse.getStatusLine().getStatusCode();
+		final B2ApiException failure = stackTraces 
+				? new B2ApiException(json, new HttpResponseException(status, httpResponse.getStatusLine().getReasonPhrase())) 
+				: new B2ApiException(json, null, false);
+		failure.withHttpStatus(status).withRetry(this.retryAfter(httpResponse));
+		if(null != observation) {
+			observation.failed(failure.getCode(), null == json ? 0L : entity.getContentLength() < 0 ? json.length() : entity.getContentLength());
+		}
+		return failure;
+	}
+
+	/**
+	 * Read an error response into the result of a failed call, without 
+	 * creating an exception
+	 *
+	 * @param httpResponse the non OK response
+	 * @param <T> the type of the response of a successful call
+	 *
+	 * @return the result
+	 *
+	 * @throws IOException if the response could not be read
+	 */
+	protected <T> B2Result<T> failed(CloseableHttpResponse httpResponse) throws IOException {
+		final HttpEntity entity = httpResponse.getEntity();
+		final String json = null == entity ? null : EntityUtils.toString(entity);
+		final B2Result<T> result = B2Result.failure(httpResponse.getStatusLine().getStatusCode(), json, this.retryAfter(httpResponse));
+		if(null != observation) {
+			observation.failed(result.getCode(), null == json ? 0L : entity.getContentLength() < 0 ? json.length() : entity.getContentLength());
 		}
+		return result;
+	}
 
-		throw new B2ApiException(EntityUtils.toString(httpResponse.getEntity()), new HttpResponseException(
-				httpResponse.getStatusLine().getStatusCode(), httpResponse.getStatusLine().getReasonPhrase()));
+	private Integer retryAfter(CloseableHttpResponse httpResponse) {
+		if(httpResponse.containsHeader(HttpHeaders.RETRY_AFTER)) {
+			return Integer.valueOf(httpResponse.getFirstHeader(HttpHeaders.RETRY_AFTER).getValue());
+		}
+		return null;
 	}
 
 	/**
@@ -337,14 +607,149 @@ public abstract class BaseB2Request {
 
 	protected CloseableHttpResponse execute(final HttpUriRequest request) throws IOException, B2ApiException {
 		this.setHeaders(request);
+		final CloseableHttpResponse httpResponse = this.send(request);
+		if(HttpStatus.SC_UNAUTHORIZED == httpResponse.getStatusLine().getStatusCode() && null != reauthorizer) {
+			final String authorizationToken = this.reauthorize(request, httpResponse);
+			if(null != authorizationToken) {
+				httpResponse.close();
+				requestHeaders.put(HttpHeaders.AUTHORIZATION, authorizationToken);
+				request.setHeader(HttpHeaders.AUTHORIZATION, authorizationToken);
+				if(null != statistics) {
+					statistics.recordRetry(RequestObservation.operationName(request.getURI()));
+				}
+				return this.send(request);
+			}
+		}
+		return httpResponse;
+	}
+
+	/**
+	 * Get a new authorization token if the request was rejected because its 
+	 * token has expired, and the request can be sent again.  The content of 
+	 * the rejection is buffered, so that it can still be read if the request 
+	 * is not sent again.
+	 *
+	 * @param request the rejected request
+	 * @param httpResponse the 401 response
+	 *
+	 * @return the new authorization token, or null if the request should not 
+	 *     be sent again
+	 *
+	 * @throws B2ApiException if the account could not be authorized
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private String reauthorize(final HttpUriRequest request, final CloseableHttpResponse httpResponse) throws IOException, B2ApiException {
+		if(!request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+			return null;
+		}
+		if(request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+			if(null != entity && !entity.isRepeatable()) {
+				return null;
+			}
+		}
+		if(null == httpResponse.getEntity()) {
+			return null;
+		}
+		httpResponse.setEntity(new BufferedHttpEntity(httpResponse.getEntity()));
+		final String json = EntityUtils.toString(httpResponse.getEntity());
+		final String code = new B2ApiException(json, null).getCode();
+		if(!EXPIRED_AUTH_TOKEN.equals(code) && !BAD_AUTH_TOKEN.equals(code)) {
+			return null;
+		}
+		final String authorizationToken = reauthorizer.reauthorize(RequestObservation.operationName(request.getURI()), 
+				request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue());
+		if(null != authorizationToken) {
+			LOGGER.debug("Re-authorized the {} request to URL '{}' after '{}'", request.getMethod(), request.getURI(), code);
+			if(null != observation) {
+				observation.failed(code, json.length());
+			}
+		}
+		return authorizationToken;
+	}
+
+	/**
+	 * Send the request, logging the status of the response
+	 *
+	 * @param request the request to send
+	 *
+	 * @return the HTTP response
+	 *
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private CloseableHttpResponse send(final HttpUriRequest request) throws IOException {
 		LOGGER.debug("{} request to URL '{}'", request.getMethod(), request.getURI());
-		final CloseableHttpResponse httpResponse = client.execute(request);
+		final CloseableHttpResponse httpResponse;
+		if(null == requestListener && !B2FlightRecorder.API_CALL.isEnabled()) {
+			httpResponse = this.perform(request);
+		} else {
+			httpResponse = this.executeObserved(request);
+		}
 		if(LOGGER.isDebugEnabled()) {
 			LOGGER.debug("Received status code of: {}, for {} request to url '{}'", httpResponse.getStatusLine().getStatusCode(), request.getMethod(), request.getURI());
 		}
 		return httpResponse;
 	}
 
+	/**
+	 * Execute the request, reporting the start and the completion of the
+	 * request to the request listener and the flight recorder.
+	 *
+	 * @param request the request to execute
+	 *
+	 * @return the HTTP response
+	 *
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private CloseableHttpResponse executeObserved(final HttpUriRequest request) throws IOException {
+		observation = new RequestObservation(requestListener, request);
+		final CloseableHttpResponse httpResponse;
+		try {
+			httpResponse = this.perform(request);
+		} catch(IOException ex) {
+			observation.failed(ex);
+			throw ex;
+		}
+		observation.responseReceived(httpResponse);
+		return httpResponse;
+	}
+
+	/**
+	 * Return whether any of the limiters has a rate set, so that a transfer
+	 * is only wrapped in a throttled entity when it may actually be throttled
+	 *
+	 * @param limiters the limiters, which may be null
+	 *
+	 * @return true if any of the limiters limits the rate
+	 */
+	private static boolean isLimited(BandwidthLimiter[] limiters) {
+		if(null != limiters) {
+			for (BandwidthLimiter limiter : limiters) {
+				if(null != limiter && limiter.isLimited()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Execute the request with the HTTP client, hedging it if there is a 
+	 * hedging policy
+	 *
+	 * @param request the request to execute
+	 *
+	 * @return the HTTP response
+	 *
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	private CloseableHttpResponse perform(final HttpUriRequest request) throws IOException {
+		if(null == hedgingPolicy) {
+			return client.execute(request);
+		}
+		return hedgingPolicy.execute(client, request, statistics);
+	}
+
 	/**
 	 * Obfuscate the data by removing the accountId and replacing it with the
 	 * string "[redacted]"
@@ -0,0 +1,457 @@
+package synapticloop.b2.request;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.metrics.B2ClientStatistics;
+
+/**
+ * Hedges the idempotent GET and HEAD requests (i.e. the downloads and the 
+ * HEAD requests for files) to cut the tail latency: if the headers of the 
+ * response have not arrived within a percentile of the recent latency of the
+ * operation, a duplicate request is sent, the first response to arrive is 
+ * used and the other request is aborted.
+ * 
+ * The latency is tracked for each operation over a window of the most recent
+ * requests, and requests are only hedged once enough of them have been seen.
+ * The extra load is capped by a budget - each request earns a fraction of a
+ * hedge (e.g. 0.05 for at most 5% more requests), and a hedge is only sent 
+ * when a whole one has been earned.  A slow request which is overtaken by 
+ * its hedge is recorded with the time it had taken when it was aborted, so
+ * that hedging does not hide the tail that it is measured against.
+ *
+ * @author synapticloop
+ */
+public class HedgingPolicy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(HedgingPolicy.class);
+
+	/**
+	 * The default percentile of the recent latency after which a request is hedged
+	 */
+	public static final double DEFAULT_PERCENTILE = 0.95d;
+
+	/**
+	 * The default fraction of extra requests that may be sent as hedges
+	 */
+	public static final double DEFAULT_BUDGET = 0.05d;
+
+	/**
+	 * The default number of requests of an operation that are seen before 
+	 * they are hedged
+	 */
+	public static final int DEFAULT_MIN_SAMPLES = 20;
+
+	/**
+	 * The default shortest time that a request waits before it is hedged
+	 */
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 10L;
+
+	// the number of recent latencies that the percentile is taken over
+	private static final int WINDOW_SIZE = 1000;
+
+	// the percentile is re-calculated after this number of new latencies
+	private static final int RECALCULATE_EVERY = 16;
+
+	// the number of unused hedges that can be saved up for a burst of slow requests
+	private static final double MAX_SAVED_HEDGES = 10d;
+
+	private static final ScheduledExecutorService HEDGE_TIMER = Executors.newSingleThreadScheduledExecutor(daemon("b2-hedge-timer"));
+
+	private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(daemon("b2-hedge"));
+
+	private final double percentile;
+	private final double budget;
+	private volatile int minSamples = DEFAULT_MIN_SAMPLES;
+	private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_DELAY_MILLIS);
+
+	private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	// guarded by 'this'
+	private double savedHedges = 0d;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgesWon = new AtomicLong();
+
+	/**
+	 * Create a policy which hedges requests after the 95th percentile of the 
+	 * recent latency, with a budget of 5% extra requests
+	 */
+	public HedgingPolicy() {
+		this(DEFAULT_PERCENTILE, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Create a hedging policy
+	 * 
+	 * @param percentile the percentile of the recent latency after which a 
+	 *     request is hedged, e.g. 0.95
+	 * @param budget the fraction of extra requests that may be sent as hedges,
+	 *     e.g. 0.05 for at most 5% more requests
+	 * 
+	 * @throws IllegalArgumentException if the percentile is not between 0 
+	 *     and 1 (exclusive), or the budget is not between 0 and 1 (inclusive)
+	 */
+	public HedgingPolicy(double percentile, double budget) {
+		if(percentile <= 0d || percentile >= 1d) {
+			throw new IllegalArgumentException("The percentile must be between 0 and 1, was " + percentile);
+		}
+		if(budget < 0d || budget > 1d) {
+			throw new IllegalArgumentException("The budget must be between 0 and 1, was " + budget);
+		}
+		this.percentile = percentile;
+		this.budget = budget;
+	}
+
+	/**
+	 * Set the number of requests of an operation that are seen before they 
+	 * are hedged, the default is {@link #DEFAULT_MIN_SAMPLES}
+	 * 
+	 * @param minSamples the minimum number of latencies of an operation
+	 * 
+	 * @return this policy
+	 */
+	public HedgingPolicy setMinSamples(int minSamples) {
+		if(minSamples < 1 || minSamples > WINDOW_SIZE) {
+			throw new IllegalArgumentException("The minimum number of samples must be between 1 and " + WINDOW_SIZE);
+		}
+		this.minSamples = minSamples;
+		return this;
+	}
+
+	/**
+	 * Set the shortest time that a request waits before it is hedged, the 
+	 * default is {@link #DEFAULT_MIN_DELAY_MILLIS} milliseconds
+	 * 
+	 * @param minDelay the shortest delay
+	 * @param unit the unit of the delay
+	 * 
+	 * @return this policy
+	 */
+	public HedgingPolicy setMinDelay(long minDelay, TimeUnit unit) {
+		this.minDelayNanos = unit.toNanos(minDelay);
+		return this;
+	}
+
+	/**
+	 * Return the time after which a request for the operation is hedged
+	 * 
+	 * @param operation the name of the operation, e.g. 'b2_download_file_by_id'
+	 * @param unit the unit to return the delay in
+	 * 
+	 * @return the delay, or -1 if not enough requests have been seen to hedge
+	 */
+	public long getDelay(String operation, TimeUnit unit) {
+		final long delayNanos = delayNanos(operation);
+		return delayNanos < 0 ? -1L : unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Return the number of requests that could have been hedged
+	 * 
+	 * @return the number of GET and HEAD requests
+	 */
+	public long getRequestCount() { return requests.get(); }
+
+	/**
+	 * Return the number of hedges that were sent
+	 * 
+	 * @return the number of hedges
+	 */
+	public long getHedgeCount() { return hedges.get(); }
+
+	/**
+	 * Return the number of hedges whose response arrived before the response 
+	 * of the request that they duplicated
+	 * 
+	 * @return the number of hedges that won
+	 */
+	public long getHedgeWinCount() { return hedgesWon.get(); }
+
+	/**
+	 * Execute a request, hedging it if it is a GET or a HEAD request and its
+	 * response is slow to arrive
+	 * 
+	 * @param client the HTTP client to execute the request with
+	 * @param request the request
+	 * @param statistics the statistics to record the hedges in as retries, 
+	 *     or null for none
+	 * 
+	 * @return the response which arrived first
+	 * 
+	 * @throws IOException if neither request received a response
+	 */
+	CloseableHttpResponse execute(CloseableHttpClient client, HttpUriRequest request, B2ClientStatistics statistics) throws IOException {
+		if(!HttpGet.METHOD_NAME.equals(request.getMethod()) && !HttpHead.METHOD_NAME.equals(request.getMethod())) {
+			return client.execute(request);
+		}
+		requests.incrementAndGet();
+		synchronized(this) {
+			savedHedges = Math.min(MAX_SAVED_HEDGES, savedHedges + budget);
+		}
+		final String operation = RequestObservation.operationName(request.getURI());
+		final long delayNanos = delayNanos(operation);
+		if(delayNanos < 0) {
+			final long start = System.nanoTime();
+			final CloseableHttpResponse httpResponse = client.execute(request);
+			window(operation).add(System.nanoTime() - start);
+			return httpResponse;
+		}
+		return new Race(client, request, operation, statistics).run(delayNanos);
+	}
+
+	/**
+	 * Spend one hedge from the budget, if one has been earned
+	 * 
+	 * @return whether a hedge may be sent
+	 */
+	private synchronized boolean spend() {
+		if(savedHedges < 1d) {
+			return false;
+		}
+		savedHedges -= 1d;
+		return true;
+	}
+
+	private long delayNanos(String operation) {
+		final long delayNanos = window(operation).percentile(percentile, minSamples);
+		return delayNanos < 0 ? -1L : Math.max(delayNanos, minDelayNanos);
+	}
+
+	private Window window(String operation) {
+		Window window = windows.get(operation);
+		if(null == window) {
+			final Window created = new Window();
+			window = windows.putIfAbsent(operation, created);
+			if(null == window) {
+				window = created;
+			}
+		}
+		return window;
+	}
+
+	private static HttpRequestBase copy(HttpUriRequest request) {
+		final HttpRequestBase copy = HttpHead.METHOD_NAME.equals(request.getMethod()) ? new HttpHead(request.getURI()) : new HttpGet(request.getURI());
+		copy.setHeaders(request.getAllHeaders());
+		if(request instanceof HttpRequestBase) {
+			copy.setConfig(((HttpRequestBase)request).getConfig());
+		}
+		return copy;
+	}
+
+	private static ThreadFactory daemon(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * The most recent latencies of an operation
+	 */
+	private static class Window {
+		private final long[] latencies = new long[WINDOW_SIZE];
+		private int count = 0;
+		private int next = 0;
+		private int sinceCalculated = 0;
+		private double calculatedFor = -1d;
+		private long calculated = -1L;
+
+		synchronized void add(long latencyNanos) {
+			latencies[next] = latencyNanos;
+			next = (next + 1) % latencies.length;
+			count = Math.min(count + 1, latencies.length);
+			sinceCalculated++;
+		}
+
+		synchronized long percentile(double percentile, int minSamples) {
+			if(count < minSamples) {
+				return -1L;
+			}
+			if(calculatedFor != percentile || calculated < 0 || sinceCalculated >= RECALCULATE_EVERY) {
+				final long[] sorted = Arrays.copyOf(latencies, count);
+				Arrays.sort(sorted);
+				calculated = sorted[Math.min(count - 1, (int)Math.ceil(percentile * count) - 1)];
+				calculatedFor = percentile;
+				sinceCalculated = 0;
+			}
+			return calculated;
+		}
+	}
+
+	/**
+	 * A request and its hedge, of which the first response to arrive wins
+	 */
+	private class Race {
+		private final CloseableHttpClient client;
+		private final HttpUriRequest request;
+		private final String operation;
+		private final B2ClientStatistics statistics;
+		private final HttpRequestBase primary;
+		private final long start = System.nanoTime();
+
+		// all of the following state is guarded by 'this'
+		private HttpRequestBase hedge;
+		private boolean hedgeFinished = false;
+		private boolean decided = false;
+		private CloseableHttpResponse winner;
+
+		Race(CloseableHttpClient client, HttpUriRequest request, String operation, B2ClientStatistics statistics) {
+			this.client = client;
+			this.request = request;
+			this.operation = operation;
+			this.statistics = statistics;
+			// the request itself is never aborted, so that it can be sent again (e.g. when re-authorized)
+			this.primary = copy(request);
+		}
+
+		CloseableHttpResponse run(long delayNanos) throws IOException {
+			final ScheduledFuture<?> scheduled = HEDGE_TIMER.schedule(new Runnable() {
+				@Override
+				public void run() {
+					HEDGE_EXECUTOR.execute(new Runnable() {
+						@Override
+						public void run() {
+							hedge();
+						}
+					});
+				}
+			}, delayNanos, TimeUnit.NANOSECONDS);
+
+			CloseableHttpResponse httpResponse = null;
+			IOException failure = null;
+			try {
+				httpResponse = client.execute(primary);
+			} catch (IOException ex) {
+				failure = ex;
+			}
+
+			final HttpRequestBase running;
+			synchronized(this) {
+				if(decided) {
+					// the hedge won, and this request was aborted (or answered just too late)
+					IOUtils.closeQuietly(httpResponse);
+					return winner;
+				}
+				if(null == failure) {
+					decided = true;
+					winner = httpResponse;
+				} else {
+					while(null != hedge && !hedgeFinished && !decided) {
+						try {
+							this.wait();
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							// nobody is waiting for the hedge any more, so it closes any response that it gets
+							decided = true;
+							hedge.abort();
+							scheduled.cancel(false);
+							throw new InterruptedIOException("Interrupted while waiting for the hedged request");
+						}
+					}
+					if(decided) {
+						return winner;
+					}
+					decided = true;
+				}
+				running = hedge;
+			}
+
+			scheduled.cancel(false);
+			if(null != running) {
+				running.abort();
+			}
+			if(null != failure) {
+				throw failure;
+			}
+			window(operation).add(System.nanoTime() - start);
+			return httpResponse;
+		}
+
+		private void hedge() {
+			final HttpRequestBase copy;
+			synchronized(this) {
+				if(decided || !spend()) {
+					return;
+				}
+				copy = copy(request);
+				hedge = copy;
+			}
+			hedges.incrementAndGet();
+			if(null != statistics) {
+				statistics.recordRetry(operation);
+			}
+			LOGGER.debug("Hedging the slow {} request to URL '{}'", request.getMethod(), request.getURI());
+
+			CloseableHttpResponse httpResponse = null;
+			try {
+				httpResponse = client.execute(copy);
+			} catch (IOException ex) {
+				LOGGER.debug("The hedged {} request to URL '{}' failed: {}", request.getMethod(), request.getURI(), ex.getMessage());
+			}
+
+			final boolean won;
+			synchronized(this) {
+				hedgeFinished = true;
+				won = !decided && null != httpResponse;
+				if(won) {
+					decided = true;
+					winner = httpResponse;
+				}
+				this.notifyAll();
+			}
+			if(won) {
+				hedgesWon.incrementAndGet();
+				primary.abort();
+				// the latency of the overtaken request is at least the time it has taken so far
+				window(operation).add(System.nanoTime() - start);
+			} else {
+				IOUtils.closeQuietly(httpResponse);
+			}
+		}
+	}
+}
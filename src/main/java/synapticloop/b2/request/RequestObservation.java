@@ -0,0 +1,191 @@
+package synapticloop.b2.request;
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import synapticloop.b2.io.MeteredInputStream;
+import synapticloop.b2.metrics.B2FlightRecorder;
+import synapticloop.b2.metrics.B2RequestEvent;
+import synapticloop.b2.metrics.B2RequestListener;
+
+/**
+ * Tracks a single execution of a request and reports it to the request 
+ * listener (if any) and to the flight recorder (if enabled).  The request is complete once the response body has been read to
+ * the end or closed, or when there was no body to read.
+ *
+ * @author synapticloop
+ */
+class RequestObservation implements MeteredInputStream.Listener {
+	private static final String OPERATION_DOWNLOAD_FILE_BY_NAME = "b2_download_file_by_name";
+	private static final String PATH_FILE = "/file/";
+
+	private final B2RequestListener listener;
+	private final String operation;
+	private final String method;
+	private final String host;
+	private final long bytesSent;
+	private final long start;
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private final Object event;
+
+	private long timeToFirstByte = -1L;
+	private int status = -1;
+
+	RequestObservation(B2RequestListener listener, HttpUriRequest request) {
+		this.listener = listener;
+		this.operation = operationName(request.getURI());
+		this.method = request.getMethod();
+		this.host = request.getURI().getHost();
+		this.bytesSent = bytesSent(request);
+		this.start = System.nanoTime();
+		this.event = B2FlightRecorder.API_CALL.begin();
+
+		if(null != listener) {
+			listener.requestStarted(new B2RequestEvent(operation, method, host, -1, null, bytesSent, 0L, -1L, -1L, null));
+		}
+	}
+
+	/**
+	 * The response headers have been received.  A successful response body is
+	 * wrapped so that the completion is reported once it has been consumed.
+	 * 
+	 * @param response the HTTP response
+	 */
+	void responseReceived(HttpResponse response) {
+		this.timeToFirstByte = System.nanoTime() - start;
+		this.status = response.getStatusLine().getStatusCode();
+
+		final HttpEntity entity = response.getEntity();
+		if(null == entity) {
+			complete(null, 0L, null);
+		} else if(status >= 200 && status < 300) {
+			response.setEntity(new ObservedEntity(entity));
+		}
+	}
+
+	/**
+	 * The response was an error, which has been read and parsed
+	 * 
+	 * @param code the B2 error code
+	 * @param bytesReceived the number of bytes in the error response
+	 */
+	void failed(String code, long bytesReceived) {
+		complete(code, bytesReceived, null);
+	}
+
+	/**
+	 * The request could not be executed
+	 * 
+	 * @param failure the cause
+	 */
+	void failed(IOException failure) {
+		complete(null, 0L, failure);
+	}
+
+	@Override
+	public void streamCompleted(long bytesRead, IOException failure) {
+		complete(null, bytesRead, failure);
+	}
+
+	private void complete(String code, long bytesReceived, Throwable failure) {
+		if(completed.compareAndSet(false, true)) {
+			if(null != event) {
+				B2FlightRecorder.API_CALL.commit(event, operation, method, host, status, code, bytesSent, bytesReceived, 
+						null != failure ? B2FlightRecorder.OUTCOME_FAILURE : null != code ? B2FlightRecorder.OUTCOME_ERROR : B2FlightRecorder.OUTCOME_SUCCESS);
+			}
+			if(null != listener) {
+				listener.requestCompleted(new B2RequestEvent(operation, method, host, status, code, 
+						bytesSent, bytesReceived, timeToFirstByte, System.nanoTime() - start, failure));
+			}
+		}
+	}
+
+	/**
+	 * Derive the name of the B2 operation from the request URI, for example 
+	 * '/b2api/v1/b2_upload_file/bucketId/token' is 'b2_upload_file'
+	 * 
+	 * @param uri the request URI
+	 * 
+	 * @return the name of the operation
+	 */
+	static String operationName(URI uri) {
+		final String path = uri.getRawPath();
+		if(null == path) {
+			return "";
+		}
+		final int index = path.indexOf(BaseB2Request.BASE_API_VERSION);
+		if(index != -1) {
+			final int start = index + BaseB2Request.BASE_API_VERSION.length();
+			final int end = path.indexOf('/', start);
+			return -1 == end ? path.substring(start) : path.substring(start, end);
+		}
+		if(path.startsWith(PATH_FILE)) {
+			return OPERATION_DOWNLOAD_FILE_BY_NAME;
+		}
+		return path;
+	}
+
+	private static long bytesSent(HttpUriRequest request) {
+		if(request instanceof HttpEntityEnclosingRequest) {
+			final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			return null == entity ? 0L : entity.getContentLength();
+		}
+		return 0L;
+	}
+
+	private class ObservedEntity extends HttpEntityWrapper {
+		private InputStream content;
+
+		ObservedEntity(HttpEntity wrappedEntity) {
+			super(wrappedEntity);
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if(null == content || wrappedEntity.isRepeatable()) {
+				final InputStream wrapped = wrappedEntity.getContent();
+				content = null == wrapped ? null : new MeteredInputStream(wrapped, RequestObservation.this);
+			}
+			return content;
+		}
+
+		@Override
+		public void writeTo(OutputStream outstream) throws IOException {
+			final InputStream in = getContent();
+			try {
+				final byte[] buffer = new byte[8192];
+				int length;
+				while((length = in.read(buffer)) != -1) {
+					outstream.write(buffer, 0, length);
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
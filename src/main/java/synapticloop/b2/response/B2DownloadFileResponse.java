@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.DrainPolicy;
 import synapticloop.b2.io.HttpMethodReleaseInputStream;
 
 public class B2DownloadFileResponse {
@@ -45,12 +46,12 @@ public class B2DownloadFileResponse {
 
 		ignoredHeaders.add(HttpHeaders.SERVER.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(HttpHeaders.ACCEPT_RANGES.toLowerCase(Locale.ENGLISH));
-		ignoredHeaders.add(HttpHeaders.CONTENT_RANGE.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(HttpHeaders.CACHE_CONTROL.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(HttpHeaders.DATE.toLowerCase(Locale.ENGLISH));
 
 		// the following are mapped
 		ignoredHeaders.add(HttpHeaders.CONTENT_LENGTH.toLowerCase(Locale.ENGLISH));
+		ignoredHeaders.add(HttpHeaders.CONTENT_RANGE.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(HttpHeaders.CONTENT_TYPE.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(B2ResponseHeaders.HEADER_X_BZ_CONTENT_SHA1.toLowerCase(Locale.ENGLISH));
 		ignoredHeaders.add(B2ResponseHeaders.HEADER_X_BZ_FILE_ID.toLowerCase(Locale.ENGLISH));
@@ -60,6 +61,7 @@ public class B2DownloadFileResponse {
 
 	private final InputStream stream;
 	private final Long contentLength;
+	private final String contentRange;
 	private final String contentType;
 	private final String fileId;
 	private final String fileName;
@@ -78,8 +80,23 @@ public class B2DownloadFileResponse {
 	 * @throws IOException if there was an error communicating with the API service
 	 */
 	public B2DownloadFileResponse(CloseableHttpResponse response) throws B2ApiException, IOException {
+		this(response, DrainPolicy.DEFAULT);
+	}
+
+	/**
+	 * Instantiate a bucket response with the JSON response as a string from 
+	 * the API call.  This response is then parsed into the relevant fields.
+	 * 
+	 * @param response The HTTP response object
+	 * @param drainPolicy decides whether the rest of the content is drained 
+	 *     when the content stream is closed before it has been fully read
+	 * 
+	 * @throws B2ApiException if there was an error parsing the response
+	 * @throws IOException if there was an error communicating with the API service
+	 */
+	public B2DownloadFileResponse(CloseableHttpResponse response, DrainPolicy drainPolicy) throws B2ApiException, IOException {
 		if(null != response.getEntity()) {
-			stream = new HttpMethodReleaseInputStream(response);
+			stream = new HttpMethodReleaseInputStream(response, drainPolicy);
 		} else {
 			// HEAD responses do not have an entity
 			stream = new NullInputStream(0L);
@@ -87,6 +104,7 @@ public class B2DownloadFileResponse {
 		}
 
 		contentLength = Long.parseLong(response.getFirstHeader(HttpHeaders.CONTENT_LENGTH).getValue());
+		contentRange = response.containsHeader(HttpHeaders.CONTENT_RANGE) ? response.getFirstHeader(HttpHeaders.CONTENT_RANGE).getValue() : null;
 		contentType = response.getFirstHeader(HttpHeaders.CONTENT_TYPE).getValue();
 		contentSha1 = response.getFirstHeader(B2ResponseHeaders.HEADER_X_BZ_CONTENT_SHA1).getValue();
 		fileId = response.getFirstHeader(B2ResponseHeaders.HEADER_X_BZ_FILE_ID).getValue();
@@ -109,6 +127,26 @@ public class B2DownloadFileResponse {
 		}
 	}
 
+	/**
+	 * Instantiate a download response with the headers and the file info of
+	 * another response, and different content, e.g. for each of the callers
+	 * which share one download.
+	 *
+	 * @param response the response to copy the headers and file info from
+	 * @param content the content of the downloaded file
+	 */
+	public B2DownloadFileResponse(B2DownloadFileResponse response, InputStream content) {
+		this.stream = content;
+		this.contentLength = response.contentLength;
+		this.contentRange = response.contentRange;
+		this.contentType = response.contentType;
+		this.fileId = response.fileId;
+		this.fileName = response.fileName;
+		this.contentSha1 = response.contentSha1;
+		this.uploadTimestamp = response.uploadTimestamp;
+		this.fileInfo.putAll(response.fileInfo);
+	}
+
 	/**
 	 * Get the content of the downloaded file, if this was a HEAD request, then 
 	 * this will return null.
@@ -124,6 +162,21 @@ public class B2DownloadFileResponse {
 	 */
 	public Long getContentLength() { return this.contentLength; }
 
+	/**
+	 * Get the range of the file that was returned, if a range was requested,
+	 * e.g. 'bytes 0-5/12'
+	 * 
+	 * @return the content range, or null if the whole file was returned
+	 */
+	public String getContentRange() { return this.contentRange; }
+
+	/**
+	 * Return whether only a range of the file was returned
+	 * 
+	 * @return true if the content is a range of the file
+	 */
+	public boolean isPartial() { return null != this.contentRange; }
+
 	/**
 	 * Get the content type of the downloaded file
 	 * 
@@ -175,6 +228,7 @@ public class B2DownloadFileResponse {
 		final StringBuilder sb = new StringBuilder("B2DownloadFileResponse{");
 		sb.append("content=").append(stream);
 		sb.append(", contentLength=").append(contentLength);
+		sb.append(", contentRange='").append(contentRange).append('\'');
 		sb.append(", contentType='").append(contentType).append('\'');
 		sb.append(", fileId='").append(fileId).append('\'');
 		sb.append(", fileName='").append(fileName).append('\'');
@@ -18,6 +18,7 @@ package synapticloop.b2.response;
 
 import java.util.Map;
 
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +73,30 @@ public class B2FileResponse extends BaseB2Response {
 		this.warnOnMissedKeys();
 	}
 
+	/**
+	 * Instantiate a file response from the response to finishing a large 
+	 * file, which describes the same file version, so that the file does not
+	 * need to be looked up again.
+	 * 
+	 * @param response the response to finishing the large file
+	 * 
+	 * @throws B2ApiException if there was an error creating the response
+	 */
+	public B2FileResponse(B2FinishLargeFileResponse response) throws B2ApiException {
+		super(new JSONObject());
+
+		this.fileId = response.getFileId();
+		this.fileName = response.getFileName();
+		this.accountId = response.getAccountId();
+		this.bucketId = response.getBucketId();
+		this.contentLength = response.getContentLength();
+		this.contentSha1 = response.getContentSha1();
+		this.contentType = response.getContentType();
+		this.fileInfo = response.getFileInfo();
+		this.uploadTimestamp = response.getUploadTimestamp();
+		this.action = response.getAction();
+	}
+
 	/**
 	 * Get the id of the file that was operated on
 	 * 
@@ -50,6 +50,7 @@ public class B2FinishLargeFileResponse extends BaseB2Response {
 	private final Long contentLength;
 	private final String contentSha1;
 	private final String contentType;
+	private final Long uploadTimestamp;
 
 	private final Map<String, String> fileInfo;
 	private Action action;
@@ -65,6 +66,7 @@ public class B2FinishLargeFileResponse extends BaseB2Response {
 		this.contentType = this.readString(B2ResponseProperties.KEY_CONTENT_TYPE);
 		this.contentSha1 = this.readString(B2ResponseProperties.KEY_CONTENT_SHA1);
 		this.fileInfo = this.readMap(B2ResponseProperties.KEY_FILE_INFO);
+		this.uploadTimestamp = this.readLong(B2ResponseProperties.KEY_UPLOAD_TIMESTAMP);
 		String action = this.readString(B2ResponseProperties.KEY_ACTION);
 		if(null != action) {
 			try {
@@ -118,6 +120,10 @@ public class B2FinishLargeFileResponse extends BaseB2Response {
 		return action;
 	}
 
+	public Long getUploadTimestamp() {
+		return uploadTimestamp;
+	}
+
 	@Override
 	protected Logger getLogger() { return LOGGER; }
 
@@ -0,0 +1,174 @@
+package synapticloop.b2.response;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import synapticloop.b2.exception.B2ApiException;
+
+/**
+ * The result of a call which returns the error status of the B2 service, 
+ * rather than throwing a {@link B2ApiException}, for calls where an error 
+ * such as a 404 for a file that does not exist is an expected answer.  The
+ * JSON of an error is only parsed if its code or message is read.
+ * 
+ * @param <T> the type of the response of a successful call
+ *
+ * @author synapticloop
+ */
+public class B2Result<T> {
+	private final int status;
+	private final T response;
+	private final String json;
+	private final Integer retry;
+
+	private boolean parsed = false;
+	private String code;
+	private String message;
+
+	private B2Result(int status, T response, String json, Integer retry) {
+		this.status = status;
+		this.response = response;
+		this.json = json;
+		this.retry = retry;
+	}
+
+	/**
+	 * Create the result of a successful call
+	 * 
+	 * @param status the HTTP status of the call
+	 * @param response the response
+	 * @param <T> the type of the response
+	 * 
+	 * @return the result
+	 */
+	public static <T> B2Result<T> success(int status, T response) {
+		return new B2Result<T>(status, response, null, null);
+	}
+
+	/**
+	 * Create the result of a failed call
+	 * 
+	 * @param status the HTTP status of the call
+	 * @param json the JSON error returned, or null if there was no content
+	 * @param retry the 'Retry-After' header value (in seconds), or null
+	 * @param <T> the type of the response of a successful call
+	 * 
+	 * @return the result
+	 */
+	public static <T> B2Result<T> failure(int status, String json, Integer retry) {
+		return new B2Result<T>(status, null, json, retry);
+	}
+
+	/**
+	 * @return whether the call succeeded
+	 */
+	public boolean isSuccess() {
+		return status >= 200 && status < 300;
+	}
+
+	/**
+	 * @return whether the call failed with a 404, i.e. the file does not exist
+	 */
+	public boolean isNotFound() {
+		return 404 == status;
+	}
+
+	/**
+	 * @return the HTTP status of the call
+	 */
+	public int getStatus() { return this.status; }
+
+	/**
+	 * @return the response of a successful call, or null if the call failed
+	 */
+	public T getResponse() { return this.response; }
+
+	/**
+	 * @return the backblaze error code of a failed call, or null
+	 */
+	public String getCode() {
+		this.parse();
+		return this.code;
+	}
+
+	/**
+	 * @return the message of a failed call, or null
+	 */
+	public String getMessage() {
+		this.parse();
+		return this.message;
+	}
+
+	/**
+	 * @return the JSON error of a failed call, or null
+	 */
+	public String getJson() { return this.json; }
+
+	/**
+	 * @return the 'Retry-After' header value (in seconds) of a failed call, or
+	 *     null
+	 */
+	public Integer getRetry() { return this.retry; }
+
+	/**
+	 * Return the response of a successful call, or throw the error of a 
+	 * failed call
+	 * 
+	 * @return the response
+	 * 
+	 * @throws B2ApiException if the call failed
+	 */
+	public T getResponseOrThrow() throws B2ApiException {
+		if(this.isSuccess()) {
+			return response;
+		}
+		throw new B2ApiException(json, null).withHttpStatus(status).withRetry(retry);
+	}
+
+	private void parse() {
+		if(parsed) {
+			return;
+		}
+		parsed = true;
+		if(null != json) {
+			try {
+				final JSONObject error = new JSONObject(json);
+				this.code = error.optString("code", null);
+				this.message = error.optString("message", null);
+			} catch (JSONException ex) {
+				this.message = json;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("B2Result{");
+		sb.append("status=").append(status);
+		if(this.isSuccess()) {
+			sb.append(", response=").append(response);
+		} else {
+			sb.append(", code='").append(this.getCode()).append('\'');
+			sb.append(", message='").append(this.getMessage()).append('\'');
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+}
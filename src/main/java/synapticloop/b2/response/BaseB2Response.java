@@ -26,6 +26,7 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 
 import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.metrics.B2FlightRecorder;
 
 public abstract class BaseB2Response {
 	private final JSONObject response;
@@ -37,7 +38,16 @@ public abstract class BaseB2Response {
 	 * @throws B2ApiException if there was an error in the parsing of the response
 	 */
 	public BaseB2Response(final String json) throws B2ApiException {
-		this(parse(json));
+		final Object event = B2FlightRecorder.RESPONSE_PARSE.begin();
+		String outcome = B2FlightRecorder.OUTCOME_FAILURE;
+		try {
+			this.response = parse(json);
+			outcome = B2FlightRecorder.OUTCOME_SUCCESS;
+		} finally {
+			if(null != event) {
+				B2FlightRecorder.RESPONSE_PARSE.commit(event, this.getClass().getName(), null == json ? 0L : (long)json.length(), outcome);
+			}
+		}
 	}
 
 	/**
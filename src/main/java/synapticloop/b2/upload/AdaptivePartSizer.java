@@ -0,0 +1,191 @@
+package synapticloop.b2.upload;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divides a large file into parts, choosing the size of each part as it is 
+ * requested from the throughput of the parts that have been uploaded, so 
+ * that each part takes about the target duration to upload.
+ * 
+ * Until the throughput has been measured, the parts are the recommended part 
+ * size.  Every part (other than the last) is at least the absolute minimum 
+ * part size, and no part is larger than an equal share of the rest of the 
+ * file for each of the parallel uploads, so that all of the uploads are kept
+ * busy.  The part size is increased when needed so that the file fits in the
+ * maximum of 10,000 parts.
+ *
+ * @author synapticloop
+ */
+public class AdaptivePartSizer {
+	/**
+	 * The maximum number of parts of a large file
+	 */
+	public static final int MAX_PARTS = 10000;
+
+	/**
+	 * The maximum size of a part (and of a file that is not a large file)
+	 */
+	public static final long MAX_PART_SIZE = 5000000000L;
+
+	/**
+	 * The default duration that the upload of each part should take
+	 */
+	public static final long DEFAULT_TARGET_PART_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	private static final double SMOOTHING = 0.3;
+
+	private final long length;
+	private final long minimumPartSize;
+	private final long recommendedPartSize;
+	private final int parallelism;
+	private final long targetPartNanos;
+
+	private long offset = 0;
+	private int parts = 0;
+	private double bytesPerNano = 0;
+
+	/**
+	 * Create a part sizer for a file
+	 * 
+	 * @param length the length of the file
+	 * @param minimumPartSize the absolute minimum size of a part
+	 * @param recommendedPartSize the size of the parts until the throughput 
+	 *     has been measured
+	 * @param parallelism the number of parts that are uploaded at the same time
+	 * @param targetPartDuration the duration that the upload of a part should take
+	 * @param unit the unit of the target duration
+	 */
+	public AdaptivePartSizer(long length, long minimumPartSize, long recommendedPartSize, int parallelism, long targetPartDuration, TimeUnit unit) {
+		this.length = length;
+		this.minimumPartSize = Math.max(1, minimumPartSize);
+		this.recommendedPartSize = Math.max(this.minimumPartSize, recommendedPartSize);
+		this.parallelism = Math.max(1, parallelism);
+		this.targetPartNanos = unit.toNanos(targetPartDuration);
+	}
+
+	/**
+	 * Continue dividing the file after the parts of a previous upload, which 
+	 * is being resumed
+	 * 
+	 * @param offset the offset after the last part of the previous upload
+	 * @param partCount the number of parts of the previous upload
+	 */
+	public synchronized void resume(long offset, int partCount) {
+		this.offset = offset;
+		this.parts = partCount;
+	}
+
+	/**
+	 * Return the next part of the file to upload
+	 * 
+	 * @return the next part, or null if all of the file has been divided
+	 */
+	public synchronized Part next() {
+		final long remaining = length - offset;
+		if(remaining <= 0) {
+			return null;
+		}
+		final long size = this.partSize(remaining);
+		final Part part = new Part(++parts, offset, size);
+		offset += size;
+		return part;
+	}
+
+	/**
+	 * Record the upload of a part, to adapt the size of the next parts
+	 * 
+	 * @param bytes the number of bytes that were uploaded
+	 * @param nanos the number of nanoseconds that the upload took
+	 */
+	public synchronized void completed(long bytes, long nanos) {
+		final double rate = (double)bytes / Math.max(1, nanos);
+		bytesPerNano = 0 == bytesPerNano ? rate : SMOOTHING * rate + (1 - SMOOTHING) * bytesPerNano;
+	}
+
+	/**
+	 * Return the number of parts that the file has been divided into so far
+	 * 
+	 * @return the number of parts
+	 */
+	public synchronized int getPartCount() {
+		return parts;
+	}
+
+	/**
+	 * Return the measured throughput of the upload of a single part
+	 * 
+	 * @return the number of bytes per second, or 0 if no parts have completed
+	 */
+	public synchronized long getBytesPerSecond() {
+		return (long)(bytesPerNano * TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private long partSize(long remaining) {
+		final long floor = Math.max(minimumPartSize, divideRoundingUp(remaining, Math.max(1, MAX_PARTS - parts)));
+		long target = 0 == bytesPerNano ? recommendedPartSize : (long)(bytesPerNano * targetPartNanos);
+		target = Math.min(target, divideRoundingUp(remaining, parallelism));
+		long size = Math.min(MAX_PART_SIZE, Math.max(floor, target));
+		if(remaining - size < minimumPartSize && remaining <= MAX_PART_SIZE) {
+			// rather than leaving a last part that is smaller than the minimum
+			size = remaining;
+		}
+		return Math.min(size, remaining);
+	}
+
+	private static long divideRoundingUp(long dividend, long divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+
+	/**
+	 * A part of a file
+	 */
+	public static class Part {
+		private final int number;
+		private final long offset;
+		private final long length;
+
+		Part(int number, long offset, long length) {
+			this.number = number;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Return the number of the part, starting at 1
+		 * 
+		 * @return the part number
+		 */
+		public int getNumber() { return this.number; }
+
+		/**
+		 * Return the offset of the part in the file
+		 * 
+		 * @return the offset of the first byte of the part
+		 */
+		public long getOffset() { return this.offset; }
+
+		/**
+		 * Return the length of the part
+		 * 
+		 * @return the number of bytes in the part
+		 */
+		public long getLength() { return this.length; }
+	}
+}
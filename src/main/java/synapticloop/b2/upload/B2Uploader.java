@@ -0,0 +1,472 @@
+package synapticloop.b2.upload;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.FileEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.Action;
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.concurrency.B2ConcurrencyController;
+import synapticloop.b2.concurrency.B2Operation;
+import synapticloop.b2.concurrency.OperationClass;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.FileRangeEntity;
+import synapticloop.b2.io.ProgressHttpEntity;
+import synapticloop.b2.io.ProgressTracker;
+import synapticloop.b2.io.TransferProgress;
+import synapticloop.b2.io.TransferProgressListener;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2FinishLargeFileResponse;
+import synapticloop.b2.response.B2GetUploadPartUrlResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+import synapticloop.b2.response.B2ListPartsResponse;
+import synapticloop.b2.response.B2Result;
+import synapticloop.b2.response.B2StartLargeFileResponse;
+import synapticloop.b2.response.B2UploadPartResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+/**
+ * Uploads a file with a single upload, or as a large file in parts when it 
+ * is larger than the recommended part size (or the single upload threshold).
+ * The parts of a large file are uploaded in parallel, and their size is 
+ * chosen by an {@link AdaptivePartSizer} from the measured throughput.
+ * 
+ * If the upload of a part fails, the large file is cancelled - unless the 
+ * upload is journaled, in which case it may be resumed.
+ *
+ * @author synapticloop
+ */
+public class B2Uploader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(B2Uploader.class);
+
+	/**
+	 * The default number of parts that are uploaded at the same time
+	 */
+	public static final int DEFAULT_THREADS = 4;
+
+	private static final int MAX_LIST_COUNT = 1000;
+
+	private final B2ApiClient client;
+
+	private int threads = DEFAULT_THREADS;
+
+	private long singleUploadThreshold = -1;
+
+	private long targetPartMillis = AdaptivePartSizer.DEFAULT_TARGET_PART_MILLIS;
+
+	private B2ConcurrencyController concurrencyController;
+
+	private TransferProgressListener progressListener;
+
+	private File journalDirectory;
+
+	/**
+	 * Create an uploader with an authenticated client
+	 * 
+	 * @param client the client to upload with
+	 */
+	public B2Uploader(B2ApiClient client) {
+		this.client = client;
+	}
+
+	/**
+	 * Set the number of parts of a large file that are uploaded at the same time
+	 * 
+	 * @param threads the number of parallel uploads
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Set the size above which files are uploaded as large files, by default 
+	 * the recommended part size of the account.  Files larger than 5GB are
+	 * always uploaded as large files, and files smaller than twice the 
+	 * absolute minimum part size (which can not be split into the two parts
+	 * that a large file needs) are always uploaded in a single upload.
+	 * 
+	 * @param singleUploadThreshold the largest file to upload in a single 
+	 *     upload, in bytes
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setSingleUploadThreshold(long singleUploadThreshold) {
+		this.singleUploadThreshold = singleUploadThreshold;
+		return this;
+	}
+
+	/**
+	 * Set the duration that the upload of each part of a large file should
+	 * take, which the size of the parts is adapted to
+	 * 
+	 * @param targetPartDuration the target duration
+	 * @param unit the unit of the target duration
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setTargetPartDuration(long targetPartDuration, TimeUnit unit) {
+		this.targetPartMillis = unit.toMillis(targetPartDuration);
+		return this;
+	}
+
+	/**
+	 * Set the controller that the upload of each part is run through, so 
+	 * that the uploads of several files share an adaptive limit.  If none is 
+	 * set (the default) only the number of threads limits the uploads.
+	 * 
+	 * @param concurrencyController the concurrency controller, or null for none
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setConcurrencyController(B2ConcurrencyController concurrencyController) {
+		this.concurrencyController = concurrencyController;
+		return this;
+	}
+
+	/**
+	 * Set the directory of the journals of the uploads of large files, which 
+	 * allow an upload to be resumed by a later upload of the same file to the 
+	 * same bucket and file name (for example after the process has died), 
+	 * uploading only the parts which B2 has not received.  Large files are not
+	 * cancelled when their upload fails while they are journaled.  If no 
+	 * directory is set (the default) the uploads are not journaled.
+	 * 
+	 * @param journalDirectory the directory of the journals, or null for none
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setJournalDirectory(File journalDirectory) {
+		this.journalDirectory = journalDirectory;
+		return this;
+	}
+
+	/**
+	 * Set the listener that is notified of the progress of the upload of the 
+	 * whole file (the parts of a large file are added up).
+	 * 
+	 * @param progressListener the listener to notify, or null for none
+	 * 
+	 * @return this uploader
+	 */
+	public B2Uploader setProgressListener(TransferProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Upload a file, with a single upload or as a large file depending on its
+	 * size
+	 * 
+	 * @param bucketId the id of the bucket
+	 * @param fileName the name of the file that will be placed in the bucket 
+	 *     (including any path separators '/')
+	 * @param file the file to upload
+	 * @param mimeType the mime type of the file, if null, then the mime type 
+	 *     will be attempted to be automatically mapped by the backblaze B2 API
+	 * @param fileInfo the file info map which will be set as 'X-Bz-Info-' headers
+	 * 
+	 * @return the uploaded file response
+	 * 
+	 * @throws B2ApiException if there was an error uploading the file
+	 * @throws IOException if there was an error reading the file, or 
+	 *     communicating with the API service
+	 */
+	public B2FileResponse upload(String bucketId, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
+		final long length = file.length();
+		// a large file must have at least two parts, all but the last of at least the absolute minimum size
+		final long threshold = Math.min(AdaptivePartSizer.MAX_PART_SIZE, Math.max(2L * client.getAbsoluteMinimumPartSize() - 1L, 
+				singleUploadThreshold < 0 ? client.getRecommendedPartSize() : singleUploadThreshold));
+		if(length <= threshold) {
+			return this.uploadSingle(bucketId, fileName, file, mimeType, fileInfo);
+		}
+		return this.uploadLarge(bucketId, fileName, file, mimeType, fileInfo);
+	}
+
+	private B2FileResponse uploadSingle(String bucketId, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
+		if(null == progressListener) {
+			return client.uploadFile(bucketId, fileName, file, mimeType, fileInfo);
+		}
+		final HttpEntity entity = new ProgressHttpEntity(new FileEntity(file), 
+				new ProgressTracker(fileName, TransferProgress.Direction.UPLOAD, file.length(), progressListener));
+		return client.uploadFile(bucketId, fileName, entity, ChecksumHelper.calculateSha1(file), mimeType, fileInfo);
+	}
+
+	private B2FileResponse uploadLarge(String bucketId, String fileName, File file, String mimeType, Map<String, String> fileInfo) throws B2ApiException, IOException {
+		final UploadJournal journal = null == journalDirectory ? null : UploadJournal.open(journalDirectory, bucketId, fileName, file);
+		LargeFileUpload upload = null;
+		if(null != journal && journal.isResumable(file)) {
+			if(this.isUnfinished(bucketId, journal.getFileId())) {
+				upload = this.resume(bucketId, file, journal);
+			} else {
+				// the large file may have been finished by a process which died before deleting the journal
+				final B2FileResponse uploaded = this.uploaded(journal.getFileId(), file);
+				if(null != uploaded) {
+					LOGGER.info("The large file {} in the journal '{}' has already been finished", uploaded.getFileId(), journal.getFile());
+					journal.delete();
+					return uploaded;
+				}
+				LOGGER.info("The large file {} in the journal '{}' is no longer unfinished, starting again", journal.getFileId(), journal.getFile());
+			}
+		}
+		if(null == upload) {
+			final B2StartLargeFileResponse start = client.startLargeFileUpload(bucketId, fileName, mimeType, fileInfo);
+			if(null != journal) {
+				journal.start(start.getFileId(), file);
+			}
+			upload = new LargeFileUpload(start.getFileId(), file, this.sizer(file), journal);
+			LOGGER.debug("Uploading '{}' ({} bytes) as large file {}", fileName, file.length(), start.getFileId());
+		}
+
+		final String fileId = upload.getFileId();
+		final ProgressTracker tracker = null == progressListener ? null : 
+				new ProgressTracker(fileName, TransferProgress.Direction.UPLOAD, file.length(), progressListener);
+		if(null != tracker && upload.getUploadedBytes() > 0) {
+			tracker.update(upload.getUploadedBytes());
+		}
+
+		B2FinishLargeFileResponse finished = null;
+		try {
+			this.uploadParts(upload, tracker);
+			final String[] sha1s = upload.getSha1s();
+			finished = client.finishLargeFileUpload(fileId, sha1s);
+			if(null != tracker) {
+				tracker.complete();
+			}
+			LOGGER.debug("Uploaded '{}' in {} parts at {} bytes/s per part", fileName, sha1s.length, upload.getSizer().getBytesPerSecond());
+		} finally {
+			if(null != journal) {
+				if(null != finished) {
+					journal.delete();
+				} else {
+					LOGGER.info("The upload of '{}' to large file {} may be resumed from the journal '{}'", fileName, fileId, journal.getFile());
+				}
+			} else if(null == finished) {
+				this.cancel(fileId);
+			}
+		}
+		return new B2FileResponse(finished);
+	}
+
+	private AdaptivePartSizer sizer(File file) {
+		return new AdaptivePartSizer(file.length(), client.getAbsoluteMinimumPartSize(), 
+				client.getRecommendedPartSize(), threads, targetPartMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Resume the upload of a large file from its journal, reconciling the 
+	 * journal with the parts that B2 has received.  Each part in the journal 
+	 * that B2 has received with the same length and SHA-1 is kept, the others
+	 * are uploaded again.
+	 * 
+	 * @return the upload
+	 */
+	private LargeFileUpload resume(String bucketId, File file, UploadJournal journal) throws B2ApiException, IOException {
+		final String fileId = journal.getFileId();
+		final Map<Integer, B2UploadPartResponse> received = this.listAllParts(fileId);
+		final Map<Integer, String> journaled = journal.getSha1s();
+		final AdaptivePartSizer sizer = this.sizer(file);
+		final LargeFileUpload upload = new LargeFileUpload(fileId, file, sizer, journal);
+		long end = 0;
+		int count = 0;
+		int missing = 0;
+		for (AdaptivePartSizer.Part part : journal.getParts().values()) {
+			final B2UploadPartResponse receivedPart = received.get(part.getNumber());
+			String sha1 = null;
+			if(null != receivedPart && null != receivedPart.getContentLength() && receivedPart.getContentLength() == part.getLength()) {
+				// a part may have been received without being journaled
+				sha1 = journaled.containsKey(part.getNumber()) ? journaled.get(part.getNumber()) : sha1(file, part);
+				if(!sha1.equalsIgnoreCase(receivedPart.getContentSha1())) {
+					sha1 = null;
+				}
+			}
+			if(null == sha1) {
+				upload.missing(part);
+				missing++;
+			} else {
+				upload.uploaded(part, sha1);
+			}
+			end = Math.max(end, part.getOffset() + part.getLength());
+			count = Math.max(count, part.getNumber());
+		}
+		sizer.resume(end, count);
+		LOGGER.info("Resuming the upload of large file {} with {} of {} parts received ({} bytes)", fileId, count - missing, count, upload.getUploadedBytes());
+		return upload;
+	}
+
+	/**
+	 * Return the large file of a journal if it has been finished with the 
+	 * length of the file
+	 * 
+	 * @return the finished file, or null if it was not finished (e.g. it was 
+	 *     cancelled) or has a different length
+	 */
+	private B2FileResponse uploaded(String fileId, File file) throws B2ApiException, IOException {
+		final B2Result<B2FileResponse> result = client.tryGetFileInfo(fileId);
+		// a cancelled large file no longer exists, which B2 reports as a bad request for its id
+		if(result.isNotFound() || HttpStatus.SC_BAD_REQUEST == result.getStatus()) {
+			return null;
+		}
+		final B2FileResponse response = result.getResponseOrThrow();
+		if(Action.upload == response.getAction() && response.getContentLength() == file.length()) {
+			return response;
+		}
+		return null;
+	}
+
+	private boolean isUnfinished(String bucketId, String fileId) throws B2ApiException, IOException {
+		String startFileId = null;
+		do {
+			final B2ListFilesResponse response = client.listUnfinishedLargeFiles(bucketId, startFileId, MAX_LIST_COUNT);
+			for (B2FileInfoResponse unfinished : response.getFiles()) {
+				if(fileId.equals(unfinished.getFileId())) {
+					return true;
+				}
+			}
+			startFileId = response.getNextFileId();
+		} while(null != startFileId);
+		return false;
+	}
+
+	private Map<Integer, B2UploadPartResponse> listAllParts(String fileId) throws B2ApiException, IOException {
+		final Map<Integer, B2UploadPartResponse> parts = new HashMap<Integer, B2UploadPartResponse>();
+		Integer startPartNumber = 1;
+		do {
+			final B2ListPartsResponse response = client.listParts(fileId, startPartNumber, MAX_LIST_COUNT);
+			for (B2UploadPartResponse part : response.getFiles()) {
+				parts.put(part.getPartNumber(), part);
+			}
+			startPartNumber = response.getNextPartNumber();
+		} while(null != startPartNumber);
+		return parts;
+	}
+
+	/**
+	 * Upload the parts of the file in parallel, until all of the file has 
+	 * been uploaded, or the upload of a part has failed
+	 */
+	private void uploadParts(final LargeFileUpload upload, final ProgressTracker tracker) throws B2ApiException, IOException {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Void>> workers = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				workers.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws B2ApiException, IOException {
+						boolean uploaded = false;
+						try {
+							uploadParts(upload, tracker, client.getUploadPartUrl(upload.getFileId()));
+							uploaded = true;
+							return null;
+						} finally {
+							if(!uploaded) {
+								// stop the other threads from starting any more parts
+								upload.failed();
+							}
+						}
+					}
+				}));
+			}
+			for (Future<Void> worker : workers) {
+				await(worker);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void uploadParts(LargeFileUpload upload, ProgressTracker tracker, B2GetUploadPartUrlResponse uploadPartUrl) throws B2ApiException, IOException {
+		AdaptivePartSizer.Part part;
+		while(null != (part = upload.next())) {
+			final String sha1 = sha1(upload.getFile(), part);
+			HttpEntity entity = new FileRangeEntity(upload.getFile(), part.getOffset(), part.getLength());
+			if(null != tracker) {
+				entity = new ProgressHttpEntity(entity, tracker.newPart("part " + part.getNumber(), part.getLength()));
+			}
+			final long started = System.nanoTime();
+			this.uploadPart(uploadPartUrl, part.getNumber(), entity, sha1);
+			upload.completed(part, sha1, System.nanoTime() - started);
+		}
+	}
+
+	private static String sha1(File file, AdaptivePartSizer.Part part) throws IOException {
+		try (InputStream in = new FileRangeEntity(file, part.getOffset(), part.getLength()).getContent()) {
+			return ChecksumHelper.calculateSha1(in);
+		}
+	}
+
+	private void uploadPart(final B2GetUploadPartUrlResponse uploadPartUrl, final int partNumber, final HttpEntity entity, final String sha1) throws B2ApiException, IOException {
+		if(null == concurrencyController) {
+			client.uploadLargeFilePart(uploadPartUrl, partNumber, entity, sha1);
+			return;
+		}
+		concurrencyController.execute(OperationClass.UPLOAD, new B2Operation<Void>() {
+			@Override
+			public Void execute() throws B2ApiException, IOException {
+				client.uploadLargeFilePart(uploadPartUrl, partNumber, entity, sha1);
+				return null;
+			}
+		});
+	}
+
+	private void cancel(String fileId) {
+		try {
+			client.cancelLargeFileUpload(fileId);
+		} catch (B2ApiException | IOException ex) {
+			LOGGER.warn("Could not cancel the large file {}", fileId, ex);
+		}
+	}
+
+	private static void await(Future<Void> worker) throws B2ApiException, IOException {
+		try {
+			worker.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while uploading parts", ex);
+		} catch (ExecutionException ex) {
+			if(ex.getCause() instanceof B2ApiException) {
+				throw (B2ApiException)ex.getCause();
+			}
+			if(ex.getCause() instanceof IOException) {
+				throw (IOException)ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package synapticloop.b2.upload;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of the upload of the parts of a large file, which is shared by 
+ * the threads that upload the parts.  The parts that are missing from a 
+ * previous upload are handed out first, then the parts from the part sizer.
+ *
+ * @author synapticloop
+ */
+class LargeFileUpload {
+	private final String fileId;
+	private final File file;
+	private final AdaptivePartSizer sizer;
+	private final UploadJournal journal;
+
+	private final Queue<AdaptivePartSizer.Part> missing = new ConcurrentLinkedQueue<AdaptivePartSizer.Part>();
+	private final ConcurrentMap<Integer, String> sha1s = new ConcurrentHashMap<Integer, String>();
+	private final AtomicLong uploadedBytes = new AtomicLong();
+	private final AtomicBoolean failed = new AtomicBoolean();
+
+	/**
+	 * Create the state of the upload of a large file
+	 * 
+	 * @param fileId the id of the large file
+	 * @param file the local file
+	 * @param sizer the sizer to divide the file into parts
+	 * @param journal the journal to record the parts in, or null for none
+	 */
+	LargeFileUpload(String fileId, File file, AdaptivePartSizer sizer, UploadJournal journal) {
+		this.fileId = fileId;
+		this.file = file;
+		this.sizer = sizer;
+		this.journal = journal;
+	}
+
+	/**
+	 * Return the next part to upload, recording it in the journal
+	 * 
+	 * @return the next part, or null if there are no more parts, or the 
+	 *     upload has failed
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	AdaptivePartSizer.Part next() throws IOException {
+		if(failed.get()) {
+			return null;
+		}
+		final AdaptivePartSizer.Part part = missing.poll();
+		if(null != part) {
+			return part;
+		}
+		// the parts are issued and journaled in order, so that the journal 
+		// always describes the whole of the file up to the last part
+		synchronized(sizer) {
+			final AdaptivePartSizer.Part next = sizer.next();
+			if(null != next && null != journal) {
+				journal.issued(next);
+			}
+			return next;
+		}
+	}
+
+	/**
+	 * Record a part of a previous upload that still has to be uploaded
+	 * 
+	 * @param part the part
+	 */
+	void missing(AdaptivePartSizer.Part part) {
+		missing.add(part);
+	}
+
+	/**
+	 * Record a part that has been uploaded by a previous upload
+	 * 
+	 * @param part the part
+	 * @param sha1 the SHA-1 of the part
+	 */
+	void uploaded(AdaptivePartSizer.Part part, String sha1) {
+		sha1s.put(part.getNumber(), sha1);
+		uploadedBytes.addAndGet(part.getLength());
+	}
+
+	/**
+	 * Record the upload of a part, in the journal and the part sizer
+	 * 
+	 * @param part the part
+	 * @param sha1 the SHA-1 of the part
+	 * @param nanos the number of nanoseconds that the upload took
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	void completed(AdaptivePartSizer.Part part, String sha1, long nanos) throws IOException {
+		sizer.completed(part.getLength(), nanos);
+		this.uploaded(part, sha1);
+		if(null != journal) {
+			journal.completed(part.getNumber(), sha1);
+		}
+	}
+
+	/**
+	 * Stop handing out parts, as the upload of a part has failed
+	 */
+	void failed() {
+		failed.set(true);
+	}
+
+	/**
+	 * Return the SHA-1s of all of the parts in order, for finishing the 
+	 * large file
+	 * 
+	 * @return the SHA-1s of the parts
+	 */
+	String[] getSha1s() {
+		final String[] array = new String[sizer.getPartCount()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = sha1s.get(i + 1);
+		}
+		return array;
+	}
+
+	/**
+	 * Return the number of bytes in the parts that have been uploaded
+	 * 
+	 * @return the number of bytes uploaded
+	 */
+	long getUploadedBytes() { return this.uploadedBytes.get(); }
+
+	/**
+	 * Return the id of the large file
+	 * 
+	 * @return the id of the large file
+	 */
+	String getFileId() { return this.fileId; }
+
+	/**
+	 * Return the local file
+	 * 
+	 * @return the local file
+	 */
+	File getFile() { return this.file; }
+
+	/**
+	 * Return the part sizer
+	 * 
+	 * @return the part sizer
+	 */
+	AdaptivePartSizer getSizer() { return this.sizer; }
+}
@@ -0,0 +1,226 @@
+package synapticloop.b2.upload;
+
+
+/*
+ * Copyright (c) 2017 Synapticloop.
+ *
+ * All rights reserved.
+ *
+ * This code may contain contributions from other parties which, where
+ * applicable, will be listed in the default build file for the project
+ * ~and/or~ in a file named CONTRIBUTORS.txt in the root of the project.
+ *
+ * This source code and any derived binaries are covered by the terms and
+ * conditions of the Licence agreement ("the Licence").  You may not use this
+ * source code or any derived binaries except in compliance with the Licence.
+ * A copy of the Licence is available in the file named LICENSE.txt shipped with
+ * this source code or binaries.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import synapticloop.b2.util.ChecksumHelper;
+
+/**
+ * A local journal of the upload of a large file, so that the upload can be 
+ * resumed by another process after this one has died.  The journal records 
+ * the id of the large file and the length and modification time of the local
+ * file, then the offset and length of each part before it is uploaded, and 
+ * the SHA-1 of each part after it has been uploaded.
+ * 
+ * Each entry is a line which is appended and synced to the disk, a partly 
+ * written last line (from a process that died while writing it) is ignored.
+ *
+ * @author synapticloop
+ */
+class UploadJournal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(UploadJournal.class);
+
+	private static final String ENTRY_FILE = "file";
+	private static final String ENTRY_PART = "part";
+	private static final String ENTRY_DONE = "done";
+
+	private final File journal;
+
+	private String fileId;
+	private long length = -1;
+	private long lastModified = -1;
+	private final Map<Integer, AdaptivePartSizer.Part> parts = new TreeMap<Integer, AdaptivePartSizer.Part>();
+	private final Map<Integer, String> sha1s = new TreeMap<Integer, String>();
+
+	private UploadJournal(File journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Open the journal of the upload of a file to a bucket, reading the 
+	 * entries of a previous upload if there are any
+	 * 
+	 * @param directory the directory of the journals
+	 * @param bucketId the id of the bucket
+	 * @param fileName the name of the file in the bucket
+	 * @param file the local file
+	 * 
+	 * @return the journal
+	 * 
+	 * @throws IOException if the journal could not be read
+	 */
+	static UploadJournal open(File directory, String bucketId, String fileName, File file) throws IOException {
+		final UploadJournal journal = new UploadJournal(new File(directory, key(bucketId, fileName, file) + ".journal"));
+		journal.read();
+		return journal;
+	}
+
+	private void read() throws IOException {
+		final String content;
+		try {
+			content = new String(Files.readAllBytes(journal.toPath()), StandardCharsets.UTF_8);
+		} catch (NoSuchFileException ex) {
+			return;
+		}
+		// only complete lines, the last one may have been partly written
+		final String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+		for (String line : lines) {
+			final String[] fields = line.split(" ");
+			try {
+				switch(fields[0]) {
+				case ENTRY_FILE:
+					fileId = fields[1];
+					length = Long.parseLong(fields[2]);
+					lastModified = Long.parseLong(fields[3]);
+					break;
+				case ENTRY_PART:
+					final int number = Integer.parseInt(fields[1]);
+					parts.put(number, new AdaptivePartSizer.Part(number, Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+					break;
+				case ENTRY_DONE:
+					sha1s.put(Integer.parseInt(fields[1]), fields[2]);
+					break;
+				default:
+					LOGGER.warn("Ignoring the unknown entry '{}' in the journal '{}'", line, journal);
+				}
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+				LOGGER.warn("Ignoring the unreadable entry '{}' in the journal '{}'", line, journal);
+			}
+		}
+	}
+
+	/**
+	 * Whether the journal is of a previous upload of the file, which has not 
+	 * changed since
+	 * 
+	 * @param file the local file
+	 * 
+	 * @return whether the upload may be resumed
+	 */
+	boolean isResumable(File file) {
+		return null != fileId && file.length() == length && file.lastModified() == lastModified;
+	}
+
+	/**
+	 * Start the journal of a new upload, removing the entries of any previous 
+	 * upload
+	 * 
+	 * @param fileId the id of the large file
+	 * @param file the local file
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	synchronized void start(String fileId, File file) throws IOException {
+		this.delete();
+		this.fileId = fileId;
+		this.length = file.length();
+		this.lastModified = file.lastModified();
+		final File directory = journal.getParentFile();
+		if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Could not create the directory '" + directory + "'");
+		}
+		this.append(ENTRY_FILE + " " + fileId + " " + length + " " + lastModified);
+	}
+
+	/**
+	 * Record a part before it is uploaded
+	 * 
+	 * @param part the part
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	synchronized void issued(AdaptivePartSizer.Part part) throws IOException {
+		parts.put(part.getNumber(), part);
+		this.append(ENTRY_PART + " " + part.getNumber() + " " + part.getOffset() + " " + part.getLength());
+	}
+
+	/**
+	 * Record a part after it has been uploaded
+	 * 
+	 * @param partNumber the number of the part
+	 * @param sha1 the SHA-1 of the part
+	 * 
+	 * @throws IOException if the journal could not be written
+	 */
+	synchronized void completed(int partNumber, String sha1) throws IOException {
+		sha1s.put(partNumber, sha1);
+		this.append(ENTRY_DONE + " " + partNumber + " " + sha1);
+	}
+
+	/**
+	 * Remove the journal, once the upload has finished
+	 * 
+	 * @throws IOException if the journal could not be removed
+	 */
+	synchronized void delete() throws IOException {
+		Files.deleteIfExists(journal.toPath());
+		fileId = null;
+		parts.clear();
+		sha1s.clear();
+	}
+
+	/**
+	 * Return the id of the large file
+	 * 
+	 * @return the id of the large file, or null if none has been started
+	 */
+	synchronized String getFileId() { return this.fileId; }
+
+	/**
+	 * Return the parts which have been recorded before they were uploaded
+	 * 
+	 * @return the parts, by part number
+	 */
+	synchronized Map<Integer, AdaptivePartSizer.Part> getParts() { return new TreeMap<Integer, AdaptivePartSizer.Part>(this.parts); }
+
+	/**
+	 * Return the SHA-1s of the parts which have been uploaded
+	 * 
+	 * @return the SHA-1s, by part number
+	 */
+	synchronized Map<Integer, String> getSha1s() { return new TreeMap<Integer, String>(this.sha1s); }
+
+	/**
+	 * Return the file of the journal
+	 * 
+	 * @return the journal file
+	 */
+	File getFile() { return this.journal; }
+
+	private void append(String entry) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(journal, true)) {
+			out.write((entry + "\n").getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		}
+	}
+
+	private static String key(String bucketId, String fileName, File file) {
+		return ChecksumHelper.sha1Hex(bucketId + "\n" + fileName + "\n" + file.getAbsolutePath());
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains the upload of files, choosing between a single 
+ * upload and the upload of a large file in parts
+ * 
+ * @author synapticloop
+ *
+ */
+package synapticloop.b2.upload;
@@ -22,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -29,6 +30,8 @@ import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 
 import org.apache.commons.io.IOUtils;
 
+import synapticloop.b2.metrics.B2FlightRecorder;
+
 public class ChecksumHelper {
 	/**
 	 * Calculate and return the sha1 sum of a file
@@ -61,6 +64,9 @@ public class ChecksumHelper {
 
 		MessageDigest messageDigest;
 		InputStream inputStream = null;
+		final Object event = B2FlightRecorder.CHECKSUM.begin();
+		String outcome = B2FlightRecorder.OUTCOME_FAILURE;
+		long size = 0L;
 		try {
 			messageDigest = MessageDigest.getInstance("SHA-1");
 			inputStream = new BufferedInputStream(in);
@@ -69,14 +75,41 @@ public class ChecksumHelper {
 
 			while (len != -1) {
 				messageDigest.update(buffer, 0, len);
+				size += len;
 				len = inputStream.read(buffer);
 			}
 
-			return(new HexBinaryAdapter().marshal(messageDigest.digest()));
+			final String sha1 = new HexBinaryAdapter().marshal(messageDigest.digest());
+			outcome = B2FlightRecorder.OUTCOME_SUCCESS;
+			return(sha1);
 		} catch (NoSuchAlgorithmException ex) {
 			throw new IOException(ex);
 		} finally {
 			IOUtils.closeQuietly(inputStream);
+			if(null != event) {
+				B2FlightRecorder.CHECKSUM.commit(event, "SHA-1", size, outcome);
+			}
+		}
+	}
+
+	/**
+	 * Calculate and return the sha1 sum of a string, e.g. to derive a file 
+	 * name from values that should not be stored as they are
+	 *
+	 * @param value the string to calculate the sha1 sum of, encoded as UTF-8
+	 *
+	 * @return the sha1 sum, as 40 lower case hexadecimal characters
+	 */
+	public static String sha1Hex(String value) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
 		}
 	}
 }
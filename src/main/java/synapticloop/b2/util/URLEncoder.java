@@ -16,64 +16,145 @@ package synapticloop.b2.util;
  * this source code or binaries.
  */
 
-import java.io.UnsupportedEncodingException;
-import java.util.StringTokenizer;
+import java.nio.charset.Charset;
 
+/**
+ * Percent encoding and decoding of file names and file info for the B2 API.
+ * See <a href="https://www.backblaze.com/b2/docs/string_encoding.html">https://www.backblaze.com/b2/docs/string_encoding.html</a>
+ * 
+ * Both methods make a single pass over the string and return the string 
+ * itself when there is nothing to encode (or decode).
+ */
 public class URLEncoder {
-	private static final String UTF_8 = "UTF-8";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	// the characters that are not encoded - the RFC 3986 unreserved characters and '/'
+	private static final boolean[] UNRESERVED = new boolean[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			UNRESERVED[c] = true;
+		}
+		for (char c : "-._~/".toCharArray()) {
+			UNRESERVED[c] = true;
+		}
+	}
 
 	/**
-	 * UTF-8 url encoding wrapper method which does not encode slashes for requests.
+	 * UTF-8 url encoding method which does not encode slashes for requests.
 	 * See <a href="https://www.backblaze.com/b2/docs/string_encoding.html">https://www.backblaze.com/b2/docs/string_encoding.html</a>
 	 * for usage why it will not be encoded.
 	 *
-	 * If there was an unsupported encoding exception, return the un-encoded url
+	 * Unpaired surrogate characters are encoded as '?'
 	 * 
 	 * @param url the URL to encode
 	 * 
-	 * @return the encoded URL
+	 * @return the encoded URL, or the passed in URL if nothing needed encoding
 	 */
 	public static String encode(String url) {
-		try {
-			final StringBuilder b = new StringBuilder();
-			final StringTokenizer t = new StringTokenizer(url, "/");
-			if (!t.hasMoreTokens()) {
-				return url;
-			}
-			while (t.hasMoreTokens()) {
-				b.append(java.net.URLEncoder.encode(t.nextToken(), UTF_8));
-				if (t.hasMoreTokens()) {
-					b.append('/');
-				}
-			}
-			if (url.endsWith("/")) {
-				b.append('/');
-			}
-			// Becuase URLEncoder uses <code>application/x-www-form-urlencoded</code> we have to replace these
-			// for proper URI percented encoding.
-			return b.toString()
-					.replace("+", "%20")
-					.replace("*", "%2A");
-		} catch (UnsupportedEncodingException ex) {
+		final int length = url.length();
+		int i = 0;
+		while (i < length && isUnreserved(url.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
 			return url;
 		}
+
+		final StringBuilder b = new StringBuilder(length + 16);
+		b.append(url, 0, i);
+		for (; i < length; i++) {
+			char c = url.charAt(i);
+			if (isUnreserved(c)) {
+				b.append(c);
+			} else if (c < 0x80) {
+				appendEscaped(b, c);
+			} else if (c < 0x800) {
+				appendEscaped(b, 0xC0 | (c >> 6));
+				appendEscaped(b, 0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(url.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, url.charAt(++i));
+				appendEscaped(b, 0xF0 | (codePoint >> 18));
+				appendEscaped(b, 0x80 | ((codePoint >> 12) & 0x3F));
+				appendEscaped(b, 0x80 | ((codePoint >> 6) & 0x3F));
+				appendEscaped(b, 0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				appendEscaped(b, '?');
+			} else {
+				appendEscaped(b, 0xE0 | (c >> 12));
+				appendEscaped(b, 0x80 | ((c >> 6) & 0x3F));
+				appendEscaped(b, 0x80 | (c & 0x3F));
+			}
+		}
+		return b.toString();
 	}
 
 	/**
-	 * UTF-8 url decoding wrapper method.  If there was an unsupported encoding 
-	 * exception, return the encoded url
+	 * UTF-8 url decoding method, '+' characters are decoded to spaces.
 	 * 
 	 * @param url the URL to decode
 	 * 
-	 * @return the decoded URL
+	 * @return the decoded URL, or the passed in URL if nothing needed decoding
+	 * 
+	 * @throws IllegalArgumentException if the URL contains an incomplete or 
+	 *     invalid escape sequence
 	 */
-
 	public static String decode(String url) {
-		try {
-			return java.net.URLDecoder.decode(url, UTF_8);
-		} catch (UnsupportedEncodingException ex) {
+		final int length = url.length();
+		int i = 0;
+		while (i < length && url.charAt(i) != '%' && url.charAt(i) != '+') {
+			i++;
+		}
+		if (i == length) {
 			return url;
 		}
+
+		final StringBuilder b = new StringBuilder(length);
+		b.append(url, 0, i);
+		byte[] bytes = null;
+		while (i < length) {
+			char c = url.charAt(i);
+			if (c == '+') {
+				b.append(' ');
+				i++;
+			} else if (c == '%') {
+				// decode the whole run of escaped bytes at once, as a character may span several of them
+				if (null == bytes) {
+					bytes = new byte[(length - i) / 3];
+				}
+				int count = 0;
+				while (i < length && url.charAt(i) == '%') {
+					if (i + 2 >= length) {
+						throw new IllegalArgumentException("Incomplete escape sequence at index " + i + " in '" + url + "'");
+					}
+					int high = Character.digit(url.charAt(i + 1), 16);
+					int low = Character.digit(url.charAt(i + 2), 16);
+					if (high < 0 || low < 0) {
+						throw new IllegalArgumentException("Invalid escape sequence at index " + i + " in '" + url + "'");
+					}
+					bytes[count++] = (byte)((high << 4) | low);
+					i += 3;
+				}
+				b.append(new String(bytes, 0, count, UTF_8));
+			} else {
+				b.append(c);
+				i++;
+			}
+		}
+		return b.toString();
 	}
 
+	private static boolean isUnreserved(char c) {
+		return c < 0x80 && UNRESERVED[c];
+	}
+
+	private static void appendEscaped(StringBuilder b, int value) {
+		b.append('%').append(HEX[(value >> 4) & 0x0F]).append(HEX[value & 0x0F]);
+	}
 }
@@ -0,0 +1,193 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2ApiClientCoalescingTest {
+	private static final int CALLERS = 8;
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+	private B2FileResponse file;
+	private byte[] content;
+	private ExecutorService executor;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("coalesce-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		content = new byte[256 * 1024];
+		new Random(49).nextBytes(content);
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+		file = client.uploadFile(bucket.getBucketId(), "config/hot.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+		executor = Executors.newFixedThreadPool(CALLERS);
+		client.setCoalesceRequests(true);
+		emulator.setLatency(300, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testGetFileInfoCoalesced() throws Exception {
+		for (B2FileResponse response : concurrently(new Callable<B2FileResponse>() {
+			@Override
+			public B2FileResponse call() throws Exception {
+				return client.getFileInfo(file.getFileId());
+			}
+		})) {
+			assertEquals("config/hot.bin", response.getFileName());
+		}
+		assertEquals(1, emulator.getRequestCount("b2_get_file_info"));
+		assertEquals(CALLERS - 1, client.getCoalescedRequests().getSharedCount());
+		assertEquals(0, client.getCoalescedRequests().getInFlight());
+
+		// the result is not cached once the request has finished
+		client.getFileInfo(file.getFileId());
+		assertEquals(2, emulator.getRequestCount("b2_get_file_info"));
+	}
+
+	@Test
+	public void testNotCoalescedByDefault() throws Exception {
+		client.setCoalesceRequests(false);
+		concurrently(new Callable<List<B2BucketResponse>>() {
+			@Override
+			public List<B2BucketResponse> call() throws Exception {
+				return client.listBuckets();
+			}
+		});
+		assertEquals(CALLERS, emulator.getRequestCount("b2_list_buckets"));
+	}
+
+	@Test
+	public void testFailureShared() throws Exception {
+		emulator.failNext("b2_list_buckets", 1, 503, "service_unavailable");
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<B2BucketResponse>>> futures = new ArrayList<Future<List<B2BucketResponse>>>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(executor.submit(new Callable<List<B2BucketResponse>>() {
+				@Override
+				public List<B2BucketResponse> call() throws Exception {
+					start.await();
+					return client.listBuckets();
+				}
+			}));
+		}
+		start.countDown();
+		Set<Throwable> thrown = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+		for (Future<List<B2BucketResponse>> future : futures) {
+			try {
+				future.get();
+				fail();
+			} catch (ExecutionException ex) {
+				assertEquals(503, ((B2ApiException)ex.getCause()).getStatus());
+				thrown.add(ex.getCause());
+			}
+		}
+		assertEquals(1, emulator.getRequestCount("b2_list_buckets"));
+		// each of the callers is given its own exception
+		assertEquals(CALLERS, thrown.size());
+	}
+
+	@Test
+	public void testHeadFileCoalesced() throws Exception {
+		for (Boolean exists : concurrently(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return client.exists(bucket.getBucketName(), "config/hot.bin");
+			}
+		})) {
+			assertTrue(exists);
+		}
+		assertEquals(1, emulator.getRequestCount("b2_download_file_by_name"));
+	}
+
+	@Test
+	public void testDownloadShared() throws Exception {
+		for (byte[] downloaded : concurrently(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				B2DownloadFileResponse response = client.downloadFileByName(bucket.getBucketName(), "config/hot.bin");
+				assertEquals(Long.valueOf(content.length), response.getContentLength());
+				try {
+					return IOUtils.toByteArray(response.getContent());
+				} finally {
+					response.getContent().close();
+				}
+			}
+		})) {
+			assertArrayEquals(content, downloaded);
+		}
+		assertEquals(1, emulator.getRequestCount("b2_download_file_by_name"));
+	}
+
+	@Test
+	public void testDownloadTooLargeToShare() throws Exception {
+		client.setMaxCoalescedDownloadSize(1024);
+		for (byte[] downloaded : concurrently(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return IOUtils.toByteArray(client.downloadFileByIdToStream(file.getFileId()));
+			}
+		})) {
+			assertArrayEquals(content, downloaded);
+		}
+		// one request is shared up to the response, then each other caller makes its own
+		assertEquals(CALLERS, emulator.getRequestCount("b2_download_file_by_id"));
+	}
+
+	private <T> List<T> concurrently(final Callable<T> callable) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(executor.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					start.await();
+					return callable.call();
+				}
+			}));
+		}
+		start.countDown();
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+}
@@ -0,0 +1,102 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.metrics.B2ClientStatistics;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.request.HedgingPolicy;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2ApiClientHedgingTest {
+	private static final String CONTENT = "hello world!";
+	private static final String DOWNLOAD_BY_ID = "b2_download_file_by_id";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2FileResponse file;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		B2BucketResponse bucket = client.createBucket("hedging-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(CONTENT.getBytes("UTF-8"))).toLowerCase();
+		file = client.uploadFile(bucket.getBucketId(), "hello.txt", new StringEntity(CONTENT), sha1, null, Collections.<String, String>emptyMap());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testSlowDownloadHedged() throws Exception {
+		HedgingPolicy policy = new HedgingPolicy(0.9d, 1.0d).setMinSamples(5).setMinDelay(200, TimeUnit.MILLISECONDS);
+		client.setHedgingPolicy(policy);
+		B2ClientStatistics statistics = client.getStatistics();
+		assertEquals(-1L, policy.getDelay(DOWNLOAD_BY_ID, TimeUnit.MILLISECONDS));
+		warmUp();
+		assertEquals(200L, policy.getDelay(DOWNLOAD_BY_ID, TimeUnit.MILLISECONDS));
+		assertEquals(0, policy.getHedgeCount());
+
+		int requests = emulator.getRequestCount(DOWNLOAD_BY_ID);
+		emulator.delayNext(DOWNLOAD_BY_ID, 1, 5, TimeUnit.SECONDS);
+		long start = System.nanoTime();
+		B2DownloadFileResponse range = client.downloadFileRangeById(file.getFileId(), 6, 10);
+		assertEquals("world", IOUtils.toString(range.getContent(), "UTF-8"));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertEquals(1, policy.getHedgeCount());
+		assertEquals(1, policy.getHedgeWinCount());
+		assertEquals(requests + 2, emulator.getRequestCount(DOWNLOAD_BY_ID));
+		assertEquals(Long.valueOf(1), statistics.getRetries().get(DOWNLOAD_BY_ID));
+
+		// the same operation as a HEAD request
+		emulator.delayNext(DOWNLOAD_BY_ID, 1, 5, TimeUnit.SECONDS);
+		start = System.nanoTime();
+		assertEquals(Long.valueOf(CONTENT.length()), client.headFileById(file.getFileId()).getContentLength());
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		assertEquals(2, policy.getHedgeWinCount());
+	}
+
+	@Test
+	public void testBudgetCapsHedges() throws Exception {
+		HedgingPolicy policy = new HedgingPolicy(0.9d, 0.0d).setMinSamples(5).setMinDelay(100, TimeUnit.MILLISECONDS);
+		client.setHedgingPolicy(policy);
+		warmUp();
+
+		emulator.delayNext(DOWNLOAD_BY_ID, 1, 500, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		assertEquals(CONTENT, IOUtils.toString(client.downloadFileById(file.getFileId()).getContent(), "UTF-8"));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+		assertEquals(0, policy.getHedgeCount());
+		assertEquals(10 + 1, policy.getRequestCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPercentile() {
+		new HedgingPolicy(1.0d, 0.05d);
+	}
+
+	private void warmUp() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			B2DownloadFileResponse response = client.downloadFileRangeById(file.getFileId(), 0, 4);
+			assertEquals("hello", IOUtils.toString(response.getContent(), "UTF-8"));
+		}
+	}
+}
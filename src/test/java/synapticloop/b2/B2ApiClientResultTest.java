@@ -0,0 +1,114 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2Result;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2ApiClientResultTest {
+	private static final String CONTENT = "hello world!";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+	private B2FileResponse file;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("result-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(CONTENT.getBytes("UTF-8"))).toLowerCase();
+		file = client.uploadFile(bucket.getBucketId(), "folder/hello.txt", new StringEntity(CONTENT), sha1, null, Collections.<String, String>emptyMap());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testTryGetFileInfo() throws Exception {
+		B2Result<B2FileResponse> found = client.tryGetFileInfo(file.getFileId());
+		assertTrue(found.isSuccess());
+		assertEquals(200, found.getStatus());
+		assertEquals("folder/hello.txt", found.getResponse().getFileName());
+
+		B2Result<B2FileResponse> missing = client.tryGetFileInfo("4_z0000missing");
+		assertFalse(missing.isSuccess());
+		assertEquals(400, missing.getStatus());
+		assertEquals("bad_request", missing.getCode());
+		assertNull(missing.getResponse());
+		try {
+			missing.getResponseOrThrow();
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+			assertEquals("bad_request", ex.getCode());
+		}
+	}
+
+	@Test
+	public void testTryHead() throws Exception {
+		B2Result<B2DownloadFileResponse> byId = client.tryHeadFileById(file.getFileId());
+		assertTrue(byId.isSuccess());
+		assertEquals(Long.valueOf(CONTENT.length()), byId.getResponse().getContentLength());
+
+		B2Result<B2DownloadFileResponse> byName = client.tryHeadFileByName(bucket.getBucketName(), "folder/hello.txt");
+		assertTrue(byName.isSuccess());
+		assertEquals(file.getFileId(), byName.getResponse().getFileId());
+		assertEquals(file.getFileId(), client.headFileByName(bucket.getBucketName(), "folder/hello.txt").getFileId());
+
+		B2Result<B2DownloadFileResponse> missing = client.tryHeadFileByName(bucket.getBucketName(), "folder/missing.txt");
+		assertTrue(missing.isNotFound());
+		assertNull(missing.getResponse());
+	}
+
+	@Test
+	public void testExists() throws Exception {
+		assertTrue(client.exists(bucket.getBucketName(), "folder/hello.txt"));
+		assertFalse(client.exists(bucket.getBucketName(), "folder/missing.txt"));
+		client.hideFile(bucket.getBucketId(), "folder/hello.txt");
+		assertFalse(client.exists(bucket.getBucketName(), "folder/hello.txt"));
+		assertEquals(3, emulator.getRequestCount("b2_download_file_by_name"));
+	}
+
+	@Test
+	public void testStacklessExceptions() throws Exception {
+		try {
+			client.headFileByName(bucket.getBucketName(), "folder/missing.txt");
+			fail();
+		} catch (B2ApiException ex) {
+			// the status of a HEAD request, which has no JSON body
+			assertEquals(404, ex.getStatus());
+			assertTrue(ex.getStackTrace().length > 0);
+		}
+
+		client.setStacklessExceptions(true);
+		try {
+			client.getFileInfo("4_z0000missing");
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+			assertEquals("bad_request", ex.getCode());
+			assertEquals(0, ex.getStackTrace().length);
+			assertNull(ex.getCause());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.metrics.B2ClientStatistics;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2ApiClientResumableDownloadTest {
+	private static final int LENGTH = 256 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+	private byte[] content;
+	private B2FileResponse file;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("resume-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+
+		content = new byte[LENGTH];
+		new Random(42).nextBytes(content);
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+		file = client.uploadFile(bucket.getBucketId(), "resume.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testResumeStream() throws Exception {
+		B2ClientStatistics statistics = client.getStatistics();
+		emulator.dropNext("b2_download_file_by_id", 2, LENGTH / 4);
+		try (InputStream in = client.downloadFileByIdToStream(file.getFileId())) {
+			assertArrayEquals(content, IOUtils.toByteArray(in));
+		}
+		assertEquals(3, emulator.getRequestCount("b2_download_file_by_id"));
+		assertEquals(Long.valueOf(2), statistics.getRetries().get("b2_download_file_by_id"));
+	}
+
+	@Test
+	public void testResumeFileByName() throws Exception {
+		emulator.dropNext("b2_download_file_by_name", 1, LENGTH / 2);
+		File local = folder.newFile();
+		client.downloadFileByNameToFile(bucket.getBucketName(), "resume.bin", local);
+		assertArrayEquals(content, FileUtils.readFileToByteArray(local));
+		assertEquals(1, emulator.getRequestCount("b2_download_file_by_name"));
+		assertEquals(1, emulator.getRequestCount("b2_download_file_by_id"));
+	}
+
+	@Test
+	public void testMaxResumes() throws Exception {
+		client.setMaxDownloadResumes(1);
+		emulator.dropNext("b2_download_file_by_id", 2, LENGTH / 4);
+		try (InputStream in = client.downloadFileByIdToStream(file.getFileId())) {
+			IOUtils.toByteArray(in);
+			fail();
+		} catch (IOException ex) {
+			// expected
+		}
+		assertEquals(2, emulator.getRequestCount("b2_download_file_by_id"));
+	}
+
+	@Test
+	public void testDeletedWhileDownloading() throws Exception {
+		emulator.dropNext("b2_download_file_by_id", 1, 1024);
+		try (InputStream in = client.downloadFileByIdToStream(file.getFileId())) {
+			assertEquals(content[0], (byte)in.read());
+			client.deleteFileVersion("resume.bin", file.getFileId());
+			IOUtils.toByteArray(in);
+			fail();
+		} catch (IOException ex) {
+			assertTrue(ex.getCause() instanceof B2ApiException);
+			assertEquals(404, ((B2ApiException)ex.getCause()).getStatus());
+		}
+	}
+}
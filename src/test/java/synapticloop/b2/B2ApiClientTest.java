@@ -7,6 +7,7 @@ import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 
+import synapticloop.b2.emulator.B2Emulator;
 import synapticloop.b2.helper.B2TestHelper;
 import synapticloop.b2.response.B2BucketResponse;
 
@@ -17,26 +18,16 @@ public class B2ApiClientTest {
 
 	@Before
 	public void setup() throws Exception {
-		boolean isOK = true;
 		String b2AccountId = System.getenv(B2_ACCOUNT_ID);
 		String b2ApplicationKey = System.getenv(B2_APPLICATION_KEY);
 
-		if(null == b2AccountId) {
-			System.err.println("Could not find the environment variable '" + B2_ACCOUNT_ID + "', cannot continue with tests, exiting...");
-			isOK = false;
-		}
-
-		if(null == b2ApplicationKey) {
-			System.err.println("Could not find the environment variable '" + B2_APPLICATION_KEY + "', cannot continue with tests, exiting...");
-			isOK = false;
-		}
-
-		if(!isOK) {
-			System.exit(-1);
-		}
-
 		client = new B2ApiClient();
-		client.authenticate(b2AccountId, b2ApplicationKey);
+		if(null == b2AccountId || null == b2ApplicationKey) {
+			// no credentials for the live service, run against the local emulator
+			client.authenticate(B2TestHelper.getEmulator().getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		} else {
+			client.authenticate(b2AccountId, b2ApplicationKey);
+		}
 	}
 
 	@Test
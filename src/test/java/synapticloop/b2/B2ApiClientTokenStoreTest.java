@@ -0,0 +1,76 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.auth.B2StoredAuthorization;
+import synapticloop.b2.auth.InMemoryTokenStore;
+import synapticloop.b2.emulator.B2Emulator;
+
+public class B2ApiClientTokenStoreTest {
+	private B2Emulator emulator;
+	private InMemoryTokenStore store;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		store = new InMemoryTokenStore();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		emulator.close();
+	}
+
+	private B2ApiClient client() throws Exception {
+		B2ApiClient client = new B2ApiClient();
+		client.setTokenStore(store);
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		return client;
+	}
+
+	@Test
+	public void testStoredAuthorization() throws Exception {
+		B2ApiClient first = client();
+		first.createBucket("stored-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		first.close();
+
+		B2ApiClient second = client();
+		assertEquals(1, emulator.getRequestCount("b2_authorize_account"));
+		assertEquals(1, second.listBuckets().size());
+		second.close();
+	}
+
+	@Test
+	public void testReauthorize() throws Exception {
+		B2ApiClient client = client();
+		client.getStatistics();
+		String key = B2StoredAuthorization.key(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		String expired = store.load(key).getResponse().getAuthorizationToken();
+		client.createBucket("reauth-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		emulator.expireAuthorizations();
+
+		assertEquals(1, client.listBuckets().size());
+		assertEquals(2, emulator.getRequestCount("b2_authorize_account"));
+		assertEquals(Long.valueOf(1), client.getStatistics().getReauthorizations().get("b2_list_buckets"));
+		assertNotEquals(expired, store.load(key).getResponse().getAuthorizationToken());
+		client.close();
+	}
+
+	@Test
+	public void testStoredAuthorizationExpired() throws Exception {
+		client().close();
+		emulator.expireAuthorizations();
+
+		B2ApiClient client = client();
+		assertEquals(1, emulator.getRequestCount("b2_authorize_account"));
+		assertEquals(0, client.listBuckets().size());
+		assertEquals(2, emulator.getRequestCount("b2_authorize_account"));
+		client.close();
+	}
+}
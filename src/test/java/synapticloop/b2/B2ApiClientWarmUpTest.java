@@ -0,0 +1,59 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.response.B2BucketResponse;
+
+public class B2ApiClientWarmUpTest {
+	private static final String CONTENT = "hello world!";
+	private static final String CONTENT_SHA1 = "430ce34d020724ed75a196dfc2ad67c77772d169";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNotAuthenticated() throws Exception {
+		new B2ApiClient().warmUp(1);
+	}
+
+	@Test
+	public void testConnections() throws Exception {
+		assertEquals(4, client.warmUp(4));
+		assertTrue(client.getStatistics().getTotalStatistics().getAvailable() >= 4);
+		assertEquals(0, client.getStatistics().getTotalStatistics().getLeased());
+	}
+
+	@Test
+	public void testUploadUrls() throws Exception {
+		B2BucketResponse bucket = client.createBucket("warm-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		client.warmUp(2, bucket.getBucketId());
+		assertEquals(2, emulator.getRequestCount("b2_get_upload_url"));
+
+		for (int i = 0; i < 3; i++) {
+			client.uploadFile(bucket.getBucketId(), "file-" + i + ".txt", new StringEntity(CONTENT), CONTENT_SHA1, null, Collections.<String, String>emptyMap());
+		}
+		assertEquals(2, emulator.getRequestCount("b2_get_upload_url"));
+	}
+}
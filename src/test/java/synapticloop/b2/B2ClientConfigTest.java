@@ -0,0 +1,93 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+
+public class B2ClientConfigTest {
+
+	@Test
+	public void testDefaults() {
+		PoolingHttpClientConnectionManager connectionManager = B2ClientConfig.DEFAULT.createConnectionManager();
+		assertEquals(B2ClientConfig.DEFAULT_MAX_CONNECTIONS_TOTAL, connectionManager.getMaxTotal());
+		assertEquals(B2ClientConfig.DEFAULT_UPLOAD_MAX_CONNECTIONS_PER_ROUTE, connectionManager.getDefaultMaxPerRoute());
+		assertTrue(connectionManager.getDefaultSocketConfig().isTcpNoDelay());
+		assertEquals(2000, connectionManager.getValidateAfterInactivity());
+		assertEquals(120000, B2ClientConfig.DEFAULT.createRequestConfig().getSocketTimeout());
+		connectionManager.close();
+	}
+
+	@Test
+	public void testBuilder() {
+		B2ClientConfig config = B2ClientConfig.builder()
+				.maxConnectionsTotal(500)
+				.apiMaxConnectionsPerRoute(10)
+				.uploadMaxConnectionsPerRoute(100)
+				.downloadMaxConnectionsPerRoute(200)
+				.connectTimeout(5, TimeUnit.SECONDS)
+				.socketTimeout(10, TimeUnit.MINUTES)
+				.connectionRequestTimeout(1, TimeUnit.SECONDS)
+				.tcpNoDelay(false)
+				.sendBufferSize(256 * 1024)
+				.receiveBufferSize(512 * 1024)
+				.validateAfterInactivity(0, TimeUnit.SECONDS)
+				.build();
+		assertEquals(5000, config.createRequestConfig().getConnectTimeout());
+		assertEquals(600000, config.createRequestConfig().getSocketTimeout());
+		assertEquals(1000, config.createRequestConfig().getConnectionRequestTimeout());
+
+		PoolingHttpClientConnectionManager connectionManager = config.createConnectionManager();
+		assertFalse(connectionManager.getDefaultSocketConfig().isTcpNoDelay());
+		assertEquals(256 * 1024, connectionManager.getDefaultSocketConfig().getSndBufSize());
+		assertEquals(512 * 1024, connectionManager.getDefaultSocketConfig().getRcvBufSize());
+
+		config.configureRoutes(connectionManager, "https://api001.backblazeb2.com", "https://f001.backblazeb2.com");
+		assertEquals(10, connectionManager.getMaxPerRoute(B2ClientConfig.route("https://api001.backblazeb2.com")));
+		assertEquals(200, connectionManager.getMaxPerRoute(B2ClientConfig.route("https://f001.backblazeb2.com")));
+		assertEquals(100, connectionManager.getMaxPerRoute(B2ClientConfig.route("https://pod-000-1016-09.backblaze.com/b2api/v1/b2_upload_file")));
+		connectionManager.close();
+	}
+
+	@Test
+	public void testSharedHost() {
+		PoolingHttpClientConnectionManager connectionManager = B2ClientConfig.DEFAULT.createConnectionManager();
+		B2ClientConfig.DEFAULT.configureRoutes(connectionManager, "http://127.0.0.1:8080", "http://127.0.0.1:8080");
+		assertEquals(B2ClientConfig.DEFAULT_DOWNLOAD_MAX_CONNECTIONS_PER_ROUTE, connectionManager.getMaxPerRoute(B2ClientConfig.route("http://127.0.0.1:8080/file")));
+		connectionManager.close();
+	}
+
+	@Test
+	public void testRoute() {
+		HttpRoute route = B2ClientConfig.route("https://api001.backblazeb2.com/b2api/v1/");
+		assertEquals(443, route.getTargetHost().getPort());
+		assertTrue(route.isSecure());
+		assertNull(B2ClientConfig.route(null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPerRouteLargerThanTotal() {
+		B2ClientConfig.builder().maxConnectionsTotal(10).downloadMaxConnectionsPerRoute(20).build();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeTimeout() {
+		B2ClientConfig.builder().socketTimeout(-1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (B2Emulator emulator = new B2Emulator()) {
+			B2ApiClient client = new B2ApiClient(B2ClientConfig.builder().apiMaxConnectionsPerRoute(4).build());
+			client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+			assertTrue(client.listBuckets().isEmpty());
+			assertEquals(B2ClientConfig.DEFAULT_DOWNLOAD_MAX_CONNECTIONS_PER_ROUTE, client.getStatistics().getApiRouteStatistics().getMax());
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package synapticloop.b2;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.emulator.B2Emulator;
+
+public class ConnectionWarmerTest {
+	private static final String BUSY_URL = "http://localhost:1";
+
+	private B2Emulator emulator;
+	private B2ClientConfig config;
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		config = B2ClientConfig.builder().connectionRequestTimeout(100, TimeUnit.MILLISECONDS).build();
+		connectionManager = config.createConnectionManager();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connectionManager.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testLeaseTimeoutStillWarmsTheOthers() throws Exception {
+		// the only connection to the busy route is already leased, so leasing another one times out
+		connectionManager.setMaxPerRoute(B2ClientConfig.route(BUSY_URL), 1);
+		HttpClientConnection busy = connectionManager.requestConnection(B2ClientConfig.route(BUSY_URL), null).get(1, TimeUnit.SECONDS);
+
+		ConnectionWarmer warmer = new ConnectionWarmer(connectionManager, config);
+		warmer.atLeast(BUSY_URL, 1);
+		warmer.atLeast(emulator.getUrl(), 2);
+		assertEquals(2, warmer.warm());
+		assertEquals(2, connectionManager.getStats(B2ClientConfig.route(emulator.getUrl())).getAvailable());
+		assertEquals(0, connectionManager.getStats(B2ClientConfig.route(BUSY_URL)).getAvailable());
+
+		connectionManager.releaseConnection(busy, null, 0, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,149 @@
+package synapticloop.b2.auth;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+
+public class DownloadAuthorizationCacheTest {
+	private static final String OPERATION = "b2_get_download_authorization";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private String bucketId;
+
+	private final List<Runnable> background = new ArrayList<Runnable>();
+	private long now = 0;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucketId = client.createBucket("cache-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate).getBucketId();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	private DownloadAuthorizationCache cache() {
+		return new DownloadAuthorizationCache(client, 3600, 300, 300, TimeUnit.SECONDS, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				background.add(command);
+			}
+		}) {
+			@Override
+			long nanoTime() {
+				return now;
+			}
+		};
+	}
+
+	@Test
+	public void testCached() throws Exception {
+		DownloadAuthorizationCache cache = cache();
+		String token = cache.getDownloadAuthorization(bucketId, "photos/");
+		assertEquals(token, cache.getDownloadAuthorization(bucketId, "photos/"));
+		assertEquals(1, emulator.getRequestCount(OPERATION));
+
+		cache.getDownloadAuthorization(bucketId, "videos/");
+		assertEquals(2, emulator.getRequestCount(OPERATION));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testRefreshedInBackground() throws Exception {
+		DownloadAuthorizationCache cache = cache();
+		String token = cache.getDownloadAuthorization(bucketId, "photos/");
+
+		now = TimeUnit.SECONDS.toNanos(3000);
+		assertEquals(token, cache.getDownloadAuthorization(bucketId, "photos/"));
+		assertEquals(token, cache.getDownloadAuthorization(bucketId, "photos/"));
+		assertEquals(1, background.size());
+		assertEquals(1, emulator.getRequestCount(OPERATION));
+
+		background.get(0).run();
+		assertEquals(2, emulator.getRequestCount(OPERATION));
+		now = TimeUnit.SECONDS.toNanos(3400);
+		cache.getDownloadAuthorization(bucketId, "photos/");
+		assertEquals(2, emulator.getRequestCount(OPERATION));
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		DownloadAuthorizationCache cache = cache();
+		cache.getDownloadAuthorization(bucketId, "photos/");
+
+		now = TimeUnit.SECONDS.toNanos(3300);
+		cache.getDownloadAuthorization(bucketId, "photos/");
+		assertEquals(2, emulator.getRequestCount(OPERATION));
+		assertTrue(background.isEmpty());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		emulator.setLatency(200, TimeUnit.MILLISECONDS);
+		final DownloadAuthorizationCache cache = cache();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return cache.getDownloadAuthorization(bucketId, "photos/");
+					}
+				}));
+			}
+			String token = futures.get(0).get();
+			for (Future<String> future : futures) {
+				assertEquals(token, future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, emulator.getRequestCount(OPERATION));
+	}
+
+	@Test
+	public void testFirstToExpireEvicted() throws Exception {
+		DownloadAuthorizationCache cache = cache().setMaxEntries(3);
+		for (String prefix : new String[] { "a/", "b/", "c/", "d/" }) {
+			cache.getDownloadAuthorization(bucketId, prefix);
+			now += TimeUnit.SECONDS.toNanos(60);
+		}
+		assertEquals(3, cache.size());
+		assertEquals(4, emulator.getRequestCount(OPERATION));
+
+		// the token of 'a/' expired first, so only it was evicted
+		cache.getDownloadAuthorization(bucketId, "c/");
+		cache.getDownloadAuthorization(bucketId, "d/");
+		assertEquals(4, emulator.getRequestCount(OPERATION));
+		cache.getDownloadAuthorization(bucketId, "a/");
+		assertEquals(5, emulator.getRequestCount(OPERATION));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMarginTooLarge() {
+		new DownloadAuthorizationCache(client, 600, 300, 300, TimeUnit.SECONDS, null);
+	}
+}
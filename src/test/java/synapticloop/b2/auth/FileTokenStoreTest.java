@@ -0,0 +1,66 @@
+package synapticloop.b2.auth;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.response.B2AuthorizeAccountResponse;
+
+public class FileTokenStoreTest {
+	private static final String JSON = "{\"accountId\":\"account\",\"apiUrl\":\"https://api001.backblazeb2.com\","
+			+ "\"authorizationToken\":\"token\",\"downloadUrl\":\"https://f001.backblazeb2.com\","
+			+ "\"minimumPartSize\":100000000,\"recommendedPartSize\":100000000,\"absoluteMinimumPartSize\":5000000}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		FileTokenStore store = new FileTokenStore(new File(folder.getRoot(), "tokens"));
+		String key = B2StoredAuthorization.key("https://api.backblazeb2.com", "account", "key");
+		assertNull(store.load(key));
+
+		long issued = System.currentTimeMillis();
+		store.save(key, new B2StoredAuthorization(new B2AuthorizeAccountResponse(JSON), issued));
+		B2StoredAuthorization stored = store.load(key);
+		assertEquals(issued, stored.getIssued());
+		assertEquals("token", stored.getResponse().getAuthorizationToken());
+		assertEquals("https://api001.backblazeb2.com", stored.getResponse().getApiUrl());
+		assertEquals("https://f001.backblazeb2.com", stored.getResponse().getDownloadUrl());
+		assertEquals(5000000, stored.getResponse().getAbsoluteMinimumPartSize());
+		assertEquals(1, new File(folder.getRoot(), "tokens").list().length);
+
+		store.remove(key);
+		assertNull(store.load(key));
+	}
+
+	@Test
+	public void testUnreadable() throws Exception {
+		FileTokenStore store = new FileTokenStore(folder.getRoot());
+		Files.write(new File(folder.getRoot(), "key.json").toPath(), "not json".getBytes(StandardCharsets.UTF_8));
+		assertNull(store.load("key"));
+	}
+
+	@Test
+	public void testValid() throws Exception {
+		B2AuthorizeAccountResponse response = new B2AuthorizeAccountResponse(JSON);
+		assertTrue(new B2StoredAuthorization(response, System.currentTimeMillis()).isValid(B2StoredAuthorization.DEFAULT_MAX_AGE_MILLIS));
+		assertFalse(new B2StoredAuthorization(response, System.currentTimeMillis() - TimeUnit.HOURS.toMillis(23)).isValid(B2StoredAuthorization.DEFAULT_MAX_AGE_MILLIS));
+		assertFalse(new B2StoredAuthorization(response, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)).isValid(B2StoredAuthorization.DEFAULT_MAX_AGE_MILLIS));
+	}
+
+	@Test
+	public void testKey() {
+		String key = B2StoredAuthorization.key("https://api.backblazeb2.com", "account", "key");
+		assertEquals(40, key.length());
+		assertFalse(key.contains("key"));
+		assertNotEquals(key, B2StoredAuthorization.key("https://api.backblazeb2.com", "account", "other"));
+	}
+}
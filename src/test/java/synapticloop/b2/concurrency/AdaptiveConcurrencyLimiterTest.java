@@ -0,0 +1,211 @@
+package synapticloop.b2.concurrency;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	@Test
+	public void testLimit() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+		AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+		assertNotNull(first);
+		assertNotNull(limiter.tryAcquire());
+		assertNull(limiter.tryAcquire());
+		assertEquals(2, limiter.getInFlight());
+
+		first.ignore();
+		assertEquals(1, limiter.getInFlight());
+		assertEquals(2, limiter.getLimit());
+		assertNotNull(limiter.tryAcquire());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReleaseTwice() {
+		AdaptiveConcurrencyLimiter.Permit permit = new AdaptiveConcurrencyLimiter(1, 1, 1).tryAcquire();
+		permit.success();
+		permit.success();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimits() {
+		new AdaptiveConcurrencyLimiter(10, 1, 5);
+	}
+
+	@Test
+	public void testIncreaseAndThrottle() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 64);
+		saturate(limiter, 5);
+		assertEquals(9, limiter.getLimit());
+
+		limiter.tryAcquire().throttled();
+		assertEquals(4, limiter.getLimit());
+
+		// after backing off the limit grows by one per limit's worth of successes
+		saturate(limiter, 4);
+		assertEquals(5, limiter.getLimit());
+	}
+
+	@Test
+	public void testNoIncreaseWhenIdle() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 64);
+		for (int i = 0; i < 10; i++) {
+			limiter.tryAcquire().success();
+		}
+		assertEquals(8, limiter.getLimit());
+	}
+
+	@Test
+	public void testRisingLatency() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 64);
+		limiter.tryAcquire().success();
+		for (int i = 0; i < 10; i++) {
+			AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+			Thread.sleep(5);
+			permit.success();
+		}
+		assertTrue(limiter.getLimit() < 8);
+		assertTrue(limiter.getLatency(TimeUnit.MILLISECONDS) >= 2);
+	}
+
+	@Test
+	public void testLargerTransfers() throws Exception {
+		B2ConcurrencyController controller = new B2ConcurrencyController(8, 1, 64);
+		controller.execute(OperationClass.UPLOAD, sleep(0));
+		// each of the uploads is larger, and takes longer, than the one before
+		for (int i = 1; i <= 10; i++) {
+			controller.execute(OperationClass.UPLOAD, sleep(i));
+		}
+		assertEquals(8, controller.getLimiter(OperationClass.UPLOAD).getLimit());
+
+		controller.getLimiter(OperationClass.UPLOAD).tryAcquire().throttled();
+		assertEquals(4, controller.getLimiter(OperationClass.UPLOAD).getLimit());
+	}
+
+	@Test
+	public void testDownloadHoldsPermitUntilClosed() throws Exception {
+		B2Emulator emulator = new B2Emulator();
+		final B2ApiClient client = new B2ApiClient();
+		try {
+			client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+			String bucketId = client.createBucket("permit-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate).getBucketId();
+			byte[] content = new byte[1024];
+			String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content));
+			final String fileId = client.uploadFile(bucketId, "file.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap()).getFileId();
+
+			B2ConcurrencyController controller = new B2ConcurrencyController(4, 1, 8);
+			B2DownloadFileResponse response = controller.execute(OperationClass.DOWNLOAD, new B2Operation<B2DownloadFileResponse>() {
+				@Override
+				public B2DownloadFileResponse execute() throws B2ApiException, IOException {
+					return client.downloadFileById(fileId);
+				}
+			});
+			// the content has not been read yet
+			assertEquals(1, controller.getLimiter(OperationClass.DOWNLOAD).getInFlight());
+			InputStream in = response.getContent();
+			assertArrayEquals(content, IOUtils.toByteArray(in));
+			in.close();
+			assertEquals(0, controller.getLimiter(OperationClass.DOWNLOAD).getInFlight());
+		} finally {
+			client.close();
+			emulator.close();
+		}
+	}
+
+	@Test
+	public void testController() throws Exception {
+		B2ConcurrencyController controller = new B2ConcurrencyController(4, 1, 8);
+		assertEquals("done", controller.execute(OperationClass.UPLOAD, new B2Operation<String>() {
+			@Override
+			public String execute() {
+				return "done";
+			}
+		}));
+
+		try {
+			controller.execute(OperationClass.UPLOAD, new B2Operation<String>() {
+				@Override
+				public String execute() throws B2ApiException {
+					throw new B2ApiException("{\"status\": 503, \"code\": \"service_unavailable\", \"message\": \"c001_v0001000_t0000 is too busy\"}", null);
+				}
+			});
+			fail();
+		} catch (B2ApiException ex) {
+			assertTrue(B2ConcurrencyController.isThrottled(ex));
+		}
+		assertEquals(2, controller.getLimiter(OperationClass.UPLOAD).getLimit());
+		assertEquals(0, controller.getLimiter(OperationClass.UPLOAD).getInFlight());
+		assertEquals(4, controller.getLimiter(OperationClass.DOWNLOAD).getLimit());
+
+		try {
+			controller.execute(OperationClass.DOWNLOAD, new B2Operation<String>() {
+				@Override
+				public String execute() throws IOException {
+					throw new IOException("connection reset");
+				}
+			});
+			fail();
+		} catch (IOException ex) {
+			// expected
+		}
+		assertEquals(4, controller.getLimiter(OperationClass.DOWNLOAD).getLimit());
+		assertEquals(0, controller.getLimiter(OperationClass.DOWNLOAD).getInFlight());
+	}
+
+	@Test
+	public void testOperationClass() {
+		assertEquals(OperationClass.UPLOAD, OperationClass.of("b2_upload_part"));
+		assertEquals(OperationClass.DOWNLOAD, OperationClass.of("b2_download_file_by_name"));
+		assertEquals(OperationClass.DELETE, OperationClass.of("b2_hide_file"));
+		assertEquals(OperationClass.API, OperationClass.of("b2_list_file_names"));
+	}
+
+	private static B2Operation<Void> sleep(final long millis) {
+		return new B2Operation<Void>() {
+			@Override
+			public Void execute() throws IOException {
+				try {
+					Thread.sleep(millis);
+				} catch (InterruptedException ex) {
+					throw new IOException(ex);
+				}
+				return null;
+			}
+		};
+	}
+
+	private static void saturate(AdaptiveConcurrencyLimiter limiter, int successes) {
+		List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+		for (int i = 0; i < limiter.getLimit(); i++) {
+			permits.add(limiter.tryAcquire());
+		}
+		for (int i = 0; i < successes; i++) {
+			permits.remove(0).success();
+			permits.add(limiter.tryAcquire());
+		}
+		for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+			if(null != permit) {
+				permit.ignore();
+			}
+		}
+	}
+}
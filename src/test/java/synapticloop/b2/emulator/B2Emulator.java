@@ -0,0 +1,1462 @@
+package synapticloop.b2.emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-memory emulator of the B2 v1 API, listening on a local port.  It
+ * supports the endpoints used by this library (authorize, buckets, upload
+ * URLs and files, the large file API, listing, downloads with ranges, hide
+ * and delete) with a configurable latency, bandwidth and error injection, so
+ * that the client can be tested and benchmarked without access to the live
+ * service.
+ *
+ * <pre>
+ * B2Emulator emulator = new B2Emulator();
+ * B2ApiClient client = new B2ApiClient();
+ * client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+ * </pre>
+ */
+public class B2Emulator implements Closeable {
+	public static final String ACCOUNT_ID = "emulatoraccount";
+	public static final String APPLICATION_KEY = "emulatorapplicationkey";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String API_PREFIX = "/b2api/v1/";
+	private static final String FILE_PREFIX = "/file/";
+	private static final String OPERATION_DOWNLOAD_FILE_BY_NAME = "b2_download_file_by_name";
+	private static final String X_BZ_INFO = "x-bz-info-";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final String url;
+	private final Random random = new Random();
+
+	private volatile long latencyNanos = 0L;
+	private volatile long bytesPerSecond = 0L;
+	private volatile double errorRate = 0d;
+	private volatile Failure randomFailure = new Failure(503, "service_unavailable", "c001_v0001000_t0000 is too busy", 1);
+
+	private volatile int absoluteMinimumPartSize = 5000000;
+	private volatile int minimumPartSize = 100000000;
+	private volatile int recommendedPartSize = 100000000;
+
+	private final ConcurrentMap<String, Queue<Failure>> scheduledFailures = new ConcurrentHashMap<String, Queue<Failure>>();
+	private final ConcurrentMap<String, Queue<Long>> scheduledDrops = new ConcurrentHashMap<String, Queue<Long>>();
+	private final ConcurrentMap<String, Queue<Long>> scheduledDelays = new ConcurrentHashMap<String, Queue<Long>>();
+	private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	// all of the following state is guarded by 'this'
+	private final Map<String, Bucket> buckets = new LinkedHashMap<String, Bucket>();
+	private final Map<String, FileVersion> files = new HashMap<String, FileVersion>();
+	private final Set<String> authorizationTokens = new HashSet<String>();
+	private final Set<String> expiredTokens = new HashSet<String>();
+	private final Map<String, String> uploadTokens = new HashMap<String, String>();
+	private final Map<String, DownloadAuthorization> downloadAuthorizations = new HashMap<String, DownloadAuthorization>();
+	private long lastUploadTimestamp = 0L;
+
+	static {
+		// without this, the responses are delayed by the delayed ACK of the client
+		if(null == System.getProperty("sun.net.httpserver.nodelay")) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	/**
+	 * Start an emulator on an ephemeral port of the loopback interface
+	 *
+	 * @throws IOException if the server could not be started
+	 */
+	public B2Emulator() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Start an emulator on the loopback interface
+	 *
+	 * @param port the port to listen on, or 0 for an ephemeral port
+	 *
+	 * @throws IOException if the server could not be started
+	 */
+	public B2Emulator(int port) throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 128);
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "b2-emulator-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.server.setExecutor(executor);
+		this.server.createContext("/", new Handler());
+		this.server.start();
+		this.url = "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the scheme, host and port of the emulator, to authenticate against
+	 */
+	public String getUrl() { return this.url; }
+
+	/**
+	 * Set the latency which is added to every request, before it is handled
+	 *
+	 * @param latency the latency
+	 * @param unit the unit of the latency
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator setLatency(long latency, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+		return this;
+	}
+
+	/**
+	 * Limit the rate at which every request body is read and every response
+	 * body is written, per connection
+	 *
+	 * @param bytesPerSecond the number of bytes per second, or 0 for unlimited
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Fail a random proportion of requests with a '503 service_unavailable'
+	 * and a 'Retry-After' of one second
+	 *
+	 * @param errorRate the probability (between 0 and 1) that a request fails
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/**
+	 * Fail a random proportion of requests with the passed in error
+	 *
+	 * @param errorRate the probability (between 0 and 1) that a request fails
+	 * @param status the HTTP status of the failures
+	 * @param code the B2 error code of the failures
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator setErrorRate(double errorRate, int status, String code) {
+		this.randomFailure = new Failure(status, code, "Injected failure", 429 == status || 503 == status ? 1 : -1);
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/**
+	 * Fail the next requests for an operation with the passed in error
+	 *
+	 * @param operation the name of the operation, e.g. 'b2_upload_file', or
+	 *     'b2_download_file_by_name'
+	 * @param count the number of requests to fail
+	 * @param status the HTTP status of the failures
+	 * @param code the B2 error code of the failures
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator failNext(String operation, int count, int status, String code) {
+		scheduledFailures.putIfAbsent(operation, new ConcurrentLinkedQueue<Failure>());
+		final Queue<Failure> queue = scheduledFailures.get(operation);
+		for (int i = 0; i < count; i++) {
+			queue.add(new Failure(status, code, "Injected failure", 429 == status || 503 == status ? 1 : -1));
+		}
+		return this;
+	}
+
+	/**
+	 * Drop the connection of the next downloads of an operation part way 
+	 * through the body, after a number of bytes of the content have been sent
+	 *
+	 * @param operation the name of the download operation, either
+	 *     'b2_download_file_by_id', or 'b2_download_file_by_name'
+	 * @param count the number of downloads to drop
+	 * @param afterBytes the number of bytes of the content to send before the
+	 *     connection is dropped
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator dropNext(String operation, int count, long afterBytes) {
+		scheduledDrops.putIfAbsent(operation, new ConcurrentLinkedQueue<Long>());
+		final Queue<Long> queue = scheduledDrops.get(operation);
+		for (int i = 0; i < count; i++) {
+			queue.add(afterBytes);
+		}
+		return this;
+	}
+
+	/**
+	 * Delay the next requests for an operation, on top of the latency that is
+	 * added to every request, e.g. to emulate a slow backend
+	 *
+	 * @param operation the name of the operation, e.g. 'b2_download_file_by_id'
+	 * @param count the number of requests to delay
+	 * @param delay the delay
+	 * @param unit the unit of the delay
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator delayNext(String operation, int count, long delay, TimeUnit unit) {
+		scheduledDelays.putIfAbsent(operation, new ConcurrentLinkedQueue<Long>());
+		final Queue<Long> queue = scheduledDelays.get(operation);
+		for (int i = 0; i < count; i++) {
+			queue.add(unit.toNanos(delay));
+		}
+		return this;
+	}
+
+	/**
+	 * Set the part sizes that are returned from the authorize account call,
+	 * all parts of a large file (except for the last one) must be at least the
+	 * minimum part size
+	 *
+	 * @param absoluteMinimumPartSize the absolute minimum part size
+	 * @param minimumPartSize the minimum part size
+	 * @param recommendedPartSize the recommended part size
+	 *
+	 * @return this emulator
+	 */
+	public B2Emulator setPartSizes(int absoluteMinimumPartSize, int minimumPartSize, int recommendedPartSize) {
+		this.absoluteMinimumPartSize = absoluteMinimumPartSize;
+		this.minimumPartSize = minimumPartSize;
+		this.recommendedPartSize = recommendedPartSize;
+		return this;
+	}
+
+	/**
+	 * Expire all of the authorization tokens that have been issued, further
+	 * requests with them will fail with '401 expired_auth_token'
+	 */
+	public synchronized void expireAuthorizations() {
+		expiredTokens.addAll(authorizationTokens);
+		authorizationTokens.clear();
+	}
+
+	/**
+	 * Return the number of requests which have been received for an operation
+	 *
+	 * @param operation the name of the operation
+	 *
+	 * @return the number of requests, including failed ones
+	 */
+	public int getRequestCount(String operation) {
+		AtomicInteger count = requestCounts.get(operation);
+		return null == count ? 0 : count.get();
+	}
+
+	/**
+	 * Stop the emulator, dropping all of its state
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private class Handler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				final String path = exchange.getRequestURI().getRawPath();
+				final String operation = operation(path);
+
+				requestCounts.putIfAbsent(operation, new AtomicInteger());
+				requestCounts.get(operation).incrementAndGet();
+
+				if(latencyNanos > 0) {
+					TimeUnit.NANOSECONDS.sleep(latencyNanos);
+				}
+				final Queue<Long> delays = scheduledDelays.get(operation);
+				final Long delay = null == delays ? null : delays.poll();
+				if(null != delay) {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				}
+
+				final Failure failure = nextFailure(operation, exchange.getRequestHeaders().getFirst("X-Bz-Test-Mode"));
+				if(null != failure) {
+					readBody(exchange);
+					throw failure.exception();
+				}
+
+				B2Emulator.this.handle(exchange, operation, path);
+			} catch (EmulatorException ex) {
+				sendError(exchange, ex);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} catch (IOException ex) {
+				// the client went away
+			} catch (RuntimeException ex) {
+				sendError(exchange, new EmulatorException(500, "internal_error", String.valueOf(ex)));
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private static String operation(String path) {
+		if(path.startsWith(API_PREFIX)) {
+			final int end = path.indexOf('/', API_PREFIX.length());
+			return -1 == end ? path.substring(API_PREFIX.length()) : path.substring(API_PREFIX.length(), end);
+		}
+		if(path.startsWith(FILE_PREFIX)) {
+			return OPERATION_DOWNLOAD_FILE_BY_NAME;
+		}
+		return path;
+	}
+
+	private Failure nextFailure(String operation, String testMode) {
+		// the test modes of the live service, which fail a proportion of requests
+		if(null != testMode && random.nextInt(3) == 0) {
+			if("fail_some_uploads".equals(testMode) && ("b2_upload_file".equals(operation) || "b2_upload_part".equals(operation))) {
+				return new Failure(503, "service_unavailable", "Failed upload, requested by the 'X-Bz-Test-Mode' header", -1);
+			}
+			if("expire_some_account_authorization_tokens".equals(testMode) && !"b2_authorize_account".equals(operation)) {
+				return new Failure(401, "expired_auth_token", "Expired token, requested by the 'X-Bz-Test-Mode' header", -1);
+			}
+		}
+		final Queue<Failure> queue = scheduledFailures.get(operation);
+		if(null != queue) {
+			final Failure failure = queue.poll();
+			if(null != failure) {
+				return failure;
+			}
+		}
+		if(errorRate > 0 && random.nextDouble() < errorRate) {
+			return randomFailure;
+		}
+		return null;
+	}
+
+	private void handle(HttpExchange exchange, String operation, String path) throws IOException, EmulatorException {
+		switch (operation) {
+		case "b2_authorize_account":
+			authorizeAccount(exchange);
+			return;
+		case "b2_upload_file":
+			uploadFile(exchange, path);
+			return;
+		case "b2_upload_part":
+			uploadPart(exchange, path);
+			return;
+		case "b2_download_file_by_id":
+			downloadFileById(exchange);
+			return;
+		case OPERATION_DOWNLOAD_FILE_BY_NAME:
+			downloadFileByName(exchange, path);
+			return;
+		}
+
+		final JSONObject request = readJson(exchange);
+		checkAuthorization(exchange.getRequestHeaders().getFirst("Authorization"));
+
+		final JSONObject response;
+		synchronized (this) {
+			switch (operation) {
+			case "b2_create_bucket":
+				response = createBucket(request);
+				break;
+			case "b2_delete_bucket":
+				response = deleteBucket(request);
+				break;
+			case "b2_list_buckets":
+				response = listBuckets();
+				break;
+			case "b2_update_bucket":
+				response = updateBucket(request);
+				break;
+			case "b2_get_upload_url":
+				response = getUploadUrl(request);
+				break;
+			case "b2_get_upload_part_url":
+				response = getUploadPartUrl(request);
+				break;
+			case "b2_start_large_file":
+				response = startLargeFile(request, exchange.getRequestHeaders());
+				break;
+			case "b2_finish_large_file":
+				response = finishLargeFile(request);
+				break;
+			case "b2_cancel_large_file":
+				response = cancelLargeFile(request);
+				break;
+			case "b2_list_parts":
+				response = listParts(request);
+				break;
+			case "b2_list_unfinished_large_files":
+				response = listUnfinishedLargeFiles(request);
+				break;
+			case "b2_list_file_names":
+				response = listFileNames(request);
+				break;
+			case "b2_list_file_versions":
+				response = listFileVersions(request);
+				break;
+			case "b2_get_file_info":
+				response = getFile(request.optString("fileId", null)).toJson(false);
+				break;
+			case "b2_hide_file":
+				response = hideFile(request);
+				break;
+			case "b2_delete_file_version":
+				response = deleteFileVersion(request);
+				break;
+			case "b2_get_download_authorization":
+				response = getDownloadAuthorization(request);
+				break;
+			default:
+				throw new EmulatorException(404, "not_found", "Unknown operation: " + operation);
+			}
+		}
+		sendJson(exchange, 200, response);
+	}
+
+	/*
+	 * Authorization
+	 */
+
+	private void authorizeAccount(HttpExchange exchange) throws IOException, EmulatorException {
+		readBody(exchange);
+		final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		final String expected = "Basic " + Base64.encodeBase64String((ACCOUNT_ID + ":" + APPLICATION_KEY).getBytes(UTF_8));
+		if(!expected.equals(authorization)) {
+			throw new EmulatorException(401, "unauthorized", "Invalid accountId or applicationKey");
+		}
+
+		final String token = "4_" + UUID.randomUUID().toString();
+		synchronized (this) {
+			authorizationTokens.add(token);
+		}
+
+		final JSONObject response = new JSONObject();
+		response.put("accountId", ACCOUNT_ID);
+		response.put("authorizationToken", token);
+		response.put("apiUrl", url);
+		response.put("downloadUrl", url);
+		response.put("absoluteMinimumPartSize", absoluteMinimumPartSize);
+		response.put("minimumPartSize", minimumPartSize);
+		response.put("recommendedPartSize", recommendedPartSize);
+		sendJson(exchange, 200, response);
+	}
+
+	private synchronized void checkAuthorization(String token) throws EmulatorException {
+		if(null == token) {
+			throw new EmulatorException(401, "bad_auth_token", "Missing authorization token");
+		}
+		if(expiredTokens.contains(token)) {
+			throw new EmulatorException(401, "expired_auth_token", "Authorization token has expired");
+		}
+		if(!authorizationTokens.contains(token)) {
+			throw new EmulatorException(401, "bad_auth_token", "Invalid authorization token");
+		}
+	}
+
+	private synchronized String checkUploadAuthorization(String token, String target) throws EmulatorException {
+		if(null == token || !uploadTokens.containsKey(token)) {
+			throw new EmulatorException(401, "bad_auth_token", "Invalid authorization token");
+		}
+		if(!uploadTokens.get(token).equals(target)) {
+			throw new EmulatorException(401, "bad_auth_token", "Authorization token is for a different upload URL");
+		}
+		return target;
+	}
+
+	/*
+	 * Buckets
+	 */
+
+	private JSONObject createBucket(JSONObject request) throws EmulatorException {
+		final String bucketName = required(request, "bucketName");
+		final String bucketType = required(request, "bucketType");
+		if(!bucketName.matches("[a-zA-Z0-9-]{6,50}") || bucketName.startsWith("b2-")) {
+			throw new EmulatorException(400, "bad_request", "Invalid bucketName: " + bucketName);
+		}
+		checkBucketType(bucketType);
+		for (Bucket bucket : buckets.values()) {
+			if(bucket.name.equals(bucketName)) {
+				throw new EmulatorException(400, "duplicate_bucket_name", "Bucket name is already in use.");
+			}
+		}
+		final Bucket bucket = new Bucket(newId(), bucketName, bucketType);
+		buckets.put(bucket.id, bucket);
+		return bucket.toJson();
+	}
+
+	private JSONObject deleteBucket(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		if(!bucket.names.isEmpty()) {
+			throw new EmulatorException(400, "cannot_delete_non_empty_bucket", "Cannot delete non-empty bucket");
+		}
+		buckets.remove(bucket.id);
+		return bucket.toJson();
+	}
+
+	private JSONObject listBuckets() {
+		final JSONArray array = new JSONArray();
+		for (Bucket bucket : buckets.values()) {
+			array.put(bucket.toJson());
+		}
+		return new JSONObject().put("buckets", array);
+	}
+
+	private JSONObject updateBucket(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		if(request.has("ifRevisionMatches") && request.getLong("ifRevisionMatches") != bucket.revision) {
+			throw new EmulatorException(409, "conflict", "Bucket revision does not match");
+		}
+		if(request.has("bucketType")) {
+			checkBucketType(request.getString("bucketType"));
+			bucket.type = request.getString("bucketType");
+		}
+		if(request.has("lifecycleRules")) {
+			bucket.lifecycleRules = request.getJSONArray("lifecycleRules");
+		}
+		if(request.has("bucketInfo")) {
+			bucket.info = request.getJSONObject("bucketInfo");
+		}
+		bucket.revision++;
+		return bucket.toJson();
+	}
+
+	private static void checkBucketType(String bucketType) throws EmulatorException {
+		if(!"allPublic".equals(bucketType) && !"allPrivate".equals(bucketType)) {
+			throw new EmulatorException(400, "bad_request", "Invalid bucketType: " + bucketType);
+		}
+	}
+
+	private Bucket getBucket(String bucketId) throws EmulatorException {
+		final Bucket bucket = buckets.get(bucketId);
+		if(null == bucket) {
+			throw new EmulatorException(400, "bad_request", "Invalid bucketId: " + bucketId);
+		}
+		return bucket;
+	}
+
+	private Bucket getBucketByName(String bucketName) throws EmulatorException {
+		for (Bucket bucket : buckets.values()) {
+			if(bucket.name.equals(bucketName)) {
+				return bucket;
+			}
+		}
+		throw new EmulatorException(404, "not_found", "Bucket does not exist: " + bucketName);
+	}
+
+	/*
+	 * Uploads
+	 */
+
+	private JSONObject getUploadUrl(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String token = "2_" + UUID.randomUUID().toString();
+		uploadTokens.put(token, bucket.id);
+		return new JSONObject()
+				.put("bucketId", bucket.id)
+				.put("uploadUrl", url + API_PREFIX + "b2_upload_file/" + bucket.id + "/" + sequence.incrementAndGet())
+				.put("authorizationToken", token);
+	}
+
+	private JSONObject getUploadPartUrl(JSONObject request) throws EmulatorException {
+		final FileVersion file = getLargeFile(required(request, "fileId"));
+		final String token = "2_" + UUID.randomUUID().toString();
+		uploadTokens.put(token, file.id);
+		return new JSONObject()
+				.put("fileId", file.id)
+				.put("uploadUrl", url + API_PREFIX + "b2_upload_part/" + file.id + "/" + sequence.incrementAndGet())
+				.put("authorizationToken", token);
+	}
+
+	private void uploadFile(HttpExchange exchange, String path) throws IOException, EmulatorException {
+		final byte[] content = readBody(exchange);
+		final Headers headers = exchange.getRequestHeaders();
+		final String bucketId = checkUploadAuthorization(headers.getFirst("Authorization"), pathSegment(path, 1));
+
+		final String fileName = decode(requiredHeader(headers, "X-Bz-File-Name"));
+		final String sha1 = requiredHeader(headers, "X-Bz-Content-Sha1");
+		if(!"do_not_verify".equals(sha1) && !sha1(content).equalsIgnoreCase(sha1)) {
+			throw new EmulatorException(400, "bad_request", "Checksum did not match data received");
+		}
+		String contentType = requiredHeader(headers, "Content-Type");
+		if("b2/x-auto".equals(contentType)) {
+			contentType = URLConnection.guessContentTypeFromName(fileName);
+			if(null == contentType) {
+				contentType = "application/octet-stream";
+			}
+		}
+
+		final JSONObject response;
+		synchronized (this) {
+			final Bucket bucket = getBucket(bucketId);
+			final FileVersion file = new FileVersion(newId(), bucket, fileName, "upload", contentType, fileInfo(headers), nextUploadTimestamp());
+			file.content = content;
+			file.sha1 = sha1(content);
+			bucket.add(file);
+			files.put(file.id, file);
+			response = file.toJson(false);
+		}
+		sendJson(exchange, 200, response);
+	}
+
+	private void uploadPart(HttpExchange exchange, String path) throws IOException, EmulatorException {
+		final byte[] content = readBody(exchange);
+		final Headers headers = exchange.getRequestHeaders();
+		final String fileId = checkUploadAuthorization(headers.getFirst("Authorization"), pathSegment(path, 1));
+
+		final int partNumber;
+		try {
+			partNumber = Integer.parseInt(requiredHeader(headers, "X-Bz-Part-Number"));
+		} catch (NumberFormatException ex) {
+			throw new EmulatorException(400, "bad_request", "Invalid part number");
+		}
+		if(partNumber < 1 || partNumber > 10000) {
+			throw new EmulatorException(400, "bad_request", "Part number must be between 1 and 10000");
+		}
+		final String sha1 = requiredHeader(headers, "X-Bz-Content-Sha1");
+		if(!sha1(content).equalsIgnoreCase(sha1)) {
+			throw new EmulatorException(400, "bad_request", "Checksum did not match data received");
+		}
+
+		final JSONObject response;
+		synchronized (this) {
+			final FileVersion file = getLargeFile(fileId);
+			final Part part = new Part(partNumber, content, sha1(content), nextUploadTimestamp());
+			file.parts.put(partNumber, part);
+			response = part.toJson(file.id);
+		}
+		sendJson(exchange, 200, response);
+	}
+
+	/*
+	 * Large files
+	 */
+
+	private JSONObject startLargeFile(JSONObject request, Headers headers) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String fileName = required(request, "fileName");
+		final String contentType = required(request, "contentType");
+		final Map<String, String> fileInfo = fileInfo(headers);
+		if(request.has("fileInfo")) {
+			final JSONObject info = request.getJSONObject("fileInfo");
+			for (String key : info.keySet()) {
+				fileInfo.put(key.toLowerCase(Locale.ENGLISH), info.getString(key));
+			}
+		}
+		final FileVersion file = new FileVersion(newId(), bucket, fileName, "start", contentType, fileInfo, nextUploadTimestamp());
+		bucket.add(file);
+		files.put(file.id, file);
+
+		final JSONObject response = file.toJson(false);
+		response.remove("action");
+		response.remove("contentLength");
+		response.remove("contentSha1");
+		return response;
+	}
+
+	private JSONObject finishLargeFile(JSONObject request) throws EmulatorException {
+		final FileVersion file = getLargeFile(required(request, "fileId"));
+		final JSONArray sha1s = request.optJSONArray("partSha1Array");
+		if(null == sha1s || sha1s.length() < 2) {
+			throw new EmulatorException(400, "bad_request", "large files must have at least 2 parts");
+		}
+
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (int i = 0; i < sha1s.length(); i++) {
+			final Part part = file.parts.get(i + 1);
+			if(null == part) {
+				throw new EmulatorException(400, "bad_request", "Part number " + (i + 1) + " has not been uploaded");
+			}
+			if(!part.sha1.equalsIgnoreCase(sha1s.getString(i))) {
+				throw new EmulatorException(400, "bad_request", "Part number " + (i + 1) + " has the wrong sha1");
+			}
+			if(i < sha1s.length() - 1 && part.content.length < absoluteMinimumPartSize) {
+				throw new EmulatorException(400, "bad_request", "Part number " + (i + 1) + " is smaller than " + absoluteMinimumPartSize + " bytes");
+			}
+			content.write(part.content, 0, part.content.length);
+		}
+		if(file.parts.size() != sha1s.length()) {
+			throw new EmulatorException(400, "bad_request", "More parts were uploaded than were listed");
+		}
+
+		file.content = content.toByteArray();
+		file.sha1 = "none";
+		file.action = "upload";
+		file.parts.clear();
+		return file.toJson(false);
+	}
+
+	private JSONObject cancelLargeFile(JSONObject request) throws EmulatorException {
+		final FileVersion file = getLargeFile(required(request, "fileId"));
+		file.bucket.remove(file);
+		files.remove(file.id);
+		return new JSONObject()
+				.put("fileId", file.id)
+				.put("accountId", ACCOUNT_ID)
+				.put("bucketId", file.bucket.id)
+				.put("fileName", file.name);
+	}
+
+	private JSONObject listParts(JSONObject request) throws EmulatorException {
+		final FileVersion file = getLargeFile(required(request, "fileId"));
+		final int startPartNumber = request.optInt("startPartNumber", 1);
+		final int maxPartCount = Math.min(request.optInt("maxPartCount", 100), 1000);
+
+		final JSONArray parts = new JSONArray();
+		Integer nextPartNumber = null;
+		for (Part part : file.parts.tailMap(startPartNumber).values()) {
+			if(parts.length() == maxPartCount) {
+				nextPartNumber = part.number;
+				break;
+			}
+			parts.put(part.toJson(file.id));
+		}
+		return new JSONObject()
+				.put("parts", parts)
+				.put("nextPartNumber", null == nextPartNumber ? JSONObject.NULL : nextPartNumber);
+	}
+
+	private JSONObject listUnfinishedLargeFiles(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String startFileId = request.optString("startFileId", null);
+		final int maxFileCount = Math.min(request.optInt("maxFileCount", 100), 100);
+
+		final List<FileVersion> unfinished = new ArrayList<FileVersion>();
+		for (List<FileVersion> versions : bucket.names.values()) {
+			for (FileVersion version : versions) {
+				if("start".equals(version.action)) {
+					unfinished.add(version);
+				}
+			}
+		}
+
+		final JSONArray array = new JSONArray();
+		String nextFileId = null;
+		boolean started = null == startFileId;
+		for (FileVersion version : unfinished) {
+			started = started || version.id.equals(startFileId);
+			if(!started) {
+				continue;
+			}
+			if(array.length() == maxFileCount) {
+				nextFileId = version.id;
+				break;
+			}
+			array.put(version.toJson(true));
+		}
+		return new JSONObject()
+				.put("files", array)
+				.put("nextFileId", null == nextFileId ? JSONObject.NULL : nextFileId);
+	}
+
+	private FileVersion getLargeFile(String fileId) throws EmulatorException {
+		final FileVersion file = files.get(fileId);
+		if(null == file || !"start".equals(file.action)) {
+			throw new EmulatorException(400, "bad_request", "Invalid fileId: " + fileId);
+		}
+		return file;
+	}
+
+	/*
+	 * Listing
+	 */
+
+	private JSONObject listFileNames(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String startFileName = request.optString("startFileName", "");
+		final String prefix = request.optString("prefix", "");
+		final String delimiter = request.optString("delimiter", null);
+		final int maxFileCount = maxFileCount(request);
+
+		final JSONArray array = new JSONArray();
+		String nextFileName = null;
+		String folder = null;
+		for (Map.Entry<String, List<FileVersion>> entry : bucket.names.tailMap(startFileName.compareTo(prefix) > 0 ? startFileName : prefix).entrySet()) {
+			final String name = entry.getKey();
+			if(!name.startsWith(prefix)) {
+				break;
+			}
+			final FileVersion latest = latest(entry.getValue());
+			if(null == latest || !"upload".equals(latest.action)) {
+				continue;
+			}
+			final String entryFolder = folder(name, prefix, delimiter);
+			if(null != entryFolder && entryFolder.equals(folder)) {
+				continue;
+			}
+			if(array.length() == maxFileCount) {
+				nextFileName = null == entryFolder ? name : entryFolder;
+				break;
+			}
+			if(null != entryFolder) {
+				folder = entryFolder;
+				array.put(folderJson(entryFolder));
+			} else {
+				array.put(latest.toJson(true));
+			}
+		}
+		return new JSONObject()
+				.put("files", array)
+				.put("nextFileName", null == nextFileName ? JSONObject.NULL : nextFileName);
+	}
+
+	private JSONObject listFileVersions(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String startFileName = request.optString("startFileName", "");
+		final String startFileId = request.optString("startFileId", null);
+		final String prefix = request.optString("prefix", "");
+		final String delimiter = request.optString("delimiter", null);
+		final int maxFileCount = maxFileCount(request);
+		if(null != startFileId && !request.has("startFileName")) {
+			throw new EmulatorException(400, "bad_request", "startFileId provided without startFileName");
+		}
+
+		final JSONArray array = new JSONArray();
+		String nextFileName = null;
+		String nextFileId = null;
+		String folder = null;
+		outer:
+		for (Map.Entry<String, List<FileVersion>> entry : bucket.names.tailMap(startFileName.compareTo(prefix) > 0 ? startFileName : prefix).entrySet()) {
+			final String name = entry.getKey();
+			if(!name.startsWith(prefix)) {
+				break;
+			}
+			final String entryFolder = folder(name, prefix, delimiter);
+			if(null != entryFolder) {
+				if(entryFolder.equals(folder)) {
+					continue;
+				}
+				if(array.length() == maxFileCount) {
+					nextFileName = entryFolder;
+					break;
+				}
+				folder = entryFolder;
+				array.put(folderJson(entryFolder));
+				continue;
+			}
+
+			boolean started = null == startFileId || !name.equals(startFileName);
+			for (FileVersion version : entry.getValue()) {
+				started = started || version.id.equals(startFileId);
+				if(!started) {
+					continue;
+				}
+				if(array.length() == maxFileCount) {
+					nextFileName = name;
+					nextFileId = version.id;
+					break outer;
+				}
+				array.put(version.toJson(true));
+			}
+		}
+		return new JSONObject()
+				.put("files", array)
+				.put("nextFileName", null == nextFileName ? JSONObject.NULL : nextFileName)
+				.put("nextFileId", null == nextFileId ? JSONObject.NULL : nextFileId);
+	}
+
+	private static int maxFileCount(JSONObject request) throws EmulatorException {
+		final int maxFileCount = request.optInt("maxFileCount", 100);
+		if(maxFileCount < 1 || maxFileCount > 10000) {
+			throw new EmulatorException(400, "bad_request", "maxFileCount out of range: " + maxFileCount);
+		}
+		return maxFileCount;
+	}
+
+	private static FileVersion latest(List<FileVersion> versions) {
+		for (FileVersion version : versions) {
+			if(!"start".equals(version.action)) {
+				return version;
+			}
+		}
+		return null;
+	}
+
+	private static String folder(String name, String prefix, String delimiter) {
+		if(null == delimiter || delimiter.isEmpty()) {
+			return null;
+		}
+		final int index = name.indexOf(delimiter, prefix.length());
+		return -1 == index ? null : name.substring(0, index + delimiter.length());
+	}
+
+	private static JSONObject folderJson(String folder) {
+		return new JSONObject()
+				.put("action", "folder")
+				.put("fileId", JSONObject.NULL)
+				.put("fileName", folder)
+				.put("contentLength", 0)
+				.put("size", 0)
+				.put("uploadTimestamp", 0)
+				.put("fileInfo", new JSONObject());
+	}
+
+	/*
+	 * Files
+	 */
+
+	private FileVersion getFile(String fileId) throws EmulatorException {
+		final FileVersion file = files.get(fileId);
+		if(null == file) {
+			throw new EmulatorException(400, "bad_request", "Invalid fileId: " + fileId);
+		}
+		return file;
+	}
+
+	private JSONObject hideFile(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String fileName = required(request, "fileName");
+		final List<FileVersion> versions = bucket.names.get(fileName);
+		final FileVersion latest = null == versions ? null : latest(versions);
+		if(null == latest) {
+			throw new EmulatorException(404, "not_found", "File not present: " + fileName);
+		}
+		if("hide".equals(latest.action)) {
+			throw new EmulatorException(400, "already_hidden", "File already hidden: " + fileName);
+		}
+		final FileVersion hidden = new FileVersion(newId(), bucket, fileName, "hide", "application/x-bz-hide-marker", new HashMap<String, String>(), nextUploadTimestamp());
+		hidden.content = new byte[0];
+		hidden.sha1 = sha1(hidden.content);
+		bucket.add(hidden);
+		files.put(hidden.id, hidden);
+		return hidden.toJson(true);
+	}
+
+	private JSONObject deleteFileVersion(JSONObject request) throws EmulatorException {
+		final String fileName = required(request, "fileName");
+		final FileVersion file = files.get(required(request, "fileId"));
+		if(null == file || !file.name.equals(fileName)) {
+			throw new EmulatorException(400, "file_not_present", "File not present: " + fileName);
+		}
+		file.bucket.remove(file);
+		files.remove(file.id);
+		return new JSONObject()
+				.put("fileId", file.id)
+				.put("fileName", file.name);
+	}
+
+	private JSONObject getDownloadAuthorization(JSONObject request) throws EmulatorException {
+		final Bucket bucket = getBucket(required(request, "bucketId"));
+		final String fileNamePrefix = request.optString("fileNamePrefix", "");
+		final long validDurationInSeconds = request.optLong("validDurationInSeconds", 0L);
+		if(validDurationInSeconds < 1 || validDurationInSeconds > 604800) {
+			throw new EmulatorException(400, "bad_request", "validDurationInSeconds out of range: " + validDurationInSeconds);
+		}
+		final String token = "3_" + UUID.randomUUID().toString();
+		downloadAuthorizations.put(token, new DownloadAuthorization(bucket.id, fileNamePrefix,
+				System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(validDurationInSeconds)));
+		return new JSONObject()
+				.put("bucketId", bucket.id)
+				.put("fileNamePrefix", fileNamePrefix)
+				.put("authorizationToken", token);
+	}
+
+	/*
+	 * Downloads
+	 */
+
+	private void downloadFileById(HttpExchange exchange) throws IOException, EmulatorException {
+		final String fileId = queryParameter(exchange, "fileId");
+		final FileVersion file;
+		synchronized (this) {
+			file = files.get(fileId);
+			if(null == file || !"upload".equals(file.action)) {
+				throw new EmulatorException(404, "not_found", "File not present: " + fileId);
+			}
+			checkDownloadAuthorization(exchange, file);
+		}
+		sendFile(exchange, file);
+	}
+
+	private void downloadFileByName(HttpExchange exchange, String path) throws IOException, EmulatorException {
+		final String remainder = path.substring(FILE_PREFIX.length());
+		final int index = remainder.indexOf('/');
+		if(-1 == index) {
+			throw new EmulatorException(404, "not_found", "Invalid path: " + path);
+		}
+		final String bucketName = decode(remainder.substring(0, index));
+		final String fileName = decode(remainder.substring(index + 1));
+		final FileVersion file;
+		synchronized (this) {
+			final Bucket bucket = getBucketByName(bucketName);
+			final List<FileVersion> versions = bucket.names.get(fileName);
+			file = null == versions ? null : latest(versions);
+			if(null == file || !"upload".equals(file.action)) {
+				throw new EmulatorException(404, "not_found", "File not present: " + fileName);
+			}
+			checkDownloadAuthorization(exchange, file);
+		}
+		sendFile(exchange, file);
+	}
+
+	private void checkDownloadAuthorization(HttpExchange exchange, FileVersion file) throws EmulatorException {
+		if("allPublic".equals(file.bucket.type)) {
+			return;
+		}
+		String token = exchange.getRequestHeaders().getFirst("Authorization");
+		if(null == token) {
+			token = queryParameter(exchange, "Authorization");
+		}
+		final DownloadAuthorization authorization = null == token ? null : downloadAuthorizations.get(token);
+		if(null != authorization) {
+			if(authorization.expires < System.currentTimeMillis()) {
+				throw new EmulatorException(401, "expired_auth_token", "Authorization token has expired");
+			}
+			if(!authorization.bucketId.equals(file.bucket.id) || !file.name.startsWith(authorization.fileNamePrefix)) {
+				throw new EmulatorException(401, "unauthorized", "Authorization token is not valid for this file");
+			}
+			return;
+		}
+		checkAuthorization(token);
+	}
+
+	private void sendFile(HttpExchange exchange, FileVersion file) throws IOException, EmulatorException {
+		final Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", file.contentType);
+		headers.set("X-Bz-File-Id", file.id);
+		headers.set("X-Bz-File-Name", synapticloop.b2.util.URLEncoder.encode(file.name));
+		headers.set("X-Bz-Content-Sha1", file.sha1);
+		headers.set("X-Bz-Upload-Timestamp", String.valueOf(file.uploadTimestamp));
+		headers.set("Accept-Ranges", "bytes");
+		for (Map.Entry<String, String> entry : file.info.entrySet()) {
+			headers.set("X-Bz-Info-" + entry.getKey(), synapticloop.b2.util.URLEncoder.encode(entry.getValue()));
+		}
+
+		final long length = file.content.length;
+		long start = 0L;
+		long end = length - 1;
+		int status = 200;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		if(null != range && range.startsWith("bytes=") && range.indexOf(',') == -1) {
+			final String spec = range.substring("bytes=".length()).trim();
+			final int dash = spec.indexOf('-');
+			try {
+				if(0 == dash) {
+					start = Math.max(0L, length - Long.parseLong(spec.substring(1)));
+				} else if(dash > 0) {
+					start = Long.parseLong(spec.substring(0, dash));
+					if(dash < spec.length() - 1) {
+						end = Math.min(end, Long.parseLong(spec.substring(dash + 1)));
+					}
+				}
+				if(start >= length || start > end) {
+					headers.set("Content-Range", "bytes */" + length);
+					throw new EmulatorException(416, "range_not_satisfiable", "The range is not satisfiable: " + range);
+				}
+				headers.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+				status = 206;
+			} catch (NumberFormatException ex) {
+				// invalid ranges return the whole file
+				start = 0L;
+				end = length - 1;
+			}
+		}
+
+		final long contentLength = end - start + 1;
+		if(sendResponseHeaders(exchange, status, contentLength)) {
+			final Queue<Long> drops = scheduledDrops.get(operation(exchange.getRequestURI().getRawPath()));
+			final Long drop = null == drops ? null : drops.poll();
+			if(null != drop && drop < contentLength) {
+				write(exchange.getResponseBody(), file.content, (int)start, drop.intValue());
+				// closing the exchange with bytes outstanding closes the connection
+				throw new IOException("Injected connection drop after " + drop + " bytes");
+			}
+			write(exchange.getResponseBody(), file.content, (int)start, (int)contentLength);
+		}
+	}
+
+	/*
+	 * HTTP and JSON helpers
+	 */
+
+	private byte[] readBody(HttpExchange exchange) throws IOException {
+		final InputStream in = exchange.getRequestBody();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		final long start = System.nanoTime();
+		long total = 0L;
+		int length;
+		while((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+			total += length;
+			throttle(start, total);
+		}
+		return out.toByteArray();
+	}
+
+	private JSONObject readJson(HttpExchange exchange) throws IOException, EmulatorException {
+		final String body = new String(readBody(exchange), UTF_8).trim();
+		if(body.isEmpty()) {
+			return new JSONObject();
+		}
+		try {
+			return new JSONObject(body);
+		} catch (RuntimeException ex) {
+			throw new EmulatorException(400, "bad_json", "Could not parse request: " + ex.getMessage());
+		}
+	}
+
+	private void sendJson(HttpExchange exchange, int status, JSONObject json) throws IOException {
+		final byte[] bytes = json.toString().getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+		if(sendResponseHeaders(exchange, status, bytes.length)) {
+			write(exchange.getResponseBody(), bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Send the response headers, HEAD requests have the content length of the
+	 * body that would have been sent, but no body.  The JDK server does not 
+	 * keep the connection alive after a HEAD request, so it is marked as closed.
+	 *
+	 * @return whether the body should be written
+	 */
+	private static boolean sendResponseHeaders(HttpExchange exchange, int status, long contentLength) throws IOException {
+		if("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(contentLength));
+			exchange.getResponseHeaders().set("Connection", "close");
+			exchange.sendResponseHeaders(status, -1);
+			return false;
+		}
+		exchange.sendResponseHeaders(status, 0 == contentLength ? -1 : contentLength);
+		return contentLength > 0;
+	}
+
+	private void sendError(HttpExchange exchange, EmulatorException ex) {
+		try {
+			if(ex.retryAfter > 0) {
+				exchange.getResponseHeaders().set("Retry-After", String.valueOf(ex.retryAfter));
+			}
+			sendJson(exchange, ex.status, new JSONObject()
+					.put("status", ex.status)
+					.put("code", ex.code)
+					.put("message", ex.getMessage()));
+		} catch (IOException ignored) {
+			// the client went away
+		}
+	}
+
+	private void write(OutputStream out, byte[] bytes, int offset, int length) throws IOException {
+		final long start = System.nanoTime();
+		int written = 0;
+		while(written < length) {
+			final int chunk = Math.min(8192, length - written);
+			out.write(bytes, offset + written, chunk);
+			written += chunk;
+			throttle(start, written);
+		}
+		out.flush();
+	}
+
+	private void throttle(long start, long bytes) throws IOException {
+		final long rate = bytesPerSecond;
+		if(rate <= 0) {
+			return;
+		}
+		final long expected = TimeUnit.SECONDS.toNanos(bytes) / rate;
+		final long wait = expected - (System.nanoTime() - start);
+		if(wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while throttling", ex);
+			}
+		}
+	}
+
+	private static String required(JSONObject request, String key) throws EmulatorException {
+		final String value = request.optString(key, null);
+		if(null == value) {
+			throw new EmulatorException(400, "bad_request", "Required field " + key + " is missing");
+		}
+		return value;
+	}
+
+	private static String requiredHeader(Headers headers, String name) throws EmulatorException {
+		final String value = headers.getFirst(name);
+		if(null == value) {
+			throw new EmulatorException(400, "bad_request", "Missing header: " + name);
+		}
+		return value;
+	}
+
+	private static Map<String, String> fileInfo(Headers headers) {
+		final Map<String, String> info = new TreeMap<String, String>();
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			final String name = entry.getKey().toLowerCase(Locale.ENGLISH);
+			if(name.startsWith(X_BZ_INFO)) {
+				info.put(decode(name.substring(X_BZ_INFO.length())), decode(entry.getValue().get(0)));
+			}
+		}
+		return info;
+	}
+
+	private static String queryParameter(HttpExchange exchange, String name) {
+		final String query = exchange.getRequestURI().getRawQuery();
+		if(null == query) {
+			return null;
+		}
+		for (String pair : query.split("&")) {
+			final int index = pair.indexOf('=');
+			if(index > 0 && decode(pair.substring(0, index)).equals(name)) {
+				return decode(pair.substring(index + 1));
+			}
+		}
+		return null;
+	}
+
+	private static String pathSegment(String path, int index) {
+		final String[] segments = path.substring(API_PREFIX.length()).split("/");
+		return index < segments.length ? segments[index] : "";
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			return value;
+		}
+	}
+
+	private static String sha1(byte[] content) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+			final StringBuilder builder = new StringBuilder();
+			for (byte b : digest) {
+				builder.append(String.format("%02x", b & 0xff));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private String newId() {
+		return String.format("4_z%024x_f%016x", random.nextLong() & Long.MAX_VALUE, sequence.incrementAndGet());
+	}
+
+	private synchronized long nextUploadTimestamp() {
+		lastUploadTimestamp = Math.max(lastUploadTimestamp + 1, System.currentTimeMillis());
+		return lastUploadTimestamp;
+	}
+
+	/*
+	 * State
+	 */
+
+	private static class Bucket {
+		private final String id;
+		private final String name;
+		private String type;
+		private long revision = 1L;
+		private JSONObject info = new JSONObject();
+		private JSONArray lifecycleRules = new JSONArray();
+		// file name to the versions of the file, newest first
+		private final TreeMap<String, List<FileVersion>> names = new TreeMap<String, List<FileVersion>>();
+
+		private Bucket(String id, String name, String type) {
+			this.id = id;
+			this.name = name;
+			this.type = type;
+		}
+
+		private void add(FileVersion file) {
+			List<FileVersion> versions = names.get(file.name);
+			if(null == versions) {
+				versions = new ArrayList<FileVersion>();
+				names.put(file.name, versions);
+			}
+			versions.add(0, file);
+		}
+
+		private void remove(FileVersion file) {
+			final List<FileVersion> versions = names.get(file.name);
+			if(null != versions) {
+				for (Iterator<FileVersion> iterator = versions.iterator(); iterator.hasNext();) {
+					if(iterator.next().id.equals(file.id)) {
+						iterator.remove();
+					}
+				}
+				if(versions.isEmpty()) {
+					names.remove(file.name);
+				}
+			}
+		}
+
+		private JSONObject toJson() {
+			return new JSONObject()
+					.put("accountId", ACCOUNT_ID)
+					.put("bucketId", id)
+					.put("bucketName", name)
+					.put("bucketType", type)
+					.put("bucketInfo", info)
+					.put("lifecycleRules", lifecycleRules)
+					.put("revision", revision);
+		}
+	}
+
+	private static class FileVersion {
+		private final String id;
+		private final Bucket bucket;
+		private final String name;
+		private final String contentType;
+		private final Map<String, String> info;
+		private final long uploadTimestamp;
+		private final TreeMap<Integer, Part> parts = new TreeMap<Integer, Part>();
+		private String action;
+		private byte[] content = new byte[0];
+		private String sha1 = "none";
+
+		private FileVersion(String id, Bucket bucket, String name, String action, String contentType, Map<String, String> info, long uploadTimestamp) {
+			this.id = id;
+			this.bucket = bucket;
+			this.name = name;
+			this.action = action;
+			this.contentType = contentType;
+			this.info = info;
+			this.uploadTimestamp = uploadTimestamp;
+		}
+
+		private JSONObject toJson(boolean listing) {
+			final JSONObject json = new JSONObject()
+					.put("accountId", ACCOUNT_ID)
+					.put("action", action)
+					.put("bucketId", bucket.id)
+					.put("contentLength", content.length)
+					.put("contentSha1", sha1)
+					.put("contentType", contentType)
+					.put("fileId", id)
+					.put("fileInfo", new JSONObject(info))
+					.put("fileName", name)
+					.put("uploadTimestamp", uploadTimestamp);
+			if(listing) {
+				json.put("size", content.length);
+			}
+			return json;
+		}
+	}
+
+	private static class Part {
+		private final int number;
+		private final byte[] content;
+		private final String sha1;
+		private final long uploadTimestamp;
+
+		private Part(int number, byte[] content, String sha1, long uploadTimestamp) {
+			this.number = number;
+			this.content = content;
+			this.sha1 = sha1;
+			this.uploadTimestamp = uploadTimestamp;
+		}
+
+		private JSONObject toJson(String fileId) {
+			return new JSONObject()
+					.put("fileId", fileId)
+					.put("partNumber", number)
+					.put("contentLength", content.length)
+					.put("contentSha1", sha1)
+					.put("uploadTimestamp", uploadTimestamp);
+		}
+	}
+
+	private static class DownloadAuthorization {
+		private final String bucketId;
+		private final String fileNamePrefix;
+		private final long expires;
+
+		private DownloadAuthorization(String bucketId, String fileNamePrefix, long expires) {
+			this.bucketId = bucketId;
+			this.fileNamePrefix = fileNamePrefix;
+			this.expires = expires;
+		}
+	}
+
+	private static class Failure {
+		private final int status;
+		private final String code;
+		private final String message;
+		private final int retryAfter;
+
+		private Failure(int status, String code, String message, int retryAfter) {
+			this.status = status;
+			this.code = code;
+			this.message = message;
+			this.retryAfter = retryAfter;
+		}
+
+		private EmulatorException exception() {
+			return new EmulatorException(status, code, message, retryAfter);
+		}
+	}
+
+	private static class EmulatorException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+		private final String code;
+		private final int retryAfter;
+
+		private EmulatorException(int status, String code, String message) {
+			this(status, code, message, -1);
+		}
+
+		private EmulatorException(int status, String code, String message, int retryAfter) {
+			super(message);
+			this.status = status;
+			this.code = code;
+			this.retryAfter = retryAfter;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package synapticloop.b2.emulator;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.metrics.B2ClientStatistics;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2FinishLargeFileResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+import synapticloop.b2.response.B2StartLargeFileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2EmulatorTest {
+	private static final String CONTENT = "hello world!";
+	private static final String CONTENT_SHA1 = "430ce34d020724ed75a196dfc2ad67c77772d169";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("emulator-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testUploadListAndDownload() throws Exception {
+		B2FileResponse file = client.uploadFile(bucket.getBucketId(), "folder/hello.txt", new StringEntity(CONTENT), CONTENT_SHA1, null, Collections.singletonMap("author", "synapticloop"));
+		assertEquals(CONTENT_SHA1, file.getContentSha1());
+		assertEquals("text/plain", file.getContentType());
+
+		B2ListFilesResponse listing = client.listFileNames(bucket.getBucketId(), null, 100, "", "/");
+		assertEquals(1, listing.getFiles().size());
+		assertEquals("folder/", listing.getFiles().get(0).getFileName());
+
+		B2DownloadFileResponse download = client.downloadFileByName(bucket.getBucketName(), "folder/hello.txt");
+		assertEquals(CONTENT, IOUtils.toString(download.getContent(), "UTF-8"));
+		assertEquals("synapticloop", download.getFileInfo().get("author"));
+
+		B2DownloadFileResponse range = client.downloadFileRangeById(file.getFileId(), 6, 10);
+		assertEquals(Long.valueOf(5), range.getContentLength());
+		assertEquals("world", IOUtils.toString(range.getContent(), "UTF-8"));
+
+		B2DownloadFileResponse head = client.headFileById(file.getFileId());
+		assertEquals(Long.valueOf(CONTENT.length()), head.getContentLength());
+
+		client.hideFile(bucket.getBucketId(), "folder/hello.txt");
+		assertEquals(2, client.listFileVersions(bucket.getBucketId()).getFiles().size());
+		try {
+			client.downloadFileByName(bucket.getBucketName(), "folder/hello.txt");
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(404, ex.getStatus());
+		}
+	}
+
+	@Test
+	public void testLargeFile() throws Exception {
+		emulator.setPartSizes(5, 10, 10);
+		B2StartLargeFileResponse start = client.startLargeFileUpload(bucket.getBucketId(), "large.bin", null, Collections.<String, String>emptyMap());
+
+		byte[] part1 = "0123456789".getBytes("UTF-8");
+		byte[] part2 = "abc".getBytes("UTF-8");
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(part1)).toLowerCase();
+		String sha2 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(part2)).toLowerCase();
+		client.uploadLargeFilePart(start.getFileId(), 1, new ByteArrayEntity(part1), sha1);
+		client.uploadLargeFilePart(start.getFileId(), 2, new ByteArrayEntity(part2), sha2);
+		assertEquals(1, client.listUnfinishedLargeFiles(bucket.getBucketId(), null, null).getFiles().size());
+		assertEquals(2, client.listParts(start.getFileId(), 1, 100).getFiles().size());
+
+		B2FinishLargeFileResponse finish = client.finishLargeFileUpload(start.getFileId(), new String[] { sha1, sha2 });
+		assertEquals(Long.valueOf(13), finish.getContentLength());
+		assertTrue(client.listUnfinishedLargeFiles(bucket.getBucketId(), null, null).getFiles().isEmpty());
+		assertEquals("0123456789abc", IOUtils.toString(client.downloadFileByIdToStream(start.getFileId()), "UTF-8"));
+	}
+
+	@Test
+	public void testInjectedFailures() throws Exception {
+		emulator.failNext("b2_list_buckets", 1, 503, "service_unavailable");
+		try {
+			client.listBuckets();
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(503, ex.getStatus());
+			assertEquals("service_unavailable", ex.getCode());
+			assertEquals(Integer.valueOf(1), ex.getRetry());
+		}
+		assertEquals(1, client.listBuckets().size());
+		assertEquals(2, emulator.getRequestCount("b2_list_buckets"));
+
+		// the client authorizes again when the token has expired
+		B2ClientStatistics statistics = client.getStatistics();
+		emulator.expireAuthorizations();
+		assertEquals(1, client.listBuckets().size());
+		assertEquals(4, emulator.getRequestCount("b2_list_buckets"));
+		assertEquals(2, emulator.getRequestCount("b2_authorize_account"));
+		assertEquals(Long.valueOf(1), statistics.getRetries().get("b2_list_buckets"));
+		assertEquals(Long.valueOf(1), statistics.getReauthorizations().get("b2_list_buckets"));
+	}
+
+	@Test
+	public void testLatencyAndBandwidth() throws Exception {
+		emulator.setLatency(50, TimeUnit.MILLISECONDS);
+		long start = System.nanoTime();
+		client.listBuckets();
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+		emulator.setLatency(0, TimeUnit.MILLISECONDS);
+		emulator.setBandwidth(64 * 1024);
+		byte[] content = new byte[32 * 1024];
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+		start = System.nanoTime();
+		client.uploadFile(bucket.getBucketId(), "throttled.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+	}
+}
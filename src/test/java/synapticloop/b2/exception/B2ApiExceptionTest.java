@@ -30,4 +30,19 @@ public class B2ApiExceptionTest {
 		assertEquals("bad_json", b2Exception.getCode());
 		assertEquals("unknown field in com.backblaze.modules.b2.data.FileNameAndId: accountId", b2Exception.getMessage());
 	}
+
+	@Test
+	public void testStacklessException() {
+		B2ApiException b2Exception = new B2ApiException("{\"code\": \"not_found\", \"message\": \"File not present\", \"status\": 404}", null, false);
+		assertEquals(0, b2Exception.getStackTrace().length);
+		assertEquals(404, b2Exception.getStatus());
+		assertEquals("not_found", b2Exception.getCode());
+	}
+
+	@Test
+	public void testHttpStatus() {
+		B2ApiException b2Exception = new B2ApiException(null, null).withHttpStatus(404);
+		assertEquals(404, b2Exception.getStatus());
+		assertEquals(null, b2Exception.getCode());
+	}
 }
@@ -2,12 +2,14 @@ package synapticloop.b2.helper;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
 import org.apache.http.impl.client.HttpClients;
 
 import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
 import synapticloop.b2.exception.B2ApiException;
 import synapticloop.b2.request.B2AuthorizeAccountRequest;
 import synapticloop.b2.request.B2CreateBucketRequest;
@@ -31,6 +33,8 @@ public class B2TestHelper {
 
 	private static B2AuthorizeAccountResponse response = null;
 
+	private static B2Emulator emulator = null;
+
 	public static B2AuthorizeAccountResponse getB2AuthorizeAccountResponse() throws Exception {
 
 		if(null == response) {
@@ -39,17 +43,19 @@ public class B2TestHelper {
 			String b2ApplicationKey = System.getenv(B2_APPLICATION_KEY);
 
 			if(null == b2AccountId) {
-				System.err.println("Could not find the environment variable '" + B2_ACCOUNT_ID + "', cannot continue with tests, exiting...");
+				System.err.println("Could not find the environment variable '" + B2_ACCOUNT_ID + "', cannot continue with tests against the live service.");
 				isOK = false;
 			}
 
 			if(null == b2ApplicationKey) {
-				System.err.println("Could not find the environment variable '" + B2_APPLICATION_KEY + "', cannot continue with tests, exiting...");
+				System.err.println("Could not find the environment variable '" + B2_APPLICATION_KEY + "', cannot continue with tests against the live service.");
 				isOK = false;
 			}
 
 			if(!isOK) {
-				System.exit(-1);
+				System.err.println("Running the tests against a local B2 emulator instead.");
+				response = new B2AuthorizeAccountRequest(HttpClients.createDefault(), getEmulator().getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY).getResponse();
+				return response;
 			}
 
 			B2AuthorizeAccountRequest b2AuthorizeAccountRequest = new B2AuthorizeAccountRequest(HttpClients.createDefault(), b2AccountId, b2ApplicationKey);
@@ -58,6 +64,21 @@ public class B2TestHelper {
 		return response;
 	}
 
+	/**
+	 * Return the emulator that is shared by all tests, which is started when it
+	 * is first used
+	 * 
+	 * @return the shared emulator
+	 * 
+	 * @throws IOException if the emulator could not be started
+	 */
+	public static synchronized B2Emulator getEmulator() throws IOException {
+		if(null == emulator) {
+			emulator = new B2Emulator();
+		}
+		return emulator;
+	}
+
 	/**
 	 * Create a random private bucket with the name `B2_BUCKET_PREFIX` and a 
 	 * random UUID
@@ -0,0 +1,252 @@
+package synapticloop.b2.inventory;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.Action;
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.list.B2DiffListener;
+import synapticloop.b2.list.B2FileVisitor;
+import synapticloop.b2.list.B2InventoryDiff;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2StartLargeFileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2InventoryIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+	private File directory;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("inventory-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		directory = new File(folder.getRoot(), bucket.getBucketId());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testReconcile() throws Exception {
+		B2FileResponse first = upload("a/one.txt", "one");
+		upload("a/two.txt", "two");
+		upload("b/three.txt", "three");
+		client.hideFile(bucket.getBucketId(), "a/two.txt");
+
+		try (B2InventoryIndex index = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			assertFalse(index.exists("a/one.txt"));
+			B2InventoryDiff.Summary summary = index.reconcile(client, null);
+			assertEquals(2, summary.getAdded());
+
+			B2InventoryEntry entry = index.get("a/one.txt");
+			assertEquals(first.getFileId(), entry.getFileId());
+			assertEquals(sha1("one"), entry.getSha1());
+			assertEquals(3L, entry.getContentLength());
+			assertFalse(index.exists("a/two.txt"));
+			assertFalse(index.exists("a/missing.txt"));
+
+			List<B2InventoryEntry> versions = index.getVersions("a/two.txt");
+			assertEquals(2, versions.size());
+			assertEquals(Action.hide, versions.get(0).getAction());
+			assertEquals(Action.upload, versions.get(1).getAction());
+
+			assertEquals(Arrays.asList("a/one.txt", "b/three.txt"), names(index, null));
+			assertEquals(Arrays.asList("a/one.txt"), names(index, "a/"));
+			assertEquals(0, index.getPendingUpdates());
+		}
+	}
+
+	@Test
+	public void testUpdatesAreJournaled() throws Exception {
+		B2InventoryIndex index = new B2InventoryIndex(directory, bucket.getBucketId());
+		client.addInventoryIndex(index);
+		upload("one.txt", "one");
+		B2FileResponse replaced = upload("two.txt", "two");
+		B2FileResponse replacement = upload("two.txt", "two again");
+		upload("three.txt", "three");
+		client.hideFile(bucket.getBucketId(), "three.txt");
+		client.deleteFileVersion("two.txt", replacement.getFileId());
+		largeFile("large.bin", "0123456789abcdef");
+
+		B2BucketResponse other = client.createBucket("other-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		client.uploadFile(other.getBucketId(), "elsewhere.txt", new StringEntity("elsewhere"), sha1("elsewhere"), null, Collections.<String, String>emptyMap());
+
+		assertEquals(replaced.getFileId(), index.get("two.txt").getFileId());
+		assertFalse(index.exists("three.txt"));
+		assertFalse(index.exists("elsewhere.txt"));
+		assertEquals(16L, index.get("large.bin").getContentLength());
+		assertEquals(7, index.getPendingUpdates());
+		client.removeInventoryIndex(index);
+		index.close();
+
+		// the journal is replayed when the index is opened
+		try (B2InventoryIndex reopened = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			assertEquals(Arrays.asList("large.bin", "one.txt", "two.txt"), names(reopened, null));
+			assertEquals(replaced.getFileId(), reopened.get("two.txt").getFileId());
+			assertEquals(1, reopened.getVersions("two.txt").size());
+			assertEquals(2, reopened.getVersions("three.txt").size());
+
+			// nothing has changed that the index did not record
+			B2InventoryDiff.Summary summary = reopened.reconcile(client, null);
+			assertEquals(0, summary.getAdded() + summary.getRemoved() + summary.getChanged());
+			assertEquals(3, summary.getUnchanged());
+		}
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		List<String> expected = new ArrayList<>();
+		// regions of 256 bytes, which the entries must not cross
+		try (B2InventoryIndex index = new B2InventoryIndex(directory, bucket.getBucketId(), 256)) {
+			index.setCompactionThreshold(20);
+			client.addInventoryIndex(index);
+			for (int i = 0; i < 50; i++) {
+				String name = String.format("file-%03d.txt", 49 - i);
+				upload(name, "content " + i);
+				expected.add(0, name);
+			}
+			assertTrue(index.getPendingUpdates() < 20);
+			assertEquals(expected, names(index, null));
+			assertEquals(expected.subList(10, 20), names(index, "file-01"));
+			index.compact();
+			assertEquals(0, index.getPendingUpdates());
+			assertEquals(sha1("content 0"), index.get("file-049.txt").getSha1());
+			client.removeInventoryIndex(index);
+		}
+		String[] segments = directory.list();
+		Arrays.sort(segments);
+		assertEquals(Arrays.asList("journal.log", "segment-3.idx"), Arrays.asList(segments));
+
+		try (B2InventoryIndex reopened = new B2InventoryIndex(directory, bucket.getBucketId(), 256)) {
+			assertEquals(expected, names(reopened, null));
+			for (String name : expected) {
+				assertTrue(reopened.exists(name));
+			}
+			assertFalse(reopened.exists("file-050.txt"));
+			assertFalse(reopened.exists("file-0"));
+		}
+	}
+
+	@Test
+	public void testReconcileFindsChangesByOtherClients() throws Exception {
+		upload("kept.txt", "kept");
+		B2FileResponse removed = upload("removed.txt", "removed");
+		upload("changed.txt", "before");
+		try (B2InventoryIndex index = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			index.reconcile(client, null);
+
+			upload("added.txt", "added");
+			client.deleteFileVersion("removed.txt", removed.getFileId());
+			upload("changed.txt", "after");
+			assertTrue(index.exists("removed.txt"));
+
+			final List<String> changes = new ArrayList<>();
+			B2InventoryDiff.Summary summary = index.reconcile(client, new B2DiffListener() {
+				@Override
+				public void added(B2FileInfoResponse target) {
+					changes.add("+" + target.getFileName());
+				}
+
+				@Override
+				public void removed(B2FileInfoResponse source) {
+					changes.add("-" + source.getFileName());
+				}
+
+				@Override
+				public void changed(B2FileInfoResponse source, B2FileInfoResponse target) {
+					changes.add("~" + target.getFileName());
+				}
+			});
+			assertEquals(Arrays.asList("+added.txt", "~changed.txt", "-removed.txt"), changes);
+			assertEquals(1, summary.getUnchanged());
+			assertFalse(index.exists("removed.txt"));
+			assertEquals(sha1("after"), index.get("changed.txt").getSha1());
+		}
+	}
+
+	@Test
+	public void testIncompleteJournalUpdate() throws Exception {
+		try (B2InventoryIndex index = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			client.addInventoryIndex(index);
+			upload("one.txt", "one");
+			upload("two.txt", "two");
+			client.removeInventoryIndex(index);
+		}
+		try (FileOutputStream out = new FileOutputStream(new File(directory, "journal.log"), true)) {
+			out.write("{\"seq\":3,\"op\":\"put\",\"ent".getBytes("UTF-8"));
+		}
+		try (B2InventoryIndex reopened = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			assertEquals(2, reopened.getPendingUpdates());
+			client.addInventoryIndex(reopened);
+			upload("three.txt", "three");
+			client.removeInventoryIndex(reopened);
+		}
+		try (B2InventoryIndex reopened = new B2InventoryIndex(directory, bucket.getBucketId())) {
+			assertEquals(Arrays.asList("one.txt", "three.txt", "two.txt"), names(reopened, null));
+		}
+	}
+
+	private List<String> names(B2InventoryIndex index, String prefix) throws Exception {
+		final List<String> names = new ArrayList<>();
+		index.list(prefix, new B2FileVisitor() {
+			@Override
+			public boolean visit(B2FileInfoResponse file) {
+				names.add(file.getFileName());
+				return true;
+			}
+		});
+		return names;
+	}
+
+	private B2FileResponse upload(String name, String content) throws Exception {
+		return client.uploadFile(bucket.getBucketId(), name, new StringEntity(content), sha1(content), null, Collections.<String, String>emptyMap());
+	}
+
+	private void largeFile(String name, String content) throws Exception {
+		emulator.setPartSizes(5, 10, 10);
+		B2StartLargeFileResponse start = client.startLargeFileUpload(bucket.getBucketId(), name, null, Collections.<String, String>emptyMap());
+		byte[] bytes = content.getBytes("UTF-8");
+		byte[] part1 = Arrays.copyOfRange(bytes, 0, 10);
+		byte[] part2 = Arrays.copyOfRange(bytes, 10, bytes.length);
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(part1)).toLowerCase();
+		String sha2 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(part2)).toLowerCase();
+		client.uploadLargeFilePart(start.getFileId(), 1, new ByteArrayEntity(part1), sha1);
+		client.uploadLargeFilePart(start.getFileId(), 2, new ByteArrayEntity(part2), sha2);
+		client.finishLargeFileUpload(start.getFileId(), new String[] { sha1, sha2 });
+	}
+
+	private static String sha1(String content) throws IOException {
+		return ChecksumHelper.calculateSha1(new ByteArrayInputStream(content.getBytes("UTF-8"))).toLowerCase();
+	}
+}
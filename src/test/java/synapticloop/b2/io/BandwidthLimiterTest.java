@@ -0,0 +1,71 @@
+package synapticloop.b2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+public class BandwidthLimiterTest {
+
+	@Test
+	public void testUnlimited() {
+		BandwidthLimiter limiter = new BandwidthLimiter();
+		assertFalse(limiter.isLimited());
+		assertEquals(0L, limiter.reserve(Long.MAX_VALUE / 2));
+	}
+
+	@Test
+	public void testReserve() {
+		BandwidthLimiter limiter = new BandwidthLimiter(1000);
+		// a full bucket allows a burst of a tenth of a second
+		assertTrue(limiter.reserve(50) <= 0L);
+		long wait = limiter.reserve(1000);
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(800));
+		assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(950));
+	}
+
+	@Test
+	public void testSetRate() {
+		BandwidthLimiter limiter = new BandwidthLimiter(10);
+		assertTrue(limiter.reserve(1000) > TimeUnit.SECONDS.toNanos(90));
+
+		// the debt at the old rate is forgotten
+		limiter.setRate(1000000);
+		assertTrue(limiter.reserve(1000) <= 0L);
+
+		limiter.setRate(BandwidthLimiter.UNLIMITED);
+		assertFalse(limiter.isLimited());
+		assertEquals(0L, limiter.reserve(1000000));
+	}
+
+	@Test
+	public void testThrottledInputStream() throws Exception {
+		BandwidthLimiter limiter = new BandwidthLimiter(64 * 1024);
+		long start = System.nanoTime();
+		InputStream in = new ThrottledInputStream(new ByteArrayInputStream(new byte[32 * 1024]), limiter, null, new BandwidthLimiter());
+		assertEquals(32 * 1024, IOUtils.toByteArray(in).length);
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(350));
+	}
+
+	@Test
+	public void testThrottledEntity() throws Exception {
+		BandwidthLimiter limiter = new BandwidthLimiter(64 * 1024);
+		ThrottledHttpEntity entity = new ThrottledHttpEntity(new ByteArrayEntity(new byte[32 * 1024]), limiter);
+		long start = System.nanoTime();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertEquals(32 * 1024, out.size());
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(350));
+
+		limiter.setRate(BandwidthLimiter.UNLIMITED);
+		start = System.nanoTime();
+		assertEquals(32 * 1024, IOUtils.toByteArray(entity.getContent()).length);
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(350));
+	}
+}
@@ -0,0 +1,69 @@
+package synapticloop.b2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.B2ClientConfig;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class DrainPolicyTest {
+
+	@Test
+	public void testDrainLimit() {
+		DrainPolicy policy = new DrainPolicy(1000, 100, TimeUnit.MILLISECONDS);
+		assertEquals(500, policy.getDrainLimit(500, 0, 0));
+		assertEquals(1000, policy.getDrainLimit(-1, 0, 0));
+		// nothing read yet, so the rate is not known
+		assertEquals(0, policy.getDrainLimit(5000, 0, 0));
+		// 1000 bytes in 10ms, the rest takes 50ms
+		assertEquals(5000, policy.getDrainLimit(5000, 1000, TimeUnit.MILLISECONDS.toNanos(10)));
+		// 1000 bytes in 100ms, the rest takes 500ms
+		assertEquals(0, policy.getDrainLimit(5000, 1000, TimeUnit.MILLISECONDS.toNanos(100)));
+
+		assertEquals(0, DrainPolicy.ABORT.getDrainLimit(1, 0, 0));
+		assertEquals(0, DrainPolicy.ABORT.getDrainLimit(-1, 0, 0));
+	}
+
+	@Test
+	public void testConnectionReused() throws Exception {
+		assertEquals(1, availableAfterEarlyClose(DrainPolicy.DEFAULT, 1024));
+	}
+
+	@Test
+	public void testConnectionAborted() throws Exception {
+		assertEquals(0, availableAfterEarlyClose(DrainPolicy.ABORT, 1024));
+		assertEquals(0, availableAfterEarlyClose(new DrainPolicy(1024, 0, TimeUnit.MILLISECONDS), 1024));
+	}
+
+	private static int availableAfterEarlyClose(DrainPolicy drainPolicy, int size) throws Exception {
+		try (B2Emulator emulator = new B2Emulator()) {
+			B2ApiClient client = new B2ApiClient(B2ClientConfig.builder().drainPolicy(drainPolicy).build());
+			try {
+				client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+				B2BucketResponse bucket = client.createBucket("drain-bucket", BucketType.allPrivate);
+				byte[] content = new byte[size];
+				String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+				B2FileResponse file = client.uploadFile(bucket.getBucketId(), "file.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+
+				InputStream in = client.downloadFileByIdToStream(file.getFileId());
+				assertEquals(16, in.read(new byte[16]));
+				in.close();
+				return client.getStatistics().getTotalStatistics().getAvailable();
+			} finally {
+				client.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package synapticloop.b2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.B2ClientConfig;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.metrics.B2RequestEvent;
+import synapticloop.b2.metrics.B2RequestListener;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class HttpMethodReleaseInputStreamTest {
+	private static final String DOWNLOAD_BY_ID = "b2_download_file_by_id";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2FileResponse file;
+	private final AtomicInteger started = new AtomicInteger();
+	private final AtomicInteger completed = new AtomicInteger();
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient(B2ClientConfig.builder().drainPolicy(DrainPolicy.ABORT).build());
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		B2BucketResponse bucket = client.createBucket("release-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		byte[] content = new byte[256 * 1024];
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+		file = client.uploadFile(bucket.getBucketId(), "large.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+		client.addRequestListener(new B2RequestListener() {
+			@Override
+			public void requestStarted(B2RequestEvent event) {
+				if(DOWNLOAD_BY_ID.equals(event.getOperation())) {
+					started.incrementAndGet();
+				}
+			}
+
+			@Override
+			public void requestCompleted(B2RequestEvent event) {
+				if(DOWNLOAD_BY_ID.equals(event.getOperation())) {
+					completed.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testEarlyCloseCompletesObservation() throws Exception {
+		InputStream content = client.downloadFileById(file.getFileId()).getContent();
+		assertTrue(content.read() != -1);
+		content.close();
+		assertEquals(1, started.get());
+		assertEquals(1, completed.get());
+	}
+
+	@Test
+	public void testEarlyCloseOfThrottledDownloadCompletesObservation() throws Exception {
+		client.getDownloadLimiter().setRate(1024L * 1024L);
+		client.setProgressListener(new TransferProgressListener() {
+			@Override
+			public void progressed(TransferProgress progress) {
+			}
+		});
+		InputStream content = client.downloadFileById(file.getFileId()).getContent();
+		assertTrue(content.read() != -1);
+		content.close();
+		assertEquals(1, started.get());
+		assertEquals(1, completed.get());
+	}
+
+	@Test
+	public void testDrainIsNotThrottled() throws Exception {
+		B2ApiClient draining = new B2ApiClient(B2ClientConfig.builder().drainPolicy(new DrainPolicy(1024L * 1024L, 5L, TimeUnit.SECONDS)).build());
+		try {
+			draining.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+			// the rest of the file would take about 15 seconds to read at this rate
+			draining.getDownloadLimiter().setRate(16L * 1024L);
+			InputStream content = draining.downloadFileById(file.getFileId()).getContent();
+			assertTrue(content.read() != -1);
+			long start = System.nanoTime();
+			content.close();
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+		} finally {
+			draining.close();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package synapticloop.b2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.io.TransferProgress.Direction;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class ProgressTrackerTest {
+
+	@Test
+	public void testGranularity() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		ProgressTracker tracker = new ProgressTracker("file.bin", Direction.DOWNLOAD, 10000, listener, 1000, TimeUnit.HOURS.toMillis(1));
+		ProgressInputStream in = new ProgressInputStream(new ByteArrayInputStream(new byte[10000]), tracker);
+		while(in.read() != -1) {
+			// read byte by byte
+		}
+		assertEquals(11, listener.events.size());
+		assertEquals(1000, listener.events.get(0).getBytesTransferred());
+		assertEquals(0.1d, listener.events.get(0).getFraction(), 0.0001d);
+		assertFalse(listener.events.get(9).isComplete());
+
+		TransferProgress last = listener.events.get(10);
+		assertTrue(last.isComplete());
+		assertEquals(10000, last.getBytesTransferred());
+		assertEquals(0, last.getEstimatedRemaining(TimeUnit.SECONDS));
+		assertEquals("file.bin", last.getName());
+		assertEquals(Direction.DOWNLOAD, last.getDirection());
+	}
+
+	@Test
+	public void testParts() {
+		RecordingListener listener = new RecordingListener();
+		ProgressTracker file = new ProgressTracker("large.bin", Direction.UPLOAD, 3000, listener, 1000, TimeUnit.HOURS.toMillis(1));
+		ProgressTracker part1 = file.newPart("part 1", 1500);
+		ProgressTracker part2 = file.newPart("part 2", 1500);
+
+		part1.update(1500);
+		part2.update(700);
+		assertEquals(2200, file.getProgress().getBytesTransferred());
+		assertEquals(1, listener.events.size());
+
+		// the second part failed, and is retried
+		part2.reset();
+		assertEquals(0, part2.getProgress().getBytesTransferred());
+		assertEquals(1500, file.getProgress().getBytesTransferred());
+		part2.update(1500);
+		assertEquals(3000, file.getProgress().getBytesTransferred());
+		assertEquals(2, listener.events.size());
+
+		file.complete();
+		file.complete();
+		assertEquals(3, listener.events.size());
+		assertTrue(listener.events.get(2).isComplete());
+	}
+
+	@Test
+	public void testEstimatedRemaining() {
+		TransferProgress progress = new TransferProgress("file.bin", Direction.UPLOAD, 1000, 11000, 1000, 0L, 0L, false);
+		assertEquals(10, progress.getEstimatedRemaining(TimeUnit.SECONDS));
+		progress = new TransferProgress("file.bin", Direction.UPLOAD, 1000, -1, 1000, 0L, 0L, false);
+		assertEquals(-1, progress.getEstimatedRemaining(TimeUnit.SECONDS));
+		assertEquals(-1d, progress.getFraction(), 0d);
+	}
+
+	@Test
+	public void testUploadEntity() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		ProgressHttpEntity entity = new ProgressHttpEntity(new ByteArrayEntity(new byte[5000]), 
+				new ProgressTracker("file.bin", Direction.UPLOAD, 5000, listener, 2000, TimeUnit.HOURS.toMillis(1)));
+		entity.writeTo(new ByteArrayOutputStream());
+		assertEquals(2, listener.events.size());
+		assertTrue(listener.events.get(1).isComplete());
+		assertEquals(5000, listener.events.get(1).getBytesTransferred());
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (B2Emulator emulator = new B2Emulator()) {
+			B2ApiClient client = new B2ApiClient();
+			RecordingListener listener = new RecordingListener();
+			client.setProgressListener(listener, 1024, 1000);
+			client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+			B2BucketResponse bucket = client.createBucket("progress-bucket", BucketType.allPrivate);
+
+			byte[] content = new byte[4096];
+			String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content)).toLowerCase();
+			B2FileResponse file = client.uploadFile(bucket.getBucketId(), "folder/file name.bin", new ByteArrayEntity(content), sha1, null, Collections.<String, String>emptyMap());
+			TransferProgress upload = listener.events.get(listener.events.size() - 1);
+			assertTrue(upload.isComplete());
+			assertEquals(Direction.UPLOAD, upload.getDirection());
+			assertEquals("folder/file name.bin", upload.getName());
+			assertEquals(4096, upload.getBytesTransferred());
+
+			listener.events.clear();
+			assertEquals(4096, IOUtils.toByteArray(client.downloadFileByIdToStream(file.getFileId())).length);
+			assertTrue(listener.events.size() >= 2);
+			TransferProgress download = listener.events.get(listener.events.size() - 1);
+			assertTrue(download.isComplete());
+			assertEquals(4096, download.getBytesTransferred());
+			assertEquals(Direction.DOWNLOAD, download.getDirection());
+			assertEquals("folder/file name.bin", download.getName());
+			client.close();
+		}
+	}
+
+	private static class RecordingListener implements TransferProgressListener {
+		private final List<TransferProgress> events = Collections.synchronizedList(new ArrayList<TransferProgress>());
+
+		@Override
+		public void progressed(TransferProgress progress) {
+			events.add(progress);
+		}
+	}
+}
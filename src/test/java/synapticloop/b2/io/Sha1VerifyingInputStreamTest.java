@@ -0,0 +1,99 @@
+package synapticloop.b2.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2DownloadFileResponse;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.response.B2StartLargeFileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class Sha1VerifyingInputStreamTest {
+	private static final byte[] CONTENT = "hello world!".getBytes();
+	private static final String CONTENT_SHA1 = "430ce34d020724ed75a196dfc2ad67c77772d169";
+
+	@Test
+	public void testMatch() throws Exception {
+		Sha1VerifyingInputStream in = new Sha1VerifyingInputStream(new ByteArrayInputStream(CONTENT), CONTENT_SHA1.toUpperCase(), "hello.txt");
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+		assertTrue(in.isVerified());
+		// reading past the end does not verify again
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void testSkip() throws Exception {
+		Sha1VerifyingInputStream in = new Sha1VerifyingInputStream(new ByteArrayInputStream(CONTENT), CONTENT_SHA1, "hello.txt");
+		assertEquals(6, in.skip(6));
+		assertEquals('w', in.read());
+		assertEquals("orld!", IOUtils.toString(in, "UTF-8"));
+		assertTrue(in.isVerified());
+	}
+
+	@Test
+	public void testMismatch() throws Exception {
+		Sha1VerifyingInputStream in = new Sha1VerifyingInputStream(new ByteArrayInputStream("hello world?".getBytes()), CONTENT_SHA1, "hello.txt");
+		byte[] buffer = new byte[CONTENT.length];
+		assertEquals(CONTENT.length, IOUtils.read(in, buffer));
+		try {
+			in.read();
+			fail();
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage().contains(CONTENT_SHA1));
+		}
+		assertFalse(in.isVerified());
+	}
+
+	@Test
+	public void testNotVerified() throws Exception {
+		Sha1VerifyingInputStream in = new Sha1VerifyingInputStream(new ByteArrayInputStream(CONTENT), null, "hello.txt");
+		assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+		assertFalse(in.isVerified());
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (B2Emulator emulator = new B2Emulator()) {
+			emulator.setPartSizes(5, 5, 5);
+			B2ApiClient client = new B2ApiClient();
+			client.setVerifyDownloads(true);
+			client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+			B2BucketResponse bucket = client.createBucket("verify-bucket", BucketType.allPrivate);
+
+			B2FileResponse file = client.uploadFile(bucket.getBucketId(), "hello.txt", new ByteArrayEntity(CONTENT), CONTENT_SHA1, null, Collections.<String, String>emptyMap());
+			assertArrayEquals(CONTENT, IOUtils.toByteArray(client.downloadFileByIdToStream(file.getFileId())));
+
+			// a range of the file is not verified
+			B2DownloadFileResponse range = client.downloadFileRangeById(file.getFileId(), 0, 4);
+			assertNull(Sha1VerifyingInputStream.getExpectedSha1(range));
+			IOUtils.closeQuietly(range.getContent());
+
+			// a large file is verified against the 'large_file_sha1' file info
+			B2StartLargeFileResponse start = client.startLargeFileUpload(bucket.getBucketId(), "large.txt", null, 
+					Collections.singletonMap(Sha1VerifyingInputStream.LARGE_FILE_SHA1, CONTENT_SHA1));
+			String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(CONTENT, 0, 6)).toLowerCase();
+			String sha2 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(CONTENT, 6, 6)).toLowerCase();
+			client.uploadLargeFilePart(start.getFileId(), 1, new ByteArrayEntity(CONTENT, 0, 6), sha1);
+			client.uploadLargeFilePart(start.getFileId(), 2, new ByteArrayEntity(CONTENT, 6, 6), sha2);
+			client.finishLargeFileUpload(start.getFileId(), new String[] { sha1, sha2 });
+
+			B2DownloadFileResponse large = client.downloadFileById(start.getFileId());
+			assertEquals(CONTENT_SHA1, Sha1VerifyingInputStream.getExpectedSha1(large));
+			Sha1VerifyingInputStream in = new Sha1VerifyingInputStream(large.getContent(), large);
+			assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+			assertTrue(in.isVerified());
+			client.close();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package synapticloop.b2.list;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2BulkLookupTest {
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("lookup-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testDenseNamesAreAnsweredByOneWindow() throws Exception {
+		upload(200, "file-%03d");
+		client.hideFile(bucket.getBucketId(), "file-010");
+
+		List<String> names = new ArrayList<>();
+		for (int i = 198; i >= 0; i -= 2) {
+			names.add(String.format("file-%03d", i));
+		}
+		names.addAll(Arrays.asList("file-0005", "file-", "zzz", "a"));
+
+		Map<String, B2FileInfoResponse> found = new B2BulkLookup(client).lookup(bucket.getBucketId(), names);
+		assertEquals(99, found.size());
+		assertEquals("file-000", found.keySet().iterator().next());
+		assertFalse(found.containsKey("file-010"));
+		assertFalse(found.containsKey("file-0005"));
+		assertEquals("file-198", found.get("file-198").getFileName());
+		assertEquals(1, emulator.getRequestCount("b2_list_file_names"));
+	}
+
+	@Test
+	public void testIsolatedNamesAreLookedUpOnTheirOwn() throws Exception {
+		upload(1600, "a-%04d");
+
+		Map<String, B2FileInfoResponse> found = new B2BulkLookup(client).lookup(bucket.getBucketId(), Arrays.asList("a-0000", "a-1200", "a-1599", "b"));
+		assertEquals(Arrays.asList("a-0000", "a-1200", "a-1599"), new ArrayList<>(found.keySet()));
+		// a window of one transaction (1000 files) from the first name, then each name on its own
+		assertEquals(3, emulator.getRequestCount("b2_list_file_names"));
+	}
+
+	@Test
+	public void testParallelLookup() throws Exception {
+		upload(100, "file-%03d");
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 2500; i++) {
+			names.add(String.format("file-%03d", i));
+		}
+		Collections.shuffle(names);
+		Map<String, B2FileInfoResponse> found = new B2BulkLookup(client).setThreads(4).setMaxWindow(100).lookup(bucket.getBucketId(), names);
+		assertEquals(100, found.size());
+		assertTrue(found.containsKey("file-099"));
+		assertFalse(found.containsKey("file-100"));
+	}
+
+	private void upload(int count, String format) throws Exception {
+		for (int i = 0; i < count; i++) {
+			String name = String.format(format, i);
+			String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(name.getBytes("UTF-8"))).toLowerCase();
+			client.uploadFile(bucket.getBucketId(), name, new StringEntity(name), sha1, null, Collections.<String, String>emptyMap());
+		}
+	}
+}
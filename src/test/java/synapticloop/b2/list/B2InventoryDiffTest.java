@@ -0,0 +1,179 @@
+package synapticloop.b2.list;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.http.entity.StringEntity;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class B2InventoryDiffTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse source;
+	private B2BucketResponse target;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		source = client.createBucket("source-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+		target = client.createBucket("target-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			upload(source, "file-" + i + ".txt", "content " + i);
+		}
+		File snapshot = new File(folder.getRoot(), "snapshot.jsonl.gz");
+		assertEquals(10, B2SnapshotWriter.write(new B2ListingFileSource(client, source.getBucketId(), null, 3), snapshot));
+
+		upload(source, "file-10.txt", "new");
+		B2FileInfoResponse removed = client.listFileNames(source.getBucketId(), "file-3.txt", 1).getFiles().get(0);
+		client.deleteFileVersion(removed.getFileName(), removed.getFileId());
+		upload(source, "file-5.txt", "changed content");
+
+		RecordingListener listener = new RecordingListener();
+		B2InventoryDiff.Summary summary;
+		try (B2FileSource before = new B2SnapshotFileSource(snapshot); B2FileSource after = new B2ListingFileSource(client, source.getBucketId(), null, 4)) {
+			summary = new B2InventoryDiff().diff(before, after, listener);
+		}
+		assertEquals(Arrays.asList("+file-10.txt", "-file-3.txt", "*file-5.txt"), listener.events);
+		assertEquals(1, summary.getAdded());
+		assertEquals(1, summary.getRemoved());
+		assertEquals(1, summary.getChanged());
+		assertEquals(8, summary.getUnchanged());
+	}
+
+	@Test
+	public void testBuckets() throws Exception {
+		for (String name : new String[] { "a.txt", "b.txt", "c.txt" }) {
+			upload(source, name, name);
+			upload(target, name, name);
+		}
+		upload(target, "b.txt", "other");
+		upload(source, "d.txt", "d");
+
+		RecordingListener listener = new RecordingListener();
+		B2InventoryDiff.Summary summary = new B2InventoryDiff().setCompared(B2InventoryDiff.Attribute.SIZE, B2InventoryDiff.Attribute.SHA1)
+				.diff(new B2ListingFileSource(client, source.getBucketId()), new B2ListingFileSource(client, target.getBucketId()), listener);
+		assertEquals(Arrays.asList("*b.txt", "-d.txt"), listener.events);
+		assertEquals(2, summary.getUnchanged());
+
+		// the copies were uploaded at different times
+		listener = new RecordingListener();
+		new B2InventoryDiff().diff(new B2ListingFileSource(client, source.getBucketId()), new B2ListingFileSource(client, target.getBucketId()), listener);
+		assertEquals(Arrays.asList("*a.txt", "*b.txt", "*c.txt", "-d.txt"), listener.events);
+	}
+
+	@Test(expected = IOException.class)
+	public void testOutOfOrder() throws Exception {
+		new B2InventoryDiff().diff(new ListSource("a", "c", "b"), new ListSource("a"), new RecordingListener());
+	}
+
+	@Test
+	public void testUnfinishedSnapshot() throws Exception {
+		File snapshot = folder.newFile("snapshot.jsonl");
+		try (B2SnapshotWriter writer = new B2SnapshotWriter(snapshot)) {
+			writer.write(file("a"));
+			writer.write(file("b"));
+			try {
+				writer.write(file("a"));
+				fail();
+			} catch (IOException ex) {
+				// expected
+			}
+		}
+		// the existing snapshot is kept
+		assertEquals(0, snapshot.length());
+		assertEquals(1, folder.getRoot().list().length);
+	}
+
+	private void upload(B2BucketResponse bucket, String fileName, String content) throws Exception {
+		String sha1 = ChecksumHelper.calculateSha1(new ByteArrayInputStream(content.getBytes("UTF-8"))).toLowerCase();
+		client.uploadFile(bucket.getBucketId(), fileName, new StringEntity(content), sha1, null, Collections.<String, String>emptyMap());
+	}
+
+	private static B2FileInfoResponse file(String fileName) throws Exception {
+		return new B2FileInfoResponse(new JSONObject()
+				.put("fileId", "id-" + fileName)
+				.put("fileName", fileName)
+				.put("action", "upload")
+				.put("contentLength", 1)
+				.put("contentSha1", "none")
+				.put("fileInfo", new JSONObject())
+				.put("size", 1)
+				.put("uploadTimestamp", 1));
+	}
+
+	private static class ListSource implements B2FileSource {
+		private final Iterator<String> names;
+
+		private ListSource(String... names) {
+			this.names = Arrays.asList(names).iterator();
+		}
+
+		@Override
+		public B2FileInfoResponse next() throws IOException {
+			try {
+				return names.hasNext() ? file(names.next()) : null;
+			} catch (Exception ex) {
+				throw new IOException(ex);
+			}
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static class RecordingListener implements B2DiffListener {
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void added(B2FileInfoResponse target) {
+			events.add("+" + target.getFileName());
+		}
+
+		@Override
+		public void removed(B2FileInfoResponse source) {
+			events.add("-" + source.getFileName());
+		}
+
+		@Override
+		public void changed(B2FileInfoResponse source, B2FileInfoResponse target) {
+			events.add("*" + source.getFileName());
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package synapticloop.b2.list;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2BucketResponse;
+import synapticloop.b2.response.B2FileInfoResponse;
+import synapticloop.b2.response.B2ListFilesResponse;
+
+public class B2ParallelListerTest {
+	private static final String CONTENT = "hello world!";
+	private static final String CONTENT_SHA1 = "430ce34d020724ed75a196dfc2ad67c77772d169";
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private B2BucketResponse bucket;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucket = client.createBucket("list-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	@Test
+	public void testCompare() {
+		assertTrue(FileNames.compare("a", "b") < 0);
+		assertTrue(FileNames.compare("a", "a/") < 0);
+		assertEquals(0, FileNames.compare("photos/1.jpg", "photos/1.jpg"));
+		// by code point, as the UTF-8 bytes are ordered, rather than by UTF-16
+		assertTrue(FileNames.compare("\uffff", "\ud83d\ude00") < 0);
+		assertTrue("\uffff".compareTo("\ud83d\ude00") > 0);
+	}
+
+	@Test
+	public void testMidpoint() {
+		assertEquals("O", FileNames.midpoint("", null).substring(0, 1));
+		String midpoint = FileNames.midpoint("a", "c");
+		assertTrue(FileNames.compare(midpoint, "a") > 0);
+		assertTrue(FileNames.compare(midpoint, "c") < 0);
+		midpoint = FileNames.midpoint("photos/2017/", "photos/2018/");
+		assertTrue(FileNames.compare(midpoint, "photos/2017/") > 0);
+		assertTrue(FileNames.compare(midpoint, "photos/2018/") < 0);
+	}
+
+	@Test
+	public void testFolders() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (String folder : new String[] { "alpha/", "beta/", "gamma/deep/", "" }) {
+			for (int i = 0; i < 15; i++) {
+				expected.add(upload(folder + "file-" + i + ".txt"));
+			}
+		}
+		Collections.sort(expected);
+
+		assertEquals(expected, names(new B2ParallelLister(client).setThreads(3).setPageSize(4), null));
+		assertEquals(expected.subList(15, 30), names(new B2ParallelLister(client).setPageSize(4), "beta/"));
+	}
+
+	@Test
+	public void testSampledPartitions() throws Exception {
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 200; i++) {
+			expected.add(upload(String.format("%c%03d.bin", (char)('a' + i % 26), i)));
+		}
+		Collections.sort(expected);
+
+		int before = emulator.getRequestCount("b2_list_file_names");
+		assertEquals(expected, names(new B2ParallelLister(client).setThreads(4).setPageSize(10), null));
+		// more calls than a sequential listing, as the key space was split
+		assertTrue(emulator.getRequestCount("b2_list_file_names") - before > 21);
+
+		List<String> unordered = names(new B2ParallelLister(client).setThreads(4).setPageSize(10).setOrdered(false), null);
+		Collections.sort(unordered);
+		assertEquals(expected, unordered);
+	}
+
+	@Test
+	public void testVersions() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			upload("folder-" + (i % 3) + "/file-" + (i % 7) + ".txt");
+		}
+		client.hideFile(bucket.getBucketId(), "folder-0/file-0.txt");
+
+		List<String> expected = new ArrayList<String>();
+		B2ListFilesResponse response = client.listFileVersions(bucket.getBucketId(), null, null, 1000);
+		for (B2FileInfoResponse file : response.getFiles()) {
+			expected.add(file.getFileId());
+		}
+
+		final List<String> actual = new ArrayList<String>();
+		new B2ParallelLister(client).setVersions(true).setPageSize(2).list(bucket.getBucketId(), new B2FileVisitor() {
+			@Override
+			public boolean visit(B2FileInfoResponse file) {
+				actual.add(file.getFileId());
+				return true;
+			}
+		});
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			upload("file-" + i + ".txt");
+		}
+		long count = new B2ParallelLister(client).setPageSize(5).list(bucket.getBucketId(), new B2FileVisitor() {
+			private int visited = 0;
+
+			@Override
+			public boolean visit(B2FileInfoResponse file) {
+				return ++visited < 10;
+			}
+		});
+		assertEquals(10, count);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		upload("file.txt");
+		emulator.failNext("b2_list_file_names", 1, 400, "bad_request");
+		try {
+			names(new B2ParallelLister(client), null);
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+		}
+	}
+
+	private String upload(String fileName) throws Exception {
+		client.uploadFile(bucket.getBucketId(), fileName, new StringEntity(CONTENT), CONTENT_SHA1, null, Collections.<String, String>emptyMap());
+		return fileName;
+	}
+
+	private List<String> names(B2ParallelLister lister, String prefix) throws Exception {
+		final List<String> names = new ArrayList<String>();
+		lister.list(bucket.getBucketId(), prefix, new B2FileVisitor() {
+			@Override
+			public boolean visit(B2FileInfoResponse file) {
+				names.add(file.getFileName());
+				return true;
+			}
+		});
+		return names;
+	}
+}
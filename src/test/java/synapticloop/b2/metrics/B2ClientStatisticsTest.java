@@ -0,0 +1,70 @@
+package synapticloop.b2.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+import synapticloop.b2.B2ApiClient;
+
+public class B2ClientStatisticsTest {
+
+	@Test
+	public void testRegisterMBean() throws Exception {
+		B2ApiClient client = new B2ApiClient();
+		B2ClientStatistics statistics = client.registerMBean("statistics-test");
+
+		statistics.requestStarted(new B2RequestEvent("b2_upload_file", "POST", "pod-000.backblaze.com", -1, null, 1024L, 0L, -1L, -1L, null));
+		assertEquals(1, statistics.getInFlightRequests());
+		statistics.requestCompleted(new B2RequestEvent("b2_upload_file", "POST", "pod-000.backblaze.com", 200, null, 1024L, 512L, 1000L, 2000L, null));
+		statistics.recordRetry("b2_upload_file");
+
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("synapticloop.b2:type=B2ApiClient,name=\"statistics-test\"");
+		assertTrue(mBeanServer.isRegistered(objectName));
+		assertEquals(0, mBeanServer.getAttribute(objectName, "InFlightRequests"));
+		assertEquals(1024L, mBeanServer.getAttribute(objectName, "BytesSent"));
+		assertEquals(512L, mBeanServer.getAttribute(objectName, "BytesReceived"));
+
+		CompositeData total = (CompositeData)mBeanServer.getAttribute(objectName, "TotalStatistics");
+		assertEquals(0, total.get("leased"));
+		assertNotNull(mBeanServer.getAttribute(objectName, "Retries"));
+
+		client.close();
+		assertFalse(mBeanServer.isRegistered(objectName));
+	}
+
+	@Test
+	public void testRoutes() throws Exception {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		B2ClientStatistics statistics = new B2ClientStatistics(connectionManager);
+		// before authorization, no route is counted as an upload route
+		lease(connectionManager, "api.backblazeb2.com");
+		assertEquals(0, statistics.getUploadRouteStatistics().getLeased());
+
+		statistics.setAuthorizationUrl("https://api.backblazeb2.com");
+		statistics.setUrls("https://api001.backblazeb2.com", "https://f001.backblazeb2.com");
+		statistics.addUploadUrl("https://pod-000-1000-00.backblaze.com/b2api/v1/b2_upload_file/bucket/c001_v0001000_t0001");
+		lease(connectionManager, "api001.backblazeb2.com");
+		lease(connectionManager, "f001.backblazeb2.com");
+		lease(connectionManager, "pod-000-1000-00.backblaze.com");
+		assertEquals(2, statistics.getApiRouteStatistics().getLeased());
+		assertEquals(1, statistics.getDownloadRouteStatistics().getLeased());
+		assertEquals(1, statistics.getUploadRouteStatistics().getLeased());
+		assertEquals(4, statistics.getTotalStatistics().getLeased());
+		connectionManager.shutdown();
+	}
+
+	private static void lease(PoolingHttpClientConnectionManager connectionManager, String host) throws Exception {
+		connectionManager.requestConnection(new HttpRoute(new HttpHost(host, 443, "https")), null).get(1, TimeUnit.SECONDS);
+	}
+}
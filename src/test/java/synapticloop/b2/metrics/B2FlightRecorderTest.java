@@ -0,0 +1,24 @@
+package synapticloop.b2.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class B2FlightRecorderTest {
+
+	@Test
+	public void testNotRecording() {
+		assertFalse(B2FlightRecorder.API_CALL.isEnabled());
+		assertNull(B2FlightRecorder.API_CALL.begin());
+		// committing a null event is a no-op
+		B2FlightRecorder.API_CALL.commit(null, "b2_list_buckets", "POST", "api001.backblazeb2.com", 200, null, 0L, 0L, B2FlightRecorder.OUTCOME_SUCCESS);
+	}
+
+	@Test
+	public void testEventNames() {
+		assertEquals("synapticloop.b2.ApiCall", B2FlightRecorder.API_CALL.getName());
+		assertEquals("synapticloop.b2.Transfer", B2FlightRecorder.TRANSFER.getName());
+		assertEquals("synapticloop.b2.Checksum", B2FlightRecorder.CHECKSUM.getName());
+		assertEquals("synapticloop.b2.ResponseParse", B2FlightRecorder.RESPONSE_PARSE.getName());
+	}
+}
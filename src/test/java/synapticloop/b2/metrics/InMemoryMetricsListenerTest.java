@@ -0,0 +1,57 @@
+package synapticloop.b2.metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class InMemoryMetricsListenerTest {
+
+	@Test
+	public void testRecordEvents() {
+		InMemoryMetricsListener listener = new InMemoryMetricsListener();
+		listener.requestCompleted(new B2RequestEvent("b2_list_file_names", "POST", "api001.backblazeb2.com", 200, null, 100L, 2048L, 
+				TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(25), null));
+		listener.requestCompleted(new B2RequestEvent("b2_list_file_names", "POST", "api001.backblazeb2.com", 503, "service_unavailable", 100L, 120L, 
+				TimeUnit.MILLISECONDS.toNanos(200), TimeUnit.MILLISECONDS.toNanos(210), null));
+
+		OperationMetrics metrics = listener.getOperation("b2_list_file_names");
+		assertNotNull(metrics);
+		assertEquals(2, metrics.getRequests());
+		assertEquals(1, metrics.getFailures());
+		assertEquals(200, metrics.getBytesSent());
+		assertEquals(2168, metrics.getBytesReceived());
+		assertEquals(Long.valueOf(1), metrics.getErrorCodes().get("service_unavailable"));
+		assertEquals(Long.valueOf(1), metrics.getStatusCodes().get(503));
+		assertNull(listener.getOperation("b2_upload_file"));
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99, TimeUnit.MILLISECONDS));
+
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i, TimeUnit.MILLISECONDS);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS));
+		long p50 = histogram.getPercentile(50, TimeUnit.MILLISECONDS);
+		assertTrue("p50 was " + p50, p50 >= 50 && p50 <= 57);
+		long p99 = histogram.getPercentile(99, TimeUnit.MILLISECONDS);
+		assertTrue("p99 was " + p99, p99 >= 99 && p99 <= 100);
+	}
+
+	@Test
+	public void testBucketBounds() {
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+			if(index > 0) {
+				assertTrue(value > LatencyHistogram.bucketUpperBound(index - 1));
+			}
+		}
+	}
+}
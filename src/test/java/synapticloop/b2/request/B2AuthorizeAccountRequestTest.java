@@ -6,7 +6,9 @@ import org.apache.http.impl.client.HttpClients;
 import org.junit.Before;
 import org.junit.Test;
 
+import synapticloop.b2.emulator.B2Emulator;
 import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.helper.B2TestHelper;
 import synapticloop.b2.response.B2AuthorizeAccountResponse;
 
 
@@ -15,31 +17,26 @@ public class B2AuthorizeAccountRequestTest {
 	private static final String B2_ACCOUNT_ID = "B2_ACCOUNT_ID";
 	private static final String B2_APPLICATION_KEY = "B2_APPLICATION_KEY";
 
+	private String apiHost;
+	private String b2AccountId;
+	private String b2ApplicationKey;
+
 	@Before
-	public void setup() {
+	public void setup() throws Exception {
+		b2AccountId = System.getenv(B2_ACCOUNT_ID);
+		b2ApplicationKey = System.getenv(B2_APPLICATION_KEY);
+
+		if(null == b2AccountId || null == b2ApplicationKey) {
+			// no credentials for the live service, run against the local emulator
+			apiHost = B2TestHelper.getEmulator().getUrl();
+			b2AccountId = B2Emulator.ACCOUNT_ID;
+			b2ApplicationKey = B2Emulator.APPLICATION_KEY;
+		}
 	}
 
 	@Test
 	public void testCorrectCredentials() throws Exception {
-		boolean isOK = true;
-		String b2AccountId = System.getenv(B2_ACCOUNT_ID);
-		String b2ApplicationKey = System.getenv(B2_APPLICATION_KEY);
-
-		if(null == b2AccountId) {
-			System.err.println("Could not find the environment variable '" + B2_ACCOUNT_ID + "', cannot continue with tests, exiting...");
-			isOK = false;
-		}
-
-		if(null == b2ApplicationKey) {
-			System.err.println("Could not find the environment variable '" + B2_APPLICATION_KEY + "', cannot continue with tests, exiting...");
-			isOK = false;
-		}
-
-		if(!isOK) {
-			System.exit(-1);
-		}
-
-		B2AuthorizeAccountRequest b2AuthorizeAccountRequest = new B2AuthorizeAccountRequest(HttpClients.createDefault(), b2AccountId, b2ApplicationKey);
+		B2AuthorizeAccountRequest b2AuthorizeAccountRequest = request(b2AccountId, b2ApplicationKey);
 		B2AuthorizeAccountResponse response = b2AuthorizeAccountRequest.getResponse();
 		assertNotNull(response.getAuthorizationToken());
 		assertNotNull(response.getAccountId());
@@ -49,8 +46,15 @@ public class B2AuthorizeAccountRequestTest {
 
 	@Test (expected=B2ApiException.class)
 	public void testIncorrectCredentials() throws Exception {
-		B2AuthorizeAccountRequest b2AuthorizeAccountRequest = new B2AuthorizeAccountRequest(HttpClients.createDefault(), "bad", "value");
+		B2AuthorizeAccountRequest b2AuthorizeAccountRequest = request("bad", "value");
 		b2AuthorizeAccountRequest.getResponse();
 	}
 
+	private B2AuthorizeAccountRequest request(String accountId, String applicationKey) {
+		if(null == apiHost) {
+			return new B2AuthorizeAccountRequest(HttpClients.createDefault(), accountId, applicationKey);
+		}
+		return new B2AuthorizeAccountRequest(HttpClients.createDefault(), apiHost, accountId, applicationKey);
+	}
+
 }
@@ -41,11 +41,18 @@ public class B2HideFileRequestTest {
 
 		assertEquals("hide", b2HideFileResponse.getAction().toString());
 
-		// we now have two versions...
+		// the file name is no longer listed...
 		b2ListFilesResponse = new B2ListFileNamesRequest(HttpClients.createDefault(), 
 				B2TestHelper.getB2AuthorizeAccountResponse(), 
 				bucketId).getResponse();
 
+		assertEquals(0, b2ListFilesResponse.getFiles().size());
+
+		// ...but we now have two versions
+		b2ListFilesResponse = new B2ListFileVersionsRequest(HttpClients.createDefault(), 
+				B2TestHelper.getB2AuthorizeAccountResponse(), 
+				bucketId).getResponse();
+
 		assertEquals(2, b2ListFilesResponse.getFiles().size());
 
 	}
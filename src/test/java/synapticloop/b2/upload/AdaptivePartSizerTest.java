@@ -0,0 +1,75 @@
+package synapticloop.b2.upload;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptivePartSizerTest {
+	private static final long MB = 1000L * 1000L;
+
+	@Test
+	public void testRecommendedPartSize() {
+		AdaptivePartSizer sizer = new AdaptivePartSizer(1000 * MB, 5 * MB, 100 * MB, 4, 30, TimeUnit.SECONDS);
+		long offset = 0;
+		AdaptivePartSizer.Part part;
+		while(null != (part = sizer.next())) {
+			assertEquals(sizer.getPartCount(), part.getNumber());
+			assertEquals(offset, part.getOffset());
+			offset += part.getLength();
+			if(offset < 1000 * MB) {
+				assertTrue(part.getLength() >= 5 * MB);
+			}
+			if(part.getNumber() <= 6) {
+				assertEquals(100 * MB, part.getLength());
+			}
+		}
+		assertEquals(1000 * MB, offset);
+	}
+
+	@Test
+	public void testShareOfRemaining() {
+		AdaptivePartSizer sizer = new AdaptivePartSizer(200 * MB, 5 * MB, 100 * MB, 4, 30, TimeUnit.SECONDS);
+		assertEquals(50 * MB, sizer.next().getLength());
+	}
+
+	@Test
+	public void testMaximumParts() {
+		long length = 2000000 * MB;
+		AdaptivePartSizer sizer = new AdaptivePartSizer(length, 5 * MB, 100 * MB, 4, 30, TimeUnit.SECONDS);
+		sizer.completed(5 * MB, TimeUnit.SECONDS.toNanos(10));
+		long offset = 0;
+		AdaptivePartSizer.Part part;
+		while(null != (part = sizer.next())) {
+			assertTrue(part.getLength() <= AdaptivePartSizer.MAX_PART_SIZE);
+			offset += part.getLength();
+		}
+		assertEquals(length, offset);
+		assertTrue(sizer.getPartCount() <= AdaptivePartSizer.MAX_PARTS);
+	}
+
+	@Test
+	public void testAdapts() {
+		AdaptivePartSizer sizer = new AdaptivePartSizer(10000 * MB, 5 * MB, 100 * MB, 4, 10, TimeUnit.SECONDS);
+		assertEquals(100 * MB, sizer.next().getLength());
+
+		// a fast link has larger parts
+		sizer.completed(100 * MB, TimeUnit.SECONDS.toNanos(2));
+		assertEquals(50 * MB, sizer.getBytesPerSecond());
+		assertEquals(500 * MB, sizer.next().getLength(), MB);
+
+		// a slow link has smaller parts, but no smaller than the minimum
+		for (int i = 0; i < 20; i++) {
+			sizer.completed(MB, TimeUnit.SECONDS.toNanos(100));
+		}
+		assertEquals(5 * MB, sizer.next().getLength());
+	}
+
+	@Test
+	public void testNoSmallLastPart() {
+		AdaptivePartSizer sizer = new AdaptivePartSizer(102 * MB, 5 * MB, 100 * MB, 1, 30, TimeUnit.SECONDS);
+		assertEquals(102 * MB, sizer.next().getLength());
+		assertNull(sizer.next());
+	}
+}
@@ -0,0 +1,102 @@
+package synapticloop.b2.upload;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.response.B2FileResponse;
+
+public class B2UploaderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private String bucketId;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		emulator.setPartSizes(5, 10, 10);
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucketId = client.createBucket("upload-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate).getBucketId();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	private File file(int length) throws Exception {
+		byte[] content = new byte[length];
+		new Random(length).nextBytes(content);
+		File file = folder.newFile();
+		Files.write(file.toPath(), content);
+		return file;
+	}
+
+	@Test
+	public void testSingleUpload() throws Exception {
+		File file = file(10);
+		B2FileResponse response = client.upload(bucketId, "small.bin", file);
+		assertEquals(10, response.getContentLength());
+		assertEquals(1, emulator.getRequestCount("b2_upload_file"));
+		assertEquals(0, emulator.getRequestCount("b2_start_large_file"));
+	}
+
+	@Test
+	public void testTooSmallForTwoPartsIsSingleUpload() throws Exception {
+		// above the threshold, but shorter than two parts of the absolute minimum size
+		File file = file(9);
+		B2FileResponse response = new B2Uploader(client).setSingleUploadThreshold(6).upload(bucketId, "small.bin", file, null, null);
+		assertEquals(9, response.getContentLength());
+		assertEquals(1, emulator.getRequestCount("b2_upload_file"));
+		assertEquals(0, emulator.getRequestCount("b2_start_large_file"));
+	}
+
+	@Test
+	public void testLargeUpload() throws Exception {
+		File file = file(1000);
+		B2FileResponse response = new B2Uploader(client).setThreads(3).upload(bucketId, "large.bin", file, null, Collections.singletonMap("author", "synapticloop"));
+		assertEquals(1000, response.getContentLength());
+		assertEquals("synapticloop", response.getFileInfo().get("author"));
+		assertEquals(0, emulator.getRequestCount("b2_upload_file"));
+		assertEquals(1, emulator.getRequestCount("b2_finish_large_file"));
+		assertTrue(emulator.getRequestCount("b2_upload_part") > 3);
+		// the response to finishing the large file describes the file
+		assertEquals(0, emulator.getRequestCount("b2_get_file_info"));
+		assertNotNull(response.getUploadTimestamp());
+		assertArrayEquals(Files.readAllBytes(file.toPath()), IOUtils.toByteArray(client.downloadFileByIdToStream(response.getFileId())));
+	}
+
+	@Test
+	public void testFailedPartCancels() throws Exception {
+		emulator.failNext("b2_upload_part", 1, 400, "bad_request");
+		try {
+			new B2Uploader(client).setThreads(2).upload(bucketId, "large.bin", file(100), null, Collections.<String, String>emptyMap());
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+		}
+		assertEquals(1, emulator.getRequestCount("b2_cancel_large_file"));
+		assertEquals(0, emulator.getRequestCount("b2_finish_large_file"));
+		assertTrue(client.listUnfinishedLargeFiles(bucketId, null, null).getFiles().isEmpty());
+	}
+}
@@ -0,0 +1,142 @@
+package synapticloop.b2.upload;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import synapticloop.b2.B2ApiClient;
+import synapticloop.b2.BucketType;
+import synapticloop.b2.emulator.B2Emulator;
+import synapticloop.b2.exception.B2ApiException;
+import synapticloop.b2.io.FileRangeEntity;
+import synapticloop.b2.response.B2FileResponse;
+import synapticloop.b2.util.ChecksumHelper;
+
+public class ResumableUploadTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private B2Emulator emulator;
+	private B2ApiClient client;
+	private String bucketId;
+	private File file;
+	private File journals;
+
+	@Before
+	public void setup() throws Exception {
+		emulator = new B2Emulator();
+		emulator.setPartSizes(5, 10, 10);
+		client = new B2ApiClient();
+		client.authenticate(emulator.getUrl(), B2Emulator.ACCOUNT_ID, B2Emulator.APPLICATION_KEY);
+		bucketId = client.createBucket("resume-" + UUID.randomUUID().toString().substring(0, 8), BucketType.allPrivate).getBucketId();
+
+		byte[] content = new byte[100];
+		new Random(100).nextBytes(content);
+		file = folder.newFile();
+		Files.write(file.toPath(), content);
+		journals = folder.newFolder();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		emulator.close();
+	}
+
+	private String upload(String fileId, AdaptivePartSizer.Part part) throws Exception {
+		FileRangeEntity entity = new FileRangeEntity(file, part.getOffset(), part.getLength());
+		String sha1 = ChecksumHelper.calculateSha1(entity.getContent());
+		client.uploadLargeFilePart(fileId, part.getNumber(), entity, sha1);
+		return sha1;
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		// a previous process journaled four parts: 1 and 2 were uploaded and 
+		// journaled, 3 was uploaded but not journaled, 4 was not uploaded
+		String fileId = client.startLargeFileUpload(bucketId, "large.bin", null, Collections.<String, String>emptyMap()).getFileId();
+		UploadJournal journal = UploadJournal.open(journals, bucketId, "large.bin", file);
+		journal.start(fileId, file);
+		for (int i = 0; i < 4; i++) {
+			journal.issued(new AdaptivePartSizer.Part(i + 1, i * 10, 10));
+		}
+		journal.completed(1, upload(fileId, new AdaptivePartSizer.Part(1, 0, 10)));
+		journal.completed(2, upload(fileId, new AdaptivePartSizer.Part(2, 10, 10)));
+		upload(fileId, new AdaptivePartSizer.Part(3, 20, 10));
+		assertEquals(3, emulator.getRequestCount("b2_upload_part"));
+
+		B2FileResponse response = new B2Uploader(client).setThreads(2).setJournalDirectory(journals).upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+		assertEquals(fileId, response.getFileId());
+		assertEquals(1, emulator.getRequestCount("b2_start_large_file"));
+		assertEquals(1, emulator.getRequestCount("b2_list_parts"));
+		// only part 4 and the 60 bytes after the journaled parts, in parts of at 
+		// most 10 bytes (larger once the throughput has been measured)
+		assertTrue(emulator.getRequestCount("b2_upload_part") <= 3 + 1 + 6);
+		assertArrayEquals(Files.readAllBytes(file.toPath()), IOUtils.toByteArray(client.downloadFileByIdToStream(response.getFileId())));
+		assertFalse(journal.getFile().exists());
+	}
+
+	@Test
+	public void testFailureIsNotCancelled() throws Exception {
+		emulator.failNext("b2_upload_part", 1, 400, "bad_request");
+		B2Uploader uploader = new B2Uploader(client).setThreads(1).setJournalDirectory(journals);
+		try {
+			uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+		}
+		assertEquals(0, emulator.getRequestCount("b2_cancel_large_file"));
+		assertEquals(1, client.listUnfinishedLargeFiles(bucketId, null, null).getFiles().size());
+
+		B2FileResponse response = uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+		assertEquals(1, emulator.getRequestCount("b2_start_large_file"));
+		assertEquals(100, response.getContentLength());
+	}
+
+	@Test
+	public void testCancelledStartsAgain() throws Exception {
+		emulator.failNext("b2_upload_part", 1, 400, "bad_request");
+		B2Uploader uploader = new B2Uploader(client).setThreads(1).setJournalDirectory(journals);
+		try {
+			uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+			fail();
+		} catch (B2ApiException ex) {
+			assertEquals(400, ex.getStatus());
+		}
+		client.cancelLargeFileUpload(client.listUnfinishedLargeFiles(bucketId, null, null).getFiles().get(0).getFileId());
+
+		B2FileResponse response = uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+		assertEquals(2, emulator.getRequestCount("b2_start_large_file"));
+		assertEquals(100, response.getContentLength());
+	}
+
+	@Test
+	public void testFinishedIsNotUploadedAgain() throws Exception {
+		B2Uploader uploader = new B2Uploader(client).setThreads(2).setJournalDirectory(journals);
+		String fileId = uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap()).getFileId();
+		int parts = emulator.getRequestCount("b2_upload_part");
+
+		// a previous process finished the large file, but died before deleting the journal
+		UploadJournal journal = UploadJournal.open(journals, bucketId, "large.bin", file);
+		journal.start(fileId, file);
+
+		B2FileResponse response = uploader.upload(bucketId, "large.bin", file, null, Collections.<String, String>emptyMap());
+		assertEquals(fileId, response.getFileId());
+		assertEquals(100, response.getContentLength());
+		assertEquals(1, emulator.getRequestCount("b2_start_large_file"));
+		assertEquals(parts, emulator.getRequestCount("b2_upload_part"));
+		assertFalse(journal.getFile().exists());
+	}
+}
@@ -0,0 +1,59 @@
+package synapticloop.b2.upload;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReopen() throws Exception {
+		File file = folder.newFile();
+		Files.write(file.toPath(), new byte[100]);
+		File directory = new File(folder.getRoot(), "journals");
+
+		UploadJournal journal = UploadJournal.open(directory, "bucket", "large.bin", file);
+		assertFalse(journal.isResumable(file));
+		journal.start("fileId", file);
+		journal.issued(new AdaptivePartSizer.Part(1, 0, 40));
+		journal.issued(new AdaptivePartSizer.Part(2, 40, 40));
+		journal.completed(2, "sha1-2");
+		// a partly written entry from a process that died
+		try (FileOutputStream out = new FileOutputStream(journal.getFile(), true)) {
+			out.write("done 1 sh".getBytes(StandardCharsets.UTF_8));
+		}
+
+		UploadJournal reopened = UploadJournal.open(directory, "bucket", "large.bin", file);
+		assertTrue(reopened.isResumable(file));
+		assertEquals("fileId", reopened.getFileId());
+		assertEquals(2, reopened.getParts().size());
+		assertEquals(40, reopened.getParts().get(2).getOffset());
+		assertEquals(1, reopened.getSha1s().size());
+		assertEquals("sha1-2", reopened.getSha1s().get(2));
+
+		assertFalse(UploadJournal.open(directory, "bucket", "other.bin", file).isResumable(file));
+
+		reopened.delete();
+		assertFalse(journal.getFile().exists());
+	}
+
+	@Test
+	public void testChangedFile() throws Exception {
+		File file = folder.newFile();
+		Files.write(file.toPath(), new byte[100]);
+		UploadJournal journal = UploadJournal.open(folder.getRoot(), "bucket", "large.bin", file);
+		journal.start("fileId", file);
+
+		Files.write(file.toPath(), new byte[101]);
+		assertFalse(UploadJournal.open(folder.getRoot(), "bucket", "large.bin", file).isResumable(file));
+	}
+}
@@ -6,6 +6,7 @@ import org.json.JSONObject;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class URLEncoderTest {
@@ -145,4 +146,33 @@ public class URLEncoderTest {
 		}
 	}
 
+	@Test
+	public void testUnchanged() {
+		String name = "photos/2017/IMG_5066.jpg";
+		assertSame(name, URLEncoder.encode(name));
+		assertSame(name, URLEncoder.decode(name));
+	}
+
+	@Test
+	public void testSlashes() {
+		assertEquals("/folder//file%20name/", URLEncoder.encode("/folder//file name/"));
+		assertEquals("/folder//file name/", URLEncoder.decode("/folder//file%20name/"));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		String name = "documents/\u65e5\u672c\u8a9e/r\u00e9sum\u00e9 (1)+\ud801\udc00%.pdf";
+		assertEquals("documents/%E6%97%A5%E6%9C%AC%E8%AA%9E/r%C3%A9sum%C3%A9%20%281%29%2B%F0%90%90%80%25.pdf", URLEncoder.encode(name));
+		assertEquals(name, URLEncoder.decode(URLEncoder.encode(name)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncompleteEscape() {
+		URLEncoder.decode("file%2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidEscape() {
+		URLEncoder.decode("file%zz");
+	}
 }